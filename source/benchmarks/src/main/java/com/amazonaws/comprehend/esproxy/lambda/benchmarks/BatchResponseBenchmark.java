@@ -0,0 +1,88 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of the item results and errors of a full batch, it runs once per batch of every bulk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchResponseBenchmark {
+    // Every fifth text of the batch fails
+    private final static int ERROR_INTERVAL = 5;
+
+    private BatchResponse batchResponse;
+
+    @Setup
+    public void setup() {
+        ComprehendOperationEnum operation = ComprehendOperationEnum.DetectEntities;
+        List<String> textList = SyntheticBulk.buildTextList(Constants.MAX_BATCH_SIZE);
+        BatchResponse stubResponse = operation.getComprehendOperation().sendBatchRequest(
+                SyntheticBulk.buildLocatorList(operation, textList.size()), textList, LanguageCode.en,
+                new StubComprehendClient(textList));
+
+        // Comprehend does not order the items of a batch, the merge must not rely on it
+        List<BatchItemResult> resultItemList = new ArrayList<>();
+        List<BatchItemError> errorList = new ArrayList<>();
+        for (BatchItemResult itemResult : stubResponse.getBatchResultItemList()) {
+            if (itemResult.getIndex() % ERROR_INTERVAL == 0) {
+                errorList.add(new BatchItemError().withIndex(itemResult.getIndex())
+                        .withErrorCode("InternalServerException").withErrorMessage("Internal server error"));
+            } else {
+                resultItemList.add(itemResult);
+            }
+        }
+        Collections.shuffle(resultItemList, new Random(0));
+        batchResponse = new BatchResponse(stubResponse.getLocatorList(), resultItemList, errorList);
+    }
+
+    @Benchmark
+    public List<BatchItemResult> getItemResultList() {
+        return batchResponse.getItemResultList();
+    }
+
+    @Benchmark
+    public List<JSONObject> getBatchResultList() {
+        return batchResponse.getBatchResultList();
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkPayload;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.modules.UtilityModule;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadWriter;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and attachment stages of BulkProcessor: the bulk body is read into its ingestion payloads, and the
+ * enrichment of every payload is attached and written back
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkPayloadBenchmark {
+    @Param({"100", "1000"})
+    private int documentCount;
+
+    private byte[] payload;
+
+    private BulkPayloadReader bulkPayloadReader;
+
+    private String sentimentKey;
+
+    private JSONObject sentimentResult;
+
+    private String entitiesKey;
+
+    private JSONObject entitiesResult;
+
+    private String flattenedEntitiesKey;
+
+    private JSONObject flattenedEntitiesResult;
+
+    @Setup
+    public void setup() {
+        payload = SyntheticBulk.buildBulk(documentCount);
+        bulkPayloadReader = new BulkPayloadReader(new UtilityModule().getObjectMapper());
+
+        // Enrich every payload with the results the stub returns for a text of realistic size
+        List<String> textList = SyntheticBulk.buildTextList(1);
+        StubComprehendClient comprehendClient = new StubComprehendClient(textList);
+        sentimentKey = String.format("%s_%s", SyntheticBulk.FIELD_NAME, ComprehendOperationEnum.DetectSentiment);
+        sentimentResult = getItemResult(ComprehendOperationEnum.DetectSentiment, textList, comprehendClient)
+                .getResult();
+        entitiesKey = String.format("%s_%s", SyntheticBulk.FIELD_NAME, ComprehendOperationEnum.DetectEntities);
+        BatchItemResult entitiesItemResult =
+                getItemResult(ComprehendOperationEnum.DetectEntities, textList, comprehendClient);
+        entitiesResult = entitiesItemResult.getResult();
+        flattenedEntitiesKey = String.format("%s_%s", entitiesKey, Constants.KIBANA_KEY_NAME);
+        flattenedEntitiesResult = entitiesItemResult.getFlattenedResult();
+    }
+
+    @Benchmark
+    public List<BulkPayload> read() {
+        return bulkPayloadReader.read(payload);
+    }
+
+    @Benchmark
+    public byte[] readAttachWrite() {
+        List<BulkAction> actionList = new ArrayList<>();
+        List<BulkPayload> payloadList = bulkPayloadReader.read(payload, actionList);
+        BulkPayloadWriter bulkPayloadWriter = new BulkPayloadWriter(payload, payloadList, actionList);
+        for (int rowNum = 0; rowNum < payloadList.size(); rowNum++) {
+            bulkPayloadWriter.attach(rowNum, sentimentKey, sentimentResult);
+            bulkPayloadWriter.attach(rowNum, entitiesKey, entitiesResult);
+            bulkPayloadWriter.attach(rowNum, flattenedEntitiesKey, flattenedEntitiesResult);
+        }
+        return bulkPayloadWriter.write();
+    }
+
+    private static BatchItemResult getItemResult(final ComprehendOperationEnum operation,
+                                                 final List<String> textList,
+                                                 final StubComprehendClient comprehendClient) {
+        BatchResponse batchResponse = operation.getComprehendOperation().sendBatchRequest(
+                SyntheticBulk.buildLocatorList(operation, textList.size()), textList, LanguageCode.en,
+                comprehendClient);
+        return batchResponse.getItemResultList().get(0);
+    }
+}
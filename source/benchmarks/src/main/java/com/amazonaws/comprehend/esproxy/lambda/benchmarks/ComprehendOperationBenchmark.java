@@ -0,0 +1,111 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.callable.BatchOperationCallable;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full batch through each Comprehend operation, Comprehend answers instantly from the stub
+ * convertBatchResult measures how the operation writes and flattens the SDK results, callBatch adds the result cache
+ * lookups and the merge of BatchOperationCallable, callCachedBatch serves every text from the result cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ComprehendOperationBenchmark {
+    private final static long CACHE_BYTES = 64L * 1024 * 1024;
+
+    @Param({"DetectSentiment", "DetectEntities", "DetectKeyPhrases", "DetectSyntax", "DetectDominantLanguage"})
+    private ComprehendOperationEnum operation;
+
+    private List<String> textList;
+
+    private List<BatchFieldLocator> locatorList;
+
+    private StubComprehendClient comprehendClient;
+
+    private ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private ComprehendResultCache warmResultCache;
+
+    @Setup
+    public void setup() {
+        textList = SyntheticBulk.buildTextList(Constants.MAX_BATCH_SIZE);
+        locatorList = SyntheticBulk.buildLocatorList(operation, textList.size());
+        comprehendClient = new StubComprehendClient(textList);
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(Constants.MAX_BATCH_SIZE);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        warmResultCache = new ComprehendResultCache(CACHE_BYTES);
+        newCallable(warmResultCache).callAsync().join();
+    }
+
+    @TearDown
+    public void tearDown() {
+        retryScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public BatchResponse convertBatchResult() {
+        return operation.getComprehendOperation()
+                .sendBatchRequest(locatorList, textList, LanguageCode.en, comprehendClient);
+    }
+
+    @Benchmark
+    public BatchResponse callBatch() {
+        // A cache without capacity misses every text
+        return newCallable(new ComprehendResultCache(0)).callAsync().join();
+    }
+
+    @Benchmark
+    public BatchResponse callCachedBatch() {
+        return newCallable(warmResultCache).callAsync().join();
+    }
+
+    private BatchOperationCallable newCallable(final ComprehendResultCache resultCache) {
+        return new BatchOperationCallable(operation, LanguageCode.en, comprehendClient, locatorList, textList,
+                resultCache, concurrencyLimiter,
+                new BatchItemRetryPolicy(retryScheduler, Constants.BATCH_ITEM_RETRY_BUDGET));
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.PreprocessingConfigRequest;
+import com.amazonaws.comprehend.esproxy.lambda.modules.UtilityModule;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ConfigSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of the preprocessing configuration, as done when the configuration is stored and read back
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigSerializerBenchmark {
+    @Param({"1", "20"})
+    private int indexCount;
+
+    private String config;
+
+    private ConfigSerializer configSerializer;
+
+    @Setup
+    public void setup() {
+        config = SyntheticBulk.buildConfig(indexCount);
+        configSerializer = new ConfigSerializer(new UtilityModule().getObjectMapper());
+    }
+
+    @Benchmark
+    public String roundTrip() {
+        PreprocessingConfigRequest configRequest = configSerializer.deserialize(config);
+        return configSerializer.serialize(configRequest);
+    }
+}
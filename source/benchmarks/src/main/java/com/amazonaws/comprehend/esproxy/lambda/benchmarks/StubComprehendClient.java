@@ -0,0 +1,263 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AbstractAmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageResult;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesResult;
+import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSyntaxItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSyntaxRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSyntaxResult;
+import com.amazonaws.services.comprehend.model.DominantLanguage;
+import com.amazonaws.services.comprehend.model.Entity;
+import com.amazonaws.services.comprehend.model.KeyPhrase;
+import com.amazonaws.services.comprehend.model.PartOfSpeechTag;
+import com.amazonaws.services.comprehend.model.SentimentScore;
+import com.amazonaws.services.comprehend.model.SyntaxToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * In-process stand-in for Comprehend, answers the batch calls with results precomputed from the texts
+ * Every request is answered with the results of the texts the stub was built with, so the benchmarks measure the
+ * proxy rather than building SDK results
+ */
+public class StubComprehendClient extends AbstractAmazonComprehendAsync {
+    private final static String[] ENTITY_TYPES = {"PERSON", "LOCATION", "ORGANIZATION", "DATE"};
+
+    private final static String[] TAGS = {"DET", "NOUN", "VERB", "ADJ", "ADP", "ADV"};
+
+    private final BatchDetectSentimentResult sentimentResult;
+
+    private final BatchDetectEntitiesResult entitiesResult;
+
+    private final BatchDetectKeyPhrasesResult keyPhrasesResult;
+
+    private final BatchDetectSyntaxResult syntaxResult;
+
+    private final BatchDetectDominantLanguageResult dominantLanguageResult;
+
+    public StubComprehendClient(final List<String> textList) {
+        sentimentResult = buildSentimentResult(textList);
+        entitiesResult = buildEntitiesResult(textList);
+        keyPhrasesResult = buildKeyPhrasesResult(textList);
+        syntaxResult = buildSyntaxResult(textList);
+        dominantLanguageResult = buildDominantLanguageResult(textList);
+    }
+
+    // The batch results are derived from the texts alone, the same texts always get the same results
+    public static BatchDetectSentimentResult buildSentimentResult(final List<String> textList) {
+        BatchDetectSentimentResult result = new BatchDetectSentimentResult().withErrorList(Collections.emptyList());
+        for (int index = 0; index < textList.size(); index++) {
+            result.withResultList(new BatchDetectSentimentItemResult().withIndex(index)
+                    .withSentiment("POSITIVE").withSentimentScore(new SentimentScore()
+                            .withPositive(0.81f).withNegative(0.04f).withNeutral(0.12f).withMixed(0.03f)));
+        }
+        return result;
+    }
+
+    public static BatchDetectEntitiesResult buildEntitiesResult(final List<String> textList) {
+        BatchDetectEntitiesResult result = new BatchDetectEntitiesResult().withErrorList(Collections.emptyList());
+        for (int index = 0; index < textList.size(); index++) {
+            result.withResultList(new BatchDetectEntitiesItemResult().withIndex(index)
+                    .withEntities(getEntities(Word.split(textList.get(index)))));
+        }
+        return result;
+    }
+
+    public static BatchDetectKeyPhrasesResult buildKeyPhrasesResult(final List<String> textList) {
+        BatchDetectKeyPhrasesResult result = new BatchDetectKeyPhrasesResult().withErrorList(Collections.emptyList());
+        for (int index = 0; index < textList.size(); index++) {
+            result.withResultList(new BatchDetectKeyPhrasesItemResult().withIndex(index)
+                    .withKeyPhrases(getKeyPhrases(Word.split(textList.get(index)))));
+        }
+        return result;
+    }
+
+    public static BatchDetectSyntaxResult buildSyntaxResult(final List<String> textList) {
+        BatchDetectSyntaxResult result = new BatchDetectSyntaxResult().withErrorList(Collections.emptyList());
+        for (int index = 0; index < textList.size(); index++) {
+            result.withResultList(new BatchDetectSyntaxItemResult().withIndex(index)
+                    .withSyntaxTokens(getSyntaxTokens(Word.split(textList.get(index)))));
+        }
+        return result;
+    }
+
+    public static BatchDetectDominantLanguageResult buildDominantLanguageResult(final List<String> textList) {
+        BatchDetectDominantLanguageResult result =
+                new BatchDetectDominantLanguageResult().withErrorList(Collections.emptyList());
+        for (int index = 0; index < textList.size(); index++) {
+            result.withResultList(new BatchDetectDominantLanguageItemResult().withIndex(index)
+                    .withLanguages(new DominantLanguage().withLanguageCode("en").withScore(0.97f),
+                            new DominantLanguage().withLanguageCode("es").withScore(0.02f)));
+        }
+        return result;
+    }
+
+    @Override
+    public BatchDetectSentimentResult batchDetectSentiment(final BatchDetectSentimentRequest request) {
+        return sentimentResult;
+    }
+
+    @Override
+    public BatchDetectEntitiesResult batchDetectEntities(final BatchDetectEntitiesRequest request) {
+        return entitiesResult;
+    }
+
+    @Override
+    public BatchDetectKeyPhrasesResult batchDetectKeyPhrases(final BatchDetectKeyPhrasesRequest request) {
+        return keyPhrasesResult;
+    }
+
+    @Override
+    public BatchDetectSyntaxResult batchDetectSyntax(final BatchDetectSyntaxRequest request) {
+        return syntaxResult;
+    }
+
+    @Override
+    public BatchDetectDominantLanguageResult batchDetectDominantLanguage(
+            final BatchDetectDominantLanguageRequest request) {
+        return dominantLanguageResult;
+    }
+
+    @Override
+    public Future<BatchDetectSentimentResult> batchDetectSentimentAsync(
+            final BatchDetectSentimentRequest request,
+            final AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> asyncHandler) {
+        return complete(request, batchDetectSentiment(request), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectEntitiesResult> batchDetectEntitiesAsync(
+            final BatchDetectEntitiesRequest request,
+            final AsyncHandler<BatchDetectEntitiesRequest, BatchDetectEntitiesResult> asyncHandler) {
+        return complete(request, batchDetectEntities(request), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectKeyPhrasesResult> batchDetectKeyPhrasesAsync(
+            final BatchDetectKeyPhrasesRequest request,
+            final AsyncHandler<BatchDetectKeyPhrasesRequest, BatchDetectKeyPhrasesResult> asyncHandler) {
+        return complete(request, batchDetectKeyPhrases(request), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectSyntaxResult> batchDetectSyntaxAsync(
+            final BatchDetectSyntaxRequest request,
+            final AsyncHandler<BatchDetectSyntaxRequest, BatchDetectSyntaxResult> asyncHandler) {
+        return complete(request, batchDetectSyntax(request), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectDominantLanguageResult> batchDetectDominantLanguageAsync(
+            final BatchDetectDominantLanguageRequest request,
+            final AsyncHandler<BatchDetectDominantLanguageRequest, BatchDetectDominantLanguageResult> asyncHandler) {
+        return complete(request, batchDetectDominantLanguage(request), asyncHandler);
+    }
+
+    // Answer on the calling thread, as if Comprehend responded instantly
+    private static <REQUEST extends AmazonWebServiceRequest, RESULT> Future<RESULT> complete(
+            final REQUEST request, final RESULT result, final AsyncHandler<REQUEST, RESULT> asyncHandler) {
+        if (asyncHandler != null) {
+            asyncHandler.onSuccess(request, result);
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    // Every capitalized word is an entity
+    private static List<Entity> getEntities(final List<Word> wordList) {
+        List<Entity> entityList = new ArrayList<>();
+        for (Word word : wordList) {
+            if (Character.isUpperCase(word.text.charAt(0))) {
+                entityList.add(new Entity().withScore(0.93f)
+                        .withType(ENTITY_TYPES[Math.abs(word.text.hashCode()) % ENTITY_TYPES.length])
+                        .withText(word.text).withBeginOffset(word.beginOffset).withEndOffset(word.endOffset));
+            }
+        }
+        return entityList;
+    }
+
+    // Every fifth word starts a key phrase of two words
+    private static List<KeyPhrase> getKeyPhrases(final List<Word> wordList) {
+        List<KeyPhrase> keyPhraseList = new ArrayList<>();
+        for (int i = 0; i + 1 < wordList.size(); i += 5) {
+            Word first = wordList.get(i);
+            Word second = wordList.get(i + 1);
+            keyPhraseList.add(new KeyPhrase().withScore(0.88f)
+                    .withText(String.format("%s %s", first.text, second.text))
+                    .withBeginOffset(first.beginOffset).withEndOffset(second.endOffset));
+        }
+        return keyPhraseList;
+    }
+
+    // Every word is a token
+    private static List<SyntaxToken> getSyntaxTokens(final List<Word> wordList) {
+        List<SyntaxToken> tokenList = new ArrayList<>(wordList.size());
+        for (int i = 0; i < wordList.size(); i++) {
+            Word word = wordList.get(i);
+            String tag = Character.isUpperCase(word.text.charAt(0)) ? "PROPN" : TAGS[i % TAGS.length];
+            tokenList.add(new SyntaxToken().withTokenId(i + 1).withText(word.text)
+                    .withBeginOffset(word.beginOffset).withEndOffset(word.endOffset)
+                    .withPartOfSpeech(new PartOfSpeechTag().withTag(tag).withScore(0.99f)));
+        }
+        return tokenList;
+    }
+
+    private static class Word {
+        private final String text;
+
+        private final int beginOffset;
+
+        private final int endOffset;
+
+        private Word(final String text, final int beginOffset) {
+            this.text = text;
+            this.beginOffset = beginOffset;
+            this.endOffset = beginOffset + text.length();
+        }
+
+        // Split the text into the words between spaces and periods
+        private static List<Word> split(final String text) {
+            List<Word> wordList = new ArrayList<>();
+            int begin = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean isSeparator = i == text.length() || text.charAt(i) == ' ' || text.charAt(i) == '.';
+                if (isSeparator && begin >= 0) {
+                    wordList.add(new Word(text.substring(begin, i), begin));
+                    begin = -1;
+                } else if (!isSeparator && begin < 0) {
+                    begin = i;
+                }
+            }
+            return wordList;
+        }
+    }
+}
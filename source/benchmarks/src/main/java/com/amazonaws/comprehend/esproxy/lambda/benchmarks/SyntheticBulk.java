@@ -0,0 +1,123 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic inputs of realistic size for the benchmarks
+ * The inputs are generated from a fixed seed, so every run measures the same data
+ */
+public class SyntheticBulk {
+    public final static String INDEX_NAME = "tweets";
+
+    public final static String FIELD_NAME = "message";
+
+    // Around the average length of a social media post
+    public final static int WORDS_PER_TEXT = 60;
+
+    private final static long SEED = 42L;
+
+    // The capitalized words are detected as entities by the stub Comprehend client
+    private final static String[] WORDS = {"the", "a", "new", "store", "opened", "in", "Seattle", "and", "people",
+            "were", "waiting", "outside", "since", "morning", "Amazon", "announced", "that", "delivery", "will",
+            "be", "faster", "for", "customers", "living", "near", "Portland", "great", "service", "but", "prices",
+            "are", "still", "too", "high", "Jane", "said", "she", "loves", "the", "coffee", "at", "this", "place",
+            "weather", "was", "terrible", "yesterday", "although", "today", "looks", "much", "better", "Monday"};
+
+    private SyntheticBulk() {
+    }
+
+    // A text made of the words, with a sentence break every 12 words
+    public static String buildText(final Random random, final int wordCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                text.append(i % 12 == 0 ? ". " : " ");
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.append('.').toString();
+    }
+
+    public static List<String> buildTextList(final int textCount) {
+        Random random = new Random(SEED);
+        List<String> textList = new ArrayList<>(textCount);
+        for (int i = 0; i < textCount; i++) {
+            textList.add(buildText(random, WORDS_PER_TEXT));
+        }
+        return textList;
+    }
+
+    public static List<BatchFieldLocator> buildLocatorList(final ComprehendOperationEnum operation,
+                                                           final int textCount) {
+        List<BatchFieldLocator> locatorList = new ArrayList<>(textCount);
+        for (int i = 0; i < textCount; i++) {
+            locatorList.add(new BatchFieldLocator(String.format("%s_%s", FIELD_NAME, operation), i));
+        }
+        return locatorList;
+    }
+
+    /**
+     * Build a bulk body of index actions, each document holds a text and a few fields that are not comprehended
+     *
+     * @param documentCount The number of documents in the bulk
+     * @return The NDJSON bulk body
+     */
+    public static byte[] buildBulk(final int documentCount) {
+        Random random = new Random(SEED);
+        StringBuilder bulk = new StringBuilder();
+        for (int i = 0; i < documentCount; i++) {
+            bulk.append(String.format("{ \"index\" : { \"_index\" : \"%s\", \"_type\" : \"_doc\", \"_id\" : \"%d\" } }",
+                    INDEX_NAME, i)).append('\n');
+            bulk.append(String.format("{ \"%s\" : \"%s\", \"user\" : \"user%d\", \"likes\" : %d, "
+                            + "\"created_at\" : \"2021-03-0%dT10:15:30Z\" }",
+                    FIELD_NAME, buildText(random, WORDS_PER_TEXT), random.nextInt(1000), random.nextInt(500),
+                    1 + random.nextInt(9))).append('\n');
+        }
+        return bulk.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // The action lines of a bulk, mixing the actions that carry a source with the ones that do not
+    public static List<String> buildActionLineList(final int lineCount) {
+        String[] actions = {"index", "create", "update", "delete"};
+        List<String> lineList = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lineList.add(String.format("{ \"%s\" : { \"_index\" : \"%s%d\", \"_type\" : \"_doc\", \"_id\" : \"%d\" } }",
+                    actions[i % actions.length], INDEX_NAME, i % 10, i));
+        }
+        return lineList;
+    }
+
+    // A preprocessing configuration with one field per index, every field is comprehended by two operations
+    public static String buildConfig(final int indexCount) {
+        StringBuilder config = new StringBuilder("{\"comprehendConfigurations\":[");
+        for (int i = 0; i < indexCount; i++) {
+            if (i > 0) {
+                config.append(',');
+            }
+            config.append(String.format("{\"indexName\":\"%s%d\",\"fieldName\":\"%s\","
+                    + "\"comprehendOperations\":[\"DetectSentiment\",\"DetectEntities\"],\"languageCode\":\"en\"}",
+                    INDEX_NAME, i, FIELD_NAME));
+        }
+        return config.append("]}").toString();
+    }
+}
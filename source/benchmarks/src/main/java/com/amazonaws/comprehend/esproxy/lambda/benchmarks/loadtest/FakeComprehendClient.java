@@ -0,0 +1,246 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks.loadtest;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.comprehend.esproxy.lambda.benchmarks.StubComprehendClient;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AbstractAmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageResult;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesResult;
+import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSyntaxRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSyntaxResult;
+import com.amazonaws.services.comprehend.model.DetectDominantLanguageRequest;
+import com.amazonaws.services.comprehend.model.DetectDominantLanguageResult;
+import com.amazonaws.services.comprehend.model.DetectEntitiesRequest;
+import com.amazonaws.services.comprehend.model.DetectEntitiesResult;
+import com.amazonaws.services.comprehend.model.DetectKeyPhrasesRequest;
+import com.amazonaws.services.comprehend.model.DetectKeyPhrasesResult;
+import com.amazonaws.services.comprehend.model.DetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.DetectSentimentResult;
+import com.amazonaws.services.comprehend.model.DetectSyntaxRequest;
+import com.amazonaws.services.comprehend.model.DetectSyntaxResult;
+import com.amazonaws.services.comprehend.model.TooManyRequestsException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Local stand-in for Comprehend to load test the proxy end to end
+ * Every call is answered after a fixed latency, a share of the calls is throttled as Comprehend does when the account
+ * limit is exceeded. The results are derived from the texts, so the same texts always get the same results.
+ */
+public class FakeComprehendClient extends AbstractAmazonComprehendAsync {
+    private final long latencyMillis;
+
+    private final double throttleRate;
+
+    // Seeded, so a run with the same requests throttles the same share of the calls
+    private final Random throttleRandom;
+
+    private final ScheduledExecutorService responseScheduler;
+
+    private final AtomicLong callCount = new AtomicLong();
+
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /**
+     * @param latencyMillis The time to answer each call
+     * @param throttleRate  The share of the calls rejected with TooManyRequestsException, from 0 to 1
+     * @param seed          The seed of the throttled calls
+     */
+    public FakeComprehendClient(final long latencyMillis, final double throttleRate, final long seed) {
+        if (latencyMillis < 0) {
+            throw new IllegalArgumentException(String.format("latencyMillis must not be negative, got %d",
+                    latencyMillis));
+        }
+        if (throttleRate < 0 || throttleRate > 1) {
+            throw new IllegalArgumentException(String.format("throttleRate must be between 0 and 1, got %s",
+                    throttleRate));
+        }
+        this.latencyMillis = latencyMillis;
+        this.throttleRate = throttleRate;
+        this.throttleRandom = new Random(seed);
+        // The results are built on these threads, the calling threads are never blocked
+        this.responseScheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactoryBuilder().setNameFormat("fake-comprehend-%d").setDaemon(true).build());
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    @Override
+    public Future<BatchDetectSentimentResult> batchDetectSentimentAsync(
+            final BatchDetectSentimentRequest request,
+            final AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> asyncHandler) {
+        return respond(request, () -> StubComprehendClient.buildSentimentResult(request.getTextList()), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectEntitiesResult> batchDetectEntitiesAsync(
+            final BatchDetectEntitiesRequest request,
+            final AsyncHandler<BatchDetectEntitiesRequest, BatchDetectEntitiesResult> asyncHandler) {
+        return respond(request, () -> StubComprehendClient.buildEntitiesResult(request.getTextList()), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectKeyPhrasesResult> batchDetectKeyPhrasesAsync(
+            final BatchDetectKeyPhrasesRequest request,
+            final AsyncHandler<BatchDetectKeyPhrasesRequest, BatchDetectKeyPhrasesResult> asyncHandler) {
+        return respond(request, () -> StubComprehendClient.buildKeyPhrasesResult(request.getTextList()),
+                asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectSyntaxResult> batchDetectSyntaxAsync(
+            final BatchDetectSyntaxRequest request,
+            final AsyncHandler<BatchDetectSyntaxRequest, BatchDetectSyntaxResult> asyncHandler) {
+        return respond(request, () -> StubComprehendClient.buildSyntaxResult(request.getTextList()), asyncHandler);
+    }
+
+    @Override
+    public Future<BatchDetectDominantLanguageResult> batchDetectDominantLanguageAsync(
+            final BatchDetectDominantLanguageRequest request,
+            final AsyncHandler<BatchDetectDominantLanguageRequest, BatchDetectDominantLanguageResult> asyncHandler) {
+        return respond(request, () -> StubComprehendClient.buildDominantLanguageResult(request.getTextList()),
+                asyncHandler);
+    }
+
+    // The singular results are the batch results of a single text
+    @Override
+    public Future<DetectSentimentResult> detectSentimentAsync(
+            final DetectSentimentRequest request,
+            final AsyncHandler<DetectSentimentRequest, DetectSentimentResult> asyncHandler) {
+        return respond(request, () -> {
+            BatchDetectSentimentItemResult item = StubComprehendClient
+                    .buildSentimentResult(singleText(request.getText())).getResultList().get(0);
+            return new DetectSentimentResult().withSentiment(item.getSentiment())
+                    .withSentimentScore(item.getSentimentScore());
+        }, asyncHandler);
+    }
+
+    @Override
+    public Future<DetectEntitiesResult> detectEntitiesAsync(
+            final DetectEntitiesRequest request,
+            final AsyncHandler<DetectEntitiesRequest, DetectEntitiesResult> asyncHandler) {
+        return respond(request, () -> new DetectEntitiesResult().withEntities(StubComprehendClient
+                .buildEntitiesResult(singleText(request.getText())).getResultList().get(0).getEntities()),
+                asyncHandler);
+    }
+
+    @Override
+    public Future<DetectKeyPhrasesResult> detectKeyPhrasesAsync(
+            final DetectKeyPhrasesRequest request,
+            final AsyncHandler<DetectKeyPhrasesRequest, DetectKeyPhrasesResult> asyncHandler) {
+        return respond(request, () -> new DetectKeyPhrasesResult().withKeyPhrases(StubComprehendClient
+                .buildKeyPhrasesResult(singleText(request.getText())).getResultList().get(0).getKeyPhrases()),
+                asyncHandler);
+    }
+
+    @Override
+    public Future<DetectSyntaxResult> detectSyntaxAsync(
+            final DetectSyntaxRequest request,
+            final AsyncHandler<DetectSyntaxRequest, DetectSyntaxResult> asyncHandler) {
+        return respond(request, () -> new DetectSyntaxResult().withSyntaxTokens(StubComprehendClient
+                .buildSyntaxResult(singleText(request.getText())).getResultList().get(0).getSyntaxTokens()),
+                asyncHandler);
+    }
+
+    @Override
+    public Future<DetectDominantLanguageResult> detectDominantLanguageAsync(
+            final DetectDominantLanguageRequest request,
+            final AsyncHandler<DetectDominantLanguageRequest, DetectDominantLanguageResult> asyncHandler) {
+        return respond(request, () -> new DetectDominantLanguageResult().withLanguages(StubComprehendClient
+                .buildDominantLanguageResult(singleText(request.getText())).getResultList().get(0).getLanguages()),
+                asyncHandler);
+    }
+
+    @Override
+    public void shutdown() {
+        responseScheduler.shutdownNow();
+    }
+
+    // Answer the call once the latency elapsed, with the result or with a throttling error
+    private <REQUEST extends AmazonWebServiceRequest, RESULT> Future<RESULT> respond(
+            final REQUEST request, final Supplier<RESULT> resultSupplier,
+            final AsyncHandler<REQUEST, RESULT> asyncHandler) {
+        callCount.incrementAndGet();
+        final boolean isThrottled = isThrottled();
+        CompletableFuture<RESULT> future = new CompletableFuture<>();
+
+        responseScheduler.schedule(() -> {
+            if (isThrottled) {
+                throttledCount.incrementAndGet();
+                Exception exception = buildThrottlingException();
+                if (asyncHandler != null) {
+                    asyncHandler.onError(exception);
+                }
+                future.completeExceptionally(exception);
+                return;
+            }
+            RESULT result = resultSupplier.get();
+            if (asyncHandler != null) {
+                asyncHandler.onSuccess(request, result);
+            }
+            future.complete(result);
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private boolean isThrottled() {
+        if (throttleRate == 0) {
+            return false;
+        }
+        synchronized (throttleRandom) {
+            return throttleRandom.nextDouble() < throttleRate;
+        }
+    }
+
+    // Same error code and status as the throttling errors of Comprehend, so the proxy backs off and retries
+    private static AmazonServiceException buildThrottlingException() {
+        TooManyRequestsException exception = new TooManyRequestsException("Rate exceeded");
+        exception.setErrorCode("TooManyRequestsException");
+        exception.setErrorType(AmazonServiceException.ErrorType.Client);
+        exception.setStatusCode(400);
+        exception.setServiceName("AmazonComprehend");
+        return exception;
+    }
+
+    private static List<String> singleText(final String text) {
+        return Collections.singletonList(text);
+    }
+}
@@ -0,0 +1,348 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks.loadtest;
+
+import com.amazonaws.comprehend.esproxy.lambda.OpenSearchServiceProxyRequestHandler;
+import com.amazonaws.comprehend.esproxy.lambda.benchmarks.SyntheticBulk;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Injector;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replay API Gateway proxy events through OpenSearchServiceProxyRequestHandler, with Comprehend and the OpenSearch
+ * Service domain replaced by local stand-ins, and report the throughput and the latency percentiles
+ * The events are read from the JSON lines file of the loadtest.events property, or generated from SyntheticBulk.
+ * The preprocessing configuration is stored through the handler before the replay.
+ *
+ * Settings, as system properties:
+ * loadtest.requests                  The number of measured requests, default 1000
+ * loadtest.warmupRequests            The number of requests replayed before measuring, default 100
+ * loadtest.concurrency               The number of concurrent requests, default 8
+ * loadtest.documentsPerBulk          The number of documents of a generated bulk request, default 100
+ * loadtest.indexRequestRate          The share of generated single document index requests, default 0.2
+ * loadtest.comprehendLatencyMillis   The latency of each Comprehend call, default 50
+ * loadtest.comprehendThrottleRate    The share of throttled Comprehend calls, default 0
+ * loadtest.operations                The Comprehend operations of the configuration,
+ *                                    default DetectSentiment,DetectEntities
+ * loadtest.config                    A file with the preprocessing configuration, replaces the generated one
+ * loadtest.events                    A file with one APIGatewayProxyRequestEvent JSON per line
+ */
+public class LoadTestDriver {
+    private final static long SEED = 42L;
+
+    private final static double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final static String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+    public static void main(final String[] args) throws Exception {
+        int requestCount = Integer.getInteger("loadtest.requests", 1000);
+        int warmupCount = Integer.getInteger("loadtest.warmupRequests", 100);
+        int concurrency = Integer.getInteger("loadtest.concurrency", 8);
+        int documentsPerBulk = Integer.getInteger("loadtest.documentsPerBulk", 100);
+        double indexRequestRate = Double.parseDouble(System.getProperty("loadtest.indexRequestRate", "0.2"));
+        long latencyMillis = Long.getLong("loadtest.comprehendLatencyMillis", 50L);
+        double throttleRate = Double.parseDouble(System.getProperty("loadtest.comprehendThrottleRate", "0"));
+        List<String> operationList = Arrays.asList(
+                System.getProperty("loadtest.operations", "DetectSentiment,DetectEntities").split(","));
+        String configFile = System.getProperty("loadtest.config");
+        String eventsFile = System.getProperty("loadtest.events");
+
+        String config = configFile == null ? buildConfig(operationList) : readFile(configFile);
+        List<APIGatewayProxyRequestEvent> eventList = eventsFile == null
+                ? buildEventList(warmupCount + requestCount, documentsPerBulk, indexRequestRate)
+                : readEventList(eventsFile);
+        if (eventList.isEmpty()) {
+            throw new IllegalArgumentException(String.format("No events to replay in %s", eventsFile));
+        }
+
+        FakeComprehendClient comprehendClient = new FakeComprehendClient(latencyMillis, throttleRate, SEED);
+        boolean isFailed;
+        try (LocalOpenSearchServer openSearchServer = new LocalOpenSearchServer(concurrency)) {
+            Injector injector = new LocalStandInModule(comprehendClient, openSearchServer.getEndpoint())
+                    .createInjector();
+            OpenSearchServiceProxyRequestHandler handler = new OpenSearchServiceProxyRequestHandler(injector);
+
+            APIGatewayProxyResponseEvent configResponse = handler.handleRequest(new APIGatewayProxyRequestEvent()
+                    .withHttpMethod(HttpPut.METHOD_NAME)
+                    .withPath(Constants.CONFIG_PATH_EXPOSED_TO_CUSTOMER)
+                    .withBody(config), new LocalContext());
+            if (configResponse.getStatusCode() >= 300) {
+                throw new IllegalStateException(String.format("Failed to store the configuration: %d %s",
+                        configResponse.getStatusCode(), configResponse.getBody()));
+            }
+
+            replay(handler, eventList, 0, warmupCount, concurrency);
+            long callCountBeforeRun = comprehendClient.getCallCount();
+            long throttledCountBeforeRun = comprehendClient.getThrottledCount();
+            long documentCountBeforeRun = openSearchServer.getIndexedDocumentCount();
+            Result result = replay(handler, eventList, warmupCount, requestCount, concurrency);
+
+            result.print(concurrency);
+            System.out.println(String.format("Comprehend calls: %d, throttled: %d",
+                    comprehendClient.getCallCount() - callCountBeforeRun,
+                    comprehendClient.getThrottledCount() - throttledCountBeforeRun));
+            System.out.println(String.format("Indexed documents: %d",
+                    openSearchServer.getIndexedDocumentCount() - documentCountBeforeRun));
+            isFailed = result.getFailedCount() > 0;
+
+            injector.getInstance(ScheduledExecutorService.class).shutdownNow();
+        } finally {
+            comprehendClient.shutdown();
+        }
+        // The I/O threads of the OpenSearch Service client are not daemon threads
+        System.exit(isFailed ? 1 : 0);
+    }
+
+    // Send the events from the offset on, each worker takes the next event once its previous request completed
+    private static Result replay(final OpenSearchServiceProxyRequestHandler handler,
+                                 final List<APIGatewayProxyRequestEvent> eventList,
+                                 final int offset, final int requestCount, final int concurrency)
+            throws InterruptedException {
+        long[] latencyNanos = new long[requestCount];
+        int[] statusCodes = new int[requestCount];
+        AtomicInteger nextRequest = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                Context context = new LocalContext();
+                int request;
+                while ((request = nextRequest.getAndIncrement()) < requestCount) {
+                    APIGatewayProxyRequestEvent event = eventList.get((offset + request) % eventList.size());
+                    long requestStartNanos = System.nanoTime();
+                    APIGatewayProxyResponseEvent response = handler.handleRequest(event, context);
+                    latencyNanos[request] = System.nanoTime() - requestStartNanos;
+                    statusCodes[request] = response.getStatusCode();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        return new Result(latencyNanos, statusCodes, System.nanoTime() - startNanos);
+    }
+
+    // The configuration of the generated events: the field of the SyntheticBulk index with the given operations
+    private static String buildConfig(final List<String> operationList) {
+        JSONObject configuration = new JSONObject()
+                .put("indexName", SyntheticBulk.INDEX_NAME)
+                .put("fieldName", SyntheticBulk.FIELD_NAME)
+                .put("comprehendOperations", new JSONArray(operationList))
+                .put("languageCode", "en");
+        return new JSONObject().put(Constants.CONFIG_KEY, new JSONArray().put(configuration)).toString();
+    }
+
+    // Bulk requests mixed with single document index requests, every text is different so no result is cached
+    private static List<APIGatewayProxyRequestEvent> buildEventList(final int eventCount,
+                                                                    final int documentsPerBulk,
+                                                                    final double indexRequestRate) {
+        Random random = new Random(SEED);
+        List<APIGatewayProxyRequestEvent> eventList = new ArrayList<>(eventCount);
+        int documentId = 0;
+        for (int i = 0; i < eventCount; i++) {
+            if (random.nextDouble() < indexRequestRate) {
+                JSONObject document = new JSONObject().put(SyntheticBulk.FIELD_NAME,
+                        SyntheticBulk.buildText(random, SyntheticBulk.WORDS_PER_TEXT));
+                eventList.add(new APIGatewayProxyRequestEvent()
+                        .withHttpMethod(HttpPut.METHOD_NAME)
+                        .withPath(String.format("/%s/_doc/%d", SyntheticBulk.INDEX_NAME, documentId++))
+                        .withBody(document.toString()));
+                continue;
+            }
+            StringBuilder bulk = new StringBuilder();
+            for (int j = 0; j < documentsPerBulk; j++) {
+                JSONObject action = new JSONObject().put(Constants.BULK_INDEX_ACTION_KEY, new JSONObject()
+                        .put(Constants.BULK_INDEX_ACTION_KEY_NAME, SyntheticBulk.INDEX_NAME)
+                        .put("_id", String.valueOf(documentId++)));
+                JSONObject document = new JSONObject().put(SyntheticBulk.FIELD_NAME,
+                        SyntheticBulk.buildText(random, SyntheticBulk.WORDS_PER_TEXT));
+                bulk.append(action).append('\n').append(document).append('\n');
+            }
+            eventList.add(new APIGatewayProxyRequestEvent()
+                    .withHttpMethod(HttpPost.METHOD_NAME)
+                    .withPath(Constants.BULK_REQUEST)
+                    .withBody(bulk.toString()));
+        }
+        return eventList;
+    }
+
+    private static List<APIGatewayProxyRequestEvent> readEventList(final String eventsFile) throws IOException {
+        // Recorded events carry the request context and other fields the proxy does not read
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        List<APIGatewayProxyRequestEvent> eventList = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(eventsFile), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                eventList.add(mapper.readValue(line, APIGatewayProxyRequestEvent.class));
+            }
+        }
+        return eventList;
+    }
+
+    private static String readFile(final String file) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The latencies and status codes of the measured requests
+     */
+    private static class Result {
+        private final long[] sortedLatencyNanos;
+
+        private final Map<Integer, Integer> statusCodeCountMap = new TreeMap<>();
+
+        private final long elapsedNanos;
+
+        private Result(final long[] latencyNanos, final int[] statusCodes, final long elapsedNanos) {
+            this.sortedLatencyNanos = latencyNanos.clone();
+            Arrays.sort(sortedLatencyNanos);
+            for (int statusCode : statusCodes) {
+                statusCodeCountMap.merge(statusCode, 1, Integer::sum);
+            }
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private int getFailedCount() {
+            return statusCodeCountMap.entrySet().stream()
+                    .filter(entry -> entry.getKey() >= 300)
+                    .mapToInt(Map.Entry::getValue)
+                    .sum();
+        }
+
+        private void print(final int concurrency) {
+            int requestCount = sortedLatencyNanos.length;
+            double elapsedSeconds = elapsedNanos / 1e9;
+            System.out.println(String.format("Requests: %d, concurrency: %d, elapsed: %.2f s",
+                    requestCount, concurrency, elapsedSeconds));
+            System.out.println(String.format("Throughput: %.1f requests/s", requestCount / elapsedSeconds));
+            System.out.println(String.format("Status codes: %s", statusCodeCountMap));
+            if (requestCount == 0) {
+                return;
+            }
+            StringBuilder latencies = new StringBuilder("Latency (ms):");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                latencies.append(String.format(" %s = %.2f,", PERCENTILE_LABELS[i],
+                        getPercentileMillis(PERCENTILES[i])));
+            }
+            latencies.append(String.format(" max = %.2f", sortedLatencyNanos[requestCount - 1] / 1e6));
+            System.out.println(latencies);
+        }
+
+        // Nearest rank percentile
+        private double getPercentileMillis(final double percentile) {
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatencyNanos.length);
+            return sortedLatencyNanos[Math.max(rank, 1) - 1] / 1e6;
+        }
+    }
+
+    /**
+     * Lambda context of the replayed requests, the logs of the handler are discarded so they don't skew the latency
+     */
+    private static class LocalContext implements Context {
+        private static final LambdaLogger DISCARDING_LOGGER = new LambdaLogger() {
+            @Override
+            public void log(final String message) {
+            }
+
+            @Override
+            public void log(final byte[] message) {
+            }
+        };
+
+        private final String awsRequestId = UUID.randomUUID().toString();
+
+        @Override
+        public String getAwsRequestId() {
+            return awsRequestId;
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return null;
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return null;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return LoadTestDriver.class.getSimpleName();
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return null;
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return null;
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return (int) TimeUnit.MINUTES.toMillis(15);
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 1024;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return DISCARDING_LOGGER;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks.loadtest;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded HTTP server standing in for the OpenSearch Service domain to load test the proxy end to end
+ * It emulates the requests sent by the proxy: the config document, _bulk and _doc, index creation and the Kibana
+ * saved objects. The ingested documents are counted but not stored.
+ */
+public class LocalOpenSearchServer implements AutoCloseable {
+    private final static String BULK_ENDPOINT = "_bulk";
+
+    // A document of an index: /{index}/_doc or /{index}/_doc/{id}
+    private final static Pattern DOC_PATH_PATTERN = Pattern.compile("/[^/_][^/]*/_doc(/[^/]*)?");
+
+    private final static String BULK_DELETE_ACTION_KEY = "delete";
+
+    private final HttpServer server;
+
+    private final ExecutorService executorService;
+
+    // The indices created by the proxy, a GET of any other index is answered with 404
+    private final Set<String> indexNameSet = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong bulkRequestCount = new AtomicLong();
+
+    private final AtomicLong indexedDocumentCount = new AtomicLong();
+
+    private volatile String configSource;
+
+    private long configVersion;
+
+    /**
+     * Start the server on a free port of the loopback address
+     *
+     * @param threadCount The number of threads serving the requests
+     */
+    public LocalOpenSearchServer(final int threadCount) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executorService = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactoryBuilder().setNameFormat("local-opensearch-%d").setDaemon(true).build());
+        server.setExecutor(executorService);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    // The endpoint of the server without protocol, as the OpenSearchServiceDomainEndpoint
+    public String getEndpoint() {
+        return String.format("%s:%d", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    public long getBulkRequestCount() {
+        return bulkRequestCount.get();
+    }
+
+    public long getIndexedDocumentCount() {
+        return indexedDocumentCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+
+            if (path.equals(Constants.CONFIG_PATH)) {
+                handleConfig(exchange, method, query, body);
+            } else if (path.endsWith("/" + BULK_ENDPOINT)) {
+                respond(exchange, HttpStatus.SC_OK, handleBulk(body));
+            } else if (DOC_PATH_PATTERN.matcher(path).matches()) {
+                handleDoc(exchange, method, path);
+            } else {
+                handleOther(exchange, method, path);
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, HttpStatus.SC_INTERNAL_SERVER_ERROR, new JSONObject().put("error", e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // GET of the config document, with _source=false only the version, PUT and POST store the document
+    private synchronized void handleConfig(final HttpExchange exchange, final String method, final String query,
+                                           final byte[] body) throws IOException {
+        if (method.equals(HttpGet.METHOD_NAME)) {
+            if (configSource == null) {
+                respond(exchange, HttpStatus.SC_NOT_FOUND, buildDocResult("found", false));
+                return;
+            }
+            JSONObject document = buildDocResult("found", true)
+                    .put(Constants.CONFIG_SEQ_NO_KEY, configVersion - 1)
+                    .put(Constants.CONFIG_PRIMARY_TERM_KEY, 1)
+                    .put(Constants.CONFIG_VERSION_KEY, configVersion);
+            if (query == null || !query.contains(Constants.CONFIG_SOURCE_KEY + "=false")) {
+                document.put(Constants.CONFIG_SOURCE_KEY, new JSONObject(configSource));
+            }
+            respond(exchange, HttpStatus.SC_OK, document);
+            return;
+        }
+        if (!method.equals(HttpPut.METHOD_NAME) && !method.equals(HttpPost.METHOD_NAME)) {
+            respond(exchange, HttpStatus.SC_METHOD_NOT_ALLOWED, new JSONObject().put("error", method));
+            return;
+        }
+        boolean isCreated = configSource == null;
+        configSource = new String(body, StandardCharsets.UTF_8);
+        configVersion++;
+        respond(exchange, isCreated ? HttpStatus.SC_CREATED : HttpStatus.SC_OK,
+                buildDocResult("result", isCreated ? "created" : "updated")
+                        .put(Constants.CONFIG_VERSION_KEY, configVersion));
+    }
+
+    // Acknowledge every action of the bulk, the actions other than delete are followed by their source line
+    private JSONObject handleBulk(final byte[] body) {
+        bulkRequestCount.incrementAndGet();
+        JSONArray items = new JSONArray();
+        String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().isEmpty()) {
+                continue;
+            }
+            JSONObject actionLine = new JSONObject(lines[i]);
+            String action = actionLine.keys().next();
+            JSONObject metadata = actionLine.getJSONObject(action);
+            if (!action.equals(BULK_DELETE_ACTION_KEY)) {
+                i++;
+                indexedDocumentCount.incrementAndGet();
+            }
+            items.put(new JSONObject().put(action, new JSONObject()
+                    .put(Constants.BULK_INDEX_ACTION_KEY_NAME, metadata.optString(Constants.BULK_INDEX_ACTION_KEY_NAME))
+                    .put("_id", metadata.optString("_id"))
+                    .put("status", action.equals(BULK_DELETE_ACTION_KEY) ? HttpStatus.SC_OK : HttpStatus.SC_CREATED)));
+        }
+        return new JSONObject().put("took", 1).put("errors", false).put("items", items);
+    }
+
+    // Index a single document, the documents are not stored so a GET never finds them
+    private void handleDoc(final HttpExchange exchange, final String method, final String path) throws IOException {
+        if (method.equals(HttpGet.METHOD_NAME)) {
+            respond(exchange, HttpStatus.SC_NOT_FOUND, new JSONObject().put("found", false));
+            return;
+        }
+        indexedDocumentCount.incrementAndGet();
+        String indexName = path.substring(1, path.indexOf('/', 1));
+        indexNameSet.add(indexName);
+        respond(exchange, HttpStatus.SC_CREATED, new JSONObject()
+                .put(Constants.BULK_INDEX_ACTION_KEY_NAME, indexName)
+                .put("result", "created")
+                .put(Constants.CONFIG_VERSION_KEY, 1));
+    }
+
+    // Index creation and mappings, the Kibana saved objects and any other request are acknowledged
+    private void handleOther(final HttpExchange exchange, final String method, final String path) throws IOException {
+        String[] segments = path.substring(1).split("/");
+        boolean isIndexPath = segments.length == 1 && !segments[0].isEmpty() && !segments[0].startsWith("_");
+        if (isIndexPath && method.equals(HttpGet.METHOD_NAME) && !indexNameSet.contains(segments[0])) {
+            respond(exchange, HttpStatus.SC_NOT_FOUND, new JSONObject().put("status", HttpStatus.SC_NOT_FOUND));
+            return;
+        }
+        if (isIndexPath) {
+            indexNameSet.add(segments[0]);
+        }
+        respond(exchange, HttpStatus.SC_OK, new JSONObject().put("acknowledged", true));
+    }
+
+    private static JSONObject buildDocResult(final String key, final Object value) {
+        return new JSONObject()
+                .put(Constants.BULK_INDEX_ACTION_KEY_NAME, ".comprehend")
+                .put("_id", "0")
+                .put(key, value);
+    }
+
+    private static void respond(final HttpExchange exchange, final int statusCode, final JSONObject body)
+            throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+
+package com.amazonaws.comprehend.esproxy.lambda.benchmarks.loadtest;
+
+import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
+import com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants;
+import com.amazonaws.comprehend.esproxy.lambda.modules.RequestHandlerModule;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.WorkloadExecutor;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.google.inject.util.Modules;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.client.RestClient;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Replace the Comprehend and OpenSearch Service clients of ClientModule with local stand-ins
+ * The OpenSearch Service client sends unsigned plain HTTP requests to the given endpoint, every other binding is the
+ * one of RequestHandlerModule, so the load test runs the same processors as the Lambda function.
+ */
+public class LocalStandInModule extends AbstractModule {
+    private final AmazonComprehendAsync comprehendClient;
+
+    private final String openSearchEndpoint;
+
+    /**
+     * @param comprehendClient   The Comprehend stand-in, e.g. FakeComprehendClient
+     * @param openSearchEndpoint The host:port of the OpenSearch stand-in, e.g. LocalOpenSearchServer
+     */
+    public LocalStandInModule(final AmazonComprehendAsync comprehendClient,
+                              final String openSearchEndpoint) {
+        this.comprehendClient = comprehendClient;
+        this.openSearchEndpoint = openSearchEndpoint;
+    }
+
+    // Build the injector of OpenSearchServiceProxyRequestHandler with the stand-ins
+    public Injector createInjector() {
+        return Guice.createInjector(Modules.override(new RequestHandlerModule()).with(this));
+    }
+
+    @Override
+    protected void configure() {
+        bind(AmazonComprehendAsync.class).toInstance(comprehendClient);
+    }
+
+    @Provides
+    @Singleton
+    public OpenSearchServiceClient buildOpenSearchServiceClient(@Named(ModuleConstants.OPEN_SEARCH_EXECUTOR)
+                                                                final WorkloadExecutor openSearchExecutor) {
+        final Header[] headers = new Header[]{new BasicHeader(Constants.USER_AGENT_NAME,
+                Constants.USER_AGENT_VALUE)};
+
+        RestClient restClient = RestClient.builder(HttpHost.create(String.format("http://%s", openSearchEndpoint)))
+                .setDefaultHeaders(headers)
+                .build();
+        // The stand-in reads the request bodies as is
+        return new OpenSearchServiceClient(restClient, openSearchExecutor, false);
+    }
+}
@@ -17,22 +17,22 @@ import com.amazonaws.comprehend.esproxy.lambda.exception.InvalidRequestException
 import com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants;
 import com.amazonaws.comprehend.esproxy.lambda.modules.RequestHandlerModule;
 import com.amazonaws.comprehend.esproxy.lambda.processor.OpenSearchServiceProcessor;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ExecutorGauges;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.RequestIdentifier;
-import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import lombok.NonNull;
 import org.apache.http.HttpStatus;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
 
 import javax.inject.Named;
 import java.util.Arrays;
@@ -59,6 +59,10 @@ public class OpenSearchServiceProxyRequestHandler
     @Named(ModuleConstants.DEFAULT_PROCESSOR)
     private OpenSearchServiceProcessor end2endProcessor;
 
+    // Not bound by injectors that replace the processors, e.g. in tests
+    @Inject(optional = true)
+    private ExecutorGauges executorGauges;
+
     public OpenSearchServiceProxyRequestHandler() {
         INJECTOR.injectMembers(this);
     }
@@ -79,8 +83,8 @@ public class OpenSearchServiceProxyRequestHandler
             // Transform API Gateway request to OpenSearch Service request
             Request esRequest = HTTPTransformer.apiGatewayRequestToESRequest(requestEvent);
             OpenSearchServiceProcessor openSearchServiceProcessor = getProcessor(esRequest);
-            Response esConfigResponse = openSearchServiceProcessor.processRequest(esRequest, logger);
-            return HTTPTransformer.esResponseToAPIGatewayResponse(esConfigResponse);
+            ProxyResponse proxyResponse = openSearchServiceProcessor.processRequest(esRequest, logger);
+            return HTTPTransformer.proxyResponseToAPIGatewayResponse(proxyResponse);
 
         } catch (InvalidRequestException e) {
             logger.log("Received InvalidRequestException when processing request");
@@ -94,6 +98,10 @@ public class OpenSearchServiceProxyRequestHandler
             return new APIGatewayProxyResponseEvent()
                     .withBody(e.getMessage())
                     .withStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            if (executorGauges != null) {
+                executorGauges.log(logger);
+            }
         }
     }
 
@@ -112,8 +120,8 @@ public class OpenSearchServiceProxyRequestHandler
         return end2endProcessor;
     }
 
-    @VisibleForTesting
-    OpenSearchServiceProxyRequestHandler(Injector testInjector) {
-        testInjector.injectMembers(this);
+    // Build the handler from another injector, e.g. one with local stand-ins of Comprehend and OpenSearch Service
+    public OpenSearchServiceProxyRequestHandler(Injector injector) {
+        injector.injectMembers(this);
     }
 }
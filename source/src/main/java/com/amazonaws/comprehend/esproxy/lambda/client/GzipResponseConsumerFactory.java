@@ -0,0 +1,75 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.client;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import lombok.NonNull;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+
+import java.io.IOException;
+
+/**
+ * Buffer the OpenSearch Service responses on the heap like the default consumer of the RestClient, and decompress the
+ * gzip ones, as the asynchronous Apache client does not decode the Content-Encoding of a response itself
+ */
+public class GzipResponseConsumerFactory implements HttpAsyncResponseConsumerFactory {
+    // Applies to the response as received, before it is decompressed
+    private final int bufferLimitBytes;
+
+    public GzipResponseConsumerFactory(final int bufferLimitBytes) {
+        this.bufferLimitBytes = bufferLimitBytes;
+    }
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new HeapBufferedAsyncResponseConsumer(bufferLimitBytes) {
+            @Override
+            protected HttpResponse buildResult(final HttpContext context) throws Exception {
+                return decompress(super.buildResult(context));
+            }
+        };
+    }
+
+    /**
+     * Replace the gzip entity of the response with its decompressed content, any other response is left as is
+     *
+     * @param response The buffered OpenSearch Service response
+     * @return The response, without Content-Encoding
+     */
+    static HttpResponse decompress(@NonNull final HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        if (entity == null || contentEncoding == null
+                || !Constants.GZIP_ENCODING.equalsIgnoreCase(contentEncoding.getValue().trim())) {
+            return response;
+        }
+        NByteArrayEntity decompressedEntity = new NByteArrayEntity(
+                EntityUtils.toByteArray(new GzipDecompressingEntity(entity)));
+        decompressedEntity.setContentType(entity.getContentType());
+        response.setEntity(decompressedEntity);
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        return response;
+    }
+}
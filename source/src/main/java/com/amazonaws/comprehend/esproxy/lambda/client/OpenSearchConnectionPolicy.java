@@ -0,0 +1,37 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * How the RestClient connects to OpenSearch Service
+ * Every request goes to the domain endpoint, a single route, so maxConnectionsPerRoute also caps the pool. Idle
+ * connections are kept for keepAliveMillis, so the warm invocations reuse them instead of opening new TLS connections.
+ */
+@AllArgsConstructor
+@Getter
+public class OpenSearchConnectionPolicy {
+    private final int maxConnectionsPerRoute;
+
+    private final int keepAliveMillis;
+
+    private final int connectTimeoutMillis;
+
+    private final int socketTimeoutMillis;
+
+    // Gzip the request bodies and accept gzip responses
+    private final boolean requestCompression;
+}
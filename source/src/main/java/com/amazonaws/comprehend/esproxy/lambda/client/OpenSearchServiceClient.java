@@ -15,24 +15,45 @@ package com.amazonaws.comprehend.esproxy.lambda.client;
 
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * OpenSearch Service Rest Client Wrapper class
  */
 @RequiredArgsConstructor
 public class OpenSearchServiceClient {
+    private static final GzipResponseConsumerFactory RESPONSE_CONSUMER_FACTORY =
+            new GzipResponseConsumerFactory(Constants.OPEN_SEARCH_RESPONSE_BUFFER_LIMIT_BYTES);
+
+    @NonNull
     private final RestClient restClient;
 
+    // Completes the asynchronous requests, so their callers never run on the I/O threads of the RestClient
+    @NonNull
+    private final Executor callbackExecutor;
+
+    // Gzip the request bodies of at least OPEN_SEARCH_GZIP_MIN_BYTES
+    private final boolean requestCompression;
+
     /**
      * Perform OpenSearch Service request
      *
@@ -41,7 +62,7 @@ public class OpenSearchServiceClient {
      */
     public Response performRequest(@NonNull Request request) {
         try {
-            return restClient.performRequest(request);
+            return restClient.performRequest(encodeRequest(request));
         } catch (ResponseException responseException) {
             return responseException.getResponse();
         } catch (IOException e) {
@@ -57,9 +78,7 @@ public class OpenSearchServiceClient {
      * @return OpenSearch Service service response
      */
     public Response performRequest(@NonNull Request request, @NonNull String endpoint) {
-        Request newRequest = new Request(request.getMethod(), endpoint);
-        newRequest.setEntity(request.getEntity());
-        return performRequest(newRequest);
+        return performRequest(buildRequest(request, endpoint));
     }
 
     /**
@@ -70,8 +89,7 @@ public class OpenSearchServiceClient {
      * @return OpenSearch Service service response
      */
     public Response performRequest(@NonNull String method, @NonNull String endpoint) {
-        Request request = new Request(method, endpoint);
-        return performRequest(request);
+        return performRequest(new Request(method, endpoint));
     }
 
     /**
@@ -83,9 +101,7 @@ public class OpenSearchServiceClient {
      * @return OpenSearch Service service response
      */
     public Response performRequest(@NonNull String method, @NonNull String endpoint, @NonNull String payload) {
-        Request request = new Request(method, endpoint);
-        request.setJsonEntity(payload);
-        return performRequest(request);
+        return performRequest(buildRequest(method, endpoint, payload));
     }
 
     /**
@@ -99,13 +115,155 @@ public class OpenSearchServiceClient {
      */
     public Response performRequest(@NonNull String method, @NonNull String endpoint, @NonNull String payload,
                                    @NonNull Map<String, String> headerMap) {
+        return performRequest(buildRequest(method, endpoint, payload, headerMap));
+    }
+
+    /**
+     * Perform OpenSearch Service request asynchronously, the calling thread is not blocked by the I/O
+     * The future is completed on the callback executor.
+     * An error response completes the future normally, same as performRequest.
+     * Any other failure completes the future exceptionally with an InternalErrorException
+     *
+     * @param request Received OpenSearch Service request
+     * @return Future of the OpenSearch Service service response
+     */
+    public CompletableFuture<Response> performRequestAsync(@NonNull Request request) {
+        CompletableFuture<Response> responseFuture = new CompletableFuture<>();
+
+        restClient.performRequestAsync(encodeRequest(request), new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                complete(responseFuture, () -> responseFuture.complete(response));
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                if (exception instanceof ResponseException) {
+                    Response response = ((ResponseException) exception).getResponse();
+                    complete(responseFuture, () -> responseFuture.complete(response));
+                } else {
+                    complete(responseFuture, () -> responseFuture.completeExceptionally(
+                            new InternalErrorException(CustomerMessage.INTERNAL_ERROR, exception)));
+                }
+            }
+        });
+        return responseFuture;
+    }
+
+    // The callback executor only rejects a completion once it is shut down, the future then fails in place
+    private void complete(@NonNull final CompletableFuture<Response> responseFuture,
+                          @NonNull final Runnable completion) {
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            responseFuture.completeExceptionally(new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e));
+        }
+    }
+
+    /**
+     * Perform OpenSearch Service request asynchronously with received request and new endpoint
+     *
+     * @param request  Received OpenSearch Service request
+     * @param endpoint New OpenSearch Service Domain Endpoint
+     * @return Future of the OpenSearch Service service response
+     */
+    public CompletableFuture<Response> performRequestAsync(@NonNull Request request, @NonNull String endpoint) {
+        return performRequestAsync(buildRequest(request, endpoint));
+    }
+
+    /**
+     * Perform OpenSearch Service request asynchronously with given method and endpoint (with no payload)
+     *
+     * @param method   Request method
+     * @param endpoint OpenSearch Service Domain Endpoint
+     * @return Future of the OpenSearch Service service response
+     */
+    public CompletableFuture<Response> performRequestAsync(@NonNull String method, @NonNull String endpoint) {
+        return performRequestAsync(new Request(method, endpoint));
+    }
+
+    /**
+     * Perform OpenSearch Service request asynchronously with given method, endpoint and payload
+     *
+     * @param method   Request method
+     * @param endpoint OpenSearch Service Domain Endpoint
+     * @param payload  The new payload for the request
+     * @return Future of the OpenSearch Service service response
+     */
+    public CompletableFuture<Response> performRequestAsync(@NonNull String method, @NonNull String endpoint,
+                                                           @NonNull String payload) {
+        return performRequestAsync(buildRequest(method, endpoint, payload));
+    }
+
+    /**
+     * Perform OpenSearch Service request asynchronously with given method, endpoint, payload and new headers
+     *
+     * @param method    Request method
+     * @param endpoint  OpenSearch Service Domain Endpoint
+     * @param payload   The new payload for the request
+     * @param headerMap The map for the request headers
+     * @return Future of the OpenSearch Service service response
+     */
+    public CompletableFuture<Response> performRequestAsync(@NonNull String method, @NonNull String endpoint,
+                                                           @NonNull String payload,
+                                                           @NonNull Map<String, String> headerMap) {
+        return performRequestAsync(buildRequest(method, endpoint, payload, headerMap));
+    }
+
+    // Gzip the request body when enabled, the signing interceptor of the RestClient then signs the compressed body
+    // The request of the caller is left as is, a copy with the encoded body and the merged options is sent
+    private Request encodeRequest(@NonNull final Request request) {
+        Request encodedRequest = new Request(request.getMethod(), request.getEndpoint());
+        request.getParameters().forEach(encodedRequest::addParameter);
+        RequestOptions.Builder options = request.getOptions().toBuilder()
+                .setHttpAsyncResponseConsumerFactory(RESPONSE_CONSUMER_FACTORY);
+        HttpEntity entity = request.getEntity();
+        // An encoded body is sent as is
+        if (requestCompression && entity != null && entity.getContentEncoding() == null
+                && entity.getContentLength() >= Constants.OPEN_SEARCH_GZIP_MIN_BYTES) {
+            encodedRequest.setEntity(gzip(entity));
+            options.addHeader(HttpHeaders.CONTENT_ENCODING, Constants.GZIP_ENCODING);
+        } else {
+            encodedRequest.setEntity(entity);
+        }
+        encodedRequest.setOptions(options);
+        return encodedRequest;
+    }
+
+    private static HttpEntity gzip(@NonNull final HttpEntity entity) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            entity.writeTo(gzipStream);
+        } catch (IOException e) {
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        }
+        NByteArrayEntity gzipEntity = new NByteArrayEntity(compressed.toByteArray());
+        gzipEntity.setContentType(entity.getContentType());
+        gzipEntity.setContentEncoding(Constants.GZIP_ENCODING);
+        return gzipEntity;
+    }
+
+    private static Request buildRequest(@NonNull Request request, @NonNull String endpoint) {
+        Request newRequest = new Request(request.getMethod(), endpoint);
+        newRequest.setEntity(request.getEntity());
+        return newRequest;
+    }
+
+    private static Request buildRequest(@NonNull String method, @NonNull String endpoint, @NonNull String payload) {
+        Request request = new Request(method, endpoint);
+        request.setJsonEntity(payload);
+        return request;
+    }
+
+    private static Request buildRequest(@NonNull String method, @NonNull String endpoint, @NonNull String payload,
+                                        @NonNull Map<String, String> headerMap) {
         Request request = new Request(method, endpoint);
         RequestOptions.Builder options = request.getOptions().toBuilder();
 
         headerMap.forEach(options::addHeader);
         request.setOptions(options);
         request.setJsonEntity(payload);
-        return performRequest(request);
+        return request;
     }
 
 }
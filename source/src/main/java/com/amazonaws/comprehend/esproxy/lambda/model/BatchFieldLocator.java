@@ -13,9 +13,8 @@
 
 package com.amazonaws.comprehend.esproxy.lambda.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.Setter;
+import lombok.NonNull;
 
 /**
  * Help to attach the comprehend result back to the bulk content
@@ -23,12 +22,38 @@ import lombok.Setter;
  * i.e.:
  * fieldNameAndOperation = "message_DetectKeyPhrases"
  * contentRowNum = 4
+ * A response can answer a locator under another field name through a copy, the copy keeps the locator it answers
  */
-@AllArgsConstructor
 @Getter
 public class BatchFieldLocator {
-    @Setter
-    private String fieldNameAndOperation;
+    private final String fieldNameAndOperation;
 
     private final int contentRowNum;
-}
\ No newline at end of file
+
+    // The locator of the request, this locator itself unless it is a copy made for a response
+    private final BatchFieldLocator requestLocator;
+
+    public BatchFieldLocator(final String fieldNameAndOperation, final int contentRowNum) {
+        this.fieldNameAndOperation = fieldNameAndOperation;
+        this.contentRowNum = contentRowNum;
+        this.requestLocator = this;
+    }
+
+    private BatchFieldLocator(final String fieldNameAndOperation,
+                              final int contentRowNum,
+                              @NonNull final BatchFieldLocator requestLocator) {
+        this.fieldNameAndOperation = fieldNameAndOperation;
+        this.contentRowNum = contentRowNum;
+        this.requestLocator = requestLocator;
+    }
+
+    /**
+     * Copy the locator under another field name, the locator itself is shared by the callers and left as is
+     *
+     * @param fieldNameAndOperation The field name of the copy
+     * @return The copy, answering the request of this locator
+     */
+    public BatchFieldLocator withFieldNameAndOperation(@NonNull final String fieldNameAndOperation) {
+        return new BatchFieldLocator(fieldNameAndOperation, contentRowNum, requestLocator);
+    }
+}
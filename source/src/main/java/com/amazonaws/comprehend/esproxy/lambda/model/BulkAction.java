@@ -0,0 +1,42 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * An action of the bulk request, and where its lines end in the raw bulk body
+ * i.e.
+ * { "delete" : { "_index" : "tweeter", "_type" : "_doc", "_id" : "2" } }
+ * is a delete action of a single line, an index, create or update action also spans the source line after it
+ */
+@AllArgsConstructor
+@Getter
+public class BulkAction {
+    // index, create, update or delete
+    private final String name;
+
+    // Null if the action goes to the index of the request path
+    private final String indexName;
+
+    // Null if the document id is generated by OpenSearch Service
+    private final String id;
+
+    // The offset right after the newline that terminates the last line of the action
+    private final int endOffset;
+
+    // The index of the ingestion payload of the action in the payload list, -1 for the other actions
+    private final int contentRowNum;
+}
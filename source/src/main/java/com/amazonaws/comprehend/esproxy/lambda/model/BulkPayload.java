@@ -36,6 +36,8 @@ import lombok.Getter;
  * indexName = "facebook"
  * payloadJson = "{ \"message\" : \"value1\",\"title\":\"value2\" }"
  * </p>
+ * The source offsets record where the payload starts (its opening brace) and ends (right after its closing brace)
+ * in the raw bulk body, so the enriched payload can be written back in place
  */
 @AllArgsConstructor
 @Getter
@@ -43,4 +45,8 @@ public class BulkPayload {
     private final String indexName;
 
     private final JsonNode payloadJson;
+
+    private final int sourceStartOffset;
+
+    private final int sourceEndOffset;
 }
@@ -0,0 +1,70 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.model;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable routing table compiled from the Preprocessing Configuration map, built once per config version
+ * Maps each indexName to the FieldRoutes configured for that index, so matching an ingestion payload only
+ * costs the number of fields configured for its index instead of the size of the whole configuration
+ */
+public class ComprehendConfigRouter {
+    public static final ComprehendConfigRouter EMPTY = new ComprehendConfigRouter(Collections.emptyMap());
+
+    private final Map<String, List<FieldRoute>> routeMap;
+
+    private ComprehendConfigRouter(@NonNull final Map<String, List<FieldRoute>> routeMap) {
+        this.routeMap = routeMap;
+    }
+
+    /**
+     * Compile the Preprocessing Configuration map into a ComprehendConfigRouter
+     *
+     * @param configMap Preprocessing configuration as a Map(indexName_fieldName pair, ComprehendConfiguration)
+     * @return The compiled ComprehendConfigRouter
+     */
+    public static ComprehendConfigRouter compile(@NonNull final Map<String, ComprehendConfiguration> configMap) {
+        if (configMap.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, List<FieldRoute>> routeMap = new HashMap<>();
+        configMap.values().forEach(config -> routeMap
+                .computeIfAbsent(config.getIndexName(), indexName -> new ArrayList<>())
+                .add(new FieldRoute(config)));
+        routeMap.replaceAll((indexName, routeList) -> Collections.unmodifiableList(routeList));
+
+        return new ComprehendConfigRouter(Collections.unmodifiableMap(routeMap));
+    }
+
+    /**
+     * Get the FieldRoutes configured for the index
+     *
+     * @param indexName The index of the ingestion payload
+     * @return FieldRoutes of the index, empty if the index has no Comprehend configuration
+     */
+    public List<FieldRoute> getFieldRoutes(@NonNull final String indexName) {
+        return routeMap.getOrDefault(indexName, Collections.emptyList());
+    }
+
+    public boolean isEmpty() {
+        return routeMap.isEmpty();
+    }
+}
@@ -14,11 +14,7 @@
 package com.amazonaws.comprehend.esproxy.lambda.model;
 
 import com.amazonaws.comprehend.esproxy.lambda.processor.operations.ComprehendOperation;
-import com.amazonaws.comprehend.esproxy.lambda.processor.operations.DetectDominantLanguage;
-import com.amazonaws.comprehend.esproxy.lambda.processor.operations.DetectEntities;
-import com.amazonaws.comprehend.esproxy.lambda.processor.operations.DetectKeyPhrases;
-import com.amazonaws.comprehend.esproxy.lambda.processor.operations.DetectSentiment;
-import com.amazonaws.comprehend.esproxy.lambda.processor.operations.DetectSyntax;
+import com.amazonaws.comprehend.esproxy.lambda.processor.operations.ComprehendOperationRegistry;
 import lombok.NoArgsConstructor;
 
 /**
@@ -35,22 +31,10 @@ public enum ComprehendOperationEnum {
 
     /**
      * Get ComprehendOperation instance based on the Operation Enum passed from PreprocessingConfigRequest
+     * The instance is the singleton registered in the ComprehendOperationRegistry
      * @return ComprehendOperation instance
      */
     public ComprehendOperation getComprehendOperation() {
-        switch (this) {
-            case DetectDominantLanguage:
-                return new DetectDominantLanguage();
-            case DetectEntities:
-                return new DetectEntities();
-            case DetectSentiment:
-                return new DetectSentiment();
-            case DetectKeyPhrases:
-                return new DetectKeyPhrases();
-            case DetectSyntax:
-                return new DetectSyntax();
-            default:
-                throw new IllegalArgumentException("Illegal ComprehendOperation");
-        }
+        return ComprehendOperationRegistry.getOperation(this);
     }
 }
@@ -0,0 +1,66 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The compiled form of one ComprehendConfiguration: the field to read from the ingestion payload,
+ * the operations to run on it and the response key of each operation
+ * i.e.:
+ * fieldName = "message"
+ * operations = [DetectEntities, DetectSentiment]
+ * fieldNameAndOperations = ["message_DetectEntities", "message_DetectSentiment"]
+ */
+@Getter
+public class FieldRoute {
+    private final String fieldName;
+
+    private final LanguageCode languageCode;
+
+    private final List<ComprehendOperationEnum> operations;
+
+    // Response key for each operation, in the same order as operations
+    private final List<String> fieldNameAndOperations;
+
+    public FieldRoute(@NonNull final ComprehendConfiguration configuration) {
+        List<ComprehendOperationEnum> operationList =
+                new ArrayList<>(EnumSet.copyOf(configuration.getComprehendOperations()));
+        List<String> fieldNameAndOperationList = new ArrayList<>(operationList.size());
+        operationList.forEach(operation -> fieldNameAndOperationList.add(
+                String.format("%s_%s", configuration.getFieldName(), operation.toString())));
+
+        this.fieldName = configuration.getFieldName();
+        this.languageCode = configuration.getLanguageCode();
+        this.operations = Collections.unmodifiableList(operationList);
+        this.fieldNameAndOperations = Collections.unmodifiableList(fieldNameAndOperationList);
+    }
+
+    /**
+     * Find the configured field in the ingestion payload
+     *
+     * @param payloadJson The ingestion payload
+     * @return The field value, null if the payload does not contain the field
+     */
+    public JsonNode findFieldValue(@NonNull final JsonNode payloadJson) {
+        return payloadJson.findValue(fieldName);
+    }
+}
@@ -16,7 +16,9 @@ package com.amazonaws.comprehend.esproxy.lambda.model;
 /**
  * The supported languages in Comprehend APIs
  * More can be found in: https://docs.aws.amazon.com/comprehend/latest/dg/supported-languages.html
+ * auto is not a Comprehend language, the language of each text is detected with DetectDominantLanguage before the
+ * other operations run on it
  */
 public enum LanguageCode {
-    en,es,fr,de,it,pt
+    en,es,fr,de,it,pt,auto
 }
@@ -0,0 +1,35 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A chunk of a text over the Comprehend document limit
+ * The offset and the length are counted in characters of the whole text, the unit of the offsets in Comprehend
+ * results, so the offsets found in the chunk can be shifted to the whole text
+ * i.e.:
+ * text = "Hello. World."
+ * chunks = {text = "Hello. ", offset = 0, length = 7}, {text = "World.", offset = 7, length = 6}
+ */
+@AllArgsConstructor
+@Getter
+public class TextChunk {
+    private final String text;
+
+    private final int offset;
+
+    private final int length;
+}
@@ -17,24 +17,31 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWS4Signer;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchConnectionPolicy;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.WorkloadExecutor;
 import com.amazonaws.http.AWSRequestSigningApacheInterceptor;
-import com.amazonaws.services.comprehend.AmazonComprehend;
-import com.amazonaws.services.comprehend.AmazonComprehendClientBuilder;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.AmazonComprehendAsyncClientBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.message.BasicHeader;
 import org.elasticsearch.client.RestClient;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- *  Build OpenSearchServiceClient & AmazonComprehend client
+ *  Build OpenSearchServiceClient & AmazonComprehendAsync client
  */
 public class ClientModule extends AbstractModule {
     @Override
@@ -60,36 +67,80 @@ public class ClientModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public ClientConfiguration getClientConfiguration() {
+    public ClientConfiguration getClientConfiguration(@Named(ModuleConstants.COMPREHEND_MAX_CONCURRENCY)
+                                                      final int maxConcurrency) {
         ClientConfiguration clientConfiguration = new ClientConfiguration();
         clientConfiguration.setUserAgentSuffix(Constants.USER_AGENT_VALUE);
+        // One connection per permit, so an in flight call never waits for a pooled connection
+        clientConfiguration.setMaxConnections(Math.max(maxConcurrency, ClientConfiguration.DEFAULT_MAX_CONNECTIONS));
         return clientConfiguration;
     }
 
+    @Provides
+    @Singleton
+    public OpenSearchConnectionPolicy buildOpenSearchConnectionPolicy(
+            @Named(ModuleConstants.OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE) final int maxConnectionsPerRoute,
+            @Named(ModuleConstants.OPEN_SEARCH_KEEP_ALIVE_MILLIS) final int keepAliveMillis,
+            @Named(ModuleConstants.OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS) final int connectTimeoutMillis,
+            @Named(ModuleConstants.OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS) final int socketTimeoutMillis,
+            @Named(ModuleConstants.OPEN_SEARCH_REQUEST_COMPRESSION) final boolean requestCompression) {
+        return new OpenSearchConnectionPolicy(maxConnectionsPerRoute, keepAliveMillis, connectTimeoutMillis,
+                socketTimeoutMillis, requestCompression);
+    }
+
     @Provides
     @Singleton
     public OpenSearchServiceClient buildOpenSearchServiceClient(final HttpRequestInterceptor interceptor,
                                                                 @Named(ModuleConstants.OPEN_SEARCH_SERVICE_DOMAIN_ENDPOINT)
-                                                        final String opensearchDomainEndpoint) {
-        final Header[] headers = new Header[]{new BasicHeader(Constants.USER_AGENT_NAME,
-                Constants.USER_AGENT_VALUE)};
+                                                        final String opensearchDomainEndpoint,
+                                                                @Named(ModuleConstants.OPEN_SEARCH_EXECUTOR)
+                                                        final WorkloadExecutor openSearchExecutor,
+                                                                final OpenSearchConnectionPolicy connectionPolicy) {
+        final List<Header> headers = new ArrayList<>();
+        headers.add(new BasicHeader(Constants.USER_AGENT_NAME, Constants.USER_AGENT_VALUE));
+        if (connectionPolicy.isRequestCompression()) {
+            // The gzip responses are decompressed by OpenSearchServiceClient
+            headers.add(new BasicHeader(HttpHeaders.ACCEPT_ENCODING, Constants.GZIP_ENCODING));
+        }
         final String endpointWithProtocol = String.format("%s%s", Constants.PROTOCOL, opensearchDomainEndpoint);
 
         RestClient restClient = RestClient.builder(HttpHost.create(endpointWithProtocol))
-                .setHttpClientConfigCallback(hacb -> hacb.addInterceptorLast(interceptor))
-                .setDefaultHeaders(headers)
+                .setHttpClientConfigCallback(hacb -> hacb
+                        .setMaxConnPerRoute(connectionPolicy.getMaxConnectionsPerRoute())
+                        .setMaxConnTotal(connectionPolicy.getMaxConnectionsPerRoute())
+                        .setKeepAliveStrategy(buildKeepAliveStrategy(connectionPolicy.getKeepAliveMillis()))
+                        // Signs the body as sent, OpenSearchServiceClient compresses it before
+                        .addInterceptorLast(interceptor))
+                .setRequestConfigCallback(rcb -> rcb
+                        .setConnectTimeout(connectionPolicy.getConnectTimeoutMillis())
+                        .setSocketTimeout(connectionPolicy.getSocketTimeoutMillis()))
+                // A synchronous request is not cut short before its socket timeout
+                .setMaxRetryTimeoutMillis(connectionPolicy.getSocketTimeoutMillis())
+                .setDefaultHeaders(headers.toArray(new Header[0]))
                 .build();
-        return new OpenSearchServiceClient(restClient);
+        return new OpenSearchServiceClient(restClient, openSearchExecutor, connectionPolicy.isRequestCompression());
+    }
+
+    // Keep an idle connection as long as the Keep-Alive of the response allows, at most keepAliveMillis
+    private static ConnectionKeepAliveStrategy buildKeepAliveStrategy(final long keepAliveMillis) {
+        return (response, context) -> {
+            long serverKeepAliveMillis = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+            return serverKeepAliveMillis < 0 ? keepAliveMillis : Math.min(serverKeepAliveMillis, keepAliveMillis);
+        };
     }
 
     @Provides
     @Singleton
-    public AmazonComprehend buildAmazonComprehend(final AWSCredentialsProvider credentialsProvider,
-                                                  final ClientConfiguration clientConfiguration,
-                                                  @Named(ModuleConstants.REGION) final String region) {
-        return AmazonComprehendClientBuilder.standard()
+    public AmazonComprehendAsync buildAmazonComprehend(final AWSCredentialsProvider credentialsProvider,
+                                                       final ClientConfiguration clientConfiguration,
+                                                       @Named(ModuleConstants.COMPREHEND_EXECUTOR)
+                                                       final WorkloadExecutor comprehendExecutor,
+                                                       @Named(ModuleConstants.REGION) final String region) {
+        return AmazonComprehendAsyncClientBuilder.standard()
                 .withCredentials(credentialsProvider)
                 .withClientConfiguration(clientConfiguration)
+                .withExecutorFactory(() -> comprehendExecutor)
                 .withRegion(region)
                 .build();
     }
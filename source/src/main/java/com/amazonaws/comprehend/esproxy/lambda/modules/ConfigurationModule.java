@@ -13,13 +13,35 @@
 
 package com.amazonaws.comprehend.esproxy.lambda.modules;
 
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ExecutorMode;
+import com.amazonaws.comprehend.esproxy.lambda.utils.VirtualThreadExecutor;
+import com.google.common.base.Strings;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Arrays;
 
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.BULK_FLUSH_ROWS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.BULK_SUB_REQUEST_CONCURRENCY;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.BULK_SUB_REQUEST_MAX_BYTES;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.BULK_SUB_REQUEST_MAX_DOCUMENTS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.COMPREHEND_COALESCING_WINDOW_MILLIS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.COMPREHEND_EXECUTOR_QUEUE_CAPACITY;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.COMPREHEND_MAX_CONCURRENCY;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.COMPREHEND_RESULT_CACHE_MAX_BYTES;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.EXECUTOR_MODE;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.KIBANA_EXECUTOR_QUEUE_CAPACITY;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.KIBANA_EXECUTOR_THREADS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_EXECUTOR_THREADS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_KEEP_ALIVE_MILLIS;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_REQUEST_COMPRESSION;
 import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_SERVICE_DOMAIN_ENDPOINT;
+import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS;
 import static com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants.REGION;
 
 /**
@@ -44,4 +66,196 @@ public class ConfigurationModule extends AbstractModule {
         return System.getenv(OPEN_SEARCH_SERVICE_DOMAIN_ENDPOINT);
     }
 
+    // The number of Comprehend calls allowed in flight per container, defaults to MAX_THREAD
+    @Provides
+    @Singleton
+    @Named(COMPREHEND_MAX_CONCURRENCY)
+    public int getComprehendMaxConcurrency() {
+        return getPositiveInt(COMPREHEND_MAX_CONCURRENCY, Constants.MAX_THREAD);
+    }
+
+    // The size of the Comprehend result cache in bytes, 0 disables the cache
+    @Provides
+    @Singleton
+    @Named(COMPREHEND_RESULT_CACHE_MAX_BYTES)
+    public long getComprehendResultCacheMaxBytes() {
+        String maxBytes = System.getenv(COMPREHEND_RESULT_CACHE_MAX_BYTES);
+        if (Strings.isNullOrEmpty(maxBytes)) {
+            return Constants.COMPREHEND_RESULT_CACHE_MAX_BYTES;
+        }
+        long cacheBytes = Long.parseLong(maxBytes.trim());
+        if (cacheBytes < 0) {
+            throw new IllegalArgumentException(
+                    String.format("%s must not be negative, got %s", COMPREHEND_RESULT_CACHE_MAX_BYTES, maxBytes));
+        }
+        return cacheBytes;
+    }
+
+    // How long the texts of concurrent index requests wait to be sent in a shared batch, 0 disables the coalescing
+    @Provides
+    @Singleton
+    @Named(COMPREHEND_COALESCING_WINDOW_MILLIS)
+    public long getComprehendCoalescingWindowMillis() {
+        String windowMillis = System.getenv(COMPREHEND_COALESCING_WINDOW_MILLIS);
+        if (Strings.isNullOrEmpty(windowMillis)) {
+            return Constants.COMPREHEND_COALESCING_WINDOW_MILLIS;
+        }
+        long window = Long.parseLong(windowMillis.trim());
+        if (window < 0) {
+            throw new IllegalArgumentException(String.format("%s must not be negative, got %s",
+                    COMPREHEND_COALESCING_WINDOW_MILLIS, windowMillis));
+        }
+        return window;
+    }
+
+    // The ingestion rows per sub-bulk flushed as soon as they are enriched, 0 sends every bulk as a whole
+    @Provides
+    @Singleton
+    @Named(BULK_FLUSH_ROWS)
+    public int getBulkFlushRows() {
+        String flushRows = System.getenv(BULK_FLUSH_ROWS);
+        if (Strings.isNullOrEmpty(flushRows)) {
+            return Constants.BULK_FLUSH_ROWS;
+        }
+        int rows = Integer.parseInt(flushRows.trim());
+        if (rows < 0) {
+            throw new IllegalArgumentException(
+                    String.format("%s must not be negative, got %s", BULK_FLUSH_ROWS, flushRows));
+        }
+        return rows;
+    }
+
+    @Provides
+    @Singleton
+    @Named(BULK_SUB_REQUEST_MAX_BYTES)
+    public int getBulkSubRequestMaxBytes() {
+        return getPositiveInt(BULK_SUB_REQUEST_MAX_BYTES, Constants.BULK_SUB_REQUEST_MAX_BYTES);
+    }
+
+    @Provides
+    @Singleton
+    @Named(BULK_SUB_REQUEST_MAX_DOCUMENTS)
+    public int getBulkSubRequestMaxDocuments() {
+        return getPositiveInt(BULK_SUB_REQUEST_MAX_DOCUMENTS, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS);
+    }
+
+    // The sub-bulks of a bulk in flight at a time, a sub-bulk still waits for the earlier ones on the same documents
+    @Provides
+    @Singleton
+    @Named(BULK_SUB_REQUEST_CONCURRENCY)
+    public int getBulkSubRequestConcurrency() {
+        return getPositiveInt(BULK_SUB_REQUEST_CONCURRENCY, Constants.BULK_SUB_REQUEST_CONCURRENCY);
+    }
+
+    // The tasks waiting for a thread of the Comprehend client
+    @Provides
+    @Singleton
+    @Named(COMPREHEND_EXECUTOR_QUEUE_CAPACITY)
+    public int getComprehendExecutorQueueCapacity() {
+        return getPositiveInt(COMPREHEND_EXECUTOR_QUEUE_CAPACITY, Constants.COMPREHEND_EXECUTOR_QUEUE_CAPACITY);
+    }
+
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_EXECUTOR_THREADS)
+    public int getOpenSearchExecutorThreads() {
+        return getPositiveInt(OPEN_SEARCH_EXECUTOR_THREADS, Constants.OPEN_SEARCH_EXECUTOR_THREADS);
+    }
+
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE)
+    public int getOpenSearchMaxConnectionsPerRoute() {
+        return getPositiveInt(OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE, Constants.OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    // How long an idle connection to OpenSearch Service is kept for the next requests
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_KEEP_ALIVE_MILLIS)
+    public int getOpenSearchKeepAliveMillis() {
+        return getPositiveInt(OPEN_SEARCH_KEEP_ALIVE_MILLIS, Constants.OPEN_SEARCH_KEEP_ALIVE_MILLIS);
+    }
+
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS)
+    public int getOpenSearchConnectTimeoutMillis() {
+        return getPositiveInt(OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS, Constants.OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS)
+    public int getOpenSearchSocketTimeoutMillis() {
+        return getPositiveInt(OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS, Constants.OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS);
+    }
+
+    // Gzip the OpenSearch Service request bodies and accept gzip responses, true by default
+    @Provides
+    @Singleton
+    @Named(OPEN_SEARCH_REQUEST_COMPRESSION)
+    public boolean getOpenSearchRequestCompression() {
+        String compression = System.getenv(OPEN_SEARCH_REQUEST_COMPRESSION);
+        if (Strings.isNullOrEmpty(compression)) {
+            return Constants.OPEN_SEARCH_REQUEST_COMPRESSION;
+        }
+        String value = compression.trim();
+        if (!Boolean.TRUE.toString().equalsIgnoreCase(value) && !Boolean.FALSE.toString().equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException(String.format("%s must be true or false, got %s",
+                    OPEN_SEARCH_REQUEST_COMPRESSION, compression));
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    @Provides
+    @Singleton
+    @Named(KIBANA_EXECUTOR_THREADS)
+    public int getKibanaExecutorThreads() {
+        return getPositiveInt(KIBANA_EXECUTOR_THREADS, Constants.KIBANA_EXECUTOR_THREADS);
+    }
+
+    @Provides
+    @Singleton
+    @Named(KIBANA_EXECUTOR_QUEUE_CAPACITY)
+    public int getKibanaExecutorQueueCapacity() {
+        return getPositiveInt(KIBANA_EXECUTOR_QUEUE_CAPACITY, Constants.KIBANA_EXECUTOR_QUEUE_CAPACITY);
+    }
+
+    // PLATFORM by default, VIRTUAL runs the Comprehend and OpenSearch Service workloads on virtual threads
+    @Provides
+    @Singleton
+    @Named(EXECUTOR_MODE)
+    public ExecutorMode getExecutorMode() {
+        String mode = System.getenv(EXECUTOR_MODE);
+        if (Strings.isNullOrEmpty(mode)) {
+            return ExecutorMode.PLATFORM;
+        }
+        ExecutorMode executorMode;
+        try {
+            executorMode = ExecutorMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("%s must be one of %s, got %s",
+                    EXECUTOR_MODE, Arrays.toString(ExecutorMode.values()), mode), e);
+        }
+        if (executorMode == ExecutorMode.VIRTUAL && !VirtualThreadExecutor.isSupported()) {
+            throw new IllegalArgumentException(String.format("%s %s requires Java 21 or later, running on Java %s",
+                    EXECUTOR_MODE, executorMode, System.getProperty("java.version")));
+        }
+        return executorMode;
+    }
+
+    // Read a positive integer environment variable, the default value is used when the variable is not set
+    private static int getPositiveInt(final String name, final int defaultValue) {
+        String value = System.getenv(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        int number = Integer.parseInt(value.trim());
+        if (number <= 0) {
+            throw new IllegalArgumentException(String.format("%s must be positive, got %s", name, value));
+        }
+        return number;
+    }
+
 }
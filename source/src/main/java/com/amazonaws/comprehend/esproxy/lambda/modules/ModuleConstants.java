@@ -21,6 +21,46 @@ public class ModuleConstants {
 
     public static final String OPEN_SEARCH_SERVICE_DOMAIN_ENDPOINT = "OpenSearchServiceDomainEndpoint";
 
+    public static final String COMPREHEND_MAX_CONCURRENCY = "ComprehendMaxConcurrency";
+
+    public static final String COMPREHEND_RESULT_CACHE_MAX_BYTES = "ComprehendResultCacheMaxBytes";
+
+    public static final String COMPREHEND_COALESCING_WINDOW_MILLIS = "ComprehendCoalescingWindowMillis";
+
+    public static final String COMPREHEND_EXECUTOR_QUEUE_CAPACITY = "ComprehendExecutorQueueCapacity";
+
+    public static final String OPEN_SEARCH_EXECUTOR_THREADS = "OpenSearchExecutorThreads";
+
+    public static final String OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE = "OpenSearchMaxConnectionsPerRoute";
+
+    public static final String OPEN_SEARCH_KEEP_ALIVE_MILLIS = "OpenSearchKeepAliveMillis";
+
+    public static final String OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS = "OpenSearchConnectTimeoutMillis";
+
+    public static final String OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS = "OpenSearchSocketTimeoutMillis";
+
+    public static final String OPEN_SEARCH_REQUEST_COMPRESSION = "OpenSearchRequestCompression";
+
+    public static final String KIBANA_EXECUTOR_THREADS = "KibanaExecutorThreads";
+
+    public static final String KIBANA_EXECUTOR_QUEUE_CAPACITY = "KibanaExecutorQueueCapacity";
+
+    public static final String EXECUTOR_MODE = "ExecutorMode";
+
+    public static final String BULK_FLUSH_ROWS = "BulkFlushRows";
+
+    public static final String BULK_SUB_REQUEST_MAX_BYTES = "BulkSubRequestMaxBytes";
+
+    public static final String BULK_SUB_REQUEST_MAX_DOCUMENTS = "BulkSubRequestMaxDocuments";
+
+    public static final String BULK_SUB_REQUEST_CONCURRENCY = "BulkSubRequestConcurrency";
+
+    public static final String COMPREHEND_EXECUTOR = "comprehendExecutor";
+
+    public static final String OPEN_SEARCH_EXECUTOR = "openSearchExecutor";
+
+    public static final String KIBANA_EXECUTOR = "kibanaExecutor";
+
     public static final String PREPROCESSING_CONFIG_PROCESSOR = "preprocessingConfigProcessor";
 
     public static final String INDEX_PROCESSOR = "indexProcessor";
@@ -13,23 +13,30 @@
 
 package com.amazonaws.comprehend.esproxy.lambda.modules;
 
+import com.amazonaws.comprehend.esproxy.lambda.processor.BulkFlushPolicy;
 import com.amazonaws.comprehend.esproxy.lambda.processor.BulkProcessor;
 import com.amazonaws.comprehend.esproxy.lambda.processor.PreprocessingConfigProcessor;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.processor.DefaultProcessor;
 import com.amazonaws.comprehend.esproxy.lambda.processor.IndexProcessor;
 import com.amazonaws.comprehend.esproxy.lambda.processor.OpenSearchServiceProcessor;
+import com.amazonaws.comprehend.esproxy.lambda.processor.RequestCoalescer;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.kibana.KibanaUploader;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ConfigSerializer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.IngestionSerializer;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.name.Names;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Build OpenSearchServiceProcessors
@@ -59,22 +66,56 @@ public class ProcessorModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public IndexProcessor buildIndexProcessor(final AmazonComprehend comprehendClient,
+    public IndexProcessor buildIndexProcessor(final AmazonComprehendAsync comprehendClient,
                                               final OpenSearchServiceClient esClient,
                                               final IngestionSerializer ingestionSerializer,
                                               final ConfigRetriever configRetriever,
-                                              final ExecutorService executorService) {
-        return new IndexProcessor(ingestionSerializer, comprehendClient, esClient, configRetriever, executorService);
+                                              final AsyncPermitLimiter permitLimiter,
+                                              final ComprehendResultCache resultCache,
+                                              final ComprehendConcurrencyLimiter concurrencyLimiter,
+                                              final ScheduledExecutorService retryScheduler,
+                                              final RequestCoalescer requestCoalescer) {
+        return new IndexProcessor(ingestionSerializer, comprehendClient, esClient, configRetriever, permitLimiter,
+                resultCache, concurrencyLimiter, retryScheduler, requestCoalescer);
     }
 
+    // Shared by the concurrent index requests of the container, the windows are timed on the retry scheduler
     @Provides
     @Singleton
-    public BulkProcessor buildBulkProcessor(final AmazonComprehend comprehendClient,
+    public RequestCoalescer buildRequestCoalescer(
+            @Named(ModuleConstants.COMPREHEND_COALESCING_WINDOW_MILLIS) final long windowMillis,
+            final ScheduledExecutorService retryScheduler,
+            final AmazonComprehendAsync comprehendClient,
+            final AsyncPermitLimiter permitLimiter,
+            final ComprehendResultCache resultCache,
+            final ComprehendConcurrencyLimiter concurrencyLimiter) {
+        return new RequestCoalescer(windowMillis, retryScheduler, comprehendClient, permitLimiter, resultCache,
+                concurrencyLimiter);
+    }
+
+    @Provides
+    @Singleton
+    public BulkProcessor buildBulkProcessor(final AmazonComprehendAsync comprehendClient,
                                             final OpenSearchServiceClient esClient,
-                                            final IngestionSerializer ingestionSerializer,
+                                            final BulkPayloadReader bulkPayloadReader,
                                             final ConfigRetriever configRetriever,
-                                            final ExecutorService executorService) {
-        return new BulkProcessor(ingestionSerializer, comprehendClient, esClient, configRetriever, executorService);
+                                            final AsyncPermitLimiter permitLimiter,
+                                            final ComprehendResultCache resultCache,
+                                            final ComprehendConcurrencyLimiter concurrencyLimiter,
+                                            final ScheduledExecutorService retryScheduler,
+                                            final BulkFlushPolicy flushPolicy) {
+        return new BulkProcessor(bulkPayloadReader, comprehendClient, esClient, configRetriever, permitLimiter,
+                resultCache, concurrencyLimiter, retryScheduler, flushPolicy);
+    }
+
+    @Provides
+    @Singleton
+    public BulkFlushPolicy buildBulkFlushPolicy(
+            @Named(ModuleConstants.BULK_FLUSH_ROWS) final int flushRows,
+            @Named(ModuleConstants.BULK_SUB_REQUEST_MAX_BYTES) final int maxSubBulkBytes,
+            @Named(ModuleConstants.BULK_SUB_REQUEST_MAX_DOCUMENTS) final int maxSubBulkDocuments,
+            @Named(ModuleConstants.BULK_SUB_REQUEST_CONCURRENCY) final int subBulkConcurrency) {
+        return new BulkFlushPolicy(flushRows, maxSubBulkBytes, maxSubBulkDocuments, subBulkConcurrency);
     }
 
     @Provides
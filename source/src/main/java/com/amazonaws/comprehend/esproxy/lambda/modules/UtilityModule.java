@@ -14,9 +14,17 @@
 package com.amazonaws.comprehend.esproxy.lambda.modules;
 
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BoundedExecutor;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
-import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ExecutorGauges;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ExecutorMode;
+import com.amazonaws.comprehend.esproxy.lambda.utils.VirtualThreadExecutor;
+import com.amazonaws.comprehend.esproxy.lambda.utils.WorkloadExecutor;
 import com.amazonaws.comprehend.esproxy.lambda.utils.kibana.KibanaUploader;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ConfigSerializer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.IngestionSerializer;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -25,12 +33,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
- * Build ConfigRetriever, KibanaUploader and Serializers
+ * Build ConfigRetriever, KibanaUploader, Serializers, the executors and the Comprehend concurrency and caching
+ * utilities
  */
 public class UtilityModule extends AbstractModule {
     @Override
@@ -48,10 +58,78 @@ public class UtilityModule extends AbstractModule {
         return objectMapper;
     }
 
+    // Backs the AmazonComprehendAsync client, which runs each call on one of its threads
     @Provides
     @Singleton
-    public ExecutorService getExecutorService() {
-        return Executors.newFixedThreadPool(Constants.MAX_THREAD);
+    @Named(ModuleConstants.COMPREHEND_EXECUTOR)
+    public WorkloadExecutor getComprehendExecutor(
+            @Named(ModuleConstants.EXECUTOR_MODE) final ExecutorMode executorMode,
+            @Named(ModuleConstants.COMPREHEND_MAX_CONCURRENCY) final int maxConcurrency,
+            @Named(ModuleConstants.COMPREHEND_EXECUTOR_QUEUE_CAPACITY) final int queueCapacity) {
+        return buildWorkloadExecutor(executorMode, "comprehend-io", maxConcurrency, queueCapacity,
+                WorkloadExecutor.SaturationPolicy.ABORT);
+    }
+
+    // Completes the asynchronous OpenSearch Service requests. The I/O threads hand the completions off and must
+    // neither run them nor drop them, so the queue is unbounded, the requests in flight are bounded by the callers.
+    @Provides
+    @Singleton
+    @Named(ModuleConstants.OPEN_SEARCH_EXECUTOR)
+    public WorkloadExecutor getOpenSearchExecutor(
+            @Named(ModuleConstants.EXECUTOR_MODE) final ExecutorMode executorMode,
+            @Named(ModuleConstants.OPEN_SEARCH_EXECUTOR_THREADS) final int threadCount) {
+        return buildWorkloadExecutor(executorMode, "opensearch-io", threadCount, Integer.MAX_VALUE,
+                WorkloadExecutor.SaturationPolicy.ABORT);
+    }
+
+    // The Kibana uploads are best effort, they are rejected rather than delaying the ingestion
+    // They are rare background work, so they always run on platform threads
+    @Provides
+    @Singleton
+    @Named(ModuleConstants.KIBANA_EXECUTOR)
+    public WorkloadExecutor getKibanaExecutor(
+            @Named(ModuleConstants.KIBANA_EXECUTOR_THREADS) final int threadCount,
+            @Named(ModuleConstants.KIBANA_EXECUTOR_QUEUE_CAPACITY) final int queueCapacity) {
+        return new BoundedExecutor("kibana", threadCount, queueCapacity, WorkloadExecutor.SaturationPolicy.ABORT);
+    }
+
+    @Provides
+    @Singleton
+    public ExecutorGauges buildExecutorGauges(
+            @Named(ModuleConstants.COMPREHEND_EXECUTOR) final WorkloadExecutor comprehendExecutor,
+            @Named(ModuleConstants.OPEN_SEARCH_EXECUTOR) final WorkloadExecutor openSearchExecutor,
+            @Named(ModuleConstants.KIBANA_EXECUTOR) final WorkloadExecutor kibanaExecutor) {
+        return new ExecutorGauges(comprehendExecutor, openSearchExecutor, kibanaExecutor);
+    }
+
+    // Delays the retries of failed batch items, the retried calls themselves run on the Comprehend client executor
+    @Provides
+    @Singleton
+    public ScheduledExecutorService getRetryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor();
+    }
+
+    // Bounds the Comprehend calls of all the operations, a call takes it once it got the permit of its operation
+    @Provides
+    @Singleton
+    public AsyncPermitLimiter buildAsyncPermitLimiter(@Named(ModuleConstants.COMPREHEND_MAX_CONCURRENCY)
+                                                      final int maxConcurrency) {
+        return new AsyncPermitLimiter(maxConcurrency);
+    }
+
+    // Each Comprehend operation starts at the full concurrency and backs off when it is throttled
+    @Provides
+    @Singleton
+    public ComprehendConcurrencyLimiter buildComprehendConcurrencyLimiter(
+            @Named(ModuleConstants.COMPREHEND_MAX_CONCURRENCY) final int maxConcurrency) {
+        return new ComprehendConcurrencyLimiter(maxConcurrency);
+    }
+
+    @Provides
+    @Singleton
+    public ComprehendResultCache buildComprehendResultCache(@Named(ModuleConstants.COMPREHEND_RESULT_CACHE_MAX_BYTES)
+                                                            final long maximumBytes) {
+        return new ComprehendResultCache(maximumBytes);
     }
 
     // Build ConfigRetriever and KibanaUploader
@@ -65,8 +143,10 @@ public class UtilityModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public KibanaUploader buildKibanaUploader(final OpenSearchServiceClient esClient, final ExecutorService executorService) {
-        return new KibanaUploader(esClient, executorService);
+    public KibanaUploader buildKibanaUploader(final OpenSearchServiceClient esClient,
+                                              @Named(ModuleConstants.KIBANA_EXECUTOR)
+                                              final WorkloadExecutor kibanaExecutor) {
+        return new KibanaUploader(esClient, kibanaExecutor);
     }
 
     // Build Serializers
@@ -82,4 +162,20 @@ public class UtilityModule extends AbstractModule {
         return new IngestionSerializer(mapper);
     }
 
+    @Provides
+    @Singleton
+    public BulkPayloadReader buildBulkPayloadReader(final ObjectMapper mapper) {
+        return new BulkPayloadReader(mapper);
+    }
+
+    // The concurrency is the size of the pool in PLATFORM mode, the number of semaphore permits in VIRTUAL mode
+    private static WorkloadExecutor buildWorkloadExecutor(final ExecutorMode executorMode, final String name,
+                                                          final int concurrency, final int queueCapacity,
+                                                          final WorkloadExecutor.SaturationPolicy saturationPolicy) {
+        if (executorMode == ExecutorMode.VIRTUAL) {
+            return new VirtualThreadExecutor(name, concurrency, queueCapacity, saturationPolicy);
+        }
+        return new BoundedExecutor(name, concurrency, queueCapacity, saturationPolicy);
+    }
+
 }
@@ -0,0 +1,192 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.callable.BatchOperationCallable;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TextChunker;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolve the auto language of the requests to the language detected in their text
+ * The distinct texts are sent to BatchDetectDominantLanguage first, then each request is routed to the language
+ * with the highest score in its text, so it is batched with the other texts of that language.
+ * A request stays unresolved when the detection failed or detected a language Comprehend can't analyze, its error is
+ * returned instead of a result.
+ */
+@RequiredArgsConstructor
+public class AutoLanguageResolver {
+    public final static String UNSUPPORTED_LANGUAGE_ERROR_CODE = "UnsupportedLanguageException";
+
+    private final static String LANGUAGE_CODE_KEY_NAME = "languageCode";
+
+    private final static String SCORE_KEY_NAME = "score";
+
+    private final static String ERROR_MESSAGE_KEY_NAME = "errorMessage";
+
+    @NonNull
+    private final AmazonComprehendAsync comprehendClient;
+
+    @NonNull
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Detect the language of the auto language requests and route them to it
+     *
+     * @param bulkRequestList The requests to be comprehended
+     * @param retryPolicy     The retry policy of the failed detections
+     * @param timeoutSeconds  How long to wait for the detections
+     * @return The requests with their detected language, and the errors of the unresolved requests
+     */
+    public Resolution resolve(@NonNull final List<BulkRequest> bulkRequestList,
+                              @NonNull final BatchItemRetryPolicy retryPolicy,
+                              final long timeoutSeconds) {
+        Resolution resolution = new Resolution();
+        // Map<content, detection locator> stores the detection of each distinct text
+        Map<String, BatchFieldLocator> detectionLocatorMap = new HashMap<>();
+        BatchPacker batchPacker =
+                new BatchPacker(Constants.MAX_BATCH_SIZE, Constants.MAX_BATCH_BYTES, Constants.MAX_DOCUMENT_BYTES);
+        for (BulkRequest bulkRequest : bulkRequestList) {
+            if (!isAutoLanguage(bulkRequest)) {
+                continue;
+            }
+            String content = bulkRequest.getFieldToBeComprehend();
+            if (detectionLocatorMap.containsKey(content)) {
+                continue;
+            }
+            BatchFieldLocator detectionLocator = new BatchFieldLocator(ComprehendOperationEnum.DetectDominantLanguage
+                    .toString(), bulkRequest.getLocator().getContentRowNum());
+            detectionLocatorMap.put(content, detectionLocator);
+            // The language of a text over the document limit is detected on its beginning
+            batchPacker.add(new BulkRequest(TextChunker.truncate(content, Constants.MAX_DOCUMENT_BYTES),
+                    ComprehendOperationEnum.DetectDominantLanguage, LanguageCode.auto, detectionLocator));
+        }
+        if (detectionLocatorMap.isEmpty()) {
+            resolution.resolvedRequestList.addAll(bulkRequestList);
+            return resolution;
+        }
+
+        List<CompletableFuture<BatchResponse>> detectionResult = new ArrayList<>();
+        for (BatchPacker.Batch batch : batchPacker.getBatchList()) {
+            BatchOperationCallable callable = new BatchOperationCallable(batch.getOperation(),
+                    batch.getLanguageCode(), comprehendClient, batch.getLocatorList(), batch.getContentList(),
+                    resultCache, permitLimiter, concurrencyLimiter, retryPolicy);
+            detectionResult.add(callable.callAsync());
+        }
+        FutureHelper.awaitAll(detectionResult, timeoutSeconds, TimeUnit.SECONDS);
+        // The detection locators are compared by identity, the texts of a row share its row number
+        Map<BatchFieldLocator, JSONObject> detectionMap = new IdentityHashMap<>();
+        for (CompletableFuture<BatchResponse> result : detectionResult) {
+            BatchResponse batchResponse = FutureHelper.join(result);
+            List<JSONObject> resultList = batchResponse.getBatchResultList();
+            for (int i = 0; i < batchResponse.getLocatorList().size(); i++) {
+                detectionMap.put(batchResponse.getLocatorList().get(i).getRequestLocator(), resultList.get(i));
+            }
+        }
+
+        for (BulkRequest bulkRequest : bulkRequestList) {
+            if (!isAutoLanguage(bulkRequest)) {
+                resolution.resolvedRequestList.add(bulkRequest);
+                continue;
+            }
+            JSONObject detection = detectionMap.get(detectionLocatorMap.get(bulkRequest.getFieldToBeComprehend()));
+            if (detection.has(Constants.ERROR_CODE_KEY_NAME)) {
+                resolution.errorMap.put(bulkRequest.getLocator(), detection);
+                continue;
+            }
+            String detectedCode = getDominantLanguageCode(detection);
+            LanguageCode languageCode = toSupportedLanguageCode(detectedCode);
+            if (languageCode == null) {
+                resolution.errorMap.put(bulkRequest.getLocator(), new JSONObject()
+                        .put(Constants.ERROR_CODE_KEY_NAME, UNSUPPORTED_LANGUAGE_ERROR_CODE)
+                        .put(ERROR_MESSAGE_KEY_NAME, String.format("Detected language %s is not supported",
+                                detectedCode)));
+                continue;
+            }
+            resolution.resolvedRequestList.add(new BulkRequest(bulkRequest.getFieldToBeComprehend(),
+                    bulkRequest.getComprehendOperation(), languageCode, bulkRequest.getLocator()));
+        }
+        return resolution;
+    }
+
+    // DetectDominantLanguage doesn't need a language, its auto requests are sent as they are
+    private static boolean isAutoLanguage(@NonNull final BulkRequest bulkRequest) {
+        return bulkRequest.getLanguageCode() == LanguageCode.auto
+                && bulkRequest.getComprehendOperation() != ComprehendOperationEnum.DetectDominantLanguage;
+    }
+
+    private static String getDominantLanguageCode(@NonNull final JSONObject detection) {
+        JSONArray languageArray = detection.optJSONArray(Constants.LANGUAGES_KEY_NAME);
+        String dominantCode = null;
+        double maxScore = -1;
+        for (int i = 0; languageArray != null && i < languageArray.length(); i++) {
+            JSONObject language = languageArray.getJSONObject(i);
+            if (language.getDouble(SCORE_KEY_NAME) > maxScore) {
+                maxScore = language.getDouble(SCORE_KEY_NAME);
+                dominantCode = language.getString(LANGUAGE_CODE_KEY_NAME);
+            }
+        }
+        return dominantCode;
+    }
+
+    // Null if Comprehend can't analyze the detected language
+    private static LanguageCode toSupportedLanguageCode(final String detectedCode) {
+        for (LanguageCode languageCode : LanguageCode.values()) {
+            if (languageCode != LanguageCode.auto && languageCode.toString().equals(detectedCode)) {
+                return languageCode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The requests routed to their detected language, and the errors of the requests that couldn't be resolved
+     */
+    @Getter
+    public static class Resolution {
+        private final List<BulkRequest> resolvedRequestList = new ArrayList<>();
+
+        // The locators are compared by identity, they are the locators of the unresolved requests
+        private final Map<BatchFieldLocator, JSONObject> errorMap = new IdentityHashMap<>();
+    }
+}
@@ -0,0 +1,124 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.operations.ComprehendOperationRegistry;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TextChunker;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pack the BulkRequests of each Operation_Language pair into batches bounded by both a text count and a UTF-8 size
+ * A text goes to the first open batch of its pair with room left, so small texts fill the batches that a large text
+ * couldn't fit in. A text larger than the document limit is not packed, it is kept aside as an oversized request so
+ * it can't fail the batch it would have joined, the oversized requests are split by the TextChunker instead.
+ */
+@RequiredArgsConstructor
+public class BatchPacker {
+    private final int maxBatchSize;
+
+    private final int maxBatchBytes;
+
+    private final int maxDocumentBytes;
+
+    // The batches in the order they were opened
+    @Getter
+    private final List<Batch> batchList = new ArrayList<>();
+
+    @Getter
+    private final List<BulkRequest> oversizedRequestList = new ArrayList<>();
+
+    // Map<Operation_LanguagePair, batches> stores the batches that still have room for each Operation_Language pair
+    private final Map<String, List<Batch>> openBatchMap = new HashMap<>();
+
+    /**
+     * Pack the request into a batch of its Operation_Language pair
+     *
+     * @param bulkRequest The BulkRequest to be comprehended
+     */
+    public void add(@NonNull final BulkRequest bulkRequest) {
+        String content = bulkRequest.getFieldToBeComprehend();
+        int contentBytes = TextChunker.getEncodedLength(content);
+        // The limits of the packer are capped by the limits of the operation
+        ComprehendOperationRegistry.Registration registration =
+                ComprehendOperationRegistry.getRegistration(bulkRequest.getComprehendOperation());
+        if (contentBytes > Math.min(maxDocumentBytes, registration.getMaxDocumentBytes())) {
+            oversizedRequestList.add(bulkRequest);
+            return;
+        }
+
+        List<Batch> openBatchList = openBatchMap.computeIfAbsent(getOperationLanguagePair(bulkRequest),
+                key -> new ArrayList<>());
+        Batch batch = null;
+        for (Batch openBatch : openBatchList) {
+            if (openBatch.getBytes() + contentBytes <= maxBatchBytes) {
+                batch = openBatch;
+                break;
+            }
+        }
+        if (batch == null) {
+            batch = new Batch(bulkRequest.getComprehendOperation(), bulkRequest.getLanguageCode());
+            batchList.add(batch);
+            openBatchList.add(batch);
+        }
+        batch.add(bulkRequest.getLocator(), content, contentBytes);
+        // A full batch takes no more texts
+        if (batch.getContentList().size() >= Math.min(maxBatchSize, registration.getMaxBatchSize())) {
+            openBatchList.remove(batch);
+        }
+    }
+
+    private static String getOperationLanguagePair(@NonNull final BulkRequest bulkRequest) {
+        ComprehendOperationEnum operation = bulkRequest.getComprehendOperation();
+        return (operation == ComprehendOperationEnum.DetectDominantLanguage) ? operation.toString()
+                : String.format("%s_%s", operation.toString(), bulkRequest.getLanguageCode().toString());
+    }
+
+    /**
+     * The texts of one Comprehend batch request and where their results go
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Batch {
+        @NonNull
+        private final ComprehendOperationEnum operation;
+
+        @NonNull
+        private final LanguageCode languageCode;
+
+        private final List<BatchFieldLocator> locatorList = new ArrayList<>();
+
+        private final List<String> contentList = new ArrayList<>();
+
+        // The UTF-8 size of the contents
+        private int bytes = 0;
+
+        private void add(@NonNull final BatchFieldLocator locator, @NonNull final String content,
+                         final int contentBytes) {
+            locatorList.add(locator);
+            contentList.add(content);
+            bytes += contentBytes;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * How the enriched bulk is sent to OpenSearch Service
+ * The bulk is sent as a whole once every row is enriched, or in sub-bulks of flushRows ingestion rows as soon as their
+ * rows are enriched. Either way, what is sent is split into sub-bulks under maxSubBulkBytes and maxSubBulkDocuments,
+ * and at most subBulkConcurrency of them are in flight at a time.
+ */
+@AllArgsConstructor
+@Getter
+public class BulkFlushPolicy {
+    // 0 sends the bulk as a whole
+    private final int flushRows;
+
+    private final int maxSubBulkBytes;
+
+    // Counts every action of a sub-bulk, the delete and update actions too
+    private final int maxSubBulkDocuments;
+
+    private final int subBulkConcurrency;
+}
@@ -17,41 +17,57 @@ import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
 import com.amazonaws.comprehend.esproxy.lambda.model.BulkPayload;
 import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
-import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.FieldRoute;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.SubBulk;
 import com.amazonaws.comprehend.esproxy.lambda.processor.callable.BatchOperationCallable;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SubBulkResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BulkResponseMerger;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
-import com.amazonaws.comprehend.esproxy.lambda.utils.RequestIdentifier;
-import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadWriter;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.google.common.base.Strings;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.Callable;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Processor to process Comprehend OpenSearchService Bulk requests
@@ -59,10 +75,10 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class BulkProcessor implements OpenSearchServiceProcessor {
     @NonNull
-    private final ComprehendSerializer<JsonNode> ingestionSerializer;
+    private final BulkPayloadReader bulkPayloadReader;
 
     @NonNull
-    private final AmazonComprehend comprehendClient;
+    private final AmazonComprehendAsync comprehendClient;
 
     @NonNull
     private final OpenSearchServiceClient esClient;
@@ -71,7 +87,19 @@ public class BulkProcessor implements OpenSearchServiceProcessor {
     private final ConfigRetriever configRetriever;
 
     @NonNull
-    private final ExecutorService executorService;
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    @NonNull
+    private final ScheduledExecutorService retryScheduler;
+
+    @NonNull
+    private final BulkFlushPolicy flushPolicy;
 
     /**
      * Process Comprehend OpenSearchService Bulk requests
@@ -81,49 +109,108 @@ public class BulkProcessor implements OpenSearchServiceProcessor {
      * @return OpenSearchService service response
      */
     @Override
-    public Response processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
+    public ProxyResponse processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
         logger.log("Bulk requests detected");
-        String payloadStr = HTTPTransformer.transformHttpEntityToString(request.getEntity());
-        Map<String, ComprehendConfiguration> configMap = configRetriever.retrieveStoredConfig();
+        // Start retrieving the config first, so that a config fetch overlaps with reading the payload
+        CompletableFuture<ComprehendConfigRouter> configRouterFuture = configRetriever.retrieveConfigRouterAsync();
+        byte[] payload = HTTPTransformer.transformHttpEntityToByteArray(request.getEntity());
 
-        if (Strings.isNullOrEmpty(payloadStr) || configMap.isEmpty()) {
-            logger.log("Payload or Comprehend config is empty, return pass through requests");
-            return esClient.performRequest(request);
+        // The ingestion payloads in the order they appear in the bulk, the list index is used as the contentRowNum
+        List<BulkPayload> payloadList;
+        // Every action of the bulk, the sub-bulks are split between two of them
+        List<BulkAction> actionList = new ArrayList<>();
+        try {
+            payloadList = payload.length == 0 ? Collections.emptyList() : bulkPayloadReader.read(payload, actionList);
+        } catch (InternalErrorException e) {
+            // A malformed bulk is still passed through when there is no config to apply
+            if (!FutureHelper.join(configRouterFuture).isEmpty()) {
+                throw e;
+            }
+            payloadList = Collections.emptyList();
         }
-        // Transfer the payload to array list, split by lineSeparator
-        List<String> payloadList = Arrays.asList(payloadStr.split(System.lineSeparator()));
+        ComprehendConfigRouter configRouter = FutureHelper.join(configRouterFuture);
 
-        // Stores where the ingestion Payload was detected: Map<contentRowNum, ingestionPayload>
-        Map<Integer, BulkPayload> payloadMap = getIngestionPayloadMap(payloadList);
-        if (payloadMap.isEmpty()) {
+        if (payload.length == 0 || configRouter.isEmpty()) {
+            logger.log("Payload or Comprehend config is empty, return pass through requests");
+            return ProxyResponse.of(esClient.performRequest(request));
+        }
+        if (payloadList.isEmpty()) {
             logger.log("No ingestion requests detected, return pass through requests");
-            return esClient.performRequest(request);
+            return ProxyResponse.of(esClient.performRequest(request));
         }
 
         // The batchObject list that needs to be comprehend
-        List<BulkRequest> bulkRequestList = getBatchObjectList(payloadMap, configMap);
+        List<BulkRequest> bulkRequestList = getBatchObjectList(payloadList, configRouter);
         if (bulkRequestList.isEmpty()) {
             logger.log("No config field was detected in the bulk request, return pass through requests");
-            return esClient.performRequest(request);
+            return ProxyResponse.of(esClient.performRequest(request));
         }
 
-        // Create the batch requests list
-        List<Callable<BatchResponse>> callableList = createCallableList(bulkRequestList);
+        // The batches of the bulk share a single budget to retry their failed items
+        BatchItemRetryPolicy retryPolicy = new BatchItemRetryPolicy(retryScheduler, Constants.BATCH_ITEM_RETRY_BUDGET);
+        // The result cache lives as long as the container, the stats of this request are counted from here
+        long cacheHitsAtStart = resultCache.getHitCount();
+        long cacheMissesAtStart = resultCache.getMissCount();
+        // Route the auto language requests to the language detected in their text before they are batched
+        AutoLanguageResolver.Resolution resolution =
+                new AutoLanguageResolver(comprehendClient, permitLimiter, resultCache, concurrencyLimiter)
+                        .resolve(bulkRequestList, retryPolicy, Constants.BULK_EXECUTOR_TIMEOUT_SECONDS);
+        List<BulkRequest> routedRequestList = resolution.getResolvedRequestList();
+
+        // Create the batch requests list, identical texts share a single batch slot
+        Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap = new IdentityHashMap<>();
+        // The texts over the document limit are split into chunks, which are batched like the other texts
+        ChunkedRequests chunkedRequests = new ChunkedRequests(Constants.MAX_DOCUMENT_BYTES);
+        List<BatchOperationCallable> callableList =
+                createCallableList(routedRequestList, duplicateLocatorMap, chunkedRequests, retryPolicy, logger);
+        logger.log(String.format("Collapsed %d duplicate texts out of %d Comprehend requests",
+                duplicateLocatorMap.values().stream().mapToInt(List::size).sum(), routedRequestList.size()));
         try {
-            List<Future<BatchResponse>> executionResult = executorService.invokeAll(callableList,
-                    Constants.BULK_EXECUTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            // Every batch is sent as soon as it gets its permits, none of them blocks a thread while waiting
+            List<CompletableFuture<BatchResponse>> executionResult = new ArrayList<>();
+            for (BatchOperationCallable callable : callableList) {
+                executionResult.add(callable.callAsync());
+            }
+            if (flushPolicy.getFlushRows() > 0 && payloadList.size() > flushPolicy.getFlushRows()) {
+                ProxyResponse response = processPipelined(request, payload, payloadList, actionList, callableList,
+                        executionResult, duplicateLocatorMap, chunkedRequests, resolution, retryPolicy, logger);
+                logBatchStats(retryPolicy, cacheHitsAtStart, cacheMissesAtStart, logger);
+                return response;
+            }
+            FutureHelper.awaitAll(executionResult, Constants.BULK_EXECUTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            logBatchStats(retryPolicy, cacheHitsAtStart, cacheMissesAtStart, logger);
+            // Collects the enrichment of every ingestion payload, each payload is written once
+            BulkPayloadWriter bulkPayloadWriter = new BulkPayloadWriter(payload, payloadList, actionList);
             for (Future<BatchResponse> result : executionResult) {
                 try {
                     // For each executionResult, attach the comprehend response
-                    attachComprehendResponse(payloadList, result, logger);
+                    attachComprehendResponse(bulkPayloadWriter, result, duplicateLocatorMap, chunkedRequests, logger);
                     logger.log("Extended original payload with Comprehend result");
                 } catch (RuntimeException e) {
                     throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
                 }
             }
-            // Send the enriched request to ES
+            // Every chunk result is collected by now, attach the stitched result of each chunked text
+            for (ChunkedRequests.ChunkedText chunkedText : chunkedRequests.getChunkedTextList()) {
+                SingularResponse stitchedResponse = chunkedText.stitch();
+                attachSlotResult(bulkPayloadWriter, chunkedText.getBulkRequest().getLocator(),
+                        stitchedResponse.getFieldNameAndOperation(), stitchedResponse.getComprehendResult(),
+                        stitchedResponse.getFlattenedResult(), duplicateLocatorMap);
+            }
+            // The requests whose language couldn't be resolved get the error instead of a result
+            resolution.getErrorMap().forEach((locator, error) -> bulkPayloadWriter.attach(locator.getContentRowNum(),
+                    String.format("%s_%s", locator.getFieldNameAndOperation(), Constants.ERROR_KEY_NAME), error));
+            // Send the enriched request to ES, in sub-bulks if it grew over the caps
+            List<SubBulk> subBulkList = bulkPayloadWriter.write(0, payloadList.size(),
+                    flushPolicy.getMaxSubBulkBytes(), flushPolicy.getMaxSubBulkDocuments());
+            if (subBulkList.size() > 1) {
+                logger.log(String.format("Ingest Comprehend enriched bulk results to OpenSearchService in %d sub-bulks",
+                        subBulkList.size()));
+                return mergeSubBulkResponses(Collections.singletonList(sendSubBulks(request, subBulkList)), logger);
+            }
             Request transformedRequest = new Request(request.getMethod(), request.getEndpoint());
-            transformedRequest.setJsonEntity(String.join(System.lineSeparator(), payloadList) + System.lineSeparator());
+            byte[] enrichedPayload = subBulkList.get(0).getBody();
+            transformedRequest.setEntity(new NByteArrayEntity(enrichedPayload, ContentType.APPLICATION_JSON));
 
             logger.log("Ingest Comprehend enriched bulk results to OpenSearchService");
             Response response = esClient.performRequest(transformedRequest);
@@ -131,66 +218,249 @@ public class BulkProcessor implements OpenSearchServiceProcessor {
             logger.log(String.format("Response of bulk request: statusCode = %d, reasonPhrase = %s",
                                      response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase()));
 
-            return response;
-        } catch (InterruptedException | JSONException e) {
+            return ProxyResponse.of(response);
+        } catch (JSONException e) {
             logger.log("InternalErrorException happened when trying to process bulk request. " + e);
             throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
         }
 
     }
 
-    /**
-     * Find the ingestion requests in the bulk, return contentRowNum and ingestionPayload
-     * Payload presents on the next line of the action
-     * { "index" : { "_index" : "test", "_type" : "_doc", "_id" : "1" } }
-     * { "field1" : "value1" }
-     * IndexName "test" and ingestion payload {"field1":"value1"} are stored in BulkPayload
-     *
-     * @param payloadList The bulk payload array list
-     * @return Where the ingestion Payload was detected: Map<contentRowNum, bulkPayload>
-     */
-    private Map<Integer, BulkPayload> getIngestionPayloadMap(@NonNull final List<String> payloadList) {
-        Map<Integer, BulkPayload> bulkPayloadMap = new HashMap<>();
-
-        for (int rowNum = 0; rowNum < payloadList.size(); rowNum++) {
-            Optional<String> indexName = RequestIdentifier.getBulkIndexName(payloadList.get(rowNum));
-            if (indexName.isPresent() && (rowNum + 1 < payloadList.size())) {
-                bulkPayloadMap.put(rowNum + 1,
-                        new BulkPayload(indexName.get(), ingestionSerializer.deserialize(payloadList.get(rowNum + 1))));
-                rowNum++; // Skip the checking for the next line
+    // Flush the bulk in groups of flushRows ingestion rows, each group is written as soon as the batches that enrich
+    // its rows complete, so a slow batch only holds back the rows it enriches
+    // The groups are sent one after another in the order of the bulk, and the responses of their sub-bulks are merged
+    // into the response of the bulk
+    private ProxyResponse processPipelined(
+            @NonNull final Request request,
+            @NonNull final byte[] payload,
+            @NonNull final List<BulkPayload> payloadList,
+            @NonNull final List<BulkAction> actionList,
+            @NonNull final List<BatchOperationCallable> callableList,
+            @NonNull final List<CompletableFuture<BatchResponse>> executionResult,
+            @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap,
+            @NonNull final ChunkedRequests chunkedRequests,
+            @NonNull final AutoLanguageResolver.Resolution resolution,
+            @NonNull final BatchItemRetryPolicy retryPolicy,
+            @NonNull final LambdaLogger logger) {
+        // Shared by the batch completions and the flushes, which run on different threads, so it is used under lock
+        BulkPayloadWriter bulkPayloadWriter = new BulkPayloadWriter(payload, payloadList, actionList);
+        // The requests whose language couldn't be resolved get the error instead of a result
+        resolution.getErrorMap().forEach((locator, error) -> bulkPayloadWriter.attach(locator.getContentRowNum(),
+                String.format("%s_%s", locator.getFieldNameAndOperation(), Constants.ERROR_KEY_NAME), error));
+
+        // The enrichment tasks each group of rows waits for, a batch may enrich the rows of several groups
+        int flushRows = flushPolicy.getFlushRows();
+        int groupCount = (payloadList.size() + flushRows - 1) / flushRows;
+        List<Set<CompletableFuture<Void>>> groupTaskList = new ArrayList<>(groupCount);
+        for (int group = 0; group < groupCount; group++) {
+            groupTaskList.add(new HashSet<>());
+        }
+        Map<ChunkedRequests.ChunkedText, List<CompletableFuture<Void>>> chunkTaskMap = new IdentityHashMap<>();
+        for (int i = 0; i < callableList.size(); i++) {
+            CompletableFuture<Void> attachTask = executionResult.get(i).thenAccept(batchResponse -> {
+                synchronized (bulkPayloadWriter) {
+                    attachBatchResponse(bulkPayloadWriter, batchResponse, duplicateLocatorMap, chunkedRequests,
+                            logger);
+                }
+            });
+            for (BatchFieldLocator locator : callableList.get(i).getFieldLocatorList()) {
+                ChunkedRequests.ChunkedText chunkedText = chunkedRequests.getChunkedText(locator);
+                if (chunkedText == null) {
+                    addGroupTask(groupTaskList, locator, attachTask, duplicateLocatorMap);
+                } else {
+                    chunkTaskMap.computeIfAbsent(chunkedText, key -> new ArrayList<>()).add(attachTask);
+                }
+            }
+        }
+        // A chunked text is stitched once the results of all its chunks are collected
+        chunkTaskMap.forEach((chunkedText, attachTaskList) -> {
+            CompletableFuture<Void> stitchTask = FutureHelper.allOf(attachTaskList).thenRun(() -> {
+                synchronized (bulkPayloadWriter) {
+                    SingularResponse stitchedResponse = chunkedText.stitch();
+                    attachSlotResult(bulkPayloadWriter, chunkedText.getBulkRequest().getLocator(),
+                            stitchedResponse.getFieldNameAndOperation(), stitchedResponse.getComprehendResult(),
+                            stitchedResponse.getFlattenedResult(), duplicateLocatorMap);
+                }
+            });
+            addGroupTask(groupTaskList, chunkedText.getBulkRequest().getLocator(), stitchTask, duplicateLocatorMap);
+        });
+
+        List<CompletableFuture<List<SubBulkResponse>>> flushList = new ArrayList<>(groupCount);
+        // The sub-bulks sent by each flush, a flush only relays them so they are cancelled on their own
+        List<CompletableFuture<List<SubBulkResponse>>> sentList = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<List<SubBulkResponse>> previousFlush =
+                CompletableFuture.completedFuture(Collections.emptyList());
+        for (int group = 0; group < groupCount; group++) {
+            int fromRowNum = group * flushRows;
+            int toRowNum = Math.min(fromRowNum + flushRows, payloadList.size());
+            CompletableFuture<Void> enrichedFuture = FutureHelper.allOf(new ArrayList<>(groupTaskList.get(group)));
+            previousFlush = previousFlush
+                    .thenCombine(enrichedFuture, (previousResponseList, ignored) -> previousResponseList)
+                    .thenCompose(previousResponseList -> {
+                        // A rejected sub-bulk stops the flushes, the rows after it are reported as not sent
+                        if (!previousResponseList.stream().allMatch(SubBulkResponse::isExecuted)) {
+                            return CompletableFuture.completedFuture(Collections.singletonList(
+                                    new SubBulkResponse(bulkPayloadWriter.getActionList(fromRowNum, toRowNum), null)));
+                        }
+                        List<SubBulk> subBulkList;
+                        synchronized (bulkPayloadWriter) {
+                            subBulkList = bulkPayloadWriter.write(fromRowNum, toRowNum,
+                                    flushPolicy.getMaxSubBulkBytes(), flushPolicy.getMaxSubBulkDocuments());
+                        }
+                        logger.log(String.format("Ingest Comprehend enriched rows %d to %d of the bulk to "
+                                + "OpenSearchService", fromRowNum, toRowNum - 1));
+                        CompletableFuture<List<SubBulkResponse>> sent = sendSubBulks(request, subBulkList);
+                        sentList.add(sent);
+                        return sent;
+                    });
+            flushList.add(previousFlush);
+        }
+
+        ProxyResponse response;
+        try {
+            response = mergeSubBulkResponses(flushList, logger);
+        } catch (InternalErrorException e) {
+            // e.g. the bulk timed out, the batches and sub-bulks still waiting for a permit are never started
+            executionResult.forEach(result -> result.cancel(false));
+            synchronized (sentList) {
+                sentList.forEach(sent -> sent.cancel(false));
             }
+            throw e;
         }
-        return bulkPayloadMap;
+        return response;
     }
 
-    // Match config map with ingestion payload, return the list of BulkRequest that needs to be comprehend
-    private static List<BulkRequest> getBatchObjectList(@NonNull final Map<Integer, BulkPayload> payloadMap,
-                                                        @NonNull final Map<String, ComprehendConfiguration> configMap) {
+    // Send the sub-bulks with at most subBulkConcurrency of them in flight, the responses keep the sub-bulk order
+    // A sub-bulk is only sent once the earlier sub-bulks with an action on one of its document ids are answered, so the
+    // actions on a document are applied in the order of the bulk. The ids are matched across indices, which may hold
+    // back a sub-bulk that didn't need to wait but never reorders two actions on a document. A sub-bulk waiting for one
+    // that was not executed is not sent either, its actions are reported as not sent
+    private CompletableFuture<List<SubBulkResponse>> sendSubBulks(@NonNull final Request request,
+                                                                  @NonNull final List<SubBulk> subBulkList) {
+        AsyncPermitLimiter subBulkLimiter = new AsyncPermitLimiter(flushPolicy.getSubBulkConcurrency());
+        List<CompletableFuture<SubBulkResponse>> responseFutureList = new ArrayList<>(subBulkList.size());
+        // The sub-bulk calls handed to the limiter, the ones still waiting for a permit are dropped on cancellation
+        List<CompletableFuture<Response>> submittedList = Collections.synchronizedList(new ArrayList<>());
+        // The last sub-bulk with an action on each document id, a sub-bulk waiting for it also waits for those before
+        Map<String, Integer> lastSubBulkMap = new HashMap<>();
+        for (int subBulkNum = 0; subBulkNum < subBulkList.size(); subBulkNum++) {
+            SubBulk subBulk = subBulkList.get(subBulkNum);
+            Set<CompletableFuture<SubBulkResponse>> precedingResponseSet = new HashSet<>();
+            for (BulkAction action : subBulk.getActionList()) {
+                if (action.getId() == null) {
+                    continue;
+                }
+                Integer precedingSubBulkNum = lastSubBulkMap.put(action.getId(), subBulkNum);
+                if (precedingSubBulkNum != null && precedingSubBulkNum != subBulkNum) {
+                    precedingResponseSet.add(responseFutureList.get(precedingSubBulkNum));
+                }
+            }
+            Request subBulkRequest = new Request(request.getMethod(), request.getEndpoint());
+            subBulkRequest.setEntity(new NByteArrayEntity(subBulk.getBody(), ContentType.APPLICATION_JSON));
+            responseFutureList.add(FutureHelper.allOf(new ArrayList<>(precedingResponseSet)).thenCompose(ignored -> {
+                if (!precedingResponseSet.stream().map(CompletableFuture::join).allMatch(SubBulkResponse::isExecuted)) {
+                    return CompletableFuture.completedFuture(new SubBulkResponse(subBulk.getActionList(), null));
+                }
+                CompletableFuture<Response> submitted =
+                        subBulkLimiter.submit(() -> esClient.performRequestAsync(subBulkRequest));
+                submittedList.add(submitted);
+                return submitted.thenApply(response -> new SubBulkResponse(subBulk.getActionList(), response));
+            }));
+        }
+        CompletableFuture<List<SubBulkResponse>> subBulkResponses = FutureHelper.allOf(responseFutureList)
+                .thenApply(ignored -> responseFutureList.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()));
+        // Cancelled when the bulk timed out, the sub-bulks not sent yet are dropped
+        subBulkResponses.whenComplete((result, throwable) -> {
+            if (subBulkResponses.isCancelled()) {
+                responseFutureList.forEach(responseFuture -> responseFuture.cancel(false));
+                synchronized (submittedList) {
+                    submittedList.forEach(submitted -> submitted.cancel(false));
+                }
+            }
+        });
+        return subBulkResponses;
+    }
+
+    // Wait for the responses of the sub-bulks and merge them into the response of the bulk, the actions of the
+    // sub-bulks that were not executed get an item with the error of the rejection
+    private static ProxyResponse mergeSubBulkResponses(
+            @NonNull final List<CompletableFuture<List<SubBulkResponse>>> flushList,
+            @NonNull final LambdaLogger logger) {
+        FutureHelper.awaitAll(flushList, Constants.BULK_EXECUTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        List<SubBulkResponse> responseList = new ArrayList<>();
+        for (CompletableFuture<List<SubBulkResponse>> flush : flushList) {
+            try {
+                responseList.addAll(FutureHelper.join(flush));
+            } catch (RuntimeException e) {
+                logger.log("Got an exception while sending the sub-bulks. " + e);
+                throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+            }
+        }
+        ProxyResponse response = BulkResponseMerger.merge(responseList);
+        logger.log(String.format("Response of the sub-bulks: statusCode = %d", response.getStatusCode()));
+        return response;
+    }
+
+    // Make the group of every row the locator result is attached to wait for the task
+    private void addGroupTask(@NonNull final List<Set<CompletableFuture<Void>>> groupTaskList,
+                              @NonNull final BatchFieldLocator slotLocator,
+                              @NonNull final CompletableFuture<Void> task,
+                              @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap) {
+        groupTaskList.get(slotLocator.getContentRowNum() / flushPolicy.getFlushRows()).add(task);
+        for (BatchFieldLocator locator : duplicateLocatorMap.getOrDefault(slotLocator, Collections.emptyList())) {
+            groupTaskList.get(locator.getContentRowNum() / flushPolicy.getFlushRows()).add(task);
+        }
+    }
+
+    private void logBatchStats(@NonNull final BatchItemRetryPolicy retryPolicy,
+                               final long cacheHitsAtStart,
+                               final long cacheMissesAtStart,
+                               @NonNull final LambdaLogger logger) {
+        logger.log(String.format("Comprehend result cache: hits = %d, misses = %d",
+                resultCache.getHitCount() - cacheHitsAtStart, resultCache.getMissCount() - cacheMissesAtStart));
+        logger.log(String.format("Retried %d failed batch items",
+                Constants.BATCH_ITEM_RETRY_BUDGET - retryPolicy.getRemainingBudget()));
+    }
+
+    // Match each ingestion payload with the routes of its index, return the list of BulkRequest to be comprehend
+    private static List<BulkRequest> getBatchObjectList(@NonNull final List<BulkPayload> payloadList,
+                                                        @NonNull final ComprehendConfigRouter configRouter) {
         List<BulkRequest> bulkRequestList = new ArrayList<>();
 
-        payloadMap.forEach((locationRowNum, bulkPayload) -> configMap.forEach((key, config) -> {
-            if (bulkPayload.getIndexName().equals(config.getIndexName())) {
-                // For each config, find matched fields in the input
-                Optional.ofNullable(bulkPayload.getPayloadJson().findValue(config.getFieldName())).ifPresent(fieldValue ->
-                        // For each operation, add to the bulkRequestList
-                        config.getComprehendOperations().forEach(operation ->
-                                bulkRequestList.add(new BulkRequest(fieldValue.asText(), operation, config.getLanguageCode(),
-                                        new BatchFieldLocator(
-                                                String.format("%s_%s", config.getFieldName(), operation.toString()),
-                                                locationRowNum)
-                                ))
-                        )
-                );
+        for (int locationRowNum = 0; locationRowNum < payloadList.size(); locationRowNum++) {
+            BulkPayload bulkPayload = payloadList.get(locationRowNum);
+            for (FieldRoute route : configRouter.getFieldRoutes(bulkPayload.getIndexName())) {
+                // For each route, find matched field in the input
+                JsonNode fieldValue = route.findFieldValue(bulkPayload.getPayloadJson());
+                if (fieldValue == null) {
+                    continue;
+                }
+                // For each operation, add to the bulkRequestList
+                List<ComprehendOperationEnum> operations = route.getOperations();
+                for (int i = 0; i < operations.size(); i++) {
+                    bulkRequestList.add(new BulkRequest(fieldValue.asText(), operations.get(i), route.getLanguageCode(),
+                            new BatchFieldLocator(route.getFieldNameAndOperations().get(i), locationRowNum)));
+                }
             }
-        }));
+        }
         return bulkRequestList;
     }
 
-    // Combine the batch objects in the pack of 25, and generate the batch request
-    private List<Callable<BatchResponse>> createCallableList(@NonNull final List<BulkRequest> bulkRequestList) {
-        List<Callable<BatchResponse>> callableList = new ArrayList<>();
-        // Map<Operation_LanguagePair, callable> stores unique callable for each Operation_Language pair
-        Map<String, BatchOperationCallable> batchExecutorMap = new HashMap<>();
+    // Pack the batch objects by text count and UTF-8 size, and generate the batch requests
+    // A text repeated for the same Operation_Language pair takes a single batch slot, the locators of the repeats are
+    // recorded in the duplicateLocatorMap under the locator of the slot, so the result can be fanned out to them
+    private List<BatchOperationCallable> createCallableList(
+            @NonNull final List<BulkRequest> bulkRequestList,
+            @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap,
+            @NonNull final ChunkedRequests chunkedRequests,
+            @NonNull final BatchItemRetryPolicy retryPolicy,
+            @NonNull final LambdaLogger logger) {
+        BatchPacker batchPacker =
+                new BatchPacker(Constants.MAX_BATCH_SIZE, Constants.MAX_BATCH_BYTES, Constants.MAX_DOCUMENT_BYTES);
+        // Map<Operation_LanguagePair, Map<content, locator>> stores the slot locator of each text already batched
+        Map<String, Map<String, BatchFieldLocator>> slotLocatorMap = new HashMap<>();
 
         bulkRequestList.forEach(
                 bulkRequest -> {
@@ -201,66 +471,113 @@ public class BulkProcessor implements OpenSearchServiceProcessor {
                     String operationLanguagePair = (operation == ComprehendOperationEnum.DetectDominantLanguage) ?
                             operation.toString() : String.format("%s_%s", operation.toString(), language.toString());
 
-                    // If the callable exists, attach its fieldToBeComprehend to the content list
-                    if (batchExecutorMap.containsKey(operationLanguagePair)) {
-                        BatchOperationCallable batchOperationCallable = batchExecutorMap.get(operationLanguagePair);
-                        batchOperationCallable.getContentList().add(content);
-                        batchOperationCallable.getFieldLocatorList().add(locator);
-                        // if the list is full, submit the pack to callableList and remove it from the map
-                        if (batchOperationCallable.getContentList().size() >= Constants.MAX_BATCH_SIZE) {
-                            callableList.add(batchOperationCallable);
-                            batchExecutorMap.remove(operationLanguagePair);
-                        }
-                    } else {
-                        // If the callable doesn't exist, create it and add to the callable map
-                        List<BatchFieldLocator> locatorList = new ArrayList<>();
-                        List<String> contentList = new ArrayList<>();
-                        locatorList.add(locator);
-                        contentList.add(content);
-                        batchExecutorMap.put(operationLanguagePair, new BatchOperationCallable(operation,
-                                language, comprehendClient, locatorList, contentList));
+                    // If the text was already batched, reuse its slot instead of sending it again
+                    Map<String, BatchFieldLocator> contentSlotMap =
+                            slotLocatorMap.computeIfAbsent(operationLanguagePair, key -> new HashMap<>());
+                    BatchFieldLocator slotLocator = contentSlotMap.putIfAbsent(content, locator);
+                    if (slotLocator != null) {
+                        duplicateLocatorMap.computeIfAbsent(slotLocator, key -> new ArrayList<>()).add(locator);
+                        return;
                     }
+                    batchPacker.add(bulkRequest);
                 }
         );
-        // Add all the callable to the list (full or not)
-        callableList.addAll(batchExecutorMap.values());
+        // Each oversized text is split into chunks under the document limit, the chunks are packed as any other text
+        List<BulkRequest> oversizedRequestList = batchPacker.getOversizedRequestList();
+        int chunkCount = 0;
+        for (BulkRequest bulkRequest : oversizedRequestList) {
+            List<BulkRequest> chunkRequestList = chunkedRequests.split(bulkRequest);
+            chunkRequestList.forEach(batchPacker::add);
+            chunkCount += chunkRequestList.size();
+        }
+
+        List<BatchOperationCallable> callableList = new ArrayList<>();
+        for (BatchPacker.Batch batch : batchPacker.getBatchList()) {
+            callableList.add(new BatchOperationCallable(batch.getOperation(), batch.getLanguageCode(),
+                    comprehendClient, batch.getLocatorList(), batch.getContentList(), resultCache,
+                    permitLimiter, concurrencyLimiter, retryPolicy));
+        }
+        logger.log(String.format("Packed Comprehend requests into %d batches, %d oversized texts were split into %d "
+                + "chunks", callableList.size(), oversizedRequestList.size(), chunkCount));
         return callableList;
     }
 
-    // Attach Comprehend response to the original payload array list
-    private static void attachComprehendResponse(@NonNull final List<String> payloadList,
-                                                 @NonNull final Future<BatchResponse> result, LambdaLogger logger) {
-        BatchResponse<?> responseObject = null;
+    // Attach Comprehend response to the bulk payload writer
+    private static void attachComprehendResponse(
+            @NonNull final BulkPayloadWriter bulkPayloadWriter,
+            @NonNull final Future<BatchResponse> result,
+            @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap,
+            @NonNull final ChunkedRequests chunkedRequests,
+            LambdaLogger logger) {
+        BatchResponse responseObject = null;
         try {
             responseObject = result.get();
-            logger.log(String.format("Successfully got Comprehend batch response for %d documents", payloadList.size()));
         } catch (Exception e) {
             logger.log("Got an exception while getting comprehend result. " + e);
             if (e instanceof ExecutionException) {
-                logger.log("Got ExecutionException while retrieving results from ExecutorService: " + e.getCause());
+                logger.log("Got ExecutionException while retrieving results from Comprehend: " + e.getCause());
             }
             throw new RuntimeException(e);
         }
+        attachBatchResponse(bulkPayloadWriter, responseObject, duplicateLocatorMap, chunkedRequests, logger);
+    }
+
+    // Attach the results of a batch, the chunk results are only collected
+    private static void attachBatchResponse(
+            @NonNull final BulkPayloadWriter bulkPayloadWriter,
+            @NonNull final BatchResponse responseObject,
+            @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap,
+            @NonNull final ChunkedRequests chunkedRequests,
+            LambdaLogger logger) {
         List<BatchFieldLocator> locatorList = responseObject.getLocatorList();
-        List<JSONObject> resultList = responseObject.getBatchResultList();
-        List<JSONObject> flattenedResultList = responseObject.getBatchFlattenedResultList();
+        List<BatchItemResult> itemResultList = responseObject.getItemResultList();
+        logger.log(String.format("Successfully got Comprehend batch response for %d documents", locatorList.size()));
 
         for (int i = 0; i < locatorList.size(); i++) {
-            BatchFieldLocator locator = locatorList.get(i);
-            int contentRow = locator.getContentRowNum();
-            JSONObject content = new JSONObject(payloadList.get(contentRow));
-            // Attach the comprehend result into the original content
-            content.put(locator.getFieldNameAndOperation(), resultList.get(i));
-
-            // Add flattened response for Kibana plotting
-            if (flattenedResultList != null && flattenedResultList.get(i) != null) {
-                content.put(String.format("%s_%s", locator.getFieldNameAndOperation(),
-                        Constants.KIBANA_KEY_NAME), flattenedResultList.get(i));
+            // A failed batch call answers the slot through a copy of its locator under the error key
+            BatchFieldLocator responseLocator = locatorList.get(i);
+            BatchFieldLocator slotLocator = responseLocator.getRequestLocator();
+            BatchItemResult itemResult = itemResultList.get(i);
+            // The chunk results are attached once their text is stitched
+            if (chunkedRequests.collect(responseLocator, itemResult.toJSONObject())) {
+                continue;
             }
-            // Add timestamp
-            content.put(Constants.TIME_STAMP_KEY, Instant.now().toString());
-            // Replace the value in the payload list
-            payloadList.set(contentRow, content.toString());
+            attachSlotResult(bulkPayloadWriter, slotLocator, responseLocator.getFieldNameAndOperation(),
+                    itemResult.toJSONObject(), itemResult.getFlattenedResult(), duplicateLocatorMap);
+        }
+    }
+
+    // Attach the result of a batch slot, and fan it out to every locator that referenced the same text
+    private static void attachSlotResult(
+            @NonNull final BulkPayloadWriter bulkPayloadWriter,
+            @NonNull final BatchFieldLocator slotLocator,
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final JSONObject result,
+            final JSONObject flattenedResult,
+            @NonNull final Map<BatchFieldLocator, List<BatchFieldLocator>> duplicateLocatorMap) {
+        attachResult(bulkPayloadWriter, slotLocator.getContentRowNum(), fieldNameAndOperation, result, flattenedResult);
+        // A failed batch call answers the slot under the error key, the repeats follow it
+        String errorKeySuffix = String.format("_%s", Constants.ERROR_KEY_NAME);
+        boolean isErrorKey = fieldNameAndOperation.endsWith(errorKeySuffix);
+        for (BatchFieldLocator locator : duplicateLocatorMap.getOrDefault(slotLocator, Collections.emptyList())) {
+            String key = isErrorKey ? locator.getFieldNameAndOperation() + errorKeySuffix
+                    : locator.getFieldNameAndOperation();
+            attachResult(bulkPayloadWriter, locator.getContentRowNum(), key, result, flattenedResult);
+        }
+    }
+
+    private static void attachResult(@NonNull final BulkPayloadWriter bulkPayloadWriter,
+                                     final int contentRow,
+                                     @NonNull final String fieldNameAndOperation,
+                                     @NonNull final JSONObject result,
+                                     final JSONObject flattenedResult) {
+        // Attach the comprehend result into the original content
+        bulkPayloadWriter.attach(contentRow, fieldNameAndOperation, result);
+
+        // Add flattened response for Kibana plotting
+        if (flattenedResult != null) {
+            bulkPayloadWriter.attach(contentRow, String.format("%s_%s", fieldNameAndOperation,
+                    Constants.KIBANA_KEY_NAME), flattenedResult);
         }
     }
-}
\ No newline at end of file
+}
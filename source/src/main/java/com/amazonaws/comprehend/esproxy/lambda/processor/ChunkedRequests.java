@@ -0,0 +1,148 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TextChunker;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep track of the texts over the Comprehend document limit that were split into chunks
+ * Every chunk is sent as a BulkRequest of its own, with a new locator so its result can be told apart from the result
+ * of a whole text. Once the results of all the chunks are collected, they are stitched into the result of the text.
+ */
+@RequiredArgsConstructor
+public class ChunkedRequests {
+    private final int maxChunkBytes;
+
+    // The chunk locators are compared by identity, a chunk has the same field and row as its text
+    private final Map<BatchFieldLocator, ChunkSlot> chunkSlotMap = new IdentityHashMap<>();
+
+    @Getter
+    private final List<ChunkedText> chunkedTextList = new ArrayList<>();
+
+    /**
+     * Split the text of the request into chunks under the document limit
+     *
+     * @param bulkRequest The request whose text is over the document limit
+     * @return The requests of the chunks, to be batched like any other request
+     */
+    public List<BulkRequest> split(@NonNull final BulkRequest bulkRequest) {
+        List<TextChunk> chunkList = TextChunker.split(bulkRequest.getFieldToBeComprehend(), maxChunkBytes);
+        ChunkedText chunkedText = new ChunkedText(bulkRequest, chunkList);
+        chunkedTextList.add(chunkedText);
+
+        List<BulkRequest> chunkRequestList = new ArrayList<>();
+        for (int i = 0; i < chunkList.size(); i++) {
+            BatchFieldLocator chunkLocator = new BatchFieldLocator(
+                    bulkRequest.getLocator().getFieldNameAndOperation(), bulkRequest.getLocator().getContentRowNum());
+            chunkSlotMap.put(chunkLocator, new ChunkSlot(chunkedText, i));
+            chunkRequestList.add(new BulkRequest(chunkList.get(i).getText(), bulkRequest.getComprehendOperation(),
+                    bulkRequest.getLanguageCode(), chunkLocator));
+        }
+        return chunkRequestList;
+    }
+
+    /**
+     * Collect the result of a chunk
+     *
+     * @param locator The locator of the result, a copy of the chunk locator if the result is keyed differently
+     * @param result  The Comprehend result or error of the locator
+     * @return true if the locator belongs to a chunk, false if it belongs to a whole text
+     */
+    public boolean collect(@NonNull final BatchFieldLocator locator, @NonNull final JSONObject result) {
+        ChunkSlot chunkSlot = chunkSlotMap.get(locator.getRequestLocator());
+        if (chunkSlot == null) {
+            return false;
+        }
+        chunkSlot.chunkedText.chunkResults[chunkSlot.index] = result;
+        chunkSlot.chunkedText.chunkKeys[chunkSlot.index] = locator.getFieldNameAndOperation();
+        return true;
+    }
+
+    /**
+     * Get the text a chunk belongs to
+     *
+     * @param locator The locator of a batch slot
+     * @return The chunked text of the locator, null if the locator belongs to a whole text
+     */
+    public ChunkedText getChunkedText(@NonNull final BatchFieldLocator locator) {
+        ChunkSlot chunkSlot = chunkSlotMap.get(locator);
+        return chunkSlot == null ? null : chunkSlot.chunkedText;
+    }
+
+    /**
+     * A text split into chunks, with the results collected for its chunks
+     */
+    public static class ChunkedText {
+        @Getter
+        private final BulkRequest bulkRequest;
+
+        private final List<TextChunk> chunkList;
+
+        private final JSONObject[] chunkResults;
+
+        // The response key of each chunk result, the error key if the batch call of the chunk failed
+        private final String[] chunkKeys;
+
+        ChunkedText(@NonNull final BulkRequest bulkRequest, @NonNull final List<TextChunk> chunkList) {
+            this.bulkRequest = bulkRequest;
+            this.chunkList = chunkList;
+            this.chunkResults = new JSONObject[chunkList.size()];
+            this.chunkKeys = new String[chunkList.size()];
+        }
+
+        /**
+         * Stitch the results of the chunks into the result of the whole text
+         * The text can't be partly comprehended, if a chunk failed its error is returned for the whole text
+         *
+         * @return The SingularResponse of the text
+         */
+        public SingularResponse stitch() {
+            for (int i = 0; i < chunkResults.length; i++) {
+                if (chunkResults[i] == null) {
+                    throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
+                }
+                if (chunkResults[i].has(Constants.ERROR_CODE_KEY_NAME)) {
+                    return new SingularResponse(chunkKeys[i], chunkResults[i], null);
+                }
+            }
+            return bulkRequest.getComprehendOperation().getComprehendOperation().stitchChunkResults(
+                    bulkRequest.getLocator().getFieldNameAndOperation(), Arrays.asList(chunkResults), chunkList);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class ChunkSlot {
+        private final ChunkedText chunkedText;
+
+        private final int index;
+    }
+}
@@ -14,11 +14,11 @@
 package com.amazonaws.comprehend.esproxy.lambda.processor;
 
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
 
 /**
  * The DefaultProcessor that process Comprehend OpenSearchService proxy requests without modifying the content
@@ -36,8 +36,8 @@ public class DefaultProcessor implements OpenSearchServiceProcessor {
      * @return OpenSearchService service response
      */
     @Override
-    public Response processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
+    public ProxyResponse processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
         logger.log("Default OpenSearchService requests detected");
-        return esClient.performRequest(request);
+        return ProxyResponse.of(esClient.performRequest(request));
     }
 }
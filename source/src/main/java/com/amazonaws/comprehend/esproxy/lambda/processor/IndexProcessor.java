@@ -16,33 +16,43 @@ package com.amazonaws.comprehend.esproxy.lambda.processor;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
-import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.FieldRoute;
+import com.amazonaws.comprehend.esproxy.lambda.processor.callable.BatchOperationCallable;
 import com.amazonaws.comprehend.esproxy.lambda.processor.callable.SingularOperationCallable;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.RequestIdentifier;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Strings;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
 import org.json.JSONObject;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,15 +61,11 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class IndexProcessor implements OpenSearchServiceProcessor {
 
-    public final static String SDK_RESPONSE_METADATA_KEY = "sdkResponseMetadata";
-
-    public final static String SDK_HTTP_METADATA_KEY = "sdkHttpMetadata";
-
     @NonNull
     private final ComprehendSerializer<JsonNode> ingestionSerializer;
 
     @NonNull
-    private final AmazonComprehend comprehendClient;
+    private final AmazonComprehendAsync comprehendClient;
 
     @NonNull
     private final OpenSearchServiceClient esClient;
@@ -68,7 +74,19 @@ public class IndexProcessor implements OpenSearchServiceProcessor {
     private final ConfigRetriever configRetriever;
 
     @NonNull
-    private final ExecutorService executorService;
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    @NonNull
+    private final ScheduledExecutorService retryScheduler;
+
+    @NonNull
+    private final RequestCoalescer requestCoalescer;
 
     /**
      * Process Comprehend OpenSearchService proxy Index requests
@@ -78,55 +96,76 @@ public class IndexProcessor implements OpenSearchServiceProcessor {
      * @return OpenSearchService service response
      */
     @Override
-    public Response processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
+    public ProxyResponse processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
         logger.log("Index request detected");
+        // Start retrieving the config first, so that a config fetch overlaps with reading the payload
+        CompletableFuture<ComprehendConfigRouter> configRouterFuture = configRetriever.retrieveConfigRouterAsync();
         String payloadStr = HTTPTransformer.transformHttpEntityToString(request.getEntity());
-        Map<String, ComprehendConfiguration> configMap = configRetriever.retrieveStoredConfig();
         String indexName = RequestIdentifier.getIndexName(request);
+        ComprehendConfigRouter configRouter = FutureHelper.join(configRouterFuture);
 
-        if (Strings.isNullOrEmpty(payloadStr) || configMap.isEmpty()) {
+        if (Strings.isNullOrEmpty(payloadStr) || configRouter.isEmpty()) {
             // If no payload or no comprehend config, pass through the request
             logger.log("The Payload or Comprehend config is empty, return pass through requests");
-            return esClient.performRequest(request);
+            return ProxyResponse.of(esClient.performRequest(request));
         }
 
         try {
             JsonNode inputJson = ingestionSerializer.deserialize(payloadStr);
-            List<Callable<SingularResponse>> callableList = createCallableList(indexName, inputJson, configMap);
+            List<BulkRequest> bulkRequestList = getBulkRequestList(indexName, inputJson, configRouter);
 
-            if (callableList.isEmpty()) {
+            if (bulkRequestList.isEmpty()) {
                 // If no field matches, pass through the request
                 logger.log("No config field detected, return pass through requests");
-                return esClient.performRequest(request);
+                return ProxyResponse.of(esClient.performRequest(request));
             }
 
-            List<Future<SingularResponse>> executionResult = executorService.invokeAll(callableList,
-                    Constants.INDEX_EXECUTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            BatchItemRetryPolicy retryPolicy =
+                    new BatchItemRetryPolicy(retryScheduler, Constants.BATCH_ITEM_RETRY_BUDGET);
+            // The result cache lives as long as the container, the stats of this request are counted from here
+            long cacheHitsAtStart = resultCache.getHitCount();
+            long cacheMissesAtStart = resultCache.getMissCount();
+            // Route the auto language fields to the language detected in their text
+            AutoLanguageResolver.Resolution resolution =
+                    new AutoLanguageResolver(comprehendClient, permitLimiter, resultCache, concurrencyLimiter)
+                            .resolve(bulkRequestList, retryPolicy, Constants.INDEX_EXECUTOR_TIMEOUT_SECONDS);
+
+            // Every call is sent as soon as it gets its permits, none of them blocks a thread while waiting
+            List<CompletableFuture<List<SingularResponse>>> executionResult =
+                    submitComprehendRequests(resolution.getResolvedRequestList(), retryPolicy, logger);
+            FutureHelper.awaitAll(executionResult, Constants.INDEX_EXECUTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            logger.log(String.format("Comprehend result cache: hits = %d, misses = %d",
+                    resultCache.getHitCount() - cacheHitsAtStart, resultCache.getMissCount() - cacheMissesAtStart));
             JSONObject payloadJson = new JSONObject(payloadStr);
 
             // Attach the comprehend response
-            for (Future<SingularResponse> result : executionResult) {
+            for (CompletableFuture<List<SingularResponse>> result : executionResult) {
                 try {
-                    SingularResponse responseObject = result.get();
-                    payloadJson.put(responseObject.getFieldNameAndOperation(),
-                            removeResponseMetadata(responseObject.getComprehendResult()));
-
-                    // Add flattened response for Kibana plotting
-                    JSONObject flattenedResponse = responseObject.getFlattenedResult();
-                    if (flattenedResponse != null) {
-                        payloadJson.put(String.format("%s_%s", responseObject.getFieldNameAndOperation(),
-                                Constants.KIBANA_KEY_NAME), removeResponseMetadata(flattenedResponse));
+                    for (SingularResponse responseObject : result.get()) {
+                        payloadJson.put(responseObject.getFieldNameAndOperation(),
+                                responseObject.getComprehendResult());
+
+                        // Add flattened response for Kibana plotting
+                        JSONObject flattenedResponse = responseObject.getFlattenedResult();
+                        if (flattenedResponse != null) {
+                            payloadJson.put(String.format("%s_%s", responseObject.getFieldNameAndOperation(),
+                                    Constants.KIBANA_KEY_NAME), flattenedResponse);
+                        }
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     logger.log("Got exception when retrieving the comprehend response: " + e);
                     throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
                 }
             }
+            // The fields whose language couldn't be resolved get the error instead of a result
+            resolution.getErrorMap().forEach((locator, error) -> payloadJson.put(
+                    String.format("%s_%s", locator.getFieldNameAndOperation(), Constants.ERROR_KEY_NAME), error));
             payloadJson.put(Constants.TIME_STAMP_KEY, Instant.now().toString());
 
             // Send the enriched request to ES
             logger.log("Ingest Comprehend enriched results to OpenSearchService");
-            return esClient.performRequest(request.getMethod(), request.getEndpoint(), payloadJson.toString());
+            return ProxyResponse.of(
+                    esClient.performRequest(request.getMethod(), request.getEndpoint(), payloadJson.toString()));
         } catch (Exception e) {
             logger.log("Exceptions happen when trying to process index request. " + e);
             throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
@@ -134,33 +173,85 @@ public class IndexProcessor implements OpenSearchServiceProcessor {
 
     }
 
-    // Match config map with the ingestion payload, return the list of Callable that needs to be executed
-    private List<Callable<SingularResponse>> createCallableList(@NonNull String indexName,
-                                                                @NonNull JsonNode inputJson,
-                                                                @NonNull Map<String, ComprehendConfiguration> configMap) {
-        List<Callable<SingularResponse>> callableList = new ArrayList<>();
-
-        configMap.forEach((key, config) -> {
-            if (indexName.equals(config.getIndexName())) {
-                // For each config, find matched fields in the input
-                Optional.ofNullable(inputJson.findValue(config.getFieldName())).ifPresent(fieldValue ->
-                        // For each ComprehendOperationEnum, add to the CallableList
-                        config.getComprehendOperations().forEach(
-                                operation -> callableList.add(
-                                        new SingularOperationCallable(
-                                                String.format("%s_%s", config.getFieldName(), operation.toString()),
-                                                operation, config.getLanguageCode(), fieldValue.asText(), comprehendClient)))
-                );
+    // Match the routes of the index with the ingestion payload, return the list of BulkRequest to be comprehend
+    private static List<BulkRequest> getBulkRequestList(@NonNull String indexName,
+                                                        @NonNull JsonNode inputJson,
+                                                        @NonNull ComprehendConfigRouter configRouter) {
+        List<BulkRequest> bulkRequestList = new ArrayList<>();
+
+        for (FieldRoute route : configRouter.getFieldRoutes(indexName)) {
+            // For each route, find matched field in the input
+            JsonNode fieldValue = route.findFieldValue(inputJson);
+            if (fieldValue == null) {
+                continue;
+            }
+            // For each ComprehendOperationEnum, add to the bulkRequestList
+            List<ComprehendOperationEnum> operations = route.getOperations();
+            for (int i = 0; i < operations.size(); i++) {
+                bulkRequestList.add(new BulkRequest(fieldValue.asText(), operations.get(i), route.getLanguageCode(),
+                        new BatchFieldLocator(route.getFieldNameAndOperations().get(i), 0)));
             }
-        });
-        return callableList;
+        }
+        return bulkRequestList;
     }
 
-    // Remove SDK metadata from the response
-    private JSONObject removeResponseMetadata(@NonNull JSONObject responseJson) {
-        responseJson.remove(SDK_RESPONSE_METADATA_KEY);
-        responseJson.remove(SDK_HTTP_METADATA_KEY);
-        return responseJson;
+    // Group the field texts per Operation_Language pair, a pair shared by several texts is sent as a batch request
+    // and a text on its own is sent as a singular request, or coalesced with the texts of the concurrent requests
+    // when the coalescing is enabled. A text over the document limit always goes singular.
+    private List<CompletableFuture<List<SingularResponse>>> submitComprehendRequests(
+            @NonNull final List<BulkRequest> bulkRequestList,
+            @NonNull final BatchItemRetryPolicy retryPolicy,
+            @NonNull final LambdaLogger logger) {
+        BatchPacker batchPacker =
+                new BatchPacker(Constants.MAX_BATCH_SIZE, Constants.MAX_BATCH_BYTES, Constants.MAX_DOCUMENT_BYTES);
+        bulkRequestList.forEach(batchPacker::add);
+
+        List<CompletableFuture<List<SingularResponse>>> executionResult = new ArrayList<>();
+        List<BulkRequest> singularRequestList = new ArrayList<>(batchPacker.getOversizedRequestList());
+        int batchCount = 0;
+        int coalescedCount = 0;
+        for (BatchPacker.Batch batch : batchPacker.getBatchList()) {
+            if (batch.getContentList().size() == 1) {
+                BulkRequest bulkRequest = new BulkRequest(batch.getContentList().get(0), batch.getOperation(),
+                        batch.getLanguageCode(), batch.getLocatorList().get(0));
+                if (requestCoalescer.isEnabled()) {
+                    executionResult.add(requestCoalescer.submit(bulkRequest).thenApply(Collections::singletonList));
+                    coalescedCount++;
+                } else {
+                    singularRequestList.add(bulkRequest);
+                }
+                continue;
+            }
+            BatchOperationCallable callable = new BatchOperationCallable(batch.getOperation(),
+                    batch.getLanguageCode(), comprehendClient, batch.getLocatorList(), batch.getContentList(),
+                    resultCache, permitLimiter, concurrencyLimiter, retryPolicy);
+            executionResult.add(callable.callAsync().thenApply(IndexProcessor::toSingularResponses));
+            batchCount++;
+        }
+        for (BulkRequest bulkRequest : singularRequestList) {
+            SingularOperationCallable callable = new SingularOperationCallable(
+                    bulkRequest.getLocator().getFieldNameAndOperation(), bulkRequest.getComprehendOperation(),
+                    bulkRequest.getLanguageCode(), bulkRequest.getFieldToBeComprehend(), comprehendClient,
+                    resultCache, permitLimiter, concurrencyLimiter);
+            executionResult.add(callable.callAsync().thenApply(Collections::singletonList));
+        }
+        logger.log(String.format("Sending %d Comprehend texts in %d batch requests and %d singular requests, "
+                + "%d texts were coalesced", bulkRequestList.size(), batchCount, singularRequestList.size(),
+                coalescedCount));
+        return executionResult;
+    }
+
+    // Split the batch response into the response of each field
+    private static List<SingularResponse> toSingularResponses(@NonNull final BatchResponse batchResponse) {
+        List<BatchFieldLocator> locatorList = batchResponse.getLocatorList();
+        List<BatchItemResult> itemResultList = batchResponse.getItemResultList();
+        List<SingularResponse> responseList = new ArrayList<>();
+        for (int i = 0; i < locatorList.size(); i++) {
+            BatchItemResult itemResult = itemResultList.get(i);
+            responseList.add(new SingularResponse(locatorList.get(i).getFieldNameAndOperation(),
+                    itemResult.toJSONObject(), itemResult.getFlattenedResult()));
+        }
+        return responseList;
     }
 
 }
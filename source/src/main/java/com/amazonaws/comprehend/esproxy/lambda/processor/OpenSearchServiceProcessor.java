@@ -13,10 +13,10 @@
 
 package com.amazonaws.comprehend.esproxy.lambda.processor;
 
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import lombok.NonNull;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
 
 /**
  * {@code OpenSearchServiceProcessor} is the interface of all processors that
@@ -30,7 +30,8 @@ public interface OpenSearchServiceProcessor {
      *
      * @param request The received OpenSearchService client request
      * @param logger  The LambdaLogger to output logs from the function code
-     * @return The received OpenSearchService client response from Amazon OpenSearchService service
+     * @return The received OpenSearchService client response from Amazon OpenSearchService service, or the response
+     * assembled from several of them
      */
-    Response processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger);
+    ProxyResponse processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger);
 }
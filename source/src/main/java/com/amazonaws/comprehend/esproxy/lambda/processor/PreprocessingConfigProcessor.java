@@ -16,6 +16,7 @@ package com.amazonaws.comprehend.esproxy.lambda.processor;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
 import com.amazonaws.comprehend.esproxy.lambda.model.PreprocessingConfigRequest;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
@@ -28,7 +29,6 @@ import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import org.apache.http.HttpEntity;
 import org.elasticsearch.client.Request;
-import org.elasticsearch.client.Response;
 
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -58,12 +58,12 @@ public class PreprocessingConfigProcessor implements OpenSearchServiceProcessor
      * @return OpenSearch Service service response
      */
     @Override
-    public Response processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
+    public ProxyResponse processRequest(@NonNull final Request request, @NonNull final LambdaLogger logger) {
         logger.log("Comprehend Configuration request detected");
 
         // If the request is a non create nor update config, replace the customer config path with the real config path
         if (!RequestIdentifier.isMutationRequest(request)) {
-            return esClient.performRequest(request, Constants.CONFIG_PATH);
+            return ProxyResponse.of(esClient.performRequest(request, Constants.CONFIG_PATH));
         }
         HttpEntity receivedEntity = request.getEntity();
         String inputConfig = HTTPTransformer.transformHttpEntityToString(receivedEntity);
@@ -71,6 +71,8 @@ public class PreprocessingConfigProcessor implements OpenSearchServiceProcessor
         PreprocessingConfigRequest configRequest = configSerializer.deserialize(inputConfig);
         Map<String, ComprehendConfiguration> newConfigMap = ConfigSerializer
                 .transformConfigRequestToConfigMap(configRequest);
+        // Read the latest stored config instead of the cached one, so an update never merges into a stale config
+        configRetriever.invalidate();
         Map<String, ComprehendConfiguration> oldConfigMap = configRetriever.retrieveStoredConfig();
 
         // Find the difference between the two configs, and upload the mapping
@@ -90,8 +92,12 @@ public class PreprocessingConfigProcessor implements OpenSearchServiceProcessor
         // Best effort to upload the dashboard
         kibanaUploader.uploadKibanaDashboard(newConfigMap, logger);
 
-        // Save config
-        return esClient.performRequest(request.getMethod(), Constants.CONFIG_PATH, inputConfig);
+        // Save config, and drop the cached config so the following ingestion requests pick up the new one
+        try {
+            return ProxyResponse.of(esClient.performRequest(request.getMethod(), Constants.CONFIG_PATH, inputConfig));
+        } finally {
+            configRetriever.invalidate();
+        }
     }
 
 }
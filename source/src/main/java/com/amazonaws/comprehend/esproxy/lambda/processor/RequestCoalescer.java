@@ -0,0 +1,201 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.callable.BatchOperationCallable;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TextChunker;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesce the texts of concurrent index requests in the container into shared batch requests
+ * The first text of an Operation_Language pair opens a batch that stays open for the coalescing window, the texts
+ * of the same pair that arrive in the meantime join it. The batch is sent when the window closes or when it is full,
+ * and the result of each text completes the future of its caller.
+ * A coalescing window of 0 disables the coalescing, the texts are then sent by the callers themselves.
+ */
+@RequiredArgsConstructor
+public class RequestCoalescer {
+    private final long windowMillis;
+
+    @NonNull
+    private final ScheduledExecutorService scheduler;
+
+    @NonNull
+    private final AmazonComprehendAsync comprehendClient;
+
+    @NonNull
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    // The open batch of each Operation_Language pair, guarded by this
+    private final Map<String, PendingBatch> pendingBatchMap = new HashMap<>();
+
+    public boolean isEnabled() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * Add the text of the request to the open batch of its Operation_Language pair
+     *
+     * @param bulkRequest The request, its text must be within the document limit
+     * @return The future of the response of the text
+     */
+    public CompletableFuture<SingularResponse> submit(@NonNull final BulkRequest bulkRequest) {
+        String operationLanguagePair = String.format("%s_%s", bulkRequest.getComprehendOperation(),
+                bulkRequest.getLanguageCode());
+        int contentBytes = TextChunker.getEncodedLength(bulkRequest.getFieldToBeComprehend());
+        CompletableFuture<SingularResponse> future = new CompletableFuture<>();
+        List<PendingBatch> closedBatchList = new ArrayList<>();
+
+        synchronized (this) {
+            PendingBatch pendingBatch = pendingBatchMap.get(operationLanguagePair);
+            // A text that doesn't fit in the open batch closes it and opens the next one
+            if (pendingBatch != null && !pendingBatch.fits(contentBytes)) {
+                closedBatchList.add(pendingBatchMap.remove(operationLanguagePair));
+                pendingBatch = null;
+            }
+            if (pendingBatch == null) {
+                pendingBatch = new PendingBatch(bulkRequest.getComprehendOperation(), bulkRequest.getLanguageCode());
+                pendingBatchMap.put(operationLanguagePair, pendingBatch);
+                PendingBatch scheduledBatch = pendingBatch;
+                scheduler.schedule(() -> flush(operationLanguagePair, scheduledBatch), windowMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            pendingBatch.add(bulkRequest, contentBytes, future);
+            if (pendingBatch.isFull()) {
+                closedBatchList.add(pendingBatchMap.remove(operationLanguagePair));
+            }
+        }
+        // The batches are sent outside of the lock, so the other callers don't wait for the permits
+        closedBatchList.forEach(this::send);
+        return future;
+    }
+
+    // Send the batch once its window closes, unless it was already sent as full
+    private void flush(@NonNull final String operationLanguagePair, @NonNull final PendingBatch pendingBatch) {
+        boolean isOpen;
+        synchronized (this) {
+            isOpen = pendingBatchMap.remove(operationLanguagePair, pendingBatch);
+        }
+        if (isOpen) {
+            send(pendingBatch);
+        }
+    }
+
+    private void send(@NonNull final PendingBatch pendingBatch) {
+        BatchOperationCallable callable = new BatchOperationCallable(pendingBatch.operation,
+                pendingBatch.languageCode, comprehendClient, pendingBatch.locatorList, pendingBatch.contentList,
+                resultCache, permitLimiter, concurrencyLimiter,
+                new BatchItemRetryPolicy(scheduler, Constants.BATCH_ITEM_RETRY_BUDGET));
+        CompletableFuture<BatchResponse> response;
+        try {
+            response = callable.callAsync();
+        } catch (RuntimeException e) {
+            pendingBatch.futureMap.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+        response.whenComplete((batchResponse, throwable) -> {
+            if (throwable != null) {
+                RuntimeException cause = FutureHelper.unwrap(throwable);
+                pendingBatch.futureMap.values().forEach(future -> future.completeExceptionally(cause));
+            } else {
+                route(pendingBatch, batchResponse);
+            }
+        });
+    }
+
+    // Complete the future of each caller with the result of its text
+    private static void route(@NonNull final PendingBatch pendingBatch, @NonNull final BatchResponse batchResponse) {
+        List<BatchFieldLocator> locatorList = batchResponse.getLocatorList();
+        List<BatchItemResult> itemResultList = batchResponse.getItemResultList();
+        for (int i = 0; i < locatorList.size(); i++) {
+            // A failed batch call answers the locator through a copy under the error key
+            BatchFieldLocator locator = locatorList.get(i);
+            CompletableFuture<SingularResponse> future = pendingBatch.futureMap.get(locator.getRequestLocator());
+            if (future != null) {
+                BatchItemResult itemResult = itemResultList.get(i);
+                future.complete(new SingularResponse(locator.getFieldNameAndOperation(), itemResult.toJSONObject(),
+                        itemResult.getFlattenedResult()));
+            }
+        }
+    }
+
+    /**
+     * The texts waiting for the window of their Operation_Language pair to close
+     */
+    private static class PendingBatch {
+        private final ComprehendOperationEnum operation;
+
+        private final LanguageCode languageCode;
+
+        private final List<BatchFieldLocator> locatorList = new ArrayList<>();
+
+        private final List<String> contentList = new ArrayList<>();
+
+        // The locators are compared by identity, concurrent callers can use the same field name
+        private final Map<BatchFieldLocator, CompletableFuture<SingularResponse>> futureMap = new IdentityHashMap<>();
+
+        private int bytes;
+
+        PendingBatch(@NonNull final ComprehendOperationEnum operation, @NonNull final LanguageCode languageCode) {
+            this.operation = operation;
+            this.languageCode = languageCode;
+        }
+
+        void add(@NonNull final BulkRequest bulkRequest, final int contentBytes,
+                 @NonNull final CompletableFuture<SingularResponse> future) {
+            locatorList.add(bulkRequest.getLocator());
+            contentList.add(bulkRequest.getFieldToBeComprehend());
+            futureMap.put(bulkRequest.getLocator(), future);
+            bytes += contentBytes;
+        }
+
+        boolean fits(final int contentBytes) {
+            return bytes + contentBytes <= Constants.MAX_BATCH_BYTES;
+        }
+
+        boolean isFull() {
+            return contentList.size() >= Constants.MAX_BATCH_SIZE;
+        }
+    }
+}
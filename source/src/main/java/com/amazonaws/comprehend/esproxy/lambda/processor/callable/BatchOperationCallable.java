@@ -18,9 +18,17 @@ import com.amazonaws.AmazonServiceException;
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AdaptivePermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache.CachedResult;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.comprehend.model.BatchItemError;
 import lombok.Getter;
 import lombok.NonNull;
@@ -29,13 +37,16 @@ import lombok.RequiredArgsConstructor;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * A Comprehend batch operation task that returns a Comprehend Client response
+ * The contents with a cached result are not sent to Comprehend, their cached results are merged into the response
  */
 @RequiredArgsConstructor
-public class BatchOperationCallable implements Callable<BatchResponse> {
+public class BatchOperationCallable {
     @NonNull
     private final ComprehendOperationEnum comprehendOperation;
 
@@ -43,7 +54,7 @@ public class BatchOperationCallable implements Callable<BatchResponse> {
     private final LanguageCode languageCode;
 
     @NonNull
-    private final AmazonComprehend comprehendClient;
+    private final AmazonComprehendAsync comprehendClient;
 
     @Getter
     @NonNull
@@ -53,28 +64,215 @@ public class BatchOperationCallable implements Callable<BatchResponse> {
     @NonNull
     private final List<String> contentList;
 
-    @Override
-    public BatchResponse call() {
-        try {
-            return comprehendOperation.getComprehendOperation()
-                    .sendBatchRequest(fieldLocatorList, contentList, languageCode, comprehendClient);
-        } catch (AmazonServiceException e) {
-            return new BatchResponse<>(fieldLocatorList, Collections.emptyList(),
-                    getBatchItemErrors(e.getErrorCode(), e.getErrorMessage()), null);
-        } catch (AmazonClientException e) {
-            return new BatchResponse<>(fieldLocatorList, Collections.emptyList(),
-                    getBatchItemErrors(Constants.CLIENT_EXCEPTION_ERROR_CODE, e.getMessage()), null);
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    // Bounds the Comprehend calls of all the operations, a call takes it once it got the permit of its operation
+    @NonNull
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    @NonNull
+    private final BatchItemRetryPolicy retryPolicy;
+
+    // The calls submitted to the limiters, dropped if the future of callAsync is cancelled
+    private final List<CompletableFuture<BatchResponse>> submittedCallList =
+            Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Send out the batch request without blocking the calling thread
+     * Comprehend exceptions complete the future with an error response, the retryable failed items and the
+     * throttled calls are retried within the retry budget of the bulk before their errors are returned
+     *
+     * @return The future of the BatchResponse
+     */
+    public CompletableFuture<BatchResponse> callAsync() {
+        List<CachedResult> cachedResultList = getCachedResults();
+        List<Integer> missedIndexList = getMissedIndexList(cachedResultList);
+        if (missedIndexList.isEmpty()) {
+            return CompletableFuture.completedFuture(mergeResponse(cachedResultList, null));
+        }
+        List<BatchFieldLocator> missedLocatorList = select(fieldLocatorList, missedIndexList);
+        List<String> missedContentList = select(contentList, missedIndexList);
+
+        CompletableFuture<BatchResponse> response = sendBatchRequestAsync(missedLocatorList, missedContentList, 1)
+                .thenApply(missedResponse -> {
+                    cacheResults(missedResponse, missedContentList);
+                    return mergeResponse(cachedResultList, missedResponse);
+                });
+        // e.g. cancelled when the bulk timed out, the calls still waiting for a permit are never sent
+        response.whenComplete((result, throwable) -> {
+            if (response.isCancelled()) {
+                synchronized (submittedCallList) {
+                    submittedCallList.forEach(call -> call.cancel(false));
+                }
+            }
+        });
+        return response;
+    }
+
+    // Send the contents to Comprehend and retry their failed items, the attempt counts the retries so far plus 1
+    private CompletableFuture<BatchResponse> sendBatchRequestAsync(@NonNull final List<BatchFieldLocator> locatorList,
+                                                                   @NonNull final List<String> batchContentList,
+                                                                   final int attempt) {
+        // The call waits for a permit of its operation, the limiter backs off when Comprehend throttles. The global
+        // permit is only taken then, so the calls queued behind a throttled operation don't hold back the others.
+        CompletableFuture<BatchResponse> responseFuture = concurrencyLimiter.getLimiter(comprehendOperation)
+                .submit(() -> permitLimiter.submit(() -> comprehendOperation.getComprehendOperation()
+                        .sendBatchRequestAsync(locatorList, batchContentList, languageCode, comprehendClient)));
+        submittedCallList.add(responseFuture);
+        return responseFuture.handle((response, throwable) -> {
+            if (throwable == null) {
+                return retryFailedItems(response, locatorList, batchContentList, attempt);
+            }
+            RuntimeException cause = FutureHelper.unwrap(throwable);
+            if (AdaptivePermitLimiter.isThrottling(cause) && attempt <= Constants.BATCH_ITEM_MAX_RETRIES
+                    && retryPolicy.acquireAll(batchContentList.size())) {
+                // The whole call was throttled, the batch goes back to the limiter of its operation, which has cut
+                // its limit meanwhile. Its items only get the error once the retry budget of the bulk runs out.
+                return retryPolicy.schedule(attempt,
+                        () -> sendBatchRequestAsync(locatorList, batchContentList, attempt + 1));
+            }
+            if (cause instanceof AmazonClientException) {
+                return CompletableFuture.<BatchResponse>completedFuture(
+                        getErrorResponse((AmazonClientException) cause, locatorList, batchContentList.size()));
+            }
+            throw cause;
+        }).thenCompose(Function.identity());
+    }
+
+    // Send the retryable failed items again as a smaller batch, as long as the retry budget of the bulk allows
+    private CompletableFuture<BatchResponse> retryFailedItems(@NonNull final BatchResponse response,
+                                                              @NonNull final List<BatchFieldLocator> locatorList,
+                                                              @NonNull final List<String> batchContentList,
+                                                              final int attempt) {
+        List<Integer> failedIndexList = response.getBatchResultErrorList().stream()
+                .filter(BatchItemRetryPolicy::isRetryable)
+                .map(BatchItemError::getIndex)
+                .sorted()
+                .collect(Collectors.toList());
+        if (failedIndexList.isEmpty() || attempt > Constants.BATCH_ITEM_MAX_RETRIES) {
+            return CompletableFuture.completedFuture(response);
         }
+        // The items beyond the budget keep their errors
+        List<Integer> retryIndexList = failedIndexList.subList(0, retryPolicy.acquire(failedIndexList.size()));
+        if (retryIndexList.isEmpty()) {
+            return CompletableFuture.completedFuture(response);
+        }
+        List<BatchFieldLocator> retryLocatorList = select(locatorList, retryIndexList);
+        List<String> retryContentList = select(batchContentList, retryIndexList);
+        // The failed call has released its permits, the batch holds none during the backoff and the retried call
+        // waits for them again like any other call
+        return retryPolicy.schedule(attempt,
+                () -> sendBatchRequestAsync(retryLocatorList, retryContentList, attempt + 1))
+                .thenApply(retryResponse -> replaceRetriedItems(response, retryResponse, retryIndexList));
     }
 
-    private List<BatchItemError> getBatchItemErrors(String errorCode, String errorMessage) {
-        // Set the response key to "fieldName_operation_Error"
-        fieldLocatorList.forEach(locator ->
-                locator.setFieldNameAndOperation(String.format("%s_Error", locator.getFieldNameAndOperation())));
+    /**
+     * Replace the errors of the retried items by the retry response
+     * The retry response indexes the retried items from 0, its indexes are mapped back to the original batch
+     */
+    private static BatchResponse replaceRetriedItems(@NonNull final BatchResponse response,
+                                                     @NonNull final BatchResponse retryResponse,
+                                                     @NonNull final List<Integer> retriedIndexList) {
+        List<BatchItemResult> resultItemList = new ArrayList<>(response.getBatchResultItemList());
+        List<BatchItemError> errorList = new ArrayList<>();
+
+        response.getBatchResultErrorList().stream()
+                .filter(error -> !retriedIndexList.contains(error.getIndex()))
+                .forEach(errorList::add);
+
+        for (BatchItemResult itemResult : retryResponse.getBatchResultItemList()) {
+            resultItemList.add(itemResult.withIndex(retriedIndexList.get(itemResult.getIndex())));
+        }
+        for (BatchItemError error : retryResponse.getBatchResultErrorList()) {
+            errorList.add(new BatchItemError()
+                    .withIndex(retriedIndexList.get(error.getIndex()))
+                    .withErrorCode(error.getErrorCode())
+                    .withErrorMessage(error.getErrorMessage()));
+        }
+        return new BatchResponse(response.getLocatorList(), resultItemList, errorList);
+    }
+
+    // Look up the cached result of each content, null if the content needs to be comprehended
+    private List<CachedResult> getCachedResults() {
+        List<CachedResult> cachedResultList = new ArrayList<>(contentList.size());
+        for (String content : contentList) {
+            cachedResultList.add(resultCache.get(comprehendOperation, languageCode, content));
+        }
+        return cachedResultList;
+    }
+
+    // Cache the successful results of the comprehended contents, the errors are not cached
+    private void cacheResults(@NonNull final BatchResponse response,
+                              @NonNull final List<String> comprehendedContentList) {
+        for (BatchItemResult itemResult : response.getBatchResultItemList()) {
+            resultCache.put(comprehendOperation, languageCode, comprehendedContentList.get(itemResult.getIndex()),
+                    itemResult.getResult(), itemResult.getFlattenedResult());
+        }
+    }
+
+    /**
+     * Merge the cached results into the response of the comprehended contents
+     * The comprehended contents keep their indexes and the cached results are appended after them
+     */
+    private BatchResponse mergeResponse(@NonNull final List<CachedResult> cachedResultList,
+                                        final BatchResponse missedResponse) {
+        if (missedResponse != null && missedResponse.getLocatorList().size() == fieldLocatorList.size()) {
+            // Nothing was cached
+            return missedResponse;
+        }
+        List<BatchFieldLocator> locatorList = new ArrayList<>(fieldLocatorList.size());
+        List<BatchItemResult> resultItemList = new ArrayList<>(fieldLocatorList.size());
+        List<BatchItemError> errorList = new ArrayList<>();
+
+        if (missedResponse != null) {
+            locatorList.addAll(missedResponse.getLocatorList());
+            resultItemList.addAll(missedResponse.getBatchResultItemList());
+            errorList.addAll(missedResponse.getBatchResultErrorList());
+        }
+        for (int i = 0; i < cachedResultList.size(); i++) {
+            CachedResult cachedResult = cachedResultList.get(i);
+            if (cachedResult == null) {
+                continue;
+            }
+            resultItemList.add(BatchItemResult.success(locatorList.size(), cachedResult.getResult(),
+                    cachedResult.getFlattenedResult()));
+            locatorList.add(fieldLocatorList.get(i));
+        }
+        return new BatchResponse(locatorList, resultItemList, errorList);
+    }
+
+    private BatchResponse getErrorResponse(@NonNull final AmazonClientException e,
+                                           @NonNull final List<BatchFieldLocator> locatorList,
+                                           final int contentCount) {
+        // AmazonServiceException extends AmazonClientException and carries the service error code
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            return new BatchResponse(getErrorLocators(locatorList), Collections.emptyList(), getBatchItemErrors(
+                    contentCount, serviceException.getErrorCode(), serviceException.getErrorMessage()));
+        }
+        return new BatchResponse(getErrorLocators(locatorList), Collections.emptyList(), getBatchItemErrors(
+                contentCount, Constants.CLIENT_EXCEPTION_ERROR_CODE, e.getMessage()));
+    }
+
+    // Copy the locators under the response key "fieldName_operation_Error", the locators are shared with the callers
+    private static List<BatchFieldLocator> getErrorLocators(@NonNull final List<BatchFieldLocator> locatorList) {
+        List<BatchFieldLocator> errorLocatorList = new ArrayList<>(locatorList.size());
+        for (BatchFieldLocator locator : locatorList) {
+            errorLocatorList.add(locator.withFieldNameAndOperation(String.format("%s_%s",
+                    locator.getFieldNameAndOperation(), Constants.ERROR_KEY_NAME)));
+        }
+        return errorLocatorList;
+    }
+
+    private static List<BatchItemError> getBatchItemErrors(int contentCount, String errorCode, String errorMessage) {
         List<BatchItemError> errorList = new ArrayList<>();
 
         // Add errorMessage to each request
-        for (int index = 0; index < contentList.size(); index++) {
+        for (int index = 0; index < contentCount; index++) {
             BatchItemError batchItemError = new BatchItemError();
             batchItemError.setIndex(index);
             batchItemError.setErrorCode(errorCode);
@@ -84,4 +282,20 @@ public class BatchOperationCallable implements Callable<BatchResponse> {
         return errorList;
     }
 
+    private static List<Integer> getMissedIndexList(@NonNull final List<CachedResult> cachedResultList) {
+        List<Integer> missedIndexList = new ArrayList<>();
+        for (int i = 0; i < cachedResultList.size(); i++) {
+            if (cachedResultList.get(i) == null) {
+                missedIndexList.add(i);
+            }
+        }
+        return missedIndexList;
+    }
+
+    private static <E> List<E> select(@NonNull final List<E> list, @NonNull final List<Integer> indexList) {
+        List<E> selectedList = new ArrayList<>(indexList.size());
+        indexList.forEach(index -> selectedList.add(list.get(index)));
+        return selectedList;
+    }
+
 }
@@ -20,19 +20,25 @@ import com.amazonaws.comprehend.esproxy.lambda.exception.ServiceExceptionMessage
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache.CachedResult;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.json.JSONObject;
 
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A Comprehend Singular operation task that returns a Comprehend Client response
+ * A content with a cached result is not sent to Comprehend
  */
 @RequiredArgsConstructor
-public class SingularOperationCallable implements Callable<SingularResponse> {
+public class SingularOperationCallable {
     @NonNull
     private final String fieldNameAndOperation;
 
@@ -46,30 +52,83 @@ public class SingularOperationCallable implements Callable<SingularResponse> {
     private final String content;
 
     @NonNull
-    private final AmazonComprehend comprehendClient;
-
-    @Override
-    public SingularResponse call() {
-        try {
-            return comprehendOperation.getComprehendOperation()
-                    .sendSingularRequest(fieldNameAndOperation, content, languageCode, comprehendClient);
-        } catch (AmazonServiceException e) {
+    private final AmazonComprehendAsync comprehendClient;
+
+    @NonNull
+    private final ComprehendResultCache resultCache;
+
+    // Bounds the Comprehend calls of all the operations, a call takes it once it got the permit of its operation
+    @NonNull
+    private final AsyncPermitLimiter permitLimiter;
+
+    @NonNull
+    private final ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Send out the singular request without blocking the calling thread
+     * Comprehend exceptions complete the future with an error response
+     *
+     * @return The future of the SingularResponse
+     */
+    public CompletableFuture<SingularResponse> callAsync() {
+        CachedResult cachedResult = resultCache.get(comprehendOperation, languageCode, content);
+        if (cachedResult != null) {
+            return CompletableFuture.completedFuture(toCachedResponse(cachedResult));
+        }
+        // The call waits for a permit of its operation, the limiter backs off when Comprehend throttles. The global
+        // permit is only taken then, so the calls queued behind a throttled operation don't hold back the others.
+        CompletableFuture<SingularResponse> responseFuture = concurrencyLimiter.getLimiter(comprehendOperation)
+                .submit(() -> permitLimiter.submit(() -> comprehendOperation.getComprehendOperation()
+                        .sendSingularRequestAsync(fieldNameAndOperation, content, languageCode, comprehendClient)));
+        CompletableFuture<SingularResponse> resultFuture = responseFuture.handle((response, throwable) -> {
+            if (throwable == null) {
+                return cacheResult(response);
+            }
+            RuntimeException cause = FutureHelper.unwrap(throwable);
+            if (cause instanceof AmazonClientException) {
+                return getErrorResponse((AmazonClientException) cause);
+            }
+            throw cause;
+        });
+        // e.g. cancelled when the request timed out, the call is never sent if it still waits for a permit
+        resultFuture.whenComplete((result, throwable) -> {
+            if (resultFuture.isCancelled()) {
+                responseFuture.cancel(false);
+            }
+        });
+        return resultFuture;
+    }
+
+    // Cache the successful result, the errors are not cached
+    private SingularResponse cacheResult(@NonNull final SingularResponse response) {
+        resultCache.put(comprehendOperation, languageCode, content, response.getComprehendResult(),
+                response.getFlattenedResult());
+        return response;
+    }
+
+    private SingularResponse toCachedResponse(@NonNull final CachedResult cachedResult) {
+        return new SingularResponse(fieldNameAndOperation, cachedResult.getResult(), cachedResult.getFlattenedResult());
+    }
+
+    private SingularResponse getErrorResponse(@NonNull final AmazonClientException e) {
+        // AmazonServiceException extends AmazonClientException and carries the service error details
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException amazonServiceException = (AmazonServiceException) e;
             ServiceExceptionMessage serviceException = ServiceExceptionMessage.builder()
-                    .statusCode(e.getStatusCode())
-                    .errorCode(e.getErrorCode())
-                    .requestId(e.getRequestId())
-                    .errorMessage(e.getErrorMessage())
+                    .statusCode(amazonServiceException.getStatusCode())
+                    .errorCode(amazonServiceException.getErrorCode())
+                    .requestId(amazonServiceException.getRequestId())
+                    .errorMessage(amazonServiceException.getErrorMessage())
                     .build();
-            return new SingularResponse(String.format("%s_Error", fieldNameAndOperation),
+            return new SingularResponse(String.format("%s_%s", fieldNameAndOperation, Constants.ERROR_KEY_NAME),
                     new JSONObject(serviceException), null);
-        } catch (AmazonClientException e) {
-            ClientExceptionMessage clientException = ClientExceptionMessage.builder()
-                    .errorCode(Constants.CLIENT_EXCEPTION_ERROR_CODE)
-                    .errorMessage(e.getMessage())
-                    .build();
-            return new SingularResponse(String.format("%s_Error", fieldNameAndOperation),
-                    new JSONObject(clientException), null);
         }
+        ClientExceptionMessage clientException = ClientExceptionMessage.builder()
+                .errorCode(Constants.CLIENT_EXCEPTION_ERROR_CODE)
+                .errorMessage(e.getMessage())
+                .build();
+        return new SingularResponse(String.format("%s_%s", fieldNameAndOperation, Constants.ERROR_KEY_NAME),
+                new JSONObject(clientException), null);
     }
 
 }
@@ -0,0 +1,85 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import lombok.NonNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Helpers to stitch the Comprehend results of the chunks of a text back into the result of the whole text
+ */
+class ChunkResultStitcher {
+    private final static String BEGIN_OFFSET_KEY_NAME = "beginOffset";
+
+    private final static String END_OFFSET_KEY_NAME = "endOffset";
+
+    /**
+     * Concatenate the arrays found under the key in the chunk results, shifting their offsets to the whole text
+     *
+     * @param chunkResultList The Comprehend results of the chunks, in the order of the chunks
+     * @param chunkList       The chunks of the text
+     * @param key             The key of the array in the results. i.e. entities, keyPhrases
+     * @return The array of the whole text
+     */
+    static JSONArray concatShifted(@NonNull final List<JSONObject> chunkResultList,
+                                   @NonNull final List<TextChunk> chunkList,
+                                   @NonNull final String key) {
+        JSONArray stitchedArray = new JSONArray();
+        for (int i = 0; i < chunkResultList.size(); i++) {
+            JSONArray chunkArray = chunkResultList.get(i).optJSONArray(key);
+            if (chunkArray == null) {
+                continue;
+            }
+            int offset = chunkList.get(i).getOffset();
+            for (int j = 0; j < chunkArray.length(); j++) {
+                JSONObject item = new JSONObject(chunkArray.getJSONObject(j).toString());
+                shift(item, BEGIN_OFFSET_KEY_NAME, offset);
+                shift(item, END_OFFSET_KEY_NAME, offset);
+                stitchedArray.put(item);
+            }
+        }
+        return stitchedArray;
+    }
+
+    // Group the items of the array into arrays by the key, the same shape as the flattened results for Kibana
+    static JSONObject groupBy(@NonNull final JSONArray array, @NonNull final Function<JSONObject, String> keyFunction) {
+        JSONObject groupedObject = new JSONObject();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            groupedObject.append(keyFunction.apply(item), item);
+        }
+        return groupedObject;
+    }
+
+    // The share of each chunk in the length of the whole text, used to weight the scores of the chunks
+    static double[] getWeights(@NonNull final List<TextChunk> chunkList) {
+        double totalLength = chunkList.stream().mapToInt(TextChunk::getLength).sum();
+        double[] weights = new double[chunkList.size()];
+        for (int i = 0; i < chunkList.size(); i++) {
+            weights[i] = totalLength == 0 ? 1.0 / chunkList.size() : chunkList.get(i).getLength() / totalLength;
+        }
+        return weights;
+    }
+
+    private static void shift(@NonNull final JSONObject item, @NonNull final String key, final int offset) {
+        if (item.has(key)) {
+            item.put(key, item.getInt(key) + offset);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bridge an AmazonComprehendAsync callback to a CompletableFuture
+ *
+ * @param <REQUEST> Comprehend request type. i.e. DetectSentimentRequest
+ * @param <RESULT>  Comprehend result type. i.e. DetectSentimentResult
+ */
+class ComprehendAsyncHandler<REQUEST extends AmazonWebServiceRequest, RESULT>
+        implements AsyncHandler<REQUEST, RESULT> {
+    @Getter
+    private final CompletableFuture<RESULT> future = new CompletableFuture<>();
+
+    @Override
+    public void onError(Exception exception) {
+        future.completeExceptionally(exception);
+    }
+
+    @Override
+    public void onSuccess(REQUEST request, RESULT result) {
+        future.complete(result);
+    }
+}
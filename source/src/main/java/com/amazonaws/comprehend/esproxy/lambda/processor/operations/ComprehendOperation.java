@@ -15,15 +15,20 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import lombok.NonNull;
+import org.json.JSONObject;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for ComprehendOperations, contains methods of sending Singular requests and Batch requests
+ * Each request is available as a blocking call and as an asynchronous call backed by AmazonComprehendAsync
  */
 public interface ComprehendOperation {
 
@@ -42,4 +47,21 @@ public interface ComprehendOperation {
                                    @NonNull final List<String> contentList,
                                    @NonNull final LanguageCode languageCode,
                                    @NonNull final AmazonComprehend comprehendClient);
+
+    // Send out singular request for the operation without blocking the calling thread
+    CompletableFuture<SingularResponse> sendSingularRequestAsync(@NonNull final String fieldNameAndOperation,
+                                                                 @NonNull final String content,
+                                                                 @NonNull final LanguageCode languageCode,
+                                                                 @NonNull final AmazonComprehendAsync comprehendClient);
+
+    // Send out batch request for the operation without blocking the calling thread
+    CompletableFuture<BatchResponse> sendBatchRequestAsync(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                           @NonNull final List<String> contentList,
+                                                           @NonNull final LanguageCode languageCode,
+                                                           @NonNull final AmazonComprehendAsync comprehendClient);
+
+    // Stitch the results of the chunks of a text over the document limit into the SingularResponse of the whole text
+    SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                        @NonNull final List<JSONObject> chunkResultList,
+                                        @NonNull final List<TextChunk> chunkList);
 }
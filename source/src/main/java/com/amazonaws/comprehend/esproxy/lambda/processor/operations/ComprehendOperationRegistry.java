@@ -0,0 +1,94 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the ComprehendOperation handlers, built once per container
+ * The operations are stateless, a single instance of each one serves every call. Each registration also keeps the
+ * metadata of its operation, so it is read without going through the handler on every call.
+ */
+public class ComprehendOperationRegistry {
+    private final static Map<ComprehendOperationEnum, Registration> REGISTRY =
+            new EnumMap<>(ComprehendOperationEnum.class);
+
+    static {
+        register(ComprehendOperationEnum.DetectDominantLanguage, new DetectDominantLanguage(),
+                Constants.LANGUAGES_KEY_NAME);
+        register(ComprehendOperationEnum.DetectEntities, new DetectEntities(), Constants.ENTITIES_KEY_NAME);
+        register(ComprehendOperationEnum.DetectKeyPhrases, new DetectKeyPhrases(), Constants.KEYPHRASES_KEY_NAME);
+        register(ComprehendOperationEnum.DetectSentiment, new DetectSentiment(), Constants.SENTIMENT_KEY_NAME);
+        register(ComprehendOperationEnum.DetectSyntax, new DetectSyntax(), Constants.SYNTAX_TOKENS_KEY_NAME);
+    }
+
+    /**
+     * Register the handler of an operation, replacing the current one
+     * The registry is not synchronized, the handlers must be registered before the container serves any request
+     *
+     * @param operation     The Comprehend operation
+     * @param handler       The stateless handler of the operation
+     * @param resultKeyName The key of the operation output in the Comprehend result. i.e. entities, keyPhrases
+     */
+    public static void register(@NonNull final ComprehendOperationEnum operation,
+                                @NonNull final ComprehendOperation handler,
+                                @NonNull final String resultKeyName) {
+        REGISTRY.put(operation, new Registration(handler, resultKeyName));
+    }
+
+    public static ComprehendOperation getOperation(@NonNull final ComprehendOperationEnum operation) {
+        return getRegistration(operation).getHandler();
+    }
+
+    public static Registration getRegistration(@NonNull final ComprehendOperationEnum operation) {
+        Registration registration = REGISTRY.get(operation);
+        if (registration == null) {
+            throw new IllegalArgumentException("Illegal ComprehendOperation");
+        }
+        return registration;
+    }
+
+    /**
+     * The handler of an operation and its metadata
+     */
+    @Getter
+    public static class Registration {
+        private final ComprehendOperation handler;
+
+        private final List<String> visualizationNameList;
+
+        private final String resultKeyName;
+
+        // The limits of the batch requests, the same for every operation as of now
+        private final int maxBatchSize = Constants.MAX_BATCH_SIZE;
+
+        private final int maxDocumentBytes = Constants.MAX_DOCUMENT_BYTES;
+
+        Registration(@NonNull final ComprehendOperation handler, @NonNull final String resultKeyName) {
+            this.handler = handler;
+            this.visualizationNameList =
+                    Collections.unmodifiableList(Arrays.asList(handler.getVisualizationNameList().clone()));
+            this.resultKeyName = resultKeyName;
+        }
+    }
+}
@@ -15,23 +15,38 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageResult;
 import com.amazonaws.services.comprehend.model.DetectDominantLanguageRequest;
 import com.amazonaws.services.comprehend.model.DetectDominantLanguageResult;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @NoArgsConstructor
 public class DetectDominantLanguage implements ComprehendOperation {
     private static final String[] VISUALIZATION_NAME_LIST = {};
 
+    private static final String LANGUAGE_CODE_KEY_NAME = "languageCode";
+
+    private static final String SCORE_KEY_NAME = "score";
+
     @Override
     public String[] getVisualizationNameList() {
         return VISUALIZATION_NAME_LIST;
@@ -50,7 +65,7 @@ public class DetectDominantLanguage implements ComprehendOperation {
                 = new DetectDominantLanguageRequest().withText(content);
         DetectDominantLanguageResult detectDominantLanguageResult = comprehendClient.detectDominantLanguage(request);
 
-        return new SingularResponse(fieldNameAndOperation, new JSONObject(detectDominantLanguageResult), null);
+        return toSingularResponse(fieldNameAndOperation, detectDominantLanguageResult);
     }
 
     /**
@@ -67,10 +82,98 @@ public class DetectDominantLanguage implements ComprehendOperation {
         BatchDetectDominantLanguageResult batchDetectDominantLanguageResult =
                 comprehendClient.batchDetectDominantLanguage(request);
 
-        return new BatchResponse<>(
-                fieldLocatorList,
-                batchDetectDominantLanguageResult.getResultList(),
-                batchDetectDominantLanguageResult.getErrorList(), null);
+        return toBatchResponse(fieldLocatorList, batchDetectDominantLanguageResult);
     }
 
+    /**
+     * Send out DetectDominantLanguageRequest asynchronously, complete with SingularResponse that stores
+     * DetectDominantLanguageResult
+     * Results are not flattened
+     */
+    @Override
+    public CompletableFuture<SingularResponse> sendSingularRequestAsync(
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final String content,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        DetectDominantLanguageRequest request
+                = new DetectDominantLanguageRequest().withText(content);
+        ComprehendAsyncHandler<DetectDominantLanguageRequest, DetectDominantLanguageResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.detectDominantLanguageAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toSingularResponse(fieldNameAndOperation, result));
+    }
+
+    /**
+     * Send out BatchDetectDominantLanguageRequest asynchronously, complete with BatchResponse that stores
+     * BatchDetectDominantLanguageResult
+     * Results are not flattened
+     */
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchRequestAsync(
+            @NonNull final List<BatchFieldLocator> fieldLocatorList,
+            @NonNull final List<String> contentList,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        BatchDetectDominantLanguageRequest request
+                = new BatchDetectDominantLanguageRequest().withTextList(contentList);
+        ComprehendAsyncHandler<BatchDetectDominantLanguageRequest, BatchDetectDominantLanguageResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.batchDetectDominantLanguageAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toBatchResponse(fieldLocatorList, result));
+    }
+
+    /**
+     * Stitch the DetectDominantLanguage results of the chunks, the score of each language is averaged weighted by the
+     * chunk lengths, the languages are sorted by their averaged score
+     * Results are not flattened
+     */
+    @Override
+    public SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                               @NonNull final List<JSONObject> chunkResultList,
+                                               @NonNull final List<TextChunk> chunkList) {
+        double[] weights = ChunkResultStitcher.getWeights(chunkList);
+        Map<String, Double> languageScoreMap = new HashMap<>();
+        for (int i = 0; i < chunkResultList.size(); i++) {
+            JSONArray chunkLanguageArray = chunkResultList.get(i).getJSONArray(Constants.LANGUAGES_KEY_NAME);
+            for (int j = 0; j < chunkLanguageArray.length(); j++) {
+                JSONObject language = chunkLanguageArray.getJSONObject(j);
+                languageScoreMap.merge(language.getString(LANGUAGE_CODE_KEY_NAME),
+                        weights[i] * language.getDouble(SCORE_KEY_NAME), Double::sum);
+            }
+        }
+        JSONArray languageArray = new JSONArray();
+        languageScoreMap.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .forEach(entry -> languageArray.put(new JSONObject()
+                        .put(LANGUAGE_CODE_KEY_NAME, entry.getKey())
+                        .put(SCORE_KEY_NAME, entry.getValue())));
+
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.LANGUAGES_KEY_NAME, languageArray), null);
+    }
+
+    private static SingularResponse toSingularResponse(@NonNull final String fieldNameAndOperation,
+                                                       @NonNull final DetectDominantLanguageResult result) {
+        return new SingularResponse(fieldNameAndOperation, new JSONObject().put(Constants.LANGUAGES_KEY_NAME,
+                ComprehendResultWriter.writeList(result.getLanguages(), ComprehendResultWriter::write)), null);
+    }
+
+    private static BatchResponse toBatchResponse(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                 @NonNull final BatchDetectDominantLanguageResult result) {
+        List<BatchItemResult> resultItemList = new ArrayList<>();
+        for (BatchDetectDominantLanguageItemResult resultItem : result.getResultList()) {
+            JSONArray languageArray =
+                    ComprehendResultWriter.writeList(resultItem.getLanguages(), ComprehendResultWriter::write);
+            resultItemList.add(BatchItemResult.success(resultItem.getIndex(),
+                    new JSONObject().put(Constants.LANGUAGES_KEY_NAME, languageArray), null));
+        }
+
+        return new BatchResponse(
+                fieldLocatorList,
+                resultItemList,
+                result.getErrorList());
+    }
 }
@@ -15,27 +15,34 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.comprehend.model.BatchDetectEntitiesItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectEntitiesRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectEntitiesResult;
 import com.amazonaws.services.comprehend.model.DetectEntitiesRequest;
 import com.amazonaws.services.comprehend.model.DetectEntitiesResult;
-import com.amazonaws.services.comprehend.model.Entity;
 import lombok.NonNull;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class DetectEntities implements ComprehendOperation {
     private static final String[] VISUALIZATION_NAME_LIST = {"entity-commercial-item", "entity-event",
             "entity-location", "entity-organization", "entity-person", "entity-title"};
 
+    private static final String ENTITY_TYPE_KEY_NAME = "type";
+
     @Override
     public String[] getVisualizationNameList() {
         return VISUALIZATION_NAME_LIST;
@@ -54,8 +61,7 @@ public class DetectEntities implements ComprehendOperation {
                 = new DetectEntitiesRequest().withText(content).withLanguageCode(languageCode.toString());
         DetectEntitiesResult detectEntitiesResult = comprehendClient.detectEntities(request);
 
-        return new SingularResponse(fieldNameAndOperation, new JSONObject(detectEntitiesResult),
-                flattenEntityList(detectEntitiesResult.getEntities()));
+        return toSingularResponse(fieldNameAndOperation, detectEntitiesResult);
     }
 
     /**
@@ -71,37 +77,98 @@ public class DetectEntities implements ComprehendOperation {
                 = new BatchDetectEntitiesRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
         BatchDetectEntitiesResult batchDetectEntitiesResult = comprehendClient.batchDetectEntities(request);
 
-        List<JSONObject> flattenedEntityList = new ArrayList<>();
+        return toBatchResponse(fieldLocatorList, batchDetectEntitiesResult);
+    }
+
+    /**
+     * Send out DetectEntitiesRequest asynchronously, complete with SingularResponse that stores DetectEntitiesResult
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<SingularResponse> sendSingularRequestAsync(
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final String content,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        DetectEntitiesRequest request
+                = new DetectEntitiesRequest().withText(content).withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<DetectEntitiesRequest, DetectEntitiesResult> handler = new ComprehendAsyncHandler<>();
+        comprehendClient.detectEntitiesAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toSingularResponse(fieldNameAndOperation, result));
+    }
+
+    /**
+     * Send out BatchDetectEntitiesRequest asynchronously, complete with BatchResponse that stores
+     * BatchDetectEntitiesResult
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchRequestAsync(
+            @NonNull final List<BatchFieldLocator> fieldLocatorList,
+            @NonNull final List<String> contentList,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        BatchDetectEntitiesRequest request
+                = new BatchDetectEntitiesRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<BatchDetectEntitiesRequest, BatchDetectEntitiesResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.batchDetectEntitiesAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toBatchResponse(fieldLocatorList, result));
+    }
+
+    /**
+     * Stitch the DetectEntities results of the chunks, the entity offsets are shifted to the whole text
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                               @NonNull final List<JSONObject> chunkResultList,
+                                               @NonNull final List<TextChunk> chunkList) {
+        JSONArray entityArray =
+                ChunkResultStitcher.concatShifted(chunkResultList, chunkList, Constants.ENTITIES_KEY_NAME);
+
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.ENTITIES_KEY_NAME, entityArray),
+                flattenEntityArray(entityArray));
+    }
+
+    private static SingularResponse toSingularResponse(@NonNull final String fieldNameAndOperation,
+                                                       @NonNull final DetectEntitiesResult detectEntitiesResult) {
+        JSONArray entityArray =
+                ComprehendResultWriter.writeList(detectEntitiesResult.getEntities(), ComprehendResultWriter::write);
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.ENTITIES_KEY_NAME, entityArray), flattenEntityArray(entityArray));
+    }
+
+    private static BatchResponse toBatchResponse(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                 @NonNull final BatchDetectEntitiesResult batchDetectEntitiesResult) {
+        List<BatchItemResult> resultItemList = new ArrayList<>();
         for (BatchDetectEntitiesItemResult resultItem : batchDetectEntitiesResult.getResultList()) {
-            flattenedEntityList.add(flattenEntityList(resultItem.getEntities()));
+            JSONArray entityArray =
+                    ComprehendResultWriter.writeList(resultItem.getEntities(), ComprehendResultWriter::write);
+            resultItemList.add(BatchItemResult.success(resultItem.getIndex(),
+                    new JSONObject().put(Constants.ENTITIES_KEY_NAME, entityArray), flattenEntityArray(entityArray)));
         }
 
-        return new BatchResponse<>(
+        return new BatchResponse(
                 fieldLocatorList,
-                batchDetectEntitiesResult.getResultList(),
-                batchDetectEntitiesResult.getErrorList(), flattenedEntityList);
+                resultItemList,
+                batchDetectEntitiesResult.getErrorList());
     }
 
     /**
-     * Flatten the entityList to JSONObject
+     * Flatten the written entities to JSONObject, the entities are shared with the result
      *
-     * @param entityList The received entityList from Comprehend response
+     * @param entityArray The entities of the Comprehend response, written by ComprehendResultWriter
      * @return JSONObject that contains flattened EntityList as JSONArray
      */
-    private static JSONObject flattenEntityList(@NonNull final List<Entity> entityList) {
-        JSONObject flattenedEntityObject = new JSONObject();
-        for (Entity entity : entityList) {
-            try {
-                // If the entity type exists, add the new entity to the JSONArray, otherwise create a new JSONObject
-                if (flattenedEntityObject.has(entity.getType())) {
-                    flattenedEntityObject.getJSONArray(entity.getType()).put(new JSONObject(entity));
-                } else {
-                    flattenedEntityObject.put(entity.getType(), Collections.singletonList((new JSONObject(entity))));
-                }
-            } catch (JSONException e) {
-                return null;
-            }
+    private static JSONObject flattenEntityArray(@NonNull final JSONArray entityArray) {
+        try {
+            return ChunkResultStitcher.groupBy(entityArray, entity -> entity.getString(ENTITY_TYPE_KEY_NAME));
+        } catch (JSONException e) {
+            return null;
         }
-        return flattenedEntityObject;
     }
 }
@@ -15,22 +15,26 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectKeyPhrasesResult;
 import com.amazonaws.services.comprehend.model.DetectKeyPhrasesRequest;
 import com.amazonaws.services.comprehend.model.DetectKeyPhrasesResult;
 import lombok.NonNull;
-import org.json.JSONException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 public class DetectKeyPhrases implements ComprehendOperation {
     private static final String[] VISUALIZATION_NAME_LIST = {"keyphrase-heat-map", "keyphrase-cloud"};
@@ -53,8 +57,7 @@ public class DetectKeyPhrases implements ComprehendOperation {
                 .withLanguageCode(languageCode.toString());
         DetectKeyPhrasesResult detectKeyPhraseResult = comprehendClient.detectKeyPhrases(request);
 
-        return new SingularResponse(fieldNameAndOperation, new JSONObject(detectKeyPhraseResult),
-                new JSONObject(detectKeyPhraseResult));
+        return toSingularResponse(fieldNameAndOperation, detectKeyPhraseResult);
     }
 
     /**
@@ -70,23 +73,89 @@ public class DetectKeyPhrases implements ComprehendOperation {
                 = new BatchDetectKeyPhrasesRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
         BatchDetectKeyPhrasesResult batchDetectKeyPhrasesResult = comprehendClient.batchDetectKeyPhrases(request);
 
-        List<JSONObject> copiedKeyPhrasesList = new ArrayList<>();
+        return toBatchResponse(fieldLocatorList, batchDetectKeyPhrasesResult);
+    }
+
+    /**
+     * Send out DetectKeyPhrasesRequest asynchronously, complete with SingularResponse that stores
+     * DetectKeyPhrasesResult
+     * Results are copied for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<SingularResponse> sendSingularRequestAsync(
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final String content,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        DetectKeyPhrasesRequest request = new DetectKeyPhrasesRequest().withText(content)
+                .withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<DetectKeyPhrasesRequest, DetectKeyPhrasesResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.detectKeyPhrasesAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toSingularResponse(fieldNameAndOperation, result));
+    }
+
+    /**
+     * Send out BatchDetectKeyPhrasesRequest asynchronously, complete with BatchResponse that stores
+     * BatchDetectKeyPhrasesResult
+     * Results are copied for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchRequestAsync(
+            @NonNull final List<BatchFieldLocator> fieldLocatorList,
+            @NonNull final List<String> contentList,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        BatchDetectKeyPhrasesRequest request
+                = new BatchDetectKeyPhrasesRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<BatchDetectKeyPhrasesRequest, BatchDetectKeyPhrasesResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.batchDetectKeyPhrasesAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toBatchResponse(fieldLocatorList, result));
+    }
+
+    /**
+     * Stitch the DetectKeyPhrases results of the chunks, the key phrase offsets are shifted to the whole text
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                               @NonNull final List<JSONObject> chunkResultList,
+                                               @NonNull final List<TextChunk> chunkList) {
+        JSONArray keyPhraseArray =
+                ChunkResultStitcher.concatShifted(chunkResultList, chunkList, Constants.KEYPHRASES_KEY_NAME);
+
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray),
+                new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray));
+    }
+
+    private static SingularResponse toSingularResponse(@NonNull final String fieldNameAndOperation,
+                                                       @NonNull final DetectKeyPhrasesResult detectKeyPhraseResult) {
+        JSONArray keyPhraseArray =
+                ComprehendResultWriter.writeList(detectKeyPhraseResult.getKeyPhrases(), ComprehendResultWriter::write);
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray),
+                new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray));
+    }
+
+    private static BatchResponse toBatchResponse(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                 @NonNull final BatchDetectKeyPhrasesResult batchDetectKeyPhrasesResult) {
+        List<BatchItemResult> resultItemList = new ArrayList<>();
 
-        // Copy KeyPhrases result
+        // The flattened result holds the same key phrases
         for (BatchDetectKeyPhrasesItemResult resultItem : batchDetectKeyPhrasesResult.getResultList()) {
-            // Parse List<KeyPhrase> to List<JSONObject>
-            List<JSONObject> keyPhraseJsonList = resultItem.getKeyPhrases()
-                    .stream().map(JSONObject::new).collect(Collectors.toList());
-            try {
-                // Add the index key and JSONObject list to the copied list
-                copiedKeyPhrasesList.add(new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseJsonList));
-            } catch (JSONException e) {
-                copiedKeyPhrasesList.add(null);
-            }
+            JSONArray keyPhraseArray =
+                    ComprehendResultWriter.writeList(resultItem.getKeyPhrases(), ComprehendResultWriter::write);
+            resultItemList.add(BatchItemResult.success(resultItem.getIndex(),
+                    new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray),
+                    new JSONObject().put(Constants.KEYPHRASES_KEY_NAME, keyPhraseArray)));
         }
-        return new BatchResponse<>(
+        return new BatchResponse(
                 fieldLocatorList,
-                batchDetectKeyPhrasesResult.getResultList(),
-                batchDetectKeyPhrasesResult.getErrorList(), copiedKeyPhrasesList);
+                resultItemList,
+                batchDetectKeyPhrasesResult.getErrorList());
     }
 }
@@ -15,24 +15,36 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
 import com.amazonaws.services.comprehend.model.DetectSentimentRequest;
 import com.amazonaws.services.comprehend.model.DetectSentimentResult;
+import com.amazonaws.services.comprehend.model.SentimentScore;
 import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @AllArgsConstructor
 public class DetectSentiment implements ComprehendOperation {
     private static final String[] VISUALIZATION_NAME_LIST =
             {"sentiment-neg-table", "sentiment-pos-table", "sentiment-time", "sentiment-type-count"};
 
+    // The keys of SentimentScore, each one is the lower case name of its sentiment
+    private static final String[] SENTIMENT_SCORE_KEY_LIST = {"positive", "negative", "neutral", "mixed"};
+
     @Override
     public String[] getVisualizationNameList() {
         return VISUALIZATION_NAME_LIST;
@@ -47,12 +59,10 @@ public class DetectSentiment implements ComprehendOperation {
                                                 @NonNull final String content,
                                                 @NonNull final LanguageCode languageCode,
                                                 @NonNull final AmazonComprehend comprehendClient) {
-        DetectSentimentRequest request = new DetectSentimentRequest().withText(content)
-                .withLanguageCode(languageCode.toString());
-        DetectSentimentResult detectSentimentResult = comprehendClient.detectSentiment(request);
-
-        return new SingularResponse(fieldNameAndOperation, new JSONObject(detectSentimentResult), null);
+        DetectSentimentResult detectSentimentResult =
+                comprehendClient.detectSentiment(buildSingularRequest(content, languageCode));
 
+        return toSingularResponse(fieldNameAndOperation, detectSentimentResult);
     }
 
     /**
@@ -64,13 +74,112 @@ public class DetectSentiment implements ComprehendOperation {
                                           @NonNull final List<String> contentList,
                                           @NonNull final LanguageCode languageCode,
                                           @NonNull final AmazonComprehend comprehendClient) {
-        BatchDetectSentimentRequest request
-                = new BatchDetectSentimentRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
-        BatchDetectSentimentResult batchDetectSentimentResult = comprehendClient.batchDetectSentiment(request);
+        BatchDetectSentimentResult batchDetectSentimentResult =
+                comprehendClient.batchDetectSentiment(buildBatchRequest(contentList, languageCode));
+
+        return toBatchResponse(fieldLocatorList, batchDetectSentimentResult);
+    }
+
+    /**
+     * Send out DetectSentimentRequest asynchronously, complete with SingularResponse that stores DetectSentimentResult
+     * Results are not flattened
+     */
+    @Override
+    public CompletableFuture<SingularResponse> sendSingularRequestAsync(
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final String content,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        ComprehendAsyncHandler<DetectSentimentRequest, DetectSentimentResult> handler = new ComprehendAsyncHandler<>();
+        comprehendClient.detectSentimentAsync(buildSingularRequest(content, languageCode), handler);
+
+        return handler.getFuture().thenApply(result -> toSingularResponse(fieldNameAndOperation, result));
+    }
+
+    /**
+     * Send out BatchDetectSentimentRequest asynchronously, complete with BatchResponse that stores
+     * BatchDetectSentimentResult
+     * Results are not flattened
+     */
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchRequestAsync(
+            @NonNull final List<BatchFieldLocator> fieldLocatorList,
+            @NonNull final List<String> contentList,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        ComprehendAsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.batchDetectSentimentAsync(buildBatchRequest(contentList, languageCode), handler);
+
+        return handler.getFuture().thenApply(result -> toBatchResponse(fieldLocatorList, result));
+    }
+
+    private static DetectSentimentRequest buildSingularRequest(@NonNull final String content,
+                                                               @NonNull final LanguageCode languageCode) {
+        return new DetectSentimentRequest().withText(content).withLanguageCode(languageCode.toString());
+    }
+
+    private static BatchDetectSentimentRequest buildBatchRequest(@NonNull final List<String> contentList,
+                                                                 @NonNull final LanguageCode languageCode) {
+        return new BatchDetectSentimentRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
+    }
 
-        return new BatchResponse<>(
+    /**
+     * Stitch the DetectSentiment results of the chunks, the scores are averaged weighted by the chunk lengths and the
+     * sentiment is the one with the highest averaged score
+     * Results are not flattened
+     */
+    @Override
+    public SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                               @NonNull final List<JSONObject> chunkResultList,
+                                               @NonNull final List<TextChunk> chunkList) {
+        double[] weights = ChunkResultStitcher.getWeights(chunkList);
+        JSONObject sentimentScore = new JSONObject();
+        String sentiment = null;
+        double maxScore = -1;
+        for (String scoreKey : SENTIMENT_SCORE_KEY_LIST) {
+            double score = 0;
+            for (int i = 0; i < chunkResultList.size(); i++) {
+                score += weights[i] * chunkResultList.get(i).getJSONObject(Constants.SENTIMENT_SCORE_KEY_NAME)
+                        .getDouble(scoreKey);
+            }
+            sentimentScore.put(scoreKey, score);
+            if (score > maxScore) {
+                maxScore = score;
+                sentiment = scoreKey.toUpperCase();
+            }
+        }
+
+        return new SingularResponse(fieldNameAndOperation, new JSONObject()
+                .put(Constants.SENTIMENT_KEY_NAME, sentiment)
+                .put(Constants.SENTIMENT_SCORE_KEY_NAME, sentimentScore), null);
+    }
+
+    private static SingularResponse toSingularResponse(@NonNull final String fieldNameAndOperation,
+                                                       @NonNull final DetectSentimentResult detectSentimentResult) {
+        JSONObject sentimentScore = writeSentimentScore(detectSentimentResult.getSentimentScore());
+        return new SingularResponse(fieldNameAndOperation, new JSONObject()
+                .put(Constants.SENTIMENT_KEY_NAME, detectSentimentResult.getSentiment())
+                .put(Constants.SENTIMENT_SCORE_KEY_NAME, sentimentScore), null);
+    }
+
+    private static BatchResponse toBatchResponse(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                 @NonNull final BatchDetectSentimentResult batchDetectSentimentResult) {
+        List<BatchItemResult> resultItemList = new ArrayList<>();
+        for (BatchDetectSentimentItemResult resultItem : batchDetectSentimentResult.getResultList()) {
+            resultItemList.add(BatchItemResult.success(resultItem.getIndex(), new JSONObject()
+                    .put(Constants.SENTIMENT_KEY_NAME, resultItem.getSentiment())
+                    .put(Constants.SENTIMENT_SCORE_KEY_NAME, writeSentimentScore(resultItem.getSentimentScore())),
+                    null));
+        }
+
+        return new BatchResponse(
                 fieldLocatorList,
-                batchDetectSentimentResult.getResultList(),
-                batchDetectSentimentResult.getErrorList(), null);
+                resultItemList,
+                batchDetectSentimentResult.getErrorList());
+    }
+
+    private static JSONObject writeSentimentScore(final SentimentScore sentimentScore) {
+        return sentimentScore == null ? null : ComprehendResultWriter.write(sentimentScore);
     }
 }
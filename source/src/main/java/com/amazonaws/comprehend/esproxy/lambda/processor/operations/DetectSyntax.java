@@ -15,26 +15,37 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.comprehend.model.BatchDetectSyntaxItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectSyntaxRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectSyntaxResult;
 import com.amazonaws.services.comprehend.model.DetectSyntaxRequest;
 import com.amazonaws.services.comprehend.model.DetectSyntaxResult;
-import com.amazonaws.services.comprehend.model.SyntaxToken;
 import lombok.NonNull;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class DetectSyntax implements ComprehendOperation {
     private static final String[] VISUALIZATION_NAME_LIST = {"syntax-noun", "syntax-verb"};
 
+    private static final String TOKEN_ID_KEY_NAME = "tokenId";
+
+    private static final String PART_OF_SPEECH_KEY_NAME = "partOfSpeech";
+
+    private static final String TAG_KEY_NAME = "tag";
+
     @Override
     public String[] getVisualizationNameList() {
         return VISUALIZATION_NAME_LIST;
@@ -53,8 +64,7 @@ public class DetectSyntax implements ComprehendOperation {
                 .withLanguageCode(languageCode.toString());
         DetectSyntaxResult detectSyntaxResult = comprehendClient.detectSyntax(request);
 
-        return new SingularResponse(fieldNameAndOperation, new JSONObject(detectSyntaxResult),
-                flattenSyntaxList(detectSyntaxResult.getSyntaxTokens()));
+        return toSingularResponse(fieldNameAndOperation, detectSyntaxResult);
     }
 
     /**
@@ -70,38 +80,102 @@ public class DetectSyntax implements ComprehendOperation {
                 = new BatchDetectSyntaxRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
         BatchDetectSyntaxResult batchDetectSyntaxResult = comprehendClient.batchDetectSyntax(request);
 
-        List<JSONObject> flattenedSyntaxList = new ArrayList<>();
+        return toBatchResponse(fieldLocatorList, batchDetectSyntaxResult);
+    }
+
+    /**
+     * Send out DetectSyntaxRequest asynchronously, complete with SingularResponse that stores DetectSyntaxResult
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<SingularResponse> sendSingularRequestAsync(
+            @NonNull final String fieldNameAndOperation,
+            @NonNull final String content,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        DetectSyntaxRequest request = new DetectSyntaxRequest().withText(content)
+                .withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<DetectSyntaxRequest, DetectSyntaxResult> handler = new ComprehendAsyncHandler<>();
+        comprehendClient.detectSyntaxAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toSingularResponse(fieldNameAndOperation, result));
+    }
+
+    /**
+     * Send out BatchDetectSyntaxRequest asynchronously, complete with BatchResponse that stores BatchDetectSyntaxResult
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchRequestAsync(
+            @NonNull final List<BatchFieldLocator> fieldLocatorList,
+            @NonNull final List<String> contentList,
+            @NonNull final LanguageCode languageCode,
+            @NonNull final AmazonComprehendAsync comprehendClient) {
+        BatchDetectSyntaxRequest request
+                = new BatchDetectSyntaxRequest().withTextList(contentList).withLanguageCode(languageCode.toString());
+        ComprehendAsyncHandler<BatchDetectSyntaxRequest, BatchDetectSyntaxResult> handler =
+                new ComprehendAsyncHandler<>();
+        comprehendClient.batchDetectSyntaxAsync(request, handler);
+
+        return handler.getFuture().thenApply(result -> toBatchResponse(fieldLocatorList, result));
+    }
+
+    /**
+     * Stitch the DetectSyntax results of the chunks, the token offsets are shifted to the whole text and the tokens
+     * are numbered again across the chunks
+     * Results are flattened for Kibana visualization
+     */
+    @Override
+    public SingularResponse stitchChunkResults(@NonNull final String fieldNameAndOperation,
+                                               @NonNull final List<JSONObject> chunkResultList,
+                                               @NonNull final List<TextChunk> chunkList) {
+        JSONArray tokenArray =
+                ChunkResultStitcher.concatShifted(chunkResultList, chunkList, Constants.SYNTAX_TOKENS_KEY_NAME);
+        for (int i = 0; i < tokenArray.length(); i++) {
+            tokenArray.getJSONObject(i).put(TOKEN_ID_KEY_NAME, i + 1);
+        }
+
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.SYNTAX_TOKENS_KEY_NAME, tokenArray),
+                flattenTokenArray(tokenArray));
+    }
+
+    private static SingularResponse toSingularResponse(@NonNull final String fieldNameAndOperation,
+                                                       @NonNull final DetectSyntaxResult detectSyntaxResult) {
+        JSONArray tokenArray =
+                ComprehendResultWriter.writeList(detectSyntaxResult.getSyntaxTokens(), ComprehendResultWriter::write);
+        return new SingularResponse(fieldNameAndOperation,
+                new JSONObject().put(Constants.SYNTAX_TOKENS_KEY_NAME, tokenArray), flattenTokenArray(tokenArray));
+    }
+
+    private static BatchResponse toBatchResponse(@NonNull final List<BatchFieldLocator> fieldLocatorList,
+                                                 @NonNull final BatchDetectSyntaxResult batchDetectSyntaxResult) {
+        List<BatchItemResult> resultItemList = new ArrayList<>();
         for (BatchDetectSyntaxItemResult resultItem : batchDetectSyntaxResult.getResultList()) {
-            flattenedSyntaxList.add(flattenSyntaxList(resultItem.getSyntaxTokens()));
+            JSONArray tokenArray =
+                    ComprehendResultWriter.writeList(resultItem.getSyntaxTokens(), ComprehendResultWriter::write);
+            resultItemList.add(BatchItemResult.success(resultItem.getIndex(),
+                    new JSONObject().put(Constants.SYNTAX_TOKENS_KEY_NAME, tokenArray), flattenTokenArray(tokenArray)));
         }
 
-        return new BatchResponse<>(
+        return new BatchResponse(
                 fieldLocatorList,
-                batchDetectSyntaxResult.getResultList(),
-                batchDetectSyntaxResult.getErrorList(), flattenedSyntaxList);
+                resultItemList,
+                batchDetectSyntaxResult.getErrorList());
     }
 
     /**
-     * Flatten the syntaxList to JSONObject
+     * Flatten the written syntax tokens to JSONObject, the tokens are shared with the result
      *
-     * @param syntaxList The received syntaxList from Comprehend response
+     * @param tokenArray The syntax tokens of the Comprehend response, written by ComprehendResultWriter
      * @return JSONObject that contains flattened SyntaxList as JSONArray
      */
-    private static JSONObject flattenSyntaxList(@NonNull final List<SyntaxToken> syntaxList) {
-        JSONObject flattenedSyntaxObject = new JSONObject();
-        for (SyntaxToken syntax : syntaxList) {
-            try {
-                // If the syntax type exists, add the new syntax to the JSONArray, otherwise create a new JSONObject
-                if (flattenedSyntaxObject.has(syntax.getPartOfSpeech().getTag())) {
-                    flattenedSyntaxObject.getJSONArray(syntax.getPartOfSpeech().getTag()).put(new JSONObject(syntax));
-                } else {
-                    flattenedSyntaxObject.put(syntax.getPartOfSpeech().getTag(),
-                            Collections.singletonList((new JSONObject(syntax))));
-                }
-            } catch (JSONException e) {
-                return null;
-            }
+    private static JSONObject flattenTokenArray(@NonNull final JSONArray tokenArray) {
+        try {
+            return ChunkResultStitcher.groupBy(tokenArray,
+                    token -> token.getJSONObject(PART_OF_SPEECH_KEY_NAME).getString(TAG_KEY_NAME));
+        } catch (JSONException e) {
+            return null;
         }
-        return flattenedSyntaxObject;
     }
 }
@@ -0,0 +1,53 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor.response;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendResultWriter;
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import org.json.JSONObject;
+
+/**
+ * Result of one text of a Comprehend batch API call, either the Comprehend result or the error of the text
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+public class BatchItemResult {
+    // The index of the text in the batch
+    private final int index;
+
+    // Null if the text failed
+    private final JSONObject result;
+
+    // Null if the text failed or the operation results do not require flattening. i.e. BatchDetectSentimentResult
+    private final JSONObject flattenedResult;
+
+    // Null if the text succeeded
+    private final BatchItemError error;
+
+    public static BatchItemResult success(final int index,
+                                          @NonNull final JSONObject result,
+                                          final JSONObject flattenedResult) {
+        return new BatchItemResult(index, result, flattenedResult, null);
+    }
+
+    public static BatchItemResult failure(@NonNull final BatchItemError error) {
+        return new BatchItemResult(error.getIndex(), null, null, error);
+    }
+
+    public boolean isError() {
+        return error != null;
+    }
+
+    // The same result of the text at another index, i.e. a retried text mapped back to its original batch
+    public BatchItemResult withIndex(final int index) {
+        return new BatchItemResult(index, result, flattenedResult,
+                error == null ? null : error.clone().withIndex(index));
+    }
+
+    // The Comprehend result of the text, or its errorCode and errorMessage if the text failed
+    public JSONObject toJSONObject() {
+        return isError() ? ComprehendResultWriter.write(error) : result;
+    }
+}
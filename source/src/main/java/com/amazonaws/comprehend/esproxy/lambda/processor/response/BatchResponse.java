@@ -3,55 +3,72 @@ package com.amazonaws.comprehend.esproxy.lambda.processor.response;
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
-import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.services.comprehend.model.BatchItemError;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Response list from Comprehend batch API call
- *
- * @param <T> Comprehend batch item result type. i.e. BatchDetectKeyPhrasesItemResult, BatchDetectEntitiesItemResult
  */
 @AllArgsConstructor
-public class BatchResponse<T> {
+public class BatchResponse {
     @Getter
     @NonNull
     private List<BatchFieldLocator> locatorList;
 
+    // The succeeded texts, in any order
     @Getter
     @NonNull
-    private List<T> batchResultItemList;
+    private List<BatchItemResult> batchResultItemList;
 
+    // The failed texts, in any order
+    @Getter
     @NonNull
     private List<BatchItemError> batchResultErrorList;
 
-    // Null if the operation results do not require flattening. i.e. BatchDetectSentimentResult
-    @Getter
-    private List<JSONObject> batchFlattenedResultList;
+    /**
+     * Merge the succeeded and failed texts in the order of the locators
+     * Every text is placed by its index, each index of the batch must be answered exactly once
+     *
+     * @return The result of each text, aligned with the locatorList
+     */
+    public List<BatchItemResult> getItemResultList() {
+        BatchItemResult[] itemResults = new BatchItemResult[locatorList.size()];
+        for (BatchItemResult itemResult : batchResultItemList) {
+            place(itemResults, itemResult);
+        }
+        for (BatchItemError error : batchResultErrorList) {
+            place(itemResults, BatchItemResult.failure(error));
+        }
+        for (BatchItemResult itemResult : itemResults) {
+            if (itemResult == null) {
+                throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
+            }
+        }
+        return Arrays.asList(itemResults);
+    }
 
+    // The Comprehend result or the error of each text, aligned with the locatorList
     public List<JSONObject> getBatchResultList() {
-        // Combine and sort the results by index
-        List<JSONObject> combinedResultList =
-                Stream.concat(batchResultItemList.stream().map(JSONObject::new),
-                        batchResultErrorList.stream().map(JSONObject::new))
-                        .sorted((JSONObject a, JSONObject b) -> {
-                            try {
-                                return a.getInt(Constants.BULK_INDEX_KEY_NAME) - b.getInt(Constants.BULK_INDEX_KEY_NAME);
-                            } catch (JSONException e) {
-                                throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
-                            }
-                        }).collect(Collectors.toList());
-
-        // Remove Index field from the result
-        combinedResultList.forEach(result -> result.remove(Constants.BULK_INDEX_KEY_NAME));
-        return combinedResultList;
+        List<BatchItemResult> itemResultList = getItemResultList();
+        List<JSONObject> resultList = new ArrayList<>(itemResultList.size());
+        for (BatchItemResult itemResult : itemResultList) {
+            resultList.add(itemResult.toJSONObject());
+        }
+        return resultList;
+    }
+
+    private static void place(@NonNull final BatchItemResult[] itemResults, @NonNull final BatchItemResult itemResult) {
+        int index = itemResult.getIndex();
+        if (index < 0 || index >= itemResults.length || itemResults[index] != null) {
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
+        }
+        itemResults[index] = itemResult;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor.response;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.elasticsearch.client.Response;
+import org.json.JSONObject;
+
+/**
+ * The response of a proxy request, either an OpenSearch Service response returned as is, or a JSON response the proxy
+ * assembled itself, i.e. the merged response of the sub-bulks a bulk request was sent in.
+ * It is turned into the API Gateway response by the request handler.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ProxyResponse {
+    // Null if the response was assembled by the proxy
+    @Getter
+    private final Response esResponse;
+
+    private final int statusCode;
+
+    // The JSON body of an assembled response
+    @Getter
+    private final String body;
+
+    public static ProxyResponse of(@NonNull final Response esResponse) {
+        return new ProxyResponse(esResponse, 0, null);
+    }
+
+    public static ProxyResponse of(final int statusCode, @NonNull final JSONObject body) {
+        return new ProxyResponse(null, statusCode, body.toString());
+    }
+
+    public int getStatusCode() {
+        return esResponse == null ? statusCode : esResponse.getStatusLine().getStatusCode();
+    }
+}
@@ -0,0 +1,45 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.processor.response;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.http.HttpStatus;
+import org.elasticsearch.client.Response;
+
+import java.util.List;
+
+/**
+ * The OpenSearch Service response of a sub-bulk, along with the actions the sub-bulk held
+ */
+@AllArgsConstructor
+@Getter
+public class SubBulkResponse {
+    @NonNull
+    private final List<BulkAction> actionList;
+
+    // Null if the sub-bulk was not sent, since an earlier sub-bulk it had to wait for was not executed
+    private final Response response;
+
+    // Whether the sub-bulk was executed, its items may still have failed
+    public boolean isExecuted() {
+        if (response == null) {
+            return false;
+        }
+        int statusCode = response.getStatusLine().getStatusCode();
+        return statusCode >= HttpStatus.SC_OK && statusCode < HttpStatus.SC_MULTIPLE_CHOICES;
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * An AsyncPermitLimiter that adapts its permit limit to Comprehend throttling
+ * The limit follows additive increase multiplicative decrease (AIMD).
+ * Every successful call grows the limit by 1 / limit, so the limit grows by about 1 per round of calls up to the
+ * maximum. A throttled call cuts the limit by the backoff ratio down to the minimum, the calls started before the
+ * last cut were sent at the higher limit and don't cut it again.
+ */
+public class AdaptivePermitLimiter extends AsyncPermitLimiter {
+    private final int minPermitLimit;
+
+    private final int maxPermitLimit;
+
+    private final double backoffRatio;
+
+    // The fractional limit, the permit limit is its integer part
+    private double adaptiveLimit;
+
+    private long lastBackoffNanos;
+
+    public AdaptivePermitLimiter(final int minPermitLimit, final int maxPermitLimit, final double backoffRatio) {
+        super(maxPermitLimit);
+        if (minPermitLimit <= 0 || minPermitLimit > maxPermitLimit) {
+            throw new IllegalArgumentException(String.format("The permit limit range must be positive, got [%d, %d]",
+                    minPermitLimit, maxPermitLimit));
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0 and 1, got " + backoffRatio);
+        }
+        this.minPermitLimit = minPermitLimit;
+        this.maxPermitLimit = maxPermitLimit;
+        this.backoffRatio = backoffRatio;
+        this.adaptiveLimit = maxPermitLimit;
+        this.lastBackoffNanos = System.nanoTime();
+    }
+
+    @Override
+    protected void onCallComplete(final long startNanos, final Throwable throwable) {
+        int permitLimit;
+        synchronized (this) {
+            if (isThrottling(throwable)) {
+                if (startNanos - lastBackoffNanos < 0) {
+                    return;
+                }
+                adaptiveLimit = Math.max(minPermitLimit, adaptiveLimit * backoffRatio);
+                lastBackoffNanos = System.nanoTime();
+            } else if (throwable == null) {
+                adaptiveLimit = Math.min(maxPermitLimit, adaptiveLimit + 1 / adaptiveLimit);
+            } else {
+                // Other failures say nothing about the capacity of the service
+                return;
+            }
+            permitLimit = (int) adaptiveLimit;
+            if (permitLimit == getPermitLimit()) {
+                return;
+            }
+        }
+        setPermitLimit(permitLimit);
+    }
+
+    // Whether the call failed because Comprehend throttled it
+    public static boolean isThrottling(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof AmazonServiceException
+                && RetryUtils.isThrottlingException((AmazonServiceException) cause);
+    }
+}
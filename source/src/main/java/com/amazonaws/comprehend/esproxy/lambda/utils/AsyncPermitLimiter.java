@@ -0,0 +1,160 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Bound the number of in flight asynchronous calls by a permit count
+ * A task that can't get a permit waits in a queue without holding a thread, it is started as soon as an in flight
+ * call completes and releases its permit. A task whose future is cancelled while waiting leaves the queue unstarted,
+ * a started one has the future of its call cancelled, so a nested limiter drops the call it still holds in its queue.
+ */
+public class AsyncPermitLimiter {
+    private final Queue<Runnable> waitingTasks = new ArrayDeque<>();
+
+    private int permitLimit;
+
+    private int inFlight = 0;
+
+    // Set while a thread is starting the waiting tasks, so a release from a completing task doesn't recurse into drain
+    private boolean draining = false;
+
+    public AsyncPermitLimiter(final int permitLimit) {
+        if (permitLimit <= 0) {
+            throw new IllegalArgumentException("The permit limit must be positive, got " + permitLimit);
+        }
+        this.permitLimit = permitLimit;
+    }
+
+    /**
+     * Start the asynchronous call once a permit is available, the permit is released when the call completes
+     *
+     * @param asyncCall The supplier that starts the asynchronous call
+     * @return The future of the call result, cancelling it drops the call if it is not started yet
+     */
+    public <T> CompletableFuture<T> submit(@NonNull final Supplier<CompletableFuture<T>> asyncCall) {
+        CompletableFuture<T> resultFuture = new CompletableFuture<>();
+        Runnable task = () -> start(asyncCall, resultFuture);
+        synchronized (this) {
+            waitingTasks.add(task);
+        }
+        // e.g. cancelled when the caller timed out waiting for it
+        resultFuture.whenComplete((result, throwable) -> {
+            if (resultFuture.isCancelled()) {
+                synchronized (this) {
+                    waitingTasks.remove(task);
+                }
+            }
+        });
+        drain();
+        return resultFuture;
+    }
+
+    public synchronized int getPermitLimit() {
+        return permitLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waitingTasks.size();
+    }
+
+    // Change the permit limit, the in flight calls above a lowered limit are not interrupted
+    protected void setPermitLimit(final int permitLimit) {
+        synchronized (this) {
+            this.permitLimit = Math.max(1, permitLimit);
+        }
+        drain();
+    }
+
+    /**
+     * Called when a started call completes, before its permit is released
+     *
+     * @param startNanos The System.nanoTime() when the call was started
+     * @param throwable  The failure of the call, null if the call succeeded
+     */
+    protected void onCallComplete(final long startNanos, final Throwable throwable) {
+    }
+
+    private <T> void start(@NonNull final Supplier<CompletableFuture<T>> asyncCall,
+                           @NonNull final CompletableFuture<T> resultFuture) {
+        // Cancelled after it was taken from the queue, the permit it got is handed back
+        if (resultFuture.isDone()) {
+            release();
+            return;
+        }
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> callFuture;
+        try {
+            callFuture = asyncCall.get();
+        } catch (RuntimeException e) {
+            onCallComplete(startNanos, e);
+            release();
+            resultFuture.completeExceptionally(e);
+            return;
+        }
+        resultFuture.whenComplete((result, throwable) -> {
+            if (resultFuture.isCancelled()) {
+                callFuture.cancel(false);
+            }
+        });
+        callFuture.whenComplete((result, throwable) -> {
+            onCallComplete(startNanos, throwable);
+            release();
+            if (throwable != null) {
+                resultFuture.completeExceptionally(throwable);
+            } else {
+                resultFuture.complete(result);
+            }
+        });
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    // Start the waiting tasks while permits are available
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                if (waitingTasks.isEmpty() || inFlight >= permitLimit) {
+                    draining = false;
+                    return;
+                }
+                task = waitingTasks.poll();
+                inFlight++;
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Retry policy for the failed items of Comprehend batch responses and the throttled batch calls, shared by all the
+ * batches of a bulk request
+ * The bulk has a budget of retried items, so a Comprehend outage can't multiply the calls of a bulk. Each retry is
+ * delayed by an exponential backoff with full jitter, so the retries of concurrent batches don't arrive together.
+ */
+public class BatchItemRetryPolicy {
+    // The item errors caused by the content itself, retrying them can't succeed
+    private final static Set<String> NON_RETRYABLE_ERROR_CODES = new HashSet<>(Arrays.asList(
+            "TextSizeLimitExceededException", "UnsupportedLanguageException", "InvalidRequestException",
+            "TEXT_SIZE_LIMIT_EXCEEDED", "UNSUPPORTED_LANGUAGE", "INVALID_REQUEST"));
+
+    private final ScheduledExecutorService retryScheduler;
+
+    private final AtomicInteger remainingBudget;
+
+    public BatchItemRetryPolicy(@NonNull final ScheduledExecutorService retryScheduler, final int retryBudget) {
+        this.retryScheduler = retryScheduler;
+        this.remainingBudget = new AtomicInteger(retryBudget);
+    }
+
+    public static boolean isRetryable(@NonNull final BatchItemError batchItemError) {
+        return !NON_RETRYABLE_ERROR_CODES.contains(batchItemError.getErrorCode());
+    }
+
+    /**
+     * Take up to itemCount items from the retry budget
+     *
+     * @param itemCount The number of items to be retried
+     * @return The number of items that can be retried, 0 once the budget runs out
+     */
+    public int acquire(final int itemCount) {
+        while (true) {
+            int remaining = remainingBudget.get();
+            int granted = Math.min(remaining, itemCount);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (remainingBudget.compareAndSet(remaining, remaining - granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Take itemCount items from the retry budget, all of them or none
+     *
+     * @param itemCount The number of items to be retried together
+     * @return true if the budget covers all the items, false otherwise and the budget is left as is
+     */
+    public boolean acquireAll(final int itemCount) {
+        while (true) {
+            int remaining = remainingBudget.get();
+            if (itemCount <= 0 || remaining < itemCount) {
+                return false;
+            }
+            if (remainingBudget.compareAndSet(remaining, remaining - itemCount)) {
+                return true;
+            }
+        }
+    }
+
+    public int getRemainingBudget() {
+        return remainingBudget.get();
+    }
+
+    /**
+     * Start the retry after the backoff delay of the attempt, no thread is held while waiting
+     *
+     * @param attempt The retry attempt, starting from 1
+     * @param retry   The supplier that starts the retried call
+     * @return The future of the retried call result
+     */
+    public <T> CompletableFuture<T> schedule(final int attempt, @NonNull final Supplier<CompletableFuture<T>> retry) {
+        CompletableFuture<T> resultFuture = new CompletableFuture<>();
+        retryScheduler.schedule(() -> {
+            try {
+                retry.get().whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        resultFuture.completeExceptionally(throwable);
+                    } else {
+                        resultFuture.complete(result);
+                    }
+                });
+            } catch (RuntimeException e) {
+                resultFuture.completeExceptionally(e);
+            }
+        }, getDelayMillis(attempt), TimeUnit.MILLISECONDS);
+        return resultFuture;
+    }
+
+    // Full jitter: a random delay up to the exponential backoff of the attempt
+    static long getDelayMillis(final int attempt) {
+        long backoff = Constants.BATCH_ITEM_RETRY_BASE_DELAY_MILLIS << Math.min(attempt - 1, 16);
+        return ThreadLocalRandom.current().nextLong(Math.min(backoff, Constants.BATCH_ITEM_RETRY_MAX_DELAY_MILLIS) + 1);
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool with a bounded queue and named threads, one per workload so a slow workload can't starve
+ * the others. Exposes gauges of its queue depth, active threads and rejected tasks.
+ */
+public class BoundedExecutor extends ThreadPoolExecutor implements WorkloadExecutor {
+    @Getter
+    private final String name;
+
+    private final RejectionCounter rejectionCounter;
+
+    /**
+     * @param name             The workload name, used as the thread name prefix
+     * @param threadCount      The number of threads of the pool
+     * @param queueCapacity    The number of tasks waiting for a thread before a task is rejected, the queue is
+     *                         unbounded with Integer.MAX_VALUE
+     * @param saturationPolicy What to do with a task once the queue is full
+     */
+    public BoundedExecutor(@NonNull final String name, final int threadCount, final int queueCapacity,
+                           @NonNull final SaturationPolicy saturationPolicy) {
+        this(name, threadCount, queueCapacity, new RejectionCounter(saturationPolicy == SaturationPolicy.ABORT
+                ? new ThreadPoolExecutor.AbortPolicy()
+                : (task, executor) -> task.run()));
+    }
+
+    private BoundedExecutor(final String name, final int threadCount, final int queueCapacity,
+                            final RejectionCounter rejectionCounter) {
+        super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(), rejectionCounter);
+        this.name = name;
+        this.rejectionCounter = rejectionCounter;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectionCounter.count.get();
+    }
+
+    private static class RejectionCounter implements RejectedExecutionHandler {
+        private final AtomicLong count = new AtomicLong();
+
+        private final RejectedExecutionHandler delegate;
+
+        private RejectionCounter(final RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable task, final ThreadPoolExecutor executor) {
+            count.incrementAndGet();
+            delegate.rejectedExecution(task, executor);
+        }
+    }
+}
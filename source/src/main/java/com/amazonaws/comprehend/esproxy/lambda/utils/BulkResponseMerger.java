@@ -0,0 +1,133 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SubBulkResponse;
+import lombok.NonNull;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.elasticsearch.client.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merge the responses of the sub-bulks a bulk request was flushed in into the response of the whole bulk
+ * The items keep the order of the sub-bulks, which is the order of the actions in the bulk.
+ * i.e.:
+ * {"took":30,"errors":false,"items":[{"index":{...}}]} and {"took":20,"errors":true,"items":[{"create":{...}}]}
+ * are merged as
+ * {"took":50,"errors":true,"items":[{"index":{...}},{"create":{...}}]}
+ * The actions of a sub-bulk rejected as a whole, e.g. throttled with a 429, and of the sub-bulks that were not sent
+ * after it, get an item with the status and error of the rejection, so the caller can retry only those items.
+ * i.e.:
+ * {"index":{"_index":"tweeter","_id":"1","status":429,"error":{"type":"es_rejected_execution_exception",...}}}
+ * A bulk none of whose sub-bulks was executed is answered with the first rejection as is.
+ */
+public class BulkResponseMerger {
+    /**
+     * Merge the sub-bulk responses
+     *
+     * @param subBulkResponseList The responses of the sub-bulks in the order of the bulk
+     * @return The merged bulk response, or the first rejection if no sub-bulk was executed
+     */
+    public static ProxyResponse merge(@NonNull final List<SubBulkResponse> subBulkResponseList) {
+        // The first sub-bulk rejected as a whole, the actions of the sub-bulks not sent fail with its status
+        Response rejectedResponse = subBulkResponseList.stream()
+                .filter(subBulkResponse -> subBulkResponse.getResponse() != null && !subBulkResponse.isExecuted())
+                .map(SubBulkResponse::getResponse)
+                .findFirst().orElse(null);
+        if (subBulkResponseList.stream().noneMatch(SubBulkResponse::isExecuted)) {
+            if (rejectedResponse == null) {
+                throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
+            }
+            return ProxyResponse.of(rejectedResponse);
+        }
+
+        long took = 0;
+        boolean errors = false;
+        JSONArray items = new JSONArray();
+        // The error of each rejection, a rejected body is read once
+        Map<Response, JSONObject> rejectionErrorMap = new IdentityHashMap<>();
+        for (SubBulkResponse subBulkResponse : subBulkResponseList) {
+            if (!subBulkResponse.isExecuted()) {
+                Response failedResponse = subBulkResponse.getResponse() == null ? rejectedResponse
+                        : subBulkResponse.getResponse();
+                if (failedResponse == null) {
+                    throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR);
+                }
+                int status = failedResponse.getStatusLine().getStatusCode();
+                JSONObject error = rejectionErrorMap.computeIfAbsent(failedResponse, BulkResponseMerger::getError);
+                for (BulkAction action : subBulkResponse.getActionList()) {
+                    items.put(getRejectedItem(action, status, error));
+                }
+                errors = true;
+                continue;
+            }
+            JSONObject body = new JSONObject(
+                    HTTPTransformer.transformHttpEntityToString(subBulkResponse.getResponse().getEntity()));
+            took += body.optLong(Constants.BULK_RESPONSE_TOOK_KEY);
+            errors |= body.optBoolean(Constants.BULK_RESPONSE_ERRORS_KEY);
+            JSONArray subBulkItems = body.optJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY);
+            for (int i = 0; subBulkItems != null && i < subBulkItems.length(); i++) {
+                items.put(subBulkItems.get(i));
+            }
+        }
+        JSONObject mergedBody = new JSONObject()
+                .put(Constants.BULK_RESPONSE_TOOK_KEY, took)
+                .put(Constants.BULK_RESPONSE_ERRORS_KEY, errors)
+                .put(Constants.BULK_RESPONSE_ITEMS_KEY, items);
+        return ProxyResponse.of(HttpStatus.SC_OK, mergedBody);
+    }
+
+    // The item of an action that was not executed, the index and id are left out when the action has none
+    private static JSONObject getRejectedItem(@NonNull final BulkAction action,
+                                              final int status,
+                                              @NonNull final JSONObject error) {
+        JSONObject itemResult = new JSONObject()
+                .putOpt(Constants.BULK_INDEX_ACTION_KEY_NAME, action.getIndexName())
+                .putOpt(Constants.BULK_ID_ACTION_KEY_NAME, action.getId())
+                .put(Constants.BULK_RESPONSE_STATUS_KEY, status)
+                .put(Constants.BULK_RESPONSE_ERROR_KEY, error);
+        return new JSONObject().put(action.getName(), itemResult);
+    }
+
+    // The error OpenSearch Service rejected the sub-bulk with, or one built from the status if the body has none
+    private static JSONObject getError(@NonNull final Response response) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            try {
+                JSONObject error = new JSONObject(HTTPTransformer.transformHttpEntityToString(entity))
+                        .optJSONObject(Constants.BULK_RESPONSE_ERROR_KEY);
+                if (error != null) {
+                    return error;
+                }
+            } catch (JSONException e) {
+                // The body is not an OpenSearch Service error, e.g. the page of a load balancer
+            }
+        }
+        return new JSONObject()
+                .put(Constants.BULK_RESPONSE_ERROR_TYPE_KEY, Constants.BULK_SUB_REQUEST_REJECTED_ERROR_TYPE)
+                .put(Constants.BULK_RESPONSE_ERROR_REASON_KEY, String.format("The sub-bulk was rejected with status %d",
+                        response.getStatusLine().getStatusCode()));
+    }
+}
@@ -0,0 +1,45 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import lombok.NonNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The AdaptivePermitLimiter of each Comprehend operation
+ * Comprehend throttles each API separately, so a throttled operation slows down without holding back the others
+ */
+public class ComprehendConcurrencyLimiter {
+    private final Map<ComprehendOperationEnum, AdaptivePermitLimiter> limiterMap =
+            new EnumMap<>(ComprehendOperationEnum.class);
+
+    public ComprehendConcurrencyLimiter(final int maxPermitLimit) {
+        for (ComprehendOperationEnum operation : ComprehendOperationEnum.values()) {
+            limiterMap.put(operation, new AdaptivePermitLimiter(Constants.ADAPTIVE_MIN_PERMIT_LIMIT,
+                    maxPermitLimit, Constants.ADAPTIVE_BACKOFF_RATIO));
+        }
+    }
+
+    public AdaptivePermitLimiter getLimiter(@NonNull final ComprehendOperationEnum operation) {
+        return limiterMap.get(operation);
+    }
+
+    // The current permit limit of the operation
+    public int getPermitLimit(@NonNull final ComprehendOperationEnum operation) {
+        return limiterMap.get(operation).getPermitLimit();
+    }
+}
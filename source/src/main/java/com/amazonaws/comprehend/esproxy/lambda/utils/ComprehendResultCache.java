@@ -0,0 +1,143 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In memory cache of Comprehend results in the warm Lambda container, so a text that was already comprehended is
+ * neither sent to Comprehend nor billed again.
+ * The results are keyed by (operation, languageCode, SHA-256 of the text) and the cache is bounded by the estimated
+ * size of the cached results. The least recently used results are evicted first and every result expires after the TTL.
+ */
+public class ComprehendResultCache {
+    // Estimated size of a cache entry besides the result strings: key, hash and cache bookkeeping
+    private final static int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final Cache<CacheKey, CachedResult> cache;
+
+    public ComprehendResultCache(final long maximumBytes) {
+        this(maximumBytes, TimeUnit.SECONDS.toNanos(Constants.COMPREHEND_RESULT_CACHE_TTL_SECONDS),
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ComprehendResultCache(final long maximumBytes, final long ttlNanos, @NonNull final Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((CacheKey key, CachedResult value) -> value.getWeight())
+                .expireAfterWrite(ttlNanos, TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the cached result of a text
+     *
+     * @param operation    The Comprehend operation
+     * @param languageCode The language of the text
+     * @param text         The text to be comprehended
+     * @return The cached result, null if the text was not comprehended yet or its result was evicted
+     */
+    public CachedResult get(@NonNull final ComprehendOperationEnum operation,
+                            @NonNull final LanguageCode languageCode,
+                            @NonNull final String text) {
+        return cache.getIfPresent(new CacheKey(operation, languageCode, text));
+    }
+
+    /**
+     * Cache the successful result of a text, Comprehend errors must not be cached
+     *
+     * @param operation       The Comprehend operation
+     * @param languageCode    The language of the text
+     * @param text            The comprehended text
+     * @param result          The Comprehend result
+     * @param flattenedResult The flattened result for Kibana, null if the operation results are not flattened
+     */
+    public void put(@NonNull final ComprehendOperationEnum operation,
+                    @NonNull final LanguageCode languageCode,
+                    @NonNull final String text,
+                    @NonNull final JSONObject result,
+                    final JSONObject flattenedResult) {
+        cache.put(new CacheKey(operation, languageCode, text), new CachedResult(result.toString(),
+                flattenedResult == null ? null : flattenedResult.toString()));
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @EqualsAndHashCode
+    private static class CacheKey {
+        private final ComprehendOperationEnum operation;
+
+        // Null for the operations that detect the language themselves
+        private final LanguageCode languageCode;
+
+        private final HashCode textHash;
+
+        CacheKey(@NonNull final ComprehendOperationEnum operation,
+                 @NonNull final LanguageCode languageCode,
+                 @NonNull final String text) {
+            this.operation = operation;
+            this.languageCode = operation == ComprehendOperationEnum.DetectDominantLanguage ? null : languageCode;
+            this.textHash = Hashing.sha256().hashString(text, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * A cached Comprehend result, kept as JSON strings so every hit gets its own JSONObject to modify
+     */
+    @AllArgsConstructor
+    public static class CachedResult {
+        @NonNull
+        private final String result;
+
+        private final String flattenedResult;
+
+        public JSONObject getResult() {
+            return new JSONObject(result);
+        }
+
+        // Null if the operation results are not flattened
+        public JSONObject getFlattenedResult() {
+            return flattenedResult == null ? null : new JSONObject(flattenedResult);
+        }
+
+        private int getWeight() {
+            // Java strings take up to 2 bytes per character
+            int characters = result.length() + (flattenedResult == null ? 0 : flattenedResult.length());
+            return ENTRY_OVERHEAD_BYTES + 2 * characters;
+        }
+    }
+}
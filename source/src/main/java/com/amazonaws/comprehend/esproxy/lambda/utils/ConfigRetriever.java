@@ -14,44 +14,253 @@
 package com.amazonaws.comprehend.esproxy.lambda.utils;
 
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
+import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
 import com.amazonaws.comprehend.esproxy.lambda.model.PreprocessingConfigRequest;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ConfigSerializer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * To retrieve the stored Comprehend OpenSearch Service Preprocessing Configuration
+ * The retrieved configuration is cached in the warm Lambda container and keyed on the version of the config document.
+ * Within the TTL the cached configuration is served from memory, once the TTL expires a source-less GET revalidates
+ * the cached version and the full document is only fetched again when the version changed.
+ * Concurrent retrievals share a single refresh in flight, and a refresh started before an invalidate never publishes
+ * its configuration to the cache.
  */
-@AllArgsConstructor
 public class ConfigRetriever {
     private final ComprehendSerializer<PreprocessingConfigRequest> configSerializer;
 
     private final OpenSearchServiceClient esClient;
 
+    private final long cacheTtlNanos;
+
+    private final Ticker ticker;
+
+    // Read without the lock on the fast path, written under the lock
+    private volatile CachedConfig cachedConfig;
+
+    // The refresh in flight, shared by the concurrent retrievals, guarded by the lock
+    private CompletableFuture<CachedConfig> refreshFuture;
+
+    // Bumped by every invalidate, a refresh only publishes its configuration if no invalidate happened since it started
+    private long generation;
+
+    public ConfigRetriever(@NonNull final ComprehendSerializer<PreprocessingConfigRequest> configSerializer,
+                           @NonNull final OpenSearchServiceClient esClient) {
+        this(configSerializer, esClient, TimeUnit.SECONDS.toNanos(Constants.CONFIG_CACHE_TTL_SECONDS),
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ConfigRetriever(@NonNull final ComprehendSerializer<PreprocessingConfigRequest> configSerializer,
+                    @NonNull final OpenSearchServiceClient esClient,
+                    final long cacheTtlNanos,
+                    @NonNull final Ticker ticker) {
+        this.configSerializer = configSerializer;
+        this.esClient = esClient;
+        this.cacheTtlNanos = cacheTtlNanos;
+        this.ticker = ticker;
+    }
+
     /**
      * Retrieve the stored Comprehend OpenSearch Service Preprocessing Configuration
      *
      * @return Preprocessing configuration as a Map(indexName_fieldName pair, ComprehendConfiguration)
      */
     public Map<String, ComprehendConfiguration> retrieveStoredConfig() {
-        Response esConfigResponse = esClient.performRequest(HttpGet.METHOD_NAME,
-                String.format("%s%s", Constants.CONFIG_PATH, "/_source"));
+        // Callers are free to modify the returned map, so never hand out the cached instance
+        return new HashMap<>(FutureHelper.join(getCachedConfigAsync()).getConfigMap());
+    }
+
+    /**
+     * Retrieve the stored Comprehend OpenSearch Service Preprocessing Configuration compiled into a routing table
+     * The router is compiled once per config version and shared by all requests
+     *
+     * @return Preprocessing configuration as a ComprehendConfigRouter
+     */
+    public ComprehendConfigRouter retrieveConfigRouter() {
+        return FutureHelper.join(retrieveConfigRouterAsync());
+    }
 
+    /**
+     * Retrieve the compiled routing table without blocking the calling thread
+     * The future is already completed when the cached configuration is within the TTL,
+     * so callers can start the retrieval and overlap the config fetch with parsing the payload
+     *
+     * @return Future of the preprocessing configuration as a ComprehendConfigRouter
+     */
+    public CompletableFuture<ComprehendConfigRouter> retrieveConfigRouterAsync() {
+        return getCachedConfigAsync().thenApply(CachedConfig::getConfigRouter);
+    }
+
+    /**
+     * Drop the cached configuration, the next retrieval fetches the config document again
+     * Called after this container writes a new Preprocessing Configuration
+     */
+    public synchronized void invalidate() {
+        generation++;
+        cachedConfig = null;
+        // The retrievals after the invalidate don't join the refresh started before it
+        refreshFuture = null;
+    }
+
+    private CompletableFuture<CachedConfig> getCachedConfigAsync() {
+        final CachedConfig current = cachedConfig;
+        final long now = ticker.read();
+
+        if (isFresh(current, now)) {
+            return CompletableFuture.completedFuture(current);
+        }
+        synchronized (this) {
+            if (refreshFuture != null && !refreshFuture.isDone()) {
+                return refreshFuture;
+            }
+            // A refresh may have completed while waiting for the lock
+            final CachedConfig latest = cachedConfig;
+            if (isFresh(latest, now)) {
+                return CompletableFuture.completedFuture(latest);
+            }
+            final long refreshGeneration = generation;
+            CompletableFuture<CachedConfig> refreshed;
+            if (latest == null) {
+                refreshed = fetchConfigAsync(now);
+            } else {
+                refreshed = retrieveConfigVersionAsync().thenCompose(version -> latest.isSameVersion(version)
+                        // The config document was not modified since last fetch, extend the cached config
+                        ? CompletableFuture.completedFuture(latest.revalidatedAt(now))
+                        : fetchConfigAsync(now));
+            }
+            // The refresh is done once its configuration is published, so a retrieval after it hits the cache
+            refreshFuture = refreshed.whenComplete((config, error) -> {
+                if (config != null) {
+                    publish(config, refreshGeneration);
+                }
+            });
+            return refreshFuture;
+        }
+    }
+
+    private boolean isFresh(final CachedConfig config, final long now) {
+        return config != null && now - config.getValidatedAtNanos() < cacheTtlNanos;
+    }
+
+    // A refresh started before an invalidate is stale, its configuration is returned to its callers but not cached
+    private synchronized void publish(@NonNull final CachedConfig config, final long refreshGeneration) {
+        if (refreshGeneration == generation) {
+            cachedConfig = config;
+        }
+    }
+
+    // Fetch the config document together with its version
+    private CompletableFuture<CachedConfig> fetchConfigAsync(final long now) {
+        return esClient.performRequestAsync(HttpGet.METHOD_NAME, Constants.CONFIG_PATH)
+                .thenApply(esConfigResponse -> toCachedConfig(esConfigResponse, now));
+    }
+
+    private CachedConfig toCachedConfig(@NonNull final Response esConfigResponse, final long now) {
         if (esConfigResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
             // If no comprehend config was found, we will treat all requests as pass through
-            return Collections.emptyMap();
+            return new CachedConfig(Collections.emptyMap(), ComprehendConfigRouter.EMPTY,
+                    ConfigVersion.NOT_FOUND, now);
+        }
+        JSONObject configDocument = parseConfigDocument(esConfigResponse);
+        PreprocessingConfigRequest retrievedConfigRequest =
+                configSerializer.deserialize(configDocument.getJSONObject(Constants.CONFIG_SOURCE_KEY).toString());
+
+        Map<String, ComprehendConfiguration> configMap =
+                ConfigSerializer.transformConfigRequestToConfigMap(retrievedConfigRequest);
+
+        return new CachedConfig(Collections.unmodifiableMap(configMap), ComprehendConfigRouter.compile(configMap),
+                ConfigVersion.fromConfigDocument(configDocument), now);
+    }
+
+    // Retrieve only the version of the config document, the _source is not transferred
+    private CompletableFuture<ConfigVersion> retrieveConfigVersionAsync() {
+        Request versionRequest = new Request(HttpGet.METHOD_NAME, Constants.CONFIG_PATH);
+        versionRequest.addParameter(Constants.CONFIG_SOURCE_KEY, Boolean.FALSE.toString());
+
+        return esClient.performRequestAsync(versionRequest).thenApply(esVersionResponse -> {
+            if (esVersionResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                return ConfigVersion.NOT_FOUND;
+            }
+            return ConfigVersion.fromConfigDocument(parseConfigDocument(esVersionResponse));
+        });
+    }
+
+    private static JSONObject parseConfigDocument(@NonNull final Response esResponse) {
+        try {
+            return new JSONObject(HTTPTransformer.transformHttpEntityToString(esResponse.getEntity()));
+        } catch (JSONException e) {
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        }
+    }
+
+    /**
+     * Version of the stored config document, the document is considered unchanged when its
+     * _seq_no, _primary_term and _version are all the same
+     */
+    @AllArgsConstructor
+    private static class ConfigVersion {
+        private static final ConfigVersion NOT_FOUND = new ConfigVersion(-1L, -1L, -1L);
+
+        private final long seqNo;
+
+        private final long primaryTerm;
+
+        private final long version;
+
+        private static ConfigVersion fromConfigDocument(@NonNull final JSONObject configDocument) {
+            return new ConfigVersion(configDocument.optLong(Constants.CONFIG_SEQ_NO_KEY, -1L),
+                    configDocument.optLong(Constants.CONFIG_PRIMARY_TERM_KEY, -1L),
+                    configDocument.optLong(Constants.CONFIG_VERSION_KEY, -1L));
+        }
+
+        private boolean isSameAs(@NonNull final ConfigVersion other) {
+            return seqNo == other.seqNo && primaryTerm == other.primaryTerm && version == other.version;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the retrieved configuration
+     */
+    @AllArgsConstructor
+    @Getter
+    private static class CachedConfig {
+        private final Map<String, ComprehendConfiguration> configMap;
+
+        private final ComprehendConfigRouter configRouter;
+
+        private final ConfigVersion version;
+
+        private final long validatedAtNanos;
+
+        private boolean isSameVersion(@NonNull final ConfigVersion otherVersion) {
+            return version.isSameAs(otherVersion);
         }
-        String retrievedConfig = HTTPTransformer.transformHttpEntityToString(esConfigResponse.getEntity());
-        PreprocessingConfigRequest retrievedConfigRequest = configSerializer.deserialize(retrievedConfig);
 
-        return ConfigSerializer.transformConfigRequestToConfigMap(retrievedConfigRequest);
+        private CachedConfig revalidatedAt(final long now) {
+            return new CachedConfig(configMap, configRouter, version, now);
+        }
     }
 
 }
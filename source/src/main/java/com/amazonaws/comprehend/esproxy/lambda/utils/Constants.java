@@ -32,6 +32,16 @@ public class Constants {
 
     public final static String CONFIG_KEY = "comprehendConfigurations";
 
+    public final static String CONFIG_SOURCE_KEY = "_source";
+
+    public final static String CONFIG_SEQ_NO_KEY = "_seq_no";
+
+    public final static String CONFIG_PRIMARY_TERM_KEY = "_primary_term";
+
+    public final static String CONFIG_VERSION_KEY = "_version";
+
+    public final static int CONFIG_CACHE_TTL_SECONDS = 30;
+
     // Identifier related
 
     public final static String UPDATE_REQUEST = "_update";
@@ -52,20 +62,108 @@ public class Constants {
 
     public final static String BULK_CREATE_ACTION_KEY = "create";
 
+    public final static String BULK_UPDATE_ACTION_KEY = "update";
+
     public final static String BULK_INDEX_ACTION_KEY_NAME = "_index";
 
+    public final static String BULK_ID_ACTION_KEY_NAME = "_id";
+
+    // A bulk response must match the format: {"took":30,"errors":false,"items":[{"index":{...}}]}
+    public final static String BULK_RESPONSE_TOOK_KEY = "took";
+
+    public final static String BULK_RESPONSE_ERRORS_KEY = "errors";
+
+    public final static String BULK_RESPONSE_ITEMS_KEY = "items";
+
+    // An item of a bulk response that was not executed: {"index":{"_id":"1","status":429,"error":{"type":...}}}
+    public final static String BULK_RESPONSE_STATUS_KEY = "status";
+
+    public final static String BULK_RESPONSE_ERROR_KEY = "error";
+
+    public final static String BULK_RESPONSE_ERROR_TYPE_KEY = "type";
+
+    public final static String BULK_RESPONSE_ERROR_REASON_KEY = "reason";
+
+    // The error type of the items of a sub-bulk rejected without an OpenSearch Service error, e.g. by a load balancer
+    public final static String BULK_SUB_REQUEST_REJECTED_ERROR_TYPE = "sub_bulk_rejected_exception";
+
     // Ingestion related
 
     public final static int MAX_THREAD = 50;
 
     public final static int MAX_BATCH_SIZE = 25;
 
+    // Comprehend batch APIs accept documents up to 5 KB of UTF-8
+    public final static int MAX_DOCUMENT_BYTES = 5000;
+
+    public final static int MAX_BATCH_BYTES = MAX_BATCH_SIZE * MAX_DOCUMENT_BYTES;
+
     public final static int INDEX_EXECUTOR_TIMEOUT_SECONDS = 10;
 
     public final static int BULK_EXECUTOR_TIMEOUT_SECONDS = 300;
 
     public final static int KIBANA_UPLOAD_TIMEOUT_SECONDS = 20;
 
+    // The bulk is sent to OpenSearch Service as a whole once every row is enriched
+    public final static int BULK_FLUSH_ROWS = 0;
+
+    // An enriched bulk over the caps is sent in sub-bulks, well under the http.max_content_length of the domain
+    public final static int BULK_SUB_REQUEST_MAX_BYTES = 5 * 1024 * 1024;
+
+    public final static int BULK_SUB_REQUEST_MAX_DOCUMENTS = 1000;
+
+    // The sub-bulks of a bulk are sent one at a time by default
+    public final static int BULK_SUB_REQUEST_CONCURRENCY = 1;
+
+    public final static long COMPREHEND_RESULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    public final static int COMPREHEND_RESULT_CACHE_TTL_SECONDS = 3600;
+
+    public final static int ADAPTIVE_MIN_PERMIT_LIMIT = 1;
+
+    public final static double ADAPTIVE_BACKOFF_RATIO = 0.5;
+
+    public final static int BATCH_ITEM_MAX_RETRIES = 3;
+
+    public final static int BATCH_ITEM_RETRY_BUDGET = 100;
+
+    public final static long BATCH_ITEM_RETRY_BASE_DELAY_MILLIS = 100;
+
+    public final static long BATCH_ITEM_RETRY_MAX_DELAY_MILLIS = 2000;
+
+    public final static long COMPREHEND_COALESCING_WINDOW_MILLIS = 0;
+
+    // The Comprehend calls in flight are capped by the permit limiter, the queue only absorbs short bursts
+    public final static int COMPREHEND_EXECUTOR_QUEUE_CAPACITY = 1000;
+
+    // Runs the completions of the asynchronous OpenSearch Service requests, off the client I/O threads
+    public final static int OPEN_SEARCH_EXECUTOR_THREADS = 4;
+
+    // Every OpenSearch Service request goes to the domain endpoint, same pool size as the RestClient default
+    public final static int OPEN_SEARCH_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+    // Idle connections are closed before the domain endpoint drops them, the warm invocations reuse the others
+    public final static int OPEN_SEARCH_KEEP_ALIVE_MILLIS = 30000;
+
+    public final static int OPEN_SEARCH_CONNECT_TIMEOUT_MILLIS = 1000;
+
+    public final static int OPEN_SEARCH_SOCKET_TIMEOUT_MILLIS = 30000;
+
+    public final static boolean OPEN_SEARCH_REQUEST_COMPRESSION = true;
+
+    // Smaller request bodies are sent as is, the gzip framing would outweigh the saved bytes
+    public final static int OPEN_SEARCH_GZIP_MIN_BYTES = 1024;
+
+    // Same as the default response consumer of the RestClient
+    public final static int OPEN_SEARCH_RESPONSE_BUFFER_LIMIT_BYTES = 100 * 1024 * 1024;
+
+    public final static String GZIP_ENCODING = "gzip";
+
+    // Background Kibana mapping and dashboard uploads
+    public final static int KIBANA_EXECUTOR_THREADS = 2;
+
+    public final static int KIBANA_EXECUTOR_QUEUE_CAPACITY = 100;
+
     public final static String BULK_INDEX_KEY_NAME = "index";
 
     public final static String TIME_STAMP_KEY = "process_time";
@@ -76,6 +174,20 @@ public class Constants {
 
     public final static String KIBANA_KEY_NAME = "Kibana";
 
+    public final static String ERROR_KEY_NAME = "Error";
+
     public final static String KEYPHRASES_KEY_NAME = "keyPhrases";
 
+    public final static String ENTITIES_KEY_NAME = "entities";
+
+    public final static String SYNTAX_TOKENS_KEY_NAME = "syntaxTokens";
+
+    public final static String SENTIMENT_KEY_NAME = "sentiment";
+
+    public final static String SENTIMENT_SCORE_KEY_NAME = "sentimentScore";
+
+    public final static String LANGUAGES_KEY_NAME = "languages";
+
+    public final static String ERROR_CODE_KEY_NAME = "errorCode";
+
 }
@@ -0,0 +1,37 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.google.common.collect.ImmutableList;
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * The gauges of the executors of every workload, logged after each request
+ */
+public class ExecutorGauges {
+    private final List<WorkloadExecutor> executorList;
+
+    public ExecutorGauges(@NonNull final WorkloadExecutor... executors) {
+        this.executorList = ImmutableList.copyOf(executors);
+    }
+
+    public void log(@NonNull final LambdaLogger logger) {
+        for (WorkloadExecutor executor : executorList) {
+            logger.log(executor.describeGauges());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+/**
+ * How the Comprehend and OpenSearch Service workloads are executed
+ */
+public enum ExecutorMode {
+    // Bounded pools of platform threads, the concurrency is capped by the pool sizes
+    PLATFORM,
+    // A virtual thread per task, the concurrency is capped by semaphores. Requires Java 21 or later
+    VIRTUAL
+}
@@ -0,0 +1,73 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers to consume CompletableFuture results on the request thread
+ */
+public class FutureHelper {
+    // Wait for the future and rethrow its failure as thrown by the underlying call, not wrapped in CompletionException
+    public static <T> T join(@NonNull final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // Complete once all the futures complete, exceptionally if any of them failed
+    public static CompletableFuture<Void> allOf(@NonNull final List<? extends CompletableFuture<?>> futureList) {
+        return CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]));
+    }
+
+    // Wait for all the futures to complete, a failed future is left to be reported when its result is retrieved
+    // On timeout the futures still pending are cancelled, so the calls still waiting for a permit are never started
+    public static void awaitAll(@NonNull final List<? extends CompletableFuture<?>> futureList,
+                                final long timeout, @NonNull final TimeUnit unit) {
+        try {
+            allOf(futureList).get(timeout, unit);
+        } catch (ExecutionException e) {
+            // Reported by the failed future itself
+        } catch (TimeoutException e) {
+            futureList.forEach(future -> future.cancel(false));
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        }
+    }
+
+    // Return the cause of a CompletionException as a RuntimeException
+    public static RuntimeException unwrap(@NonNull final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new InternalErrorException(CustomerMessage.INTERNAL_ERROR, cause);
+    }
+}
@@ -15,15 +15,19 @@ package com.amazonaws.comprehend.esproxy.lambda.utils;
 
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import lombok.NonNull;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.entity.ContentType;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -57,6 +61,19 @@ public class HTTPTransformer {
                 .withBody(responseBody);
     }
 
+    // Transform the response of a proxy request to API Gateway response, a response assembled by the proxy is JSON
+    public static APIGatewayProxyResponseEvent proxyResponseToAPIGatewayResponse(
+            @NonNull final ProxyResponse proxyResponse) throws InternalErrorException {
+        if (proxyResponse.getEsResponse() != null) {
+            return esResponseToAPIGatewayResponse(proxyResponse.getEsResponse());
+        }
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(proxyResponse.getStatusCode())
+                .withHeaders(Collections.singletonMap(HttpHeaders.CONTENT_TYPE,
+                        ContentType.APPLICATION_JSON.getMimeType()))
+                .withBody(proxyResponse.getBody());
+    }
+
     // Transform HttpEntity to String
     public static String transformHttpEntityToString(final HttpEntity entity)
             throws InternalErrorException {
@@ -69,4 +86,18 @@ public class HTTPTransformer {
             throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
         }
     }
+
+    // Transform HttpEntity to byte array, without decoding it to a String
+    public static byte[] transformHttpEntityToByteArray(final HttpEntity entity)
+            throws InternalErrorException {
+        if (entity == null) {
+            throw new InternalErrorException(CustomerMessage.INPUT_NULL_OR_EMPTY_ERROR);
+        }
+        try {
+            byte[] content = EntityUtils.toByteArray(entity);
+            return content == null ? new byte[0] : content;
+        } catch (IOException e) {
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        }
+    }
 }
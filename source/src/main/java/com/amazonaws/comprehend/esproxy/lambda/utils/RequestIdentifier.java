@@ -13,12 +13,11 @@
 
 package com.amazonaws.comprehend.esproxy.lambda.utils;
 
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
 import lombok.NonNull;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.elasticsearch.client.Request;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.Optional;
 
@@ -72,24 +71,7 @@ public class RequestIdentifier {
 
     // Extract the indexName from a bulk payloadLine
     public static Optional<String> getBulkIndexName(@NonNull String payloadLine) {
-        String payloadLineWithoutSpace = payloadLine.replaceAll(" +", "");
-        Optional<String> indexName = Optional.empty();
-        try {
-            JSONObject payloadJson = new JSONObject(payloadLineWithoutSpace);
-
-            if (payloadJson.has(Constants.BULK_INDEX_ACTION_KEY)) {
-                return Optional.ofNullable(payloadJson.getJSONObject(Constants.BULK_INDEX_ACTION_KEY)
-                        .getString(Constants.BULK_INDEX_ACTION_KEY_NAME));
-            }
-            if (payloadJson.has(Constants.BULK_CREATE_ACTION_KEY)) {
-                return Optional.ofNullable(payloadJson.getJSONObject(Constants.BULK_CREATE_ACTION_KEY)
-                        .getString(Constants.BULK_INDEX_ACTION_KEY_NAME));
-            }
-            // The payloadLine does not contain a index action
-            return indexName;
-        } catch (JSONException e) {
-            return indexName;
-        }
+        return BulkPayloadReader.readIngestionIndexName(payloadLine);
     }
 
 }
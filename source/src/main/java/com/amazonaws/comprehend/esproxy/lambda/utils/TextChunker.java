@@ -0,0 +1,123 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import com.google.common.base.Utf8;
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split texts over the Comprehend document limit into chunks that fit in it
+ * A chunk ends at the last sentence boundary that fits, then at the last whitespace. A boundary in the first half of
+ * the chunk is ignored so the chunks don't get too small, and a text without any boundary is cut between characters.
+ */
+public class TextChunker {
+    private final static String SENTENCE_TERMINATORS = ".!?。！？";
+
+    /**
+     * Split the text into chunks of at most maxBytes of UTF-8
+     *
+     * @param text     The text to be split
+     * @param maxBytes The maximum UTF-8 size of a chunk
+     * @return The chunks in the order of the text
+     */
+    public static List<TextChunk> split(@NonNull final String text, final int maxBytes) {
+        List<TextChunk> chunkList = new ArrayList<>();
+        int start = 0;
+        int offset = 0;
+        while (start < text.length()) {
+            int end = getMaxEnd(text, start, maxBytes);
+            if (end == start) {
+                // A single character over maxBytes still has to go somewhere
+                end = start + Character.charCount(text.codePointAt(start));
+            } else if (end < text.length()) {
+                end = findBoundary(text, start, end);
+            }
+            int length = text.codePointCount(start, end);
+            chunkList.add(new TextChunk(text.substring(start, end), offset, length));
+            offset += length;
+            start = end;
+        }
+        return chunkList;
+    }
+
+    /**
+     * Cut the text to at most maxBytes of UTF-8, without splitting a character
+     *
+     * @param text     The text to be cut
+     * @param maxBytes The maximum UTF-8 size
+     * @return The longest prefix of the text that fits in maxBytes
+     */
+    public static String truncate(@NonNull final String text, final int maxBytes) {
+        return text.substring(0, getMaxEnd(text, 0, maxBytes));
+    }
+
+    // The UTF-8 size of the text as sent to Comprehend
+    public static int getEncodedLength(@NonNull final String text) {
+        try {
+            return Utf8.encodedLength(text);
+        } catch (IllegalArgumentException e) {
+            // An unpaired surrogate is sent as a single replacement byte
+            return text.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    // The end of the longest text from start that fits in maxBytes
+    private static int getMaxEnd(@NonNull final String text, final int start, final int maxBytes) {
+        int bytes = 0;
+        int end = start;
+        while (end < text.length()) {
+            int codePoint = text.codePointAt(end);
+            bytes += getEncodedLength(codePoint);
+            if (bytes > maxBytes) {
+                break;
+            }
+            end += Character.charCount(codePoint);
+        }
+        return end;
+    }
+
+    // The end of the chunk at the last sentence boundary, or the last whitespace, in the second half of [start, end)
+    private static int findBoundary(@NonNull final String text, final int start, final int end) {
+        int minEnd = start + (end - start) / 2;
+        for (int i = end - 1; i > minEnd; i--) {
+            char c = text.charAt(i);
+            if (c == '\n' || (Character.isWhitespace(c) && SENTENCE_TERMINATORS.indexOf(text.charAt(i - 1)) >= 0)) {
+                return i + 1;
+            }
+        }
+        for (int i = end - 1; i > minEnd; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static int getEncodedLength(final int codePoint) {
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return 4;
+        } else if (Character.isSurrogate((char) codePoint)) {
+            // An unpaired surrogate is sent as a single replacement byte
+            return 1;
+        } else if (codePoint >= 0x800) {
+            return 3;
+        }
+        return codePoint >= 0x80 ? 2 : 1;
+    }
+}
@@ -0,0 +1,222 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.google.common.annotations.VisibleForTesting;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Run each task on its own virtual thread, at most permitCount tasks run at once and the others wait for a permit.
+ * A blocked virtual thread doesn't hold a platform thread, so the concurrency of the blocking Comprehend and
+ * OpenSearch Service calls is capped by the permits rather than by the memory of a pool of platform threads.
+ * The virtual threads are created through reflection, so the proxy still builds and runs on Java 8.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService implements WorkloadExecutor {
+    @Getter
+    private final String name;
+
+    private final ThreadFactory threadFactory;
+
+    private final int permitCount;
+
+    private final Semaphore permits;
+
+    private final int queueCapacity;
+
+    private final SaturationPolicy saturationPolicy;
+
+    // The tasks waiting for a permit
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong completedCount = new AtomicLong();
+
+    // The threads started and not finished yet, interrupted by shutdownNow
+    private final Set<Thread> liveThreadSet = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isShutdown;
+
+    /**
+     * @param name             The workload name, used as the thread name prefix
+     * @param permitCount      The number of tasks running at once
+     * @param queueCapacity    The number of tasks waiting for a permit before a task is rejected, the queue is
+     *                         unbounded with Integer.MAX_VALUE
+     * @param saturationPolicy What to do with a task once the queue is full
+     */
+    public VirtualThreadExecutor(@NonNull final String name, final int permitCount, final int queueCapacity,
+                                 @NonNull final SaturationPolicy saturationPolicy) {
+        this(name, permitCount, queueCapacity, saturationPolicy, buildVirtualThreadFactory(name));
+    }
+
+    @VisibleForTesting
+    VirtualThreadExecutor(@NonNull final String name, final int permitCount, final int queueCapacity,
+                          @NonNull final SaturationPolicy saturationPolicy,
+                          @NonNull final ThreadFactory threadFactory) {
+        if (permitCount <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "permitCount must be positive and queueCapacity not negative, got %d and %d",
+                    permitCount, queueCapacity));
+        }
+        this.name = name;
+        this.permitCount = permitCount;
+        this.permits = new Semaphore(permitCount);
+        this.queueCapacity = queueCapacity;
+        this.saturationPolicy = saturationPolicy;
+        this.threadFactory = threadFactory;
+    }
+
+    // Whether the running JVM has virtual threads, i.e. Java 21 or later
+    public static boolean isSupported() {
+        try {
+            buildVirtualThreadFactory(VirtualThreadExecutor.class.getSimpleName());
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable task) {
+        if (isShutdown) {
+            throw new RejectedExecutionException(String.format("Executor %s is shut down", name));
+        }
+        // Best effort bound, concurrent submissions may overshoot the queue capacity by a few tasks
+        if (permits.availablePermits() == 0 && waitingCount.get() >= queueCapacity) {
+            rejectedCount.incrementAndGet();
+            if (saturationPolicy == SaturationPolicy.ABORT) {
+                throw new RejectedExecutionException(String.format("Executor %s is saturated", name));
+            }
+            task.run();
+            return;
+        }
+        waitingCount.incrementAndGet();
+        Thread thread = threadFactory.newThread(() -> runWithPermit(task));
+        liveThreadSet.add(thread);
+        thread.start();
+    }
+
+    private void runWithPermit(final Runnable task) {
+        try {
+            try {
+                permits.acquire();
+            } finally {
+                waitingCount.decrementAndGet();
+            }
+            try {
+                task.run();
+                completedCount.incrementAndGet();
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            // Interrupted by shutdownNow while waiting for a permit, the task is dropped
+            Thread.currentThread().interrupt();
+        } finally {
+            liveThreadSet.remove(Thread.currentThread());
+            if (isShutdown) {
+                synchronized (liveThreadSet) {
+                    liveThreadSet.notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getActiveCount() {
+        return permitCount - permits.availablePermits();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return waitingCount.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+    }
+
+    // The tasks already started are interrupted, none of them is returned
+    @Override
+    public List<Runnable> shutdownNow() {
+        isShutdown = true;
+        liveThreadSet.forEach(Thread::interrupt);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return isShutdown && liveThreadSet.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, @NonNull final TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (liveThreadSet) {
+            while (!isTerminated()) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                liveThreadSet.wait(remainingMillis);
+            }
+        }
+        return true;
+    }
+
+    // Thread.ofVirtual().name(name + "-", 0).factory(), unsupported before Java 21
+    private static ThreadFactory buildVirtualThreadFactory(final String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException
+                | InvocationTargetException e) {
+            // Virtual threads are missing before Java 21, or are a disabled preview feature on Java 19 and 20
+            throw new UnsupportedOperationException(String.format(
+                    "Virtual threads are not available on Java %s", System.getProperty("java.version")), e);
+        }
+    }
+}
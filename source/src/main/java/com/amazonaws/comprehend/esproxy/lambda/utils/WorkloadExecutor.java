@@ -0,0 +1,50 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executor of one workload with gauges of its load, either a bounded pool of platform threads or virtual threads
+ * gated by a semaphore
+ */
+public interface WorkloadExecutor extends ExecutorService {
+    /**
+     * What to do with a task once the workload is saturated
+     */
+    enum SaturationPolicy {
+        // Fail the task with RejectedExecutionException
+        ABORT,
+        // Run the task on the submitting thread, so a saturated workload slows its callers down instead of failing
+        RUN_ON_CALLER
+    }
+
+    String getName();
+
+    // The tasks running
+    int getActiveCount();
+
+    // The tasks waiting to run
+    int getQueueDepth();
+
+    long getRejectedCount();
+
+    long getCompletedTaskCount();
+
+    // The gauges in a single log line
+    default String describeGauges() {
+        return String.format("Executor %s: active = %d, queued = %d, rejected = %d, completed = %d",
+                getName(), getActiveCount(), getQueueDepth(), getRejectedCount(), getCompletedTaskCount());
+    }
+}
@@ -16,7 +16,9 @@ package com.amazonaws.comprehend.esproxy.lambda.utils.kibana;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.processor.operations.ComprehendOperationRegistry;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -24,18 +26,19 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.elasticsearch.client.Response;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -43,6 +46,8 @@ import static com.amazonaws.comprehend.esproxy.lambda.utils.kibana.KibanaHelper.
 
 /**
  * Upload Comprehend Kibana sample dashboard
+ * All the uploads are asynchronous OpenSearch Service requests, no thread is held while waiting on the I/O.
+ * The chained uploads are sent from the Kibana executor, so they never hold the threads of the other workloads.
  */
 @RequiredArgsConstructor
 public class KibanaUploader {
@@ -53,7 +58,7 @@ public class KibanaUploader {
     private final OpenSearchServiceClient esClient;
 
     @NonNull
-    private final ExecutorService executorService;
+    private final Executor kibanaExecutor;
 
     /**
      * Upload mapping for Comprehend configurations
@@ -65,22 +70,19 @@ public class KibanaUploader {
 
         try {
             JSONObject mappingJson = getResourceFileJson(MAPPING_KEY_NAME);
-            Set<String> indexNameSet = new HashSet<>();
-
+            // The fields of one index are uploaded in order, different indices are uploaded concurrently
+            Map<String, List<String>> fieldNameMap = new LinkedHashMap<>();
             for (ComprehendConfiguration configuration : configMap.values()) {
-                String indexName = configuration.getIndexName();
-                String fieldName = configuration.getFieldName();
-
-                // If the index is new, add a new mapping. Otherwise update the existing mapping
-                if (!indexNameSet.contains(indexName) && isIndexNotFound(indexName)) {
-                    esClient.performRequest(HttpPut.METHOD_NAME, String.format("/%s", indexName),
-                            mappingJson.get(String.format("new-%s", MAPPING_KEY_NAME)).toString().replaceAll(FIELD_NAME_KEY, fieldName));
-                    indexNameSet.add(indexName);
-                } else {
-                    esClient.performRequest(HttpPut.METHOD_NAME, String.format("/%s/_mapping/_doc", indexName),
-                            mappingJson.get(MAPPING_KEY_NAME).toString().replaceAll(FIELD_NAME_KEY, fieldName));
-                }
+                fieldNameMap.computeIfAbsent(configuration.getIndexName(), indexName -> new ArrayList<>())
+                        .add(configuration.getFieldName());
             }
+
+            List<CompletableFuture<Response>> futureList = new ArrayList<>();
+            fieldNameMap.forEach((indexName, fieldNameList) ->
+                    futureList.add(uploadIndexMapping(indexName, fieldNameList, mappingJson)));
+            // Wait until all the uploads have completed, a failed or timed out upload fails the request
+            FutureHelper.awaitAll(futureList, Constants.KIBANA_UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            futureList.forEach(FutureHelper::join);
         } catch (IOException e) {
             logger.log("Upload Mappings failed with IOException" + e);
         }
@@ -93,7 +95,7 @@ public class KibanaUploader {
      */
     public void uploadKibanaDashboard(@NonNull Map<String, ComprehendConfiguration> configMap, @NonNull LambdaLogger logger) {
         Set<String> indexNameSet = new HashSet<>();
-        List<Future> futureList = new ArrayList<>();
+        List<CompletableFuture<Void>> futureList = new ArrayList<>();
 
         try {
             // Upload markdown visualizations
@@ -116,10 +118,8 @@ public class KibanaUploader {
                 futureList.add(submitDashboardRequest(indexName, fieldName, logger));
             }
 
-            // Check whether all tasks have completed execution, or until timeout occurs
-            for (Future future : futureList) {
-                future.get(Constants.KIBANA_UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            }
+            // Wait until all the uploads have completed, or until timeout occurs
+            FutureHelper.allOf(futureList).get(Constants.KIBANA_UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } catch (TimeoutException e) {
             logger.log("Upload Dashboard timed out, some dashboard/visualization may not be uploaded. " + e);
         } catch (Exception e) {
@@ -127,87 +127,110 @@ public class KibanaUploader {
         }
     }
 
-    private Future submitMarkdownRequest(@NonNull LambdaLogger logger) throws IOException {
+    private CompletableFuture<Void> submitMarkdownRequest(@NonNull LambdaLogger logger) throws IOException {
         logger.log("Upload markdowns to Kibana");
         JSONObject markdownJson = getResourceFileJson(MARKDOWN_KEY_NAME);
+        List<CompletableFuture<Response>> futureList = new ArrayList<>();
 
-        return executorService.submit(() -> {
-            for (String operation : DASHBOARD_OPERATION_LIST) {
-                String markdownName = String.format("%s-%s", MARKDOWN_KEY_NAME, operation);
-                String endpoint = String.format("%s-%s-%s",
-                        MARKDOWN_PATH, operation, MARKDOWN_OVERRIDE);
-                String payload = buildAttributes(markdownName, markdownJson.get(markdownName).toString());
+        for (String operation : DASHBOARD_OPERATION_LIST) {
+            String markdownName = String.format("%s-%s", MARKDOWN_KEY_NAME, operation);
+            String endpoint = String.format("%s-%s-%s",
+                    MARKDOWN_PATH, operation, MARKDOWN_OVERRIDE);
+            String payload = buildAttributes(markdownName, markdownJson.get(markdownName).toString());
 
-                performUploadRequest(endpoint, payload, logger);
-            }
-        });
+            futureList.add(performUploadRequest(endpoint, payload));
+        }
+        return FutureHelper.allOf(futureList);
     }
 
-    private Future submitIndexPatternRequest(@NonNull String indexName, @NonNull LambdaLogger logger) {
+    private CompletableFuture<Void> submitIndexPatternRequest(@NonNull String indexName,
+                                                              @NonNull LambdaLogger logger) {
         logger.log("Upload Comprehend Index Pattern to Kibana");
 
-        return executorService.submit(() -> {
-            String endpoint = String.format("%s/%s-%s", INDEX_PATH, indexName, INDEX_OVERRIDE);
-            String payload = INDEX_PATTERN_CONTENT.replaceAll(INDEX_NAME_KEY, indexName);
+        String endpoint = String.format("%s/%s-%s", INDEX_PATH, indexName, INDEX_OVERRIDE);
+        String payload = INDEX_PATTERN_CONTENT.replaceAll(INDEX_NAME_KEY, indexName);
 
-            performUploadRequest(endpoint, payload, logger);
-        });
+        return performUploadRequest(endpoint, payload).thenApply(response -> null);
     }
 
-    private Future submitVisualRequest(@NonNull String indexName,
-                                       @NonNull String fieldName,
-                                       @NonNull Set<ComprehendOperationEnum> operations,
-                                       @NonNull LambdaLogger logger) throws IOException {
+    private CompletableFuture<Void> submitVisualRequest(@NonNull String indexName,
+                                                        @NonNull String fieldName,
+                                                        @NonNull Set<ComprehendOperationEnum> operations,
+                                                        @NonNull LambdaLogger logger) throws IOException {
         logger.log("Upload visualizations to Kibana");
 
         JSONObject visualizationJson = getResourceFileJson(VISUALIZATION_KEY_NAME);
         List<String> visualizationNameList = new ArrayList<>();
+        List<CompletableFuture<Response>> futureList = new ArrayList<>();
 
         // Load visualization name for each operation and add to the visualizationNameList
         operations.forEach(
                 operation -> visualizationNameList.addAll(
-                        Arrays.asList(operation.getComprehendOperation().getVisualizationNameList()))
+                        ComprehendOperationRegistry.getRegistration(operation).getVisualizationNameList())
         );
 
-        return executorService.submit(() -> {
-            // For each visualization name, submit a upload request
-            for (String visualizationName : visualizationNameList) {
-                String visualName = String.format("%s_%s-%s", indexName, fieldName, visualizationName);
-                String endpoint = String.format("%s/%s-%s", VISUAL_PATH, visualName, VISUAL_OVERRIDE);
-
-                String payload = buildAttributes(visualName, visualizationJson.get(visualizationName).toString())
-                        .replaceAll(INDEX_NAME_KEY, indexName)
-                        .replaceAll(FIELD_NAME_KEY, fieldName)
-                        .replaceAll(INDEX_ID_KEY, String.format("%s-%s", indexName, INDEX_ID_NAME));
-                performUploadRequest(endpoint, payload, logger);
-            }
-        });
+        // For each visualization name, submit a upload request
+        for (String visualizationName : visualizationNameList) {
+            String visualName = String.format("%s_%s-%s", indexName, fieldName, visualizationName);
+            String endpoint = String.format("%s/%s-%s", VISUAL_PATH, visualName, VISUAL_OVERRIDE);
+
+            String payload = buildAttributes(visualName, visualizationJson.get(visualizationName).toString())
+                    .replaceAll(INDEX_NAME_KEY, indexName)
+                    .replaceAll(FIELD_NAME_KEY, fieldName)
+                    .replaceAll(INDEX_ID_KEY, String.format("%s-%s", indexName, INDEX_ID_NAME));
+            futureList.add(performUploadRequest(endpoint, payload));
+        }
+        return FutureHelper.allOf(futureList);
     }
 
-    private Future submitDashboardRequest(@NonNull String indexName, @NonNull String fieldName,
-                                          @NonNull LambdaLogger logger) throws IOException {
+    private CompletableFuture<Void> submitDashboardRequest(@NonNull String indexName, @NonNull String fieldName,
+                                                           @NonNull LambdaLogger logger) throws IOException {
         logger.log("Upload Comprehend Dashboard to Kibana");
         JSONObject dashboardJson = getResourceFileJson(DASHBOARD_KEY_NAME);
 
-        return executorService.submit(() -> {
-            String endpoint = String.format("%s/%s_%s-%s", DASHBOARD_PATH, indexName, fieldName,
-                    DASHBOARD_OVERRIDE);
+        String endpoint = String.format("%s/%s_%s-%s", DASHBOARD_PATH, indexName, fieldName,
+                DASHBOARD_OVERRIDE);
 
-            String payload = buildDashboard(dashboardJson.get(DASHBOARD_KEY_NAME).toString())
-                    .replaceAll(INDEX_NAME_KEY, indexName)
-                    .replaceAll(FIELD_NAME_KEY, fieldName);
-            performUploadRequest(endpoint, payload, logger);
-        });
+        String payload = buildDashboard(dashboardJson.get(DASHBOARD_KEY_NAME).toString())
+                .replaceAll(INDEX_NAME_KEY, indexName)
+                .replaceAll(FIELD_NAME_KEY, fieldName);
+        return performUploadRequest(endpoint, payload).thenApply(response -> null);
     }
 
-    private void performUploadRequest(@NonNull String endpoint, @NonNull String payload, @NonNull LambdaLogger logger) {
-        esClient.performRequest(HttpPost.METHOD_NAME, endpoint, payload,
+    private CompletableFuture<Response> performUploadRequest(@NonNull String endpoint, @NonNull String payload) {
+        return esClient.performRequestAsync(HttpPost.METHOD_NAME, endpoint, payload,
                 Collections.singletonMap(KIBANA_HEADER_NAME, KIBANA_HEADER_VALUE));
     }
 
-    private boolean isIndexNotFound(@NonNull String indexName) {
-        return esClient.performRequest(HttpGet.METHOD_NAME, String.format("/%s", indexName))
-                .getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND;
+    // Create the index with the mapping of its first field if the index is new, then update the mapping field by field
+    private CompletableFuture<Response> uploadIndexMapping(@NonNull String indexName,
+                                                           @NonNull List<String> fieldNameList,
+                                                           @NonNull JSONObject mappingJson) {
+        String newMapping = mappingJson.get(String.format("new-%s", MAPPING_KEY_NAME)).toString();
+        String updateMapping = mappingJson.get(MAPPING_KEY_NAME).toString();
+
+        return esClient.performRequestAsync(HttpGet.METHOD_NAME, String.format("/%s", indexName))
+                .thenComposeAsync(response -> {
+                    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                        return putMapping(indexName, fieldNameList, 0, updateMapping);
+                    }
+                    return esClient.performRequestAsync(HttpPut.METHOD_NAME, String.format("/%s", indexName),
+                            newMapping.replaceAll(FIELD_NAME_KEY, fieldNameList.get(0)))
+                            .thenComposeAsync(created -> putMapping(indexName, fieldNameList, 1, updateMapping),
+                                    kibanaExecutor);
+                }, kibanaExecutor);
+    }
+
+    // Update the mapping of the fields from the fromIndex on, one request after the other
+    private CompletableFuture<Response> putMapping(@NonNull String indexName, @NonNull List<String> fieldNameList,
+                                                   int fromIndex, @NonNull String updateMapping) {
+        CompletableFuture<Response> future = CompletableFuture.completedFuture(null);
+        for (String fieldName : fieldNameList.subList(fromIndex, fieldNameList.size())) {
+            String payload = updateMapping.replaceAll(FIELD_NAME_KEY, fieldName);
+            future = future.thenComposeAsync(previous -> esClient.performRequestAsync(HttpPut.METHOD_NAME,
+                    String.format("/%s/_mapping/_doc", indexName), payload), kibanaExecutor);
+        }
+        return future;
     }
 
 }
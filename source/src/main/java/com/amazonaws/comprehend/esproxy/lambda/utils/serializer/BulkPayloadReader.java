@@ -0,0 +1,192 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkPayload;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Single-pass streaming reader for the NDJSON bulk payload
+ * Action lines are read token by token, and only the source line of an index/create action is read into a JsonNode,
+ * together with its byte offsets in the bulk body. The source lines of other actions are skipped without being parsed
+ * i.e.:
+ * { "index" : { "_index" : "test", "_type" : "_doc", "_id" : "1" } }
+ * { "text" : "value1" }
+ * { "delete" : { "_index" : "tweeter", "_type" : "_doc", "_id" : "2" } }
+ * { "update" : { "_index" : "tweeter", "_type" : "_doc", "_id" : "3" } }
+ * { "doc" : { "text" : "value2" } }
+ * Only { "text" : "value1" } is read into a BulkPayload, while each of the three actions can be read into a BulkAction
+ */
+@RequiredArgsConstructor
+public class BulkPayloadReader {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @NonNull
+    private final ObjectMapper mapper;
+
+    /**
+     * Read the ingestion payloads from the raw bulk body
+     *
+     * @param payload The raw bulk body
+     * @return The ingestion payloads in the order they appear in the bulk
+     */
+    public List<BulkPayload> read(@NonNull final byte[] payload) {
+        return read(payload, new ArrayList<>());
+    }
+
+    /**
+     * Read the ingestion payloads from the raw bulk body, and every action of the bulk into the actionList
+     *
+     * @param payload    The raw bulk body
+     * @param actionList The list the actions are added to in the order they appear in the bulk
+     * @return The ingestion payloads in the order they appear in the bulk
+     */
+    public List<BulkPayload> read(@NonNull final byte[] payload, @NonNull final List<BulkAction> actionList) {
+        List<BulkPayload> bulkPayloadList = new ArrayList<>();
+
+        try (JsonParser parser = mapper.getFactory().createParser(payload)) {
+            while (parser.nextToken() != null) {
+                ActionLine action = readAction(parser);
+                int contentRowNum = -1;
+                // The source line follows the action line
+                if (action.hasSource() && parser.nextToken() != null) {
+                    if (action.isIngestion() && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                        int sourceStartOffset = (int) parser.getTokenLocation().getByteOffset();
+                        JsonNode payloadJson = mapper.readTree(parser);
+                        int sourceEndOffset = (int) parser.getCurrentLocation().getByteOffset();
+                        contentRowNum = bulkPayloadList.size();
+                        bulkPayloadList.add(
+                                new BulkPayload(action.indexName, payloadJson, sourceStartOffset, sourceEndOffset));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (action.name != null) {
+                    int endOffset = getLineEndOffset(payload, (int) parser.getCurrentLocation().getByteOffset());
+                    actionList.add(new BulkAction(action.name, action.indexName, action.id, endOffset,
+                            contentRowNum));
+                }
+            }
+        } catch (IOException e) {
+            throw new InternalErrorException(CustomerMessage.INTERNAL_ERROR, e);
+        }
+        return bulkPayloadList;
+    }
+
+    /**
+     * Extract the indexName from a single bulk action line
+     *
+     * @param actionLine The bulk action line
+     * @return The indexName if the line is an index/create action, empty otherwise
+     */
+    public static Optional<String> readIngestionIndexName(@NonNull final String actionLine) {
+        try (JsonParser parser = JSON_FACTORY.createParser(actionLine)) {
+            if (parser.nextToken() == null) {
+                return Optional.empty();
+            }
+            ActionLine action = readAction(parser);
+            return action.isIngestion() ? Optional.of(action.indexName) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Read the action line the parser is positioned on, the parser is left on the END_OBJECT of the line
+    private static ActionLine readAction(@NonNull final JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new ActionLine(null, null, null);
+        }
+        String actionName = null;
+        ActionLine metadata = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && actionName == null) {
+                actionName = fieldName;
+                metadata = readMetadata(parser, actionName);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return metadata == null ? new ActionLine(null, null, null) : metadata;
+    }
+
+    // Read the action metadata the parser is positioned on, keep the values of "_index" and "_id"
+    private static ActionLine readMetadata(@NonNull final JsonParser parser,
+                                           @NonNull final String actionName) throws IOException {
+        String indexName = null;
+        String id = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if (valueToken == JsonToken.VALUE_STRING && Constants.BULK_INDEX_ACTION_KEY_NAME.equals(fieldName)) {
+                indexName = parser.getText();
+            } else if (valueToken != null && valueToken.isScalarValue()
+                    && Constants.BULK_ID_ACTION_KEY_NAME.equals(fieldName)) {
+                id = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ActionLine(actionName, indexName, id);
+    }
+
+    // The offset right after the newline that terminates the line the offset is on
+    private static int getLineEndOffset(@NonNull final byte[] payload, final int offset) {
+        int lineEndOffset = offset;
+        while (lineEndOffset < payload.length && payload[lineEndOffset] != '\n') {
+            lineEndOffset++;
+        }
+        return Math.min(lineEndOffset + 1, payload.length);
+    }
+
+    @AllArgsConstructor
+    private static class ActionLine {
+        private final String name;
+
+        private final String indexName;
+
+        private final String id;
+
+        // Whether the action line is followed by a source line, only "delete" is not
+        private boolean hasSource() {
+            return Constants.BULK_INDEX_ACTION_KEY.equals(name) || Constants.BULK_CREATE_ACTION_KEY.equals(name)
+                    || Constants.BULK_UPDATE_ACTION_KEY.equals(name);
+        }
+
+        // Whether the action ingests its source line into a known index
+        private boolean isIngestion() {
+            return indexName != null && (Constants.BULK_INDEX_ACTION_KEY.equals(name)
+                    || Constants.BULK_CREATE_ACTION_KEY.equals(name));
+        }
+    }
+}
@@ -0,0 +1,256 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkPayload;
+import com.amazonaws.comprehend.esproxy.lambda.model.SubBulk;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import lombok.NonNull;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrite stage of a bulk request, collects the enrichment fields of every ingestion payload and writes the bulk body
+ * back in a single pass. The enrichment fields of a payload are spliced into its original bytes right before the
+ * closing brace, so the payload is neither parsed nor re-serialized.
+ * i.e.:
+ * { "text" : "value1" }
+ * is written as
+ * { "text" : "value1" ,"text_DetectSentiment":{...},"process_time":"..."}
+ * A payload that already holds one of the enrichment keys at top level is rebuilt through a JSONObject instead,
+ * since OpenSearch rejects documents with duplicate keys.
+ */
+public class BulkPayloadWriter {
+    private final byte[] payload;
+
+    private final List<BulkPayload> payloadList;
+
+    // Every action of the bulk, the sub-bulks are split between two actions
+    private final List<BulkAction> actionList;
+
+    // The index of the action of each ingestion payload in the actionList
+    private final int[] rowActionNums;
+
+    // The enrichment fields of each ingestion payload in insertion order, null if the payload was not enriched
+    private final List<Map<String, Object>> enrichmentList;
+
+    public BulkPayloadWriter(@NonNull final byte[] payload,
+                             @NonNull final List<BulkPayload> payloadList,
+                             @NonNull final List<BulkAction> actionList) {
+        this.payload = payload;
+        this.payloadList = payloadList;
+        this.actionList = actionList;
+        this.rowActionNums = new int[payloadList.size()];
+        for (int actionNum = 0; actionNum < actionList.size(); actionNum++) {
+            int contentRowNum = actionList.get(actionNum).getContentRowNum();
+            if (contentRowNum >= 0) {
+                rowActionNums[contentRowNum] = actionNum;
+            }
+        }
+        this.enrichmentList = new ArrayList<>(payloadList.size());
+        for (int i = 0; i < payloadList.size(); i++) {
+            enrichmentList.add(null);
+        }
+    }
+
+    /**
+     * Attach an enrichment field to an ingestion payload, a later value of the same key replaces the earlier one
+     *
+     * @param contentRowNum The index of the payload in the payloadList
+     * @param key           The enrichment field name
+     * @param value         The enrichment field value
+     */
+    public void attach(final int contentRowNum, @NonNull final String key, @NonNull final JSONObject value) {
+        Map<String, Object> enrichment = enrichmentList.get(contentRowNum);
+        if (enrichment == null) {
+            enrichment = new LinkedHashMap<>();
+            enrichmentList.set(contentRowNum, enrichment);
+        }
+        enrichment.put(key, value);
+    }
+
+    /**
+     * Write the bulk body back, replacing the enriched payloads in place and copying everything else as is
+     * Every enriched payload is stamped with the same process time
+     *
+     * @return The enriched bulk body
+     */
+    public byte[] write() {
+        return write(0, payloadList.size());
+    }
+
+    /**
+     * Write a sub-bulk of the bulk body back, from the line after the payload before fromRowNum to the line of the
+     * payload before toRowNum. The lines before the first payload go to the first sub-bulk and the lines after the
+     * last payload to the last one, so the sub-bulks of consecutive row ranges add up to the whole bulk body.
+     * Every enriched payload of the sub-bulk is stamped with the same process time
+     *
+     * @param fromRowNum The index of the first payload of the sub-bulk in the payloadList
+     * @param toRowNum   The index after the last payload of the sub-bulk in the payloadList
+     * @return The enriched sub-bulk body
+     */
+    public byte[] write(final int fromRowNum, final int toRowNum) {
+        return write(fromRowNum, toRowNum, Integer.MAX_VALUE, Integer.MAX_VALUE).get(0).getBody();
+    }
+
+    /**
+     * Write a sub-bulk of the bulk body back like write(fromRowNum, toRowNum), split into sub-bulks of at most
+     * maxBytes and maxActions actions. Every action counts, the delete and update actions between the payloads too.
+     * The sub-bulks are split between two actions, so a payload always stays with its action line, and an action over
+     * maxBytes by itself is written in a sub-bulk of its own.
+     *
+     * @param fromRowNum The index of the first payload of the sub-bulk in the payloadList
+     * @param toRowNum   The index after the last payload of the sub-bulk in the payloadList
+     * @param maxBytes   The size cap of a sub-bulk
+     * @param maxActions The action count cap of a sub-bulk
+     * @return The enriched sub-bulks in the order of the bulk
+     */
+    public List<SubBulk> write(final int fromRowNum, final int toRowNum, final int maxBytes, final int maxActions) {
+        int fromActionNum = getFromActionNum(fromRowNum);
+        int toActionNum = getToActionNum(toRowNum);
+        int startOffset = fromActionNum == 0 ? 0 : actionList.get(fromActionNum - 1).getEndOffset();
+        int endOffset = toActionNum == actionList.size() ? payload.length
+                : actionList.get(toActionNum - 1).getEndOffset();
+        int length = endOffset - startOffset;
+        // A bulk body must be terminated by a newline, the sub-bulks split before an action line already are
+        boolean needsNewline = length == 0 || payload[endOffset - 1] != '\n';
+        List<SubBulk> subBulkList = new ArrayList<>();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.min(length + length / 2, maxBytes));
+        String processTime = Instant.now().toString();
+        // The bytes from copiedOffset on are copied as is when the next payload is enriched or the sub-bulk is split
+        int copiedOffset = startOffset;
+        int actionStartOffset = startOffset;
+        int subBulkFromActionNum = fromActionNum;
+
+        for (int actionNum = fromActionNum; actionNum < toActionNum; actionNum++) {
+            BulkAction action = actionList.get(actionNum);
+            int actionStartSize = output.size() + actionStartOffset - copiedOffset;
+            Map<String, Object> enrichment = action.getContentRowNum() < 0 ? null
+                    : enrichmentList.get(action.getContentRowNum());
+            if (enrichment != null) {
+                BulkPayload bulkPayload = payloadList.get(action.getContentRowNum());
+                enrichment.put(Constants.TIME_STAMP_KEY, processTime);
+                output.write(payload, copiedOffset, bulkPayload.getSourceStartOffset() - copiedOffset);
+                if (hasDuplicateKey(bulkPayload, enrichment)) {
+                    writeRebuiltPayload(output, bulkPayload, enrichment);
+                } else {
+                    writeSplicedPayload(output, bulkPayload, enrichment);
+                }
+                copiedOffset = bulkPayload.getSourceEndOffset();
+            }
+            boolean isLastAction = actionNum == toActionNum - 1;
+            int actionEndOffset = isLastAction ? endOffset : action.getEndOffset();
+            int actionEndSize = output.size() + actionEndOffset - copiedOffset + (isLastAction && needsNewline ? 1 : 0);
+
+            // The action doesn't fit in the current sub-bulk, the sub-bulk is closed right before the action
+            int actionCount = actionNum - subBulkFromActionNum;
+            if (actionCount > 0 && (actionCount == maxActions || actionEndSize > maxBytes)) {
+                output.write(payload, copiedOffset, actionEndOffset - copiedOffset);
+                copiedOffset = actionEndOffset;
+                byte[] written = output.toByteArray();
+                subBulkList.add(new SubBulk(Arrays.copyOf(written, actionStartSize),
+                        actionList.subList(subBulkFromActionNum, actionNum)));
+                output.reset();
+                output.write(written, actionStartSize, written.length - actionStartSize);
+                subBulkFromActionNum = actionNum;
+            }
+            actionStartOffset = actionEndOffset;
+        }
+        output.write(payload, copiedOffset, endOffset - copiedOffset);
+        if (needsNewline) {
+            output.write('\n');
+        }
+        subBulkList.add(new SubBulk(output.toByteArray(), actionList.subList(subBulkFromActionNum, toActionNum)));
+        return subBulkList;
+    }
+
+    /**
+     * Get the actions of the sub-bulk write(fromRowNum, toRowNum) writes, without writing it
+     *
+     * @param fromRowNum The index of the first payload of the sub-bulk in the payloadList
+     * @param toRowNum   The index after the last payload of the sub-bulk in the payloadList
+     * @return The actions of the sub-bulk in the order of the bulk
+     */
+    public List<BulkAction> getActionList(final int fromRowNum, final int toRowNum) {
+        return actionList.subList(getFromActionNum(fromRowNum), getToActionNum(toRowNum));
+    }
+
+    // The sub-bulk of a row range starts with the action after the one of the payload before fromRowNum
+    private int getFromActionNum(final int fromRowNum) {
+        return fromRowNum == 0 ? 0 : rowActionNums[fromRowNum - 1] + 1;
+    }
+
+    // The sub-bulk of a row range ends with the action of the payload before toRowNum, or the last action of the bulk
+    private int getToActionNum(final int toRowNum) {
+        return toRowNum == payloadList.size() ? actionList.size() : rowActionNums[toRowNum - 1] + 1;
+    }
+
+    // Copy the original payload up to its closing brace, then append the enrichment fields
+    private void writeSplicedPayload(@NonNull final ByteArrayOutputStream output,
+                                     @NonNull final BulkPayload bulkPayload,
+                                     @NonNull final Map<String, Object> enrichment) {
+        int closingBraceOffset = bulkPayload.getSourceEndOffset() - 1;
+        while (payload[closingBraceOffset] != '}') {
+            closingBraceOffset--;
+        }
+        output.write(payload, bulkPayload.getSourceStartOffset(),
+                closingBraceOffset - bulkPayload.getSourceStartOffset());
+
+        boolean needsSeparator = bulkPayload.getPayloadJson().size() > 0;
+        for (Map.Entry<String, Object> field : enrichment.entrySet()) {
+            if (needsSeparator) {
+                output.write(',');
+            }
+            writeString(output, JSONObject.quote(field.getKey()));
+            output.write(':');
+            writeString(output, JSONObject.valueToString(field.getValue()));
+            needsSeparator = true;
+        }
+        output.write('}');
+    }
+
+    // Rebuild the payload through a JSONObject, the enrichment fields replace the existing keys
+    private void writeRebuiltPayload(@NonNull final ByteArrayOutputStream output,
+                                     @NonNull final BulkPayload bulkPayload,
+                                     @NonNull final Map<String, Object> enrichment) {
+        JSONObject content = new JSONObject(new String(payload, bulkPayload.getSourceStartOffset(),
+                bulkPayload.getSourceEndOffset() - bulkPayload.getSourceStartOffset(), StandardCharsets.UTF_8));
+        enrichment.forEach(content::put);
+        writeString(output, content.toString());
+    }
+
+    private static boolean hasDuplicateKey(@NonNull final BulkPayload bulkPayload,
+                                           @NonNull final Map<String, Object> enrichment) {
+        for (String key : enrichment.keySet()) {
+            if (bulkPayload.getPayloadJson().has(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeString(@NonNull final ByteArrayOutputStream output, @NonNull final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes, 0, bytes.length);
+    }
+}
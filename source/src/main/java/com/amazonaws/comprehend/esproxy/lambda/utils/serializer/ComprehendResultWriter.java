@@ -0,0 +1,132 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License").
+// You may not use this file except in compliance with the License.
+// A copy of the License is located at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// or in the "license" file accompanying this file. This file is distributed
+// on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+// express or implied. See the License for the specific language governing
+// permissions and limitations under the License.
+
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import com.amazonaws.services.comprehend.model.DominantLanguage;
+import com.amazonaws.services.comprehend.model.Entity;
+import com.amazonaws.services.comprehend.model.KeyPhrase;
+import com.amazonaws.services.comprehend.model.PartOfSpeechTag;
+import com.amazonaws.services.comprehend.model.SentimentScore;
+import com.amazonaws.services.comprehend.model.SyntaxToken;
+import lombok.NonNull;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Typed writers of the Comprehend SDK results, every field is copied by its getter instead of reflecting over the
+ * SDK beans with new JSONObject(bean). The keys are the ones JSONObject(bean) derives from the getters, so the
+ * documents keep their shape, and the SDK response metadata is never written.
+ * Null fields are left out, as JSONObject(bean) does.
+ */
+public class ComprehendResultWriter {
+    private final static String SCORE_KEY_NAME = "score";
+
+    private final static String TEXT_KEY_NAME = "text";
+
+    private final static String TYPE_KEY_NAME = "type";
+
+    private final static String BEGIN_OFFSET_KEY_NAME = "beginOffset";
+
+    private final static String END_OFFSET_KEY_NAME = "endOffset";
+
+    private final static String TOKEN_ID_KEY_NAME = "tokenId";
+
+    private final static String PART_OF_SPEECH_KEY_NAME = "partOfSpeech";
+
+    private final static String TAG_KEY_NAME = "tag";
+
+    private final static String LANGUAGE_CODE_KEY_NAME = "languageCode";
+
+    private final static String POSITIVE_KEY_NAME = "positive";
+
+    private final static String NEGATIVE_KEY_NAME = "negative";
+
+    private final static String NEUTRAL_KEY_NAME = "neutral";
+
+    private final static String MIXED_KEY_NAME = "mixed";
+
+    private final static String ERROR_MESSAGE_KEY_NAME = "errorMessage";
+
+    public static JSONObject write(@NonNull final Entity entity) {
+        return new JSONObject()
+                .put(SCORE_KEY_NAME, entity.getScore())
+                .put(TYPE_KEY_NAME, entity.getType())
+                .put(TEXT_KEY_NAME, entity.getText())
+                .put(BEGIN_OFFSET_KEY_NAME, entity.getBeginOffset())
+                .put(END_OFFSET_KEY_NAME, entity.getEndOffset());
+    }
+
+    public static JSONObject write(@NonNull final KeyPhrase keyPhrase) {
+        return new JSONObject()
+                .put(SCORE_KEY_NAME, keyPhrase.getScore())
+                .put(TEXT_KEY_NAME, keyPhrase.getText())
+                .put(BEGIN_OFFSET_KEY_NAME, keyPhrase.getBeginOffset())
+                .put(END_OFFSET_KEY_NAME, keyPhrase.getEndOffset());
+    }
+
+    public static JSONObject write(@NonNull final SyntaxToken syntaxToken) {
+        PartOfSpeechTag partOfSpeech = syntaxToken.getPartOfSpeech();
+        return new JSONObject()
+                .put(TOKEN_ID_KEY_NAME, syntaxToken.getTokenId())
+                .put(TEXT_KEY_NAME, syntaxToken.getText())
+                .put(BEGIN_OFFSET_KEY_NAME, syntaxToken.getBeginOffset())
+                .put(END_OFFSET_KEY_NAME, syntaxToken.getEndOffset())
+                .put(PART_OF_SPEECH_KEY_NAME, partOfSpeech == null ? null : new JSONObject()
+                        .put(TAG_KEY_NAME, partOfSpeech.getTag())
+                        .put(SCORE_KEY_NAME, partOfSpeech.getScore()));
+    }
+
+    public static JSONObject write(@NonNull final SentimentScore sentimentScore) {
+        return new JSONObject()
+                .put(POSITIVE_KEY_NAME, sentimentScore.getPositive())
+                .put(NEGATIVE_KEY_NAME, sentimentScore.getNegative())
+                .put(NEUTRAL_KEY_NAME, sentimentScore.getNeutral())
+                .put(MIXED_KEY_NAME, sentimentScore.getMixed());
+    }
+
+    public static JSONObject write(@NonNull final DominantLanguage dominantLanguage) {
+        return new JSONObject()
+                .put(LANGUAGE_CODE_KEY_NAME, dominantLanguage.getLanguageCode())
+                .put(SCORE_KEY_NAME, dominantLanguage.getScore());
+    }
+
+    // The index of the error is left out, the error is attached in place of the result of its text
+    public static JSONObject write(@NonNull final BatchItemError batchItemError) {
+        return new JSONObject()
+                .put(Constants.ERROR_CODE_KEY_NAME, batchItemError.getErrorCode())
+                .put(ERROR_MESSAGE_KEY_NAME, batchItemError.getErrorMessage());
+    }
+
+    /**
+     * Write a list of SDK results to a JSONArray
+     *
+     * @param itemList The SDK results, i.e. the entities of a DetectEntitiesResult
+     * @param writer   The typed writer of the results
+     * @return The JSONArray of the written results, empty if the list is null
+     */
+    public static <T> JSONArray writeList(final List<T> itemList, @NonNull final Function<T, JSONObject> writer) {
+        JSONArray itemArray = new JSONArray();
+        if (itemList != null) {
+            for (T item : itemList) {
+                itemArray.put(writer.apply(item));
+            }
+        }
+        return itemArray;
+    }
+}
@@ -3,6 +3,7 @@ package com.amazonaws.comprehend.esproxy.lambda;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InvalidRequestException;
 import com.amazonaws.comprehend.esproxy.lambda.processor.OpenSearchServiceProcessor;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
 import com.amazonaws.comprehend.esproxy.lambda.modules.ModuleConstants;
@@ -68,6 +69,8 @@ public class OpenSearchServiceProxyRequestHandlerTest {
 
     private Request esRequest;
 
+    private ProxyResponse proxyResponse;
+
     private OpenSearchServiceProxyRequestHandler test;
 
     @Before
@@ -90,6 +93,7 @@ public class OpenSearchServiceProxyRequestHandlerTest {
         mockStatic(RequestIdentifier.class);
         mockStatic(HTTPTransformer.class);
         esRequest = new Request(HttpGet.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        proxyResponse = ProxyResponse.of(mockESResponse);
         when(HTTPTransformer.apiGatewayRequestToESRequest(mockRequestEvent)).thenReturn(esRequest);
         when(mockContext.getLogger()).thenReturn(mockLogger);
 
@@ -102,7 +106,7 @@ public class OpenSearchServiceProxyRequestHandlerTest {
         when(RequestIdentifier.isIndexRequest(esRequest)).thenReturn(false);
         when(RequestIdentifier.isBulkRequest(esRequest)).thenReturn(false);
 
-        when(mockDefaultProcessor.processRequest(esRequest, mockLogger)).thenReturn(mockESResponse);
+        when(mockDefaultProcessor.processRequest(esRequest, mockLogger)).thenReturn(proxyResponse);
 
         test.handleRequest(mockRequestEvent, mockContext);
         verifyZeroInteractions(mockConfigProcessor);
@@ -114,8 +118,8 @@ public class OpenSearchServiceProxyRequestHandlerTest {
     public void successConfigRequests() {
         when(RequestIdentifier.isConfigRequest(esRequest)).thenReturn(true);
 
-        when(mockConfigProcessor.processRequest(esRequest, mockLogger)).thenReturn(mockESResponse);
-        when(HTTPTransformer.esResponseToAPIGatewayResponse(mockESResponse)).thenReturn(mockGWResponse);
+        when(mockConfigProcessor.processRequest(esRequest, mockLogger)).thenReturn(proxyResponse);
+        when(HTTPTransformer.proxyResponseToAPIGatewayResponse(proxyResponse)).thenReturn(mockGWResponse);
 
         test.handleRequest(mockRequestEvent, mockContext);
         verifyZeroInteractions(mockDefaultProcessor);
@@ -129,8 +133,8 @@ public class OpenSearchServiceProxyRequestHandlerTest {
         when(RequestIdentifier.isMutationRequest(esRequest)).thenReturn(true);
         when(RequestIdentifier.isIndexRequest(esRequest)).thenReturn(true);
 
-        when(mockIndexProcessor.processRequest(esRequest, mockLogger)).thenReturn(mockESResponse);
-        when(HTTPTransformer.esResponseToAPIGatewayResponse(mockESResponse)).thenReturn(mockGWResponse);
+        when(mockIndexProcessor.processRequest(esRequest, mockLogger)).thenReturn(proxyResponse);
+        when(HTTPTransformer.proxyResponseToAPIGatewayResponse(proxyResponse)).thenReturn(mockGWResponse);
 
         test.handleRequest(mockRequestEvent, mockContext);
         verifyZeroInteractions(mockDefaultProcessor);
@@ -159,8 +163,8 @@ public class OpenSearchServiceProxyRequestHandlerTest {
         when(RequestIdentifier.isConfigRequest(esRequest)).thenReturn(false);
         when(RequestIdentifier.isMutationRequest(esRequest)).thenReturn(false);
 
-        when(mockDefaultProcessor.processRequest(esRequest, mockLogger)).thenReturn(mockESResponse);
-        when(HTTPTransformer.esResponseToAPIGatewayResponse(mockESResponse))
+        when(mockDefaultProcessor.processRequest(esRequest, mockLogger)).thenReturn(proxyResponse);
+        when(HTTPTransformer.proxyResponseToAPIGatewayResponse(proxyResponse))
                 .thenThrow(InternalErrorException.class);
 
         APIGatewayProxyResponseEvent result = test.handleRequest(mockRequestEvent, mockContext);
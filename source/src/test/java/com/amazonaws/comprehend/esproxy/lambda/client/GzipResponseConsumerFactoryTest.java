@@ -0,0 +1,57 @@
+package com.amazonaws.comprehend.esproxy.lambda.client;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GzipResponseConsumerFactoryTest {
+    @Test
+    public void succeedDecompressGzipResponse() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(TestConstants.DUMMY_RESPONSE_JSON.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpResponse response = buildResponse(compressed.toByteArray());
+        response.addHeader(HttpHeaders.CONTENT_ENCODING, Constants.GZIP_ENCODING);
+
+        GzipResponseConsumerFactory.decompress(response);
+
+        assertEquals(TestConstants.DUMMY_RESPONSE_JSON, EntityUtils.toString(response.getEntity()));
+        assertEquals(ContentType.APPLICATION_JSON.toString(), response.getEntity().getContentType().getValue());
+        assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void succeedKeepUncompressedResponse() throws IOException {
+        HttpResponse response = buildResponse(TestConstants.DUMMY_RESPONSE_JSON.getBytes(StandardCharsets.UTF_8));
+        HttpEntity entity = response.getEntity();
+
+        GzipResponseConsumerFactory.decompress(response);
+
+        assertSame(entity, response.getEntity());
+    }
+
+    private static HttpResponse buildResponse(final byte[] content) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.setEntity(new ByteArrayEntity(content, ContentType.APPLICATION_JSON));
+        return response;
+    }
+}
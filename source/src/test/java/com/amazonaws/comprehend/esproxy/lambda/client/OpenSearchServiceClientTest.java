@@ -2,21 +2,40 @@ package com.amazonaws.comprehend.esproxy.lambda.client;
 
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.FutureHelper;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -33,8 +52,8 @@ public class OpenSearchServiceClientTest {
 
     @Before
     public void setup() throws IOException {
-        test = new OpenSearchServiceClient(mockRestClient);
-        when(mockRestClient.performRequest(esRequest)).thenReturn(mockResponse);
+        test = new OpenSearchServiceClient(mockRestClient, MoreExecutors.directExecutor(), false);
+        when(mockRestClient.performRequest(any(Request.class))).thenReturn(mockResponse);
     }
 
     // Test performRequest(Request request)
@@ -70,13 +89,13 @@ public class OpenSearchServiceClientTest {
 
     @Test
     public void succeedPerformBasicRequestWithResponseException() throws IOException {
-        when(mockRestClient.performRequest(esRequest)).thenThrow(ResponseException.class);
+        when(mockRestClient.performRequest(any(Request.class))).thenThrow(ResponseException.class);
         test.performRequest(esRequest);
     }
 
     @Test
     public void failedPerformBasicRequestWithIOException() throws IOException {
-        when(mockRestClient.performRequest(esRequest)).thenThrow(IOException.class);
+        when(mockRestClient.performRequest(any(Request.class))).thenThrow(IOException.class);
 
         try {
             test.performRequest(esRequest);
@@ -85,4 +104,113 @@ public class OpenSearchServiceClientTest {
         }
     }
 
+    @Test
+    public void succeedPerformAsyncRequest() {
+        doAnswer(invocation -> {
+            invocation.<ResponseListener>getArgument(1).onSuccess(mockResponse);
+            return null;
+        }).when(mockRestClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        Assert.assertEquals(mockResponse, test.performRequestAsync(esRequest).join());
+    }
+
+    @Test
+    public void succeedPerformAsyncRequestWithResponseException() {
+        ResponseException mockResponseException = mock(ResponseException.class);
+        when(mockResponseException.getResponse()).thenReturn(mockResponse);
+        doAnswer(invocation -> {
+            invocation.<ResponseListener>getArgument(1).onFailure(mockResponseException);
+            return null;
+        }).when(mockRestClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        Assert.assertEquals(mockResponse, test.performRequestAsync(esRequest).join());
+    }
+
+    @Test
+    public void failedPerformAsyncRequestWithIOException() {
+        doAnswer(invocation -> {
+            invocation.<ResponseListener>getArgument(1).onFailure(new IOException());
+            return null;
+        }).when(mockRestClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        try {
+            FutureHelper.join(test.performRequestAsync(esRequest));
+            Assert.fail();
+        } catch (InternalErrorException e) {
+            Assert.assertEquals(CustomerMessage.INTERNAL_ERROR, e.getMessage());
+        }
+    }
+
+    @Test
+    public void failedPerformAsyncRequestWhenCallbackExecutorIsShutDown() {
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        callbackExecutor.shutdown();
+        test = new OpenSearchServiceClient(mockRestClient, callbackExecutor, false);
+        doAnswer(invocation -> {
+            invocation.<ResponseListener>getArgument(1).onSuccess(mockResponse);
+            return null;
+        }).when(mockRestClient).performRequestAsync(any(Request.class), any(ResponseListener.class));
+
+        try {
+            FutureHelper.join(test.performRequestAsync(esRequest));
+            Assert.fail();
+        } catch (InternalErrorException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void succeedGzipLargeRequestBody() throws IOException {
+        Request request = new Request(HttpPost.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        String payload = Strings.repeat("{\"text\":\"value\"}\n", Constants.OPEN_SEARCH_GZIP_MIN_BYTES);
+        request.setJsonEntity(payload);
+
+        new OpenSearchServiceClient(mockRestClient, MoreExecutors.directExecutor(), true).performRequest(request);
+
+        Request sentRequest = getSentRequest();
+        Assert.assertEquals(Constants.GZIP_ENCODING, sentRequest.getEntity().getContentEncoding().getValue());
+        Assert.assertTrue(sentRequest.getOptions().getHeaders().stream()
+                .anyMatch(header -> HttpHeaders.CONTENT_ENCODING.equals(header.getName())));
+        try (InputStream body = new GZIPInputStream(sentRequest.getEntity().getContent())) {
+            Assert.assertEquals(payload, new String(ByteStreams.toByteArray(body), StandardCharsets.UTF_8));
+        }
+        // The request of the caller is not modified, it can be sent again
+        Assert.assertNull(request.getEntity().getContentEncoding());
+        Assert.assertTrue(request.getOptions().getHeaders().isEmpty());
+    }
+
+    @Test
+    public void succeedSendSmallRequestBodyAsIs() {
+        Request request = new Request(HttpPost.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(TestConstants.DUMMY_PAYLOAD);
+
+        new OpenSearchServiceClient(mockRestClient, MoreExecutors.directExecutor(), true).performRequest(request);
+
+        Request sentRequest = getSentRequest();
+        Assert.assertSame(request.getEntity(), sentRequest.getEntity());
+        Assert.assertTrue(sentRequest.getOptions().getHeaders().isEmpty());
+    }
+
+    @Test
+    public void succeedKeepParametersOfRequest() {
+        esRequest.addParameter("refresh", "true");
+
+        test.performRequest(esRequest);
+
+        Request sentRequest = getSentRequest();
+        Assert.assertEquals(esRequest.getMethod(), sentRequest.getMethod());
+        Assert.assertEquals(esRequest.getEndpoint(), sentRequest.getEndpoint());
+        Assert.assertEquals(esRequest.getParameters(), sentRequest.getParameters());
+    }
+
+    private Request getSentRequest() {
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        try {
+            verify(mockRestClient).performRequest(requestCaptor.capture());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return requestCaptor.getValue();
+    }
+
 }
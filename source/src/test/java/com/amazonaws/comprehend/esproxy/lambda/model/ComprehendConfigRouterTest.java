@@ -0,0 +1,72 @@
+package com.amazonaws.comprehend.esproxy.lambda.model;
+
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ComprehendConfigRouterTest {
+
+    @Test
+    public void succeedCompileEmptyConfigMap() {
+        ComprehendConfigRouter router = ComprehendConfigRouter.compile(Collections.emptyMap());
+
+        assertSame(ComprehendConfigRouter.EMPTY, router);
+        assertTrue(router.isEmpty());
+        assertTrue(router.getFieldRoutes(TestConstants.INDEX_NAME).isEmpty());
+    }
+
+    @Test
+    public void succeedRouteByIndexName() {
+        ComprehendConfigRouter router = TestConstants.getListConfigRouter();
+
+        List<FieldRoute> routeList = router.getFieldRoutes(TestConstants.INDEX_NAME);
+        assertEquals(1, routeList.size());
+        assertEquals(TestConstants.FIELD_NAME, routeList.get(0).getFieldName());
+        assertEquals(TestConstants.LANGUAGE_CODE, routeList.get(0).getLanguageCode());
+
+        List<FieldRoute> newRouteList = router.getFieldRoutes(TestConstants.NEW_INDEX_NAME);
+        assertEquals(1, newRouteList.size());
+        assertEquals(TestConstants.NEW_FIELD_NAME, newRouteList.get(0).getFieldName());
+        assertTrue(router.getFieldRoutes("unknown").isEmpty());
+    }
+
+    @Test
+    public void succeedPrecomputeFieldNameAndOperations() {
+        Map<String, ComprehendConfiguration> configMap = new HashMap<>();
+        configMap.put(TestConstants.FIELD_NAME, new ComprehendConfiguration(TestConstants.INDEX_NAME,
+                TestConstants.FIELD_NAME,
+                EnumSet.of(ComprehendOperationEnum.DetectSentiment, ComprehendOperationEnum.DetectEntities),
+                TestConstants.LANGUAGE_CODE));
+
+        FieldRoute route = ComprehendConfigRouter.compile(configMap).getFieldRoutes(TestConstants.INDEX_NAME).get(0);
+
+        assertEquals(2, route.getOperations().size());
+        for (int i = 0; i < route.getOperations().size(); i++) {
+            assertEquals(String.format("%s_%s", TestConstants.FIELD_NAME, route.getOperations().get(i)),
+                    route.getFieldNameAndOperations().get(i));
+        }
+    }
+
+    @Test
+    public void succeedFindFieldValue() throws IOException {
+        JsonNode payloadJson = new ObjectMapper().readTree(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
+        FieldRoute route = TestConstants.getListConfigRouter().getFieldRoutes(TestConstants.INDEX_NAME).get(0);
+        FieldRoute newRoute = TestConstants.getListConfigRouter().getFieldRoutes(TestConstants.NEW_INDEX_NAME).get(0);
+
+        assertEquals(TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT, route.findFieldValue(payloadJson).asText());
+        assertNull(newRoute.findFieldValue(payloadJson));
+    }
+}
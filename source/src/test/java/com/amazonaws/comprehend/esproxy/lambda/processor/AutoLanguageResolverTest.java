@@ -0,0 +1,131 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectDominantLanguageResult;
+import com.amazonaws.services.comprehend.model.DominantLanguage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AutoLanguageResolverTest {
+    private static final String SPANISH_TEXT = "Hola, buenos d\u00edas";
+
+    private static final String JAPANESE_TEXT = "\u3053\u3093\u306b\u3061\u306f";
+
+    @Mock
+    private AmazonComprehendAsync mockComprehendClient;
+
+    @Mock
+    private ComprehendResultCache mockResultCache;
+
+    @Mock
+    private ScheduledExecutorService mockRetryScheduler;
+
+    private BatchItemRetryPolicy retryPolicy;
+
+    private AutoLanguageResolver test;
+
+    @Before
+    public void setup() {
+        retryPolicy = new BatchItemRetryPolicy(mockRetryScheduler, Constants.BATCH_ITEM_RETRY_BUDGET);
+        test = new AutoLanguageResolver(mockComprehendClient, new AsyncPermitLimiter(Constants.MAX_THREAD),
+                mockResultCache, new ComprehendConcurrencyLimiter(Constants.MAX_THREAD));
+    }
+
+    @Test
+    public void succeedRouteAutoRequestsToDetectedLanguage() {
+        mockDetectedLanguages();
+        BulkRequest spanishSentiment = getBulkRequest(SPANISH_TEXT, ComprehendOperationEnum.DetectSentiment, 0);
+        BulkRequest spanishEntities = getBulkRequest(SPANISH_TEXT, ComprehendOperationEnum.DetectEntities, 0);
+        BulkRequest japaneseSentiment = getBulkRequest(JAPANESE_TEXT, ComprehendOperationEnum.DetectSentiment, 1);
+
+        AutoLanguageResolver.Resolution resolution = test.resolve(
+                Arrays.asList(spanishSentiment, spanishEntities, japaneseSentiment), retryPolicy, 1);
+
+        // A text is detected once for all its operations
+        ArgumentCaptor<BatchDetectDominantLanguageRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(BatchDetectDominantLanguageRequest.class);
+        verify(mockComprehendClient, times(1)).batchDetectDominantLanguageAsync(batchRequestCaptor.capture(), any());
+        assertEquals(Arrays.asList(SPANISH_TEXT, JAPANESE_TEXT), batchRequestCaptor.getValue().getTextList());
+
+        List<BulkRequest> resolvedRequestList = resolution.getResolvedRequestList();
+        assertEquals(2, resolvedRequestList.size());
+        assertEquals(LanguageCode.es, resolvedRequestList.get(0).getLanguageCode());
+        assertSame(spanishEntities.getLocator(), resolvedRequestList.get(1).getLocator());
+        assertEquals(AutoLanguageResolver.UNSUPPORTED_LANGUAGE_ERROR_CODE, resolution.getErrorMap()
+                .get(japaneseSentiment.getLocator()).get(Constants.ERROR_CODE_KEY_NAME));
+    }
+
+    @Test
+    public void succeedKeepRequestsWithConfiguredLanguage() {
+        BulkRequest configuredRequest = new BulkRequest(SPANISH_TEXT, ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE, new BatchFieldLocator(TestConstants.FIELD_NAME, 0));
+        BulkRequest autoDetectRequest =
+                getBulkRequest(SPANISH_TEXT, ComprehendOperationEnum.DetectDominantLanguage, 0);
+
+        AutoLanguageResolver.Resolution resolution =
+                test.resolve(Arrays.asList(configuredRequest, autoDetectRequest), retryPolicy, 1);
+
+        verifyZeroInteractions(mockComprehendClient);
+        assertEquals(Arrays.asList(configuredRequest, autoDetectRequest), resolution.getResolvedRequestList());
+        assertTrue(resolution.getErrorMap().isEmpty());
+    }
+
+    // Comprehend detects Spanish, and Japanese which can't be analyzed by the other operations
+    private void mockDetectedLanguages() {
+        doAnswer(invocation -> {
+            BatchDetectDominantLanguageRequest batchRequest = invocation.getArgument(0);
+            List<BatchDetectDominantLanguageItemResult> itemResultList = new ArrayList<>();
+            for (int i = 0; i < batchRequest.getTextList().size(); i++) {
+                String languageCode = batchRequest.getTextList().get(i).equals(SPANISH_TEXT) ? "es" : "ja";
+                itemResultList.add(new BatchDetectDominantLanguageItemResult().withIndex(i).withLanguages(
+                        new DominantLanguage().withLanguageCode("en").withScore(0.1f),
+                        new DominantLanguage().withLanguageCode(languageCode).withScore(0.9f)));
+            }
+            AsyncHandler<BatchDetectDominantLanguageRequest, BatchDetectDominantLanguageResult> handler =
+                    invocation.getArgument(1);
+            handler.onSuccess(batchRequest, new BatchDetectDominantLanguageResult().withResultList(itemResultList)
+                    .withErrorList(Collections.emptyList()));
+            return null;
+        }).when(mockComprehendClient).batchDetectDominantLanguageAsync(
+                any(BatchDetectDominantLanguageRequest.class), any());
+    }
+
+    private static BulkRequest getBulkRequest(final String content, final ComprehendOperationEnum operation,
+                                              final int contentRowNum) {
+        return new BulkRequest(content, operation, LanguageCode.auto, new BatchFieldLocator(
+                String.format("%s_%s", TestConstants.FIELD_NAME, operation), contentRowNum));
+    }
+}
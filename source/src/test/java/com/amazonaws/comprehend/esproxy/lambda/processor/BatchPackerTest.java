@@ -0,0 +1,86 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchPackerTest {
+    private static final int MAX_BATCH_SIZE = 3;
+
+    private static final int MAX_BATCH_BYTES = 10;
+
+    private static final int MAX_DOCUMENT_BYTES = 6;
+
+    private BatchPacker test;
+
+    @Before
+    public void setup() {
+        test = new BatchPacker(MAX_BATCH_SIZE, MAX_BATCH_BYTES, MAX_DOCUMENT_BYTES);
+    }
+
+    @Test
+    public void succeedCutBatchesByCount() {
+        for (int i = 0; i < MAX_BATCH_SIZE + 1; i++) {
+            test.add(getBulkRequest("a", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, i));
+        }
+
+        List<BatchPacker.Batch> batchList = test.getBatchList();
+        assertEquals(2, batchList.size());
+        assertEquals(MAX_BATCH_SIZE, batchList.get(0).getContentList().size());
+        assertEquals(1, batchList.get(1).getContentList().size());
+    }
+
+    @Test
+    public void succeedFillBatchesUpToByteLimit() {
+        test.add(getBulkRequest("123456", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, 0));
+        test.add(getBulkRequest("12345", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, 1));
+        // Doesn't fit in the second batch anymore, but still fits in the first one
+        test.add(getBulkRequest("1234", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, 2));
+
+        List<BatchPacker.Batch> batchList = test.getBatchList();
+        assertEquals(2, batchList.size());
+        assertEquals(Arrays.asList("123456", "1234"), batchList.get(0).getContentList());
+        assertEquals(10, batchList.get(0).getBytes());
+        assertEquals(Arrays.asList(0, 2), Arrays.asList(batchList.get(0).getLocatorList().get(0).getContentRowNum(),
+                batchList.get(0).getLocatorList().get(1).getContentRowNum()));
+    }
+
+    @Test
+    public void succeedSeparateOperationLanguagePairs() {
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, 0));
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectSentiment, LanguageCode.de, 1));
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectEntities, LanguageCode.en, 2));
+        // The dominant language doesn't depend on the language code
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectDominantLanguage, LanguageCode.en, 3));
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectDominantLanguage, LanguageCode.de, 4));
+
+        assertEquals(4, test.getBatchList().size());
+    }
+
+    @Test
+    public void succeedKeepOversizedTextsAside() {
+        // 4 characters but 8 bytes of UTF-8
+        test.add(getBulkRequest("\u00e9\u00e9\u00e9\u00e9", ComprehendOperationEnum.DetectSentiment,
+                LanguageCode.en, 0));
+        test.add(getBulkRequest("a", ComprehendOperationEnum.DetectSentiment, LanguageCode.en, 1));
+
+        assertEquals(1, test.getOversizedRequestList().size());
+        assertEquals(1, test.getBatchList().size());
+        assertEquals(1, test.getBatchList().get(0).getContentList().size());
+    }
+
+    private static BulkRequest getBulkRequest(final String content, final ComprehendOperationEnum operation,
+                                              final LanguageCode languageCode, final int contentRowNum) {
+        return new BulkRequest(content, operation, languageCode,
+                new BatchFieldLocator(TestConstants.FIELD_NAME, contentRowNum));
+    }
+}
@@ -3,42 +3,63 @@ package com.amazonaws.comprehend.esproxy.lambda.processor;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchItemResult;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
-import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
-import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.IngestionSerializer;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.BulkPayloadReader;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import com.amazonaws.services.comprehend.model.SentimentScore;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
@@ -46,15 +67,21 @@ import static org.powermock.api.mockito.PowerMockito.*;
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({HTTPTransformer.class})
 public class BulkProcessorTest {
-    private ComprehendSerializer<JsonNode> ingestionSerializer;
+    private BulkPayloadReader bulkPayloadReader;
     @Mock
-    private AmazonComprehend mockComprehendClient;
+    private AmazonComprehendAsync mockComprehendClient;
     @Mock
     private OpenSearchServiceClient mockESClient;
     @Mock
     private ConfigRetriever mockConfigRetriever;
     @Mock
-    private ExecutorService mockExecutorService;
+    private AsyncPermitLimiter mockPermitLimiter;
+    @Mock
+    private ComprehendResultCache mockResultCache;
+    @Mock
+    private ScheduledExecutorService mockRetryScheduler;
+
+    private ComprehendConcurrencyLimiter concurrencyLimiter;
 
     @Mock
     private Response mockESResponse;
@@ -73,21 +100,42 @@ public class BulkProcessorTest {
         when(mockESClient.performRequest(any(Request.class))).thenReturn(mockESResponse);
         when(mockESResponse.getStatusLine()).thenReturn(mockStatusLine);
         when(mockESResponse.getEntity()).thenReturn(new NStringEntity(TestConstants.DUMMY_RESPONSE));
-        when(mockConfigRetriever.retrieveStoredConfig()).thenReturn(TestConstants.getListConfigMap());
+        when(mockConfigRetriever.retrieveConfigRouterAsync())
+                .thenReturn(CompletableFuture.completedFuture(TestConstants.getListConfigRouter()));
 
-        ingestionSerializer = new IngestionSerializer(new ObjectMapper());
-        test = new BulkProcessor(ingestionSerializer, mockComprehendClient,
-                mockESClient, mockConfigRetriever, mockExecutorService);
+        bulkPayloadReader = new BulkPayloadReader(new ObjectMapper());
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(Constants.MAX_THREAD);
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(0, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS));
     }
 
     @Test
     public void succeedPassThroughWhenPayloadIsEmpty() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.EMPTY_STRING);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(TestConstants.EMPTY_STRING);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.EMPTY_STRING));
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
+        verify(mockLogger, times(1))
+                .log("Payload or Comprehend config is empty, return pass through requests");
+    }
+
+    @Test
+    public void succeedPassThroughMalformedPayloadWhenConfigIsEmpty() {
+        String malformedPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\n";
+        Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(malformedPayload);
+        when(mockConfigRetriever.retrieveConfigRouterAsync())
+                .thenReturn(CompletableFuture.completedFuture(ComprehendConfigRouter.EMPTY));
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(malformedPayload));
+
+        test.processRequest(request, mockLogger);
+        verifyZeroInteractions(mockPermitLimiter);
+        verify(mockESClient, times(1)).performRequest(request);
         verify(mockLogger, times(1))
                 .log("Payload or Comprehend config is empty, return pass through requests");
     }
@@ -96,11 +144,11 @@ public class BulkProcessorTest {
     public void succeedPassThroughWhenPayloadDoNotContainIngestionRequest() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_PAYLOAD_NO_INGESTION_REQUEST);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_PAYLOAD_NO_INGESTION_REQUEST);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.CUSTOMER_PAYLOAD_NO_INGESTION_REQUEST));
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
         verify(mockLogger, times(1))
                 .log("No ingestion requests detected, return pass through requests");
     }
@@ -109,37 +157,28 @@ public class BulkProcessorTest {
     public void succeedPassThroughWhenPayloadDoNotContainConfigKey() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD));
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
         verify(mockLogger, times(1))
                 .log("No config field was detected in the bulk request, return pass through requests");
     }
 
     @Test
     public void succeedProcessWhenPayloadContainsConfigKey()
-            throws ExecutionException, InterruptedException, JSONException {
+            throws JSONException {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
-
-        List<Future<BatchResponse>> executorResultList = new ArrayList<>();
-        Future<BatchResponse> responseObjectFuture1 = mock(Future.class);
-        Future<BatchResponse> responseObjectFuture2 = mock(Future.class);
-        executorResultList.add(responseObjectFuture1);
-        executorResultList.add(responseObjectFuture2);
-        List<Callable<BatchResponse>> executorList = new ArrayList<>();
-
-        when(responseObjectFuture1.get()).thenReturn(mockBatchResponse);
-        when(responseObjectFuture2.get()).thenReturn(mockBatchResponse);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD));
+
+        doReturn(CompletableFuture.completedFuture(mockBatchResponse)).when(mockPermitLimiter).submit(any());
         when(mockBatchResponse.getLocatorList())
-                .thenReturn(Collections.singletonList(new BatchFieldLocator(TestConstants.FIELD_NAME, 1)));
-        when(mockBatchResponse.getBatchResultList())
-                .thenReturn(Collections.singletonList(new JSONObject(TestConstants.DUMMY_RESPONSE_JSON)));
-        when(mockExecutorService.invokeAll(any(executorList.getClass()))).thenReturn(executorResultList);
+                .thenReturn(Collections.singletonList(new BatchFieldLocator(TestConstants.FIELD_NAME, 0)));
+        when(mockBatchResponse.getItemResultList()).thenReturn(Collections.singletonList(
+                BatchItemResult.success(0, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), null)));
 
         test.processRequest(request, mockLogger);
         verify(mockLogger, times(1))
@@ -147,48 +186,336 @@ public class BulkProcessorTest {
     }
 
     @Test
-    public void succeedProcessWhenSomeResultThrowError()
-            throws ExecutionException, InterruptedException, JSONException {
+    public void succeedFanOutResultToDuplicateTexts() throws IOException {
+        String duplicatePayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(duplicatePayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(duplicatePayload));
+
+        // Run the batch through the real callable, Comprehend returns a single result
+        doAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get())
+                .when(mockPermitLimiter).submit(any());
+        BatchDetectSentimentResult batchResult = new BatchDetectSentimentResult()
+                .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("POSITIVE"))
+                .withErrorList(Collections.emptyList());
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), batchResult);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        test.processRequest(request, mockLogger);
+        ArgumentCaptor<BatchDetectSentimentRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(BatchDetectSentimentRequest.class);
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(batchRequestCaptor.capture(), any());
+        assertEquals(Collections.singletonList("value1"), batchRequestCaptor.getValue().getTextList());
+
+        // Both payloads are enriched from the single batch slot
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mockESClient, times(1)).performRequest(requestCaptor.capture());
+        String[] lines = EntityUtils.toString(requestCaptor.getValue().getEntity()).split("\n");
+        String enrichmentKey =
+                String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment);
+        assertEquals("POSITIVE", new JSONObject(lines[1]).getJSONObject(enrichmentKey).get("sentiment"));
+        assertEquals("POSITIVE", new JSONObject(lines[3]).getJSONObject(enrichmentKey).get("sentiment"));
+    }
+
+    @Test
+    public void succeedStitchChunkResultsOfOversizedText() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        while (longText.length() <= Constants.MAX_DOCUMENT_BYTES) {
+            longText.append("Good day. ");
+        }
+        String longTextPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"" + longText + "\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(longTextPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(longTextPayload));
+
+        // Run the batch through the real callable, Comprehend returns a result for each chunk
+        doAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get())
+                .when(mockPermitLimiter).submit(any());
+        doAnswer(invocation -> {
+            BatchDetectSentimentRequest batchRequest = invocation.getArgument(0);
+            List<BatchDetectSentimentItemResult> itemResultList = new ArrayList<>();
+            for (int i = 0; i < batchRequest.getTextList().size(); i++) {
+                itemResultList.add(new BatchDetectSentimentItemResult().withIndex(i).withSentiment("POSITIVE")
+                        .withSentimentScore(new SentimentScore().withPositive(0.9f).withNegative(0.1f)
+                                .withNeutral(0f).withMixed(0f)));
+            }
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(batchRequest, new BatchDetectSentimentResult().withResultList(itemResultList)
+                    .withErrorList(Collections.emptyList()));
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        test.processRequest(request, mockLogger);
+        ArgumentCaptor<BatchDetectSentimentRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(BatchDetectSentimentRequest.class);
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(batchRequestCaptor.capture(), any());
+        assertEquals(2, batchRequestCaptor.getValue().getTextList().size());
+
+        // The payload is enriched with the single result stitched from the chunks
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mockESClient, times(1)).performRequest(requestCaptor.capture());
+        String[] lines = EntityUtils.toString(requestCaptor.getValue().getEntity()).split("\n");
+        String enrichmentKey =
+                String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment);
+        JSONObject enrichment = new JSONObject(lines[1]).getJSONObject(enrichmentKey);
+        assertEquals("POSITIVE", enrichment.get("sentiment"));
+        assertEquals(0.9, enrichment.getJSONObject("sentimentScore").getDouble("positive"), 1e-6);
+    }
+
+    @Test
+    public void succeedFlushSubBulksAndMergeResponses() throws IOException {
+        String deletePayload = "{\"delete\":{\"_index\":\"tweeter\",\"_type\":\"_doc\",\"_id\":\"2\"}}";
+        String bulkPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value2\"}\n" + deletePayload + "\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value3\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, Constants.BULK_REQUEST);
+        request.setJsonEntity(bulkPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(bulkPayload));
+        mockSentimentBatches();
+        mockSubBulkResponses(HttpStatus.SC_OK);
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}},{\"index\":{\"_id\":\"1\"}}]}",
+                "{\"took\":20,\"errors\":true,\"items\":[{\"delete\":{\"_id\":\"2\"}},{\"index\":{\"_id\":\"1\"}}]}");
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(2, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS));
+
+        ProxyResponse response = test.processRequest(request, mockLogger);
+
+        // The rows are flushed two by two, the delete action goes with the row after it
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mockESClient, times(2)).performRequestAsync(requestCaptor.capture());
+        verify(mockESClient, never()).performRequest(any(Request.class));
+        String enrichmentKey =
+                String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment);
+        String[] firstLines = EntityUtils.toString(requestCaptor.getAllValues().get(0).getEntity()).split("\n");
+        assertEquals(4, firstLines.length);
+        assertEquals("POSITIVE", new JSONObject(firstLines[1]).getJSONObject(enrichmentKey).get("sentiment"));
+        assertEquals("POSITIVE", new JSONObject(firstLines[3]).getJSONObject(enrichmentKey).get("sentiment"));
+        String[] secondLines = EntityUtils.toString(requestCaptor.getAllValues().get(1).getEntity()).split("\n");
+        assertEquals(3, secondLines.length);
+        assertEquals(deletePayload, secondLines[0]);
+        assertEquals("value3", new JSONObject(secondLines[2]).get(TestConstants.FIELD_NAME));
+        assertEquals("POSITIVE", new JSONObject(secondLines[2]).getJSONObject(enrichmentKey).get("sentiment"));
+
+        // The items of the sub-bulks are merged in the order of the bulk
+        JSONObject mergedBody = new JSONObject(response.getBody());
+        assertEquals(30, mergedBody.getLong(Constants.BULK_RESPONSE_TOOK_KEY));
+        assertTrue(mergedBody.getBoolean(Constants.BULK_RESPONSE_ERRORS_KEY));
+        assertEquals(4, mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY).length());
+        assertTrue(mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY).getJSONObject(2).has("delete"));
+    }
+
+    @Test
+    public void succeedStopFlushingWhenSubBulkIsRejected() {
+        String bulkPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value2\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, Constants.BULK_REQUEST);
+        request.setJsonEntity(bulkPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(bulkPayload));
+        mockSentimentBatches();
+        mockSubBulkResponses(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(1, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS));
+
+        // The rejected sub-bulk is returned as is, the rows after it are not sent
+        assertSame(mockESResponse, test.processRequest(request, mockLogger).getEsResponse());
+        verify(mockESClient, times(1)).performRequestAsync(any(Request.class));
+    }
+
+    @Test
+    public void succeedReportRowsAfterRejectedSubBulkAsItemErrors() throws IOException {
+        String bulkPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value2\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value3\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, Constants.BULK_REQUEST);
+        request.setJsonEntity(bulkPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(bulkPayload));
+        mockSentimentBatches();
+        mockSubBulkResponses(HttpStatus.SC_OK);
+        Response rejectedResponse = mock(Response.class);
+        StatusLine rejectedStatusLine = mock(StatusLine.class);
+        when(rejectedResponse.getStatusLine()).thenReturn(rejectedStatusLine);
+        when(rejectedStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        when(rejectedResponse.getEntity()).thenReturn(new NStringEntity(TestConstants.DUMMY_RESPONSE));
+        when(mockESClient.performRequestAsync(any(Request.class))).thenReturn(
+                CompletableFuture.completedFuture(mockESResponse), CompletableFuture.completedFuture(rejectedResponse));
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}",
+                "{\"error\":{\"type\":\"cluster_block_exception\"},\"status\":503}");
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(1, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS));
+
+        ProxyResponse response = test.processRequest(request, mockLogger);
+
+        // The third row is not sent, it fails with the status of the rejected second row so it can be retried alone
+        verify(mockESClient, times(2)).performRequestAsync(any(Request.class));
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        JSONObject mergedBody = new JSONObject(response.getBody());
+        assertTrue(mergedBody.getBoolean(Constants.BULK_RESPONSE_ERRORS_KEY));
+        JSONArray items = mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY);
+        assertEquals(3, items.length());
+        for (int i = 1; i < items.length(); i++) {
+            JSONObject itemResult = items.getJSONObject(i).getJSONObject(Constants.BULK_INDEX_ACTION_KEY);
+            assertEquals(TestConstants.INDEX_NAME, itemResult.get(Constants.BULK_INDEX_ACTION_KEY_NAME));
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, itemResult.getInt(Constants.BULK_RESPONSE_STATUS_KEY));
+            assertEquals("cluster_block_exception", itemResult.getJSONObject(Constants.BULK_RESPONSE_ERROR_KEY)
+                    .get(Constants.BULK_RESPONSE_ERROR_TYPE_KEY));
+        }
+    }
+
+    @Test
+    public void succeedSplitEnrichedBulkOverDocumentCap() throws IOException {
+        String bulkPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value2\"}\n" +
+                TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value3\"}\n";
+        Request request = new Request(HttpPut.METHOD_NAME, Constants.BULK_REQUEST);
+        request.setJsonEntity(bulkPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(bulkPayload));
+        mockSentimentBatches();
+        mockSubBulkResponses(HttpStatus.SC_OK);
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}},{\"index\":{\"_id\":\"1\"}}]}",
+                "{\"took\":20,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}");
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(0, 2));
+
+        ProxyResponse response = test.processRequest(request, mockLogger);
+
+        // The enriched bulk is sent as a sub-bulk of two rows and a sub-bulk of the last row
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mockESClient, times(2)).performRequestAsync(requestCaptor.capture());
+        verify(mockESClient, never()).performRequest(any(Request.class));
+        assertEquals(4, EntityUtils.toString(requestCaptor.getAllValues().get(0).getEntity()).split("\n").length);
+        String[] lastLines = EntityUtils.toString(requestCaptor.getAllValues().get(1).getEntity()).split("\n");
+        assertEquals(2, lastLines.length);
+        assertEquals("value3", new JSONObject(lastLines[1]).get(TestConstants.FIELD_NAME));
+        JSONObject mergedBody = new JSONObject(response.getBody());
+        assertEquals(3, mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY).length());
+    }
+
+    @Test
+    public void succeedSendSubBulksOfSameIdInOrder() throws IOException {
+        String deletePayload = "{\"delete\":{\"_index\":\"tweeter\",\"_type\":\"_doc\",\"_id\":\"1\"}}";
+        String bulkPayload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n" + deletePayload + "\n";
+        Request request = new Request(HttpPut.METHOD_NAME, Constants.BULK_REQUEST);
+        request.setJsonEntity(bulkPayload);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(bulkPayload));
+        mockSentimentBatches();
+        mockSubBulkResponses(HttpStatus.SC_OK);
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}",
+                "{\"took\":20,\"errors\":false,\"items\":[{\"delete\":{\"_id\":\"1\"}}]}");
+        // The index sub-bulk is answered late, the delete sub-bulk records whether it was sent after that
+        ScheduledExecutorService responseScheduler = Executors.newSingleThreadScheduledExecutor();
+        CompletableFuture<Response> indexResponse = new CompletableFuture<>();
+        List<Boolean> sentAfterIndexList = Collections.synchronizedList(new ArrayList<>());
+        when(mockESClient.performRequestAsync(any(Request.class))).thenAnswer(invocation -> {
+            responseScheduler.schedule(() -> indexResponse.complete(mockESResponse), 100, TimeUnit.MILLISECONDS);
+            return indexResponse;
+        }).thenAnswer(invocation -> {
+            sentAfterIndexList.add(indexResponse.isDone());
+            return CompletableFuture.completedFuture(mockESResponse);
+        });
+        test = new BulkProcessor(bulkPayloadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(0, 1, 2));
+
+        try {
+            test.processRequest(request, mockLogger);
+        } finally {
+            responseScheduler.shutdownNow();
+        }
+
+        // The sub-bulks may be in flight together, but the delete of the document waits for its index action
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mockESClient, times(2)).performRequestAsync(requestCaptor.capture());
+        assertTrue(EntityUtils.toString(requestCaptor.getAllValues().get(0).getEntity()).contains("value1"));
+        assertEquals(deletePayload + "\n", EntityUtils.toString(requestCaptor.getAllValues().get(1).getEntity()));
+        assertEquals(Collections.singletonList(true), sentAfterIndexList);
+    }
+
+    @Test(expected = InternalErrorException.class)
+    public void failedProcessWhenResultThrowError() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
-
-        List<Future<BatchResponse>> executorResultList = new ArrayList<>();
-        Future<BatchResponse> responseObjectFuture1 = mock(Future.class);
-        Future<BatchResponse> responseObjectFuture2 = mock(Future.class);
-        executorResultList.add(responseObjectFuture1);
-        executorResultList.add(responseObjectFuture2);
-        List<Callable<BatchResponse>> executorList = new ArrayList<>();
-
-        when(responseObjectFuture1.get()).thenReturn(mockBatchResponse);
-        when(responseObjectFuture2.get()).thenThrow(new ExecutionException(new Throwable(TestConstants.DUMMY_ERROR_MESSAGE)));
-        when(mockBatchResponse.getLocatorList())
-                .thenReturn(Collections.singletonList(new BatchFieldLocator(TestConstants.FIELD_NAME, 1)));
-        when(mockBatchResponse.getBatchResultList())
-                .thenReturn(Collections.singletonList(new JSONObject(TestConstants.DUMMY_RESPONSE_JSON)));
-        when(mockExecutorService.invokeAll(any(executorList.getClass()))).thenReturn(executorResultList);
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD));
+
+        CompletableFuture<BatchResponse> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE));
+        doReturn(failedFuture).when(mockPermitLimiter).submit(any());
 
         test.processRequest(request, mockLogger);
-        verify(mockLogger, times(1))
-                .log("Ingest Comprehend enriched bulk results to OpenSearchService");
     }
 
     @Test(expected = InternalErrorException.class)
-    public void failedProcessWhenSerializerThrowError() {
+    public void failedProcessWhenBulkReaderThrowError() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
 
-        IngestionSerializer mockBadSerializer = mock(IngestionSerializer.class);
-        test = new BulkProcessor(mockBadSerializer, mockComprehendClient,
-                mockESClient, mockConfigRetriever, mockExecutorService);
-        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
-        when(mockBadSerializer.deserialize(anyString()))
+        BulkPayloadReader mockBadReader = mock(BulkPayloadReader.class);
+        test = new BulkProcessor(mockBadReader, mockComprehendClient,
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache, concurrencyLimiter,
+                mockRetryScheduler, getFlushPolicy(0, Constants.BULK_SUB_REQUEST_MAX_DOCUMENTS));
+        when(HTTPTransformer.transformHttpEntityToByteArray(any(HttpEntity.class)))
+                .thenReturn(getBytes(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD));
+        when(mockBadReader.read(any(byte[].class), anyList()))
                 .thenThrow(new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE));
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
+    }
+
+    // Run the batches through the real callable, Comprehend returns a POSITIVE result for each text
+    private void mockSentimentBatches() {
+        doAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get())
+                .when(mockPermitLimiter).submit(any());
+        doAnswer(invocation -> {
+            BatchDetectSentimentRequest batchRequest = invocation.getArgument(0);
+            List<BatchDetectSentimentItemResult> itemResultList = new ArrayList<>();
+            for (int i = 0; i < batchRequest.getTextList().size(); i++) {
+                itemResultList.add(new BatchDetectSentimentItemResult().withIndex(i).withSentiment("POSITIVE"));
+            }
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(batchRequest, new BatchDetectSentimentResult().withResultList(itemResultList)
+                    .withErrorList(Collections.emptyList()));
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+    }
+
+    private void mockSubBulkResponses(final int statusCode) {
+        when(mockStatusLine.getStatusCode()).thenReturn(statusCode);
+        when(mockESClient.performRequestAsync(any(Request.class)))
+                .thenReturn(CompletableFuture.completedFuture(mockESResponse));
+    }
+
+    private static BulkFlushPolicy getFlushPolicy(final int flushRows, final int maxSubBulkDocuments) {
+        return getFlushPolicy(flushRows, maxSubBulkDocuments, Constants.BULK_SUB_REQUEST_CONCURRENCY);
+    }
+
+    private static BulkFlushPolicy getFlushPolicy(final int flushRows, final int maxSubBulkDocuments,
+                                                  final int subBulkConcurrency) {
+        return new BulkFlushPolicy(flushRows, Constants.BULK_SUB_REQUEST_MAX_BYTES, maxSubBulkDocuments,
+                subBulkConcurrency);
+    }
+
+    private static byte[] getBytes(final String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
     }
 
 }
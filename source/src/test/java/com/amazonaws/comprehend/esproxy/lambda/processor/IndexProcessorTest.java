@@ -2,13 +2,24 @@ package com.amazonaws.comprehend.esproxy.lambda.processor;
 
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.ConfigRetriever;
 import com.amazonaws.comprehend.esproxy.lambda.utils.HTTPTransformer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.IngestionSerializer;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -22,19 +33,23 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
@@ -45,7 +60,7 @@ public class IndexProcessorTest {
     private ComprehendSerializer<JsonNode> ingestionSerializer;
 
     @Mock
-    private AmazonComprehend mockComprehendClient;
+    private AmazonComprehendAsync mockComprehendClient;
 
     @Mock
     private OpenSearchServiceClient mockESClient;
@@ -54,7 +69,18 @@ public class IndexProcessorTest {
     private ConfigRetriever mockConfigRetriever;
 
     @Mock
-    private ExecutorService mockExecutorService;
+    private AsyncPermitLimiter mockPermitLimiter;
+
+    @Mock
+    private ComprehendResultCache mockResultCache;
+
+    private ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    @Mock
+    private ScheduledExecutorService mockRetryScheduler;
+
+    @Mock
+    private RequestCoalescer mockRequestCoalescer;
 
     @Mock
     private Response mockESResponse;
@@ -79,11 +105,14 @@ public class IndexProcessorTest {
         when(mockESClient.performRequest(any(Request.class))).thenReturn(mockESResponse);
         when(mockESResponse.getStatusLine()).thenReturn(mockStatusLine);
         when(mockESResponse.getEntity()).thenReturn(new NStringEntity(TestConstants.DUMMY_RESPONSE));
-        when(mockConfigRetriever.retrieveStoredConfig()).thenReturn(TestConstants.getListConfigMap());
+        when(mockConfigRetriever.retrieveConfigRouterAsync())
+                .thenReturn(CompletableFuture.completedFuture(TestConstants.getListConfigRouter()));
 
         ingestionSerializer = new IngestionSerializer(new ObjectMapper());
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(Constants.MAX_THREAD);
         test = new IndexProcessor(ingestionSerializer, mockComprehendClient,
-                mockESClient, mockConfigRetriever, mockExecutorService);
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache,
+                concurrencyLimiter, mockRetryScheduler, mockRequestCoalescer);
     }
 
     @Test
@@ -93,7 +122,7 @@ public class IndexProcessorTest {
         when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class))).thenReturn(TestConstants.EMPTY_STRING);
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
     }
 
     @Test
@@ -104,80 +133,113 @@ public class IndexProcessorTest {
                 .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NO_KEYWORD);
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
     }
 
     @Test
-    public void succeedProcessWhenPayloadContainsConfigKeyOnTheFirstLevel()
-            throws ExecutionException, InterruptedException {
+    public void succeedProcessWhenPayloadContainsConfigKeyOnTheFirstLevel() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
         when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
                 .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
 
-        List<Future<SingularResponse>> executorResultList = new ArrayList<>();
-        Future<SingularResponse> responseObjectFuture = mock(Future.class);
-        executorResultList.add(responseObjectFuture);
-        List<Callable<SingularResponse>> executorList = new ArrayList<>();
-
-        when(responseObjectFuture.get()).thenReturn(mockSingularResponse);
+        doReturn(CompletableFuture.completedFuture(mockSingularResponse)).when(mockPermitLimiter).submit(any());
         when(mockSingularResponse.getFieldNameAndOperation()).thenReturn(TestConstants.FIELD_NAME);
         when(mockSingularResponse.getComprehendResult()).thenReturn(mockLanguageResult);
-        when(mockExecutorService.invokeAll(any(executorList.getClass()))).thenReturn(executorResultList);
 
         test.processRequest(request, mockLogger);
         verify(mockLogger, times(1)).log("Ingest Comprehend enriched results to OpenSearchService");
     }
 
     @Test
-    public void succeedProcessWhenPayloadContainsNestedConfigKey()
-            throws ExecutionException, InterruptedException {
+    public void succeedProcessWhenPayloadContainsNestedConfigKey() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
         request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
         when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
                 .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
 
-        List<Future<SingularResponse>> executorResultList = new ArrayList<>();
-        Future<SingularResponse> responseObjectFuture1 = mock(Future.class);
-        Future<SingularResponse> responseObjectFuture2 = mock(Future.class);
-        executorResultList.add(responseObjectFuture1);
-        executorResultList.add(responseObjectFuture2);
-        List<Callable<SingularResponse>> executorList = new ArrayList<>();
-
-        when(responseObjectFuture1.get()).thenReturn(mockSingularResponse);
-        when(responseObjectFuture2.get()).thenReturn(mockSingularResponse);
+        doReturn(CompletableFuture.completedFuture(mockSingularResponse)).when(mockPermitLimiter).submit(any());
         when(mockSingularResponse.getFieldNameAndOperation()).thenReturn(TestConstants.FIELD_NAME);
         when(mockSingularResponse.getComprehendResult()).thenReturn(mockLanguageResult);
-        when(mockExecutorService.invokeAll(any(executorList.getClass()))).thenReturn(executorResultList);
 
         test.processRequest(request, mockLogger);
         verify(mockLogger, times(1)).log("Ingest Comprehend enriched results to OpenSearchService");
     }
 
     @Test
-    public void succeedProcessWhenSomeResultThrowError()
-            throws ExecutionException, InterruptedException {
+    public void succeedLogCacheStatsOfThisRequest() {
         Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
-        request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
+        request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
         when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
-                .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
-
-        List<Future<SingularResponse>> executorResultList = new ArrayList<>();
-        Future<SingularResponse> responseObjectFuture1 = mock(Future.class);
-        Future<SingularResponse> responseObjectFuture2 = mock(Future.class);
-        executorResultList.add(responseObjectFuture1);
-        executorResultList.add(responseObjectFuture2);
-        List<Callable<SingularResponse>> executorList = new ArrayList<>();
+                .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
+        // The cache already counted the lookups of the earlier requests in the container
+        when(mockResultCache.getHitCount()).thenReturn(5L, 7L);
+        when(mockResultCache.getMissCount()).thenReturn(3L, 4L);
 
-        when(responseObjectFuture1.get()).thenReturn(mockSingularResponse);
-        when(responseObjectFuture2.get())
-                .thenThrow(new ExecutionException(new Throwable(TestConstants.DUMMY_ERROR_MESSAGE)));
+        doReturn(CompletableFuture.completedFuture(mockSingularResponse)).when(mockPermitLimiter).submit(any());
         when(mockSingularResponse.getFieldNameAndOperation()).thenReturn(TestConstants.FIELD_NAME);
         when(mockSingularResponse.getComprehendResult()).thenReturn(mockLanguageResult);
-        when(mockExecutorService.invokeAll(any(executorList.getClass()))).thenReturn(executorResultList);
 
         test.processRequest(request, mockLogger);
-        verify(mockLogger, times(1)).log("Ingest Comprehend enriched results to OpenSearchService");
+        verify(mockLogger, times(1)).log("Comprehend result cache: hits = 2, misses = 1");
+    }
+
+    @Test
+    public void succeedBatchFieldsSharingOperation() {
+        Map<String, ComprehendConfiguration> configMap = new HashMap<>();
+        configMap.put(TestConstants.FIELD_NAME, new ComprehendConfiguration(TestConstants.INDEX_NAME,
+                TestConstants.FIELD_NAME, TestConstants.COMPREHEND_OPERATIONS, TestConstants.LANGUAGE_CODE));
+        configMap.put(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NAME_KEY, new ComprehendConfiguration(
+                TestConstants.INDEX_NAME, TestConstants.CUSTOMER_INGESTION_PAYLOAD_NAME_KEY,
+                TestConstants.COMPREHEND_OPERATIONS, TestConstants.LANGUAGE_CODE));
+        when(mockConfigRetriever.retrieveConfigRouterAsync())
+                .thenReturn(CompletableFuture.completedFuture(ComprehendConfigRouter.compile(configMap)));
+        Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
+                .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD);
+
+        // Run the batch through the real callable, Comprehend returns a result for each field
+        doAnswer(invocation -> ((Supplier<?>) invocation.getArgument(0)).get())
+                .when(mockPermitLimiter).submit(any());
+        BatchDetectSentimentResult batchResult = new BatchDetectSentimentResult()
+                .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("POSITIVE"),
+                        new BatchDetectSentimentItemResult().withIndex(1).withSentiment("NEUTRAL"))
+                .withErrorList(Collections.emptyList());
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), batchResult);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        test.processRequest(request, mockLogger);
+        ArgumentCaptor<BatchDetectSentimentRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(BatchDetectSentimentRequest.class);
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(batchRequestCaptor.capture(), any());
+        assertEquals(2, batchRequestCaptor.getValue().getTextList().size());
+        verify(mockComprehendClient, never()).detectSentimentAsync(any(), any());
+
+        ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mockESClient, times(1)).performRequest(anyString(), anyString(), payloadCaptor.capture());
+        JSONObject enrichedPayload = new JSONObject(payloadCaptor.getValue());
+        assertTrue(enrichedPayload.has(String.format("%s_%s", TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment)));
+        assertTrue(enrichedPayload.has(String.format("%s_%s", TestConstants.CUSTOMER_INGESTION_PAYLOAD_NAME_KEY,
+                ComprehendOperationEnum.DetectSentiment)));
+    }
+
+    @Test(expected = InternalErrorException.class)
+    public void failedProcessWhenResultThrowError() {
+        Request request = new Request(HttpPut.METHOD_NAME, TestConstants.DUMMY_ENDPOINT);
+        request.setJsonEntity(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
+        when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
+                .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
+
+        CompletableFuture<SingularResponse> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE));
+        doReturn(failedFuture).when(mockPermitLimiter).submit(any());
+
+        test.processRequest(request, mockLogger);
     }
 
     @Test(expected = InternalErrorException.class)
@@ -187,14 +249,15 @@ public class IndexProcessorTest {
 
         IngestionSerializer mockBadSerializer = mock(IngestionSerializer.class);
         test = new IndexProcessor(mockBadSerializer, mockComprehendClient,
-                mockESClient, mockConfigRetriever, mockExecutorService);
+                mockESClient, mockConfigRetriever, mockPermitLimiter, mockResultCache,
+                concurrencyLimiter, mockRetryScheduler, mockRequestCoalescer);
         when(HTTPTransformer.transformHttpEntityToString(any(HttpEntity.class)))
                 .thenReturn(TestConstants.CUSTOMER_INGESTION_PAYLOAD_NESTED);
         when(mockBadSerializer.deserialize(anyString()))
                 .thenThrow(new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE));
 
         test.processRequest(request, mockLogger);
-        verifyZeroInteractions(mockExecutorService);
+        verifyZeroInteractions(mockPermitLimiter);
     }
 
 }
@@ -0,0 +1,121 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkRequest;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestCoalescerTest {
+    private static final long WINDOW_MILLIS = 5;
+
+    private static final String FIELD_NAME_AND_OPERATION =
+            String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment);
+
+    @Mock
+    private ScheduledExecutorService mockScheduler;
+
+    @Mock
+    private AmazonComprehendAsync mockComprehendClient;
+
+    @Mock
+    private ComprehendResultCache mockResultCache;
+
+    private RequestCoalescer test;
+
+    @Before
+    public void setup() {
+        test = new RequestCoalescer(WINDOW_MILLIS, mockScheduler, mockComprehendClient,
+                new AsyncPermitLimiter(Constants.MAX_THREAD), mockResultCache,
+                new ComprehendConcurrencyLimiter(Constants.MAX_THREAD));
+        // Comprehend returns the index of each text as its sentiment
+        doAnswer(invocation -> {
+            BatchDetectSentimentRequest batchRequest = invocation.getArgument(0);
+            List<BatchDetectSentimentItemResult> itemResultList = new ArrayList<>();
+            for (int i = 0; i < batchRequest.getTextList().size(); i++) {
+                itemResultList.add(new BatchDetectSentimentItemResult().withIndex(i).withSentiment(String.valueOf(i)));
+            }
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(batchRequest, new BatchDetectSentimentResult().withResultList(itemResultList)
+                    .withErrorList(Collections.emptyList()));
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+    }
+
+    @Test
+    public void succeedSendTextsOfWindowInSingleBatch() throws Exception {
+        CompletableFuture<SingularResponse> firstResult = test.submit(getBulkRequest("first"));
+        CompletableFuture<SingularResponse> secondResult = test.submit(getBulkRequest("second"));
+        assertFalse(firstResult.isDone());
+        verify(mockComprehendClient, never()).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        // Close the window
+        ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduler, times(1)).schedule(flushCaptor.capture(), eq(WINDOW_MILLIS), eq(TimeUnit.MILLISECONDS));
+        flushCaptor.getValue().run();
+
+        ArgumentCaptor<BatchDetectSentimentRequest> batchRequestCaptor =
+                ArgumentCaptor.forClass(BatchDetectSentimentRequest.class);
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(batchRequestCaptor.capture(), any());
+        assertEquals(2, batchRequestCaptor.getValue().getTextList().size());
+        assertEquals("0", firstResult.get().getComprehendResult().get("sentiment"));
+        assertEquals("1", secondResult.get().getComprehendResult().get("sentiment"));
+        assertEquals(FIELD_NAME_AND_OPERATION, secondResult.get().getFieldNameAndOperation());
+    }
+
+    @Test
+    public void succeedSendFullBatchBeforeWindowCloses() {
+        List<CompletableFuture<SingularResponse>> resultList = new ArrayList<>();
+        for (int i = 0; i < Constants.MAX_BATCH_SIZE; i++) {
+            resultList.add(test.submit(getBulkRequest("text" + i)));
+        }
+
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        resultList.forEach(result -> assertTrue(result.isDone()));
+
+        // The window of the full batch closes without sending it again
+        ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduler, times(1)).schedule(flushCaptor.capture(), anyLong(), any());
+        flushCaptor.getValue().run();
+        verify(mockComprehendClient, times(1)).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+    }
+
+    private static BulkRequest getBulkRequest(final String content) {
+        return new BulkRequest(content, ComprehendOperationEnum.DetectSentiment, TestConstants.LANGUAGE_CODE,
+                new BatchFieldLocator(FIELD_NAME_AND_OPERATION, 0));
+    }
+}
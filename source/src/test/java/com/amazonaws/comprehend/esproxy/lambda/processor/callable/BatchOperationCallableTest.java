@@ -1,110 +1,564 @@
 package com.amazonaws.comprehend.esproxy.lambda.processor.callable;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.BatchItemRetryPolicy;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.BatchDetectEntitiesRequest;
+import com.amazonaws.services.comprehend.model.BatchDetectSentimentItemResult;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import com.amazonaws.services.comprehend.model.BatchItemError;
 import com.amazonaws.services.comprehend.model.InternalServerException;
-import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class BatchOperationCallableTest {
+    private static final String SENTIMENT_KEY = "sentiment";
+
+    private static final int PERMIT_LIMIT = 4;
+
+    private static final String THROTTLING_ERROR_CODE = "ThrottlingException";
+
     @Mock
-    private AmazonComprehend mockComprehendClient;
+    private AmazonComprehendAsync mockComprehendClient;
 
     @Mock
     BatchDetectSentimentResult mockBatchDetectSentimentResult;
 
+    private ComprehendResultCache resultCache;
+
+    private AsyncPermitLimiter permitLimiter;
+
+    private ComprehendConcurrencyLimiter concurrencyLimiter;
+
+    @Mock
+    private ScheduledExecutorService mockRetryScheduler;
+
+    private BatchItemRetryPolicy retryPolicy;
+
     private BatchOperationCallable test;
 
+    @Before
+    public void setup() {
+        resultCache = new ComprehendResultCache(TestConstants.RESULT_CACHE_MAX_BYTES);
+        permitLimiter = new AsyncPermitLimiter(Constants.MAX_THREAD);
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(Constants.MAX_THREAD);
+        retryPolicy = new BatchItemRetryPolicy(mockRetryScheduler, Constants.BATCH_ITEM_RETRY_BUDGET);
+    }
+
+    @Test
+    public void failedWithAmazonServiceException() throws Exception {
+        InternalServerException internalServerException = new InternalServerException(TestConstants.DUMMY_ERROR_MESSAGE);
+        internalServerException.setErrorCode(TestConstants.ERROR_CODE);
+        internalServerException.setErrorMessage(CustomerMessage.INTERNAL_ERROR);
+
+        List<BatchFieldLocator> fieldLocatorList = Collections.singletonList(
+                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME,
+                        ComprehendOperationEnum.DetectSentiment), 1));
+
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                fieldLocatorList,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockBatchDetectSentimentError(internalServerException);
+
+        BatchResponse response = test.callAsync().get();
+        List<BatchFieldLocator> locatorList = response.getLocatorList();
+        List<JSONObject> resultList = response.getBatchResultList();
+
+        assertEquals(1, locatorList.get(0).getContentRowNum());
+        assertEquals(String.format("%s_%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment, "Error"),
+                locatorList.get(0).getFieldNameAndOperation());
+        // The error key is set on a copy, the locator of the request is left as is
+        assertSame(fieldLocatorList.get(0), locatorList.get(0).getRequestLocator());
+        assertEquals(String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment),
+                fieldLocatorList.get(0).getFieldNameAndOperation());
+
+        assertEquals(TestConstants.ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
+        assertEquals(CustomerMessage.INTERNAL_ERROR, resultList.get(0).get(TestConstants.ERROR_MESSAGE_KEY));
+    }
+
+    @Test
+    public void failedWithAmazonClientException() throws Exception {
+        AmazonClientException clientException = new AmazonClientException(TestConstants.DUMMY_ERROR_MESSAGE);
+
+        List<BatchFieldLocator> fieldLocatorList = Collections.singletonList(
+                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME,
+                        ComprehendOperationEnum.DetectSentiment), 1));
+
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                fieldLocatorList,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockBatchDetectSentimentError(clientException);
+
+        BatchResponse response = test.callAsync().get();
+        List<BatchFieldLocator> locatorList = response.getLocatorList();
+        List<JSONObject> resultList = response.getBatchResultList();
+
+        assertEquals(1, locatorList.get(0).getContentRowNum());
+        assertEquals(String.format("%s_%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment, "Error"),
+                locatorList.get(0).getFieldNameAndOperation());
+
+        assertEquals(Constants.CLIENT_EXCEPTION_ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
+        assertEquals(TestConstants.DUMMY_ERROR_MESSAGE, resultList.get(0).get(TestConstants.ERROR_MESSAGE_KEY));
+    }
+
     @Test
-    public void successBatchOperationCall() {
+    public void successBatchOperationCallAsync() throws Exception {
         test = new BatchOperationCallable(
                 ComprehendOperationEnum.DetectSentiment,
                 TestConstants.LANGUAGE_CODE,
                 mockComprehendClient,
                 TestConstants.FIELD_LOCATOR_LIST,
-                TestConstants.CONTENT_LIST);
-        when(mockComprehendClient.batchDetectSentiment(any(BatchDetectSentimentRequest.class)))
-                .thenReturn(mockBatchDetectSentimentResult);
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), mockBatchDetectSentimentResult);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
 
-        assertEquals(1, test.call().getLocatorList().size());
+        assertEquals(1, test.callAsync().get().getLocatorList().size());
     }
 
     @Test
-    public void failedWithAmazonServiceException() throws JSONException {
+    public void failedAsyncWithAmazonServiceException() throws Exception {
         InternalServerException internalServerException = new InternalServerException(TestConstants.DUMMY_ERROR_MESSAGE);
         internalServerException.setErrorCode(TestConstants.ERROR_CODE);
         internalServerException.setErrorMessage(CustomerMessage.INTERNAL_ERROR);
 
         List<BatchFieldLocator> fieldLocatorList = Collections.singletonList(
-                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment), 1));
+                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME,
+                        ComprehendOperationEnum.DetectSentiment), 1));
 
         test = new BatchOperationCallable(
                 ComprehendOperationEnum.DetectSentiment,
                 TestConstants.LANGUAGE_CODE,
                 mockComprehendClient,
                 fieldLocatorList,
-                TestConstants.CONTENT_LIST);
-        when(mockComprehendClient.batchDetectSentiment(any(BatchDetectSentimentRequest.class)))
-                .thenThrow(internalServerException);
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onError(internalServerException);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
 
-        BatchResponse response = test.call();
+        // The failure is turned into error results, the future itself completes normally
+        BatchResponse response = test.callAsync().get();
         List<BatchFieldLocator> locatorList = response.getLocatorList();
         List<JSONObject> resultList = response.getBatchResultList();
 
-        assertEquals(1, locatorList.get(0).getContentRowNum());
         assertEquals(String.format("%s_%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment, "Error"),
                 locatorList.get(0).getFieldNameAndOperation());
-
         assertEquals(TestConstants.ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
         assertEquals(CustomerMessage.INTERNAL_ERROR, resultList.get(0).get(TestConstants.ERROR_MESSAGE_KEY));
     }
 
     @Test
-    public void failedWithAmazonClientException() throws JSONException {
+    public void failedAsyncWithSynchronousAmazonClientException() throws Exception {
         AmazonClientException clientException = new AmazonClientException(TestConstants.DUMMY_ERROR_MESSAGE);
 
         List<BatchFieldLocator> fieldLocatorList = Collections.singletonList(
-                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment), 1));
+                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME,
+                        ComprehendOperationEnum.DetectSentiment), 1));
 
         test = new BatchOperationCallable(
                 ComprehendOperationEnum.DetectSentiment,
                 TestConstants.LANGUAGE_CODE,
                 mockComprehendClient,
                 fieldLocatorList,
-                TestConstants.CONTENT_LIST);
-        when(mockComprehendClient.batchDetectSentiment(any(BatchDetectSentimentRequest.class)))
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        when(mockComprehendClient.batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any()))
                 .thenThrow(clientException);
 
-        BatchResponse<?> response = test.call();
+        List<JSONObject> resultList = test.callAsync().get().getBatchResultList();
+
+        assertEquals(Constants.CLIENT_EXCEPTION_ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
+        assertEquals(TestConstants.DUMMY_ERROR_MESSAGE, resultList.get(0).get(TestConstants.ERROR_MESSAGE_KEY));
+    }
+
+    @Test
+    public void succeedSendOnlyContentsWithoutCachedResult() throws Exception {
+        String fieldNameAndOperation = String.format("%s_%s", TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment);
+        List<BatchFieldLocator> fieldLocatorList = Arrays.asList(
+                new BatchFieldLocator(fieldNameAndOperation, 0), new BatchFieldLocator(fieldNameAndOperation, 1));
+        resultCache.put(ComprehendOperationEnum.DetectSentiment, TestConstants.LANGUAGE_CODE,
+                TestConstants.DUMMY_MESSAGE, new JSONObject().put(SENTIMENT_KEY, "POSITIVE"), null);
+
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                fieldLocatorList,
+                Arrays.asList(TestConstants.DUMMY_MESSAGE, TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT),
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockBatchDetectSentiment(new BatchDetectSentimentResult()
+                .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("NEGATIVE"))
+                .withErrorList(Collections.emptyList()));
+
+        BatchResponse response = test.callAsync().get();
         List<BatchFieldLocator> locatorList = response.getLocatorList();
         List<JSONObject> resultList = response.getBatchResultList();
 
+        // The comprehended content comes first, the cached result is appended after it
         assertEquals(1, locatorList.get(0).getContentRowNum());
-        assertEquals(String.format("%s_%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment, "Error"),
-                locatorList.get(0).getFieldNameAndOperation());
+        assertEquals("NEGATIVE", resultList.get(0).get(SENTIMENT_KEY));
+        assertEquals(0, locatorList.get(1).getContentRowNum());
+        assertEquals("POSITIVE", resultList.get(1).get(SENTIMENT_KEY));
+        verify(mockComprehendClient).batchDetectSentimentAsync(eq(new BatchDetectSentimentRequest()
+                .withTextList(TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT)
+                .withLanguageCode(TestConstants.LANGUAGE_CODE.toString())), any());
+    }
 
-        assertEquals(Constants.CLIENT_EXCEPTION_ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
-        assertEquals(TestConstants.DUMMY_ERROR_MESSAGE, resultList.get(0).get(TestConstants.ERROR_MESSAGE_KEY));
+    @Test
+    public void succeedSkipComprehendWhenAllResultsAreCached() throws Exception {
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                TestConstants.FIELD_LOCATOR_LIST,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockBatchDetectSentiment(new BatchDetectSentimentResult()
+                .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("NEUTRAL"))
+                .withErrorList(Collections.emptyList()));
+        test.callAsync().get();
+
+        List<JSONObject> resultList = test.callAsync().get().getBatchResultList();
+
+        assertEquals("NEUTRAL", resultList.get(0).get(SENTIMENT_KEY));
+        verify(mockComprehendClient, times(1))
+                .batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        assertEquals(1, resultCache.getHitCount());
+    }
+
+    @Test
+    public void succeedNotCacheErrors() throws Exception {
+        List<BatchFieldLocator> fieldLocatorList = Collections.singletonList(
+                new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME,
+                        ComprehendOperationEnum.DetectSentiment), 1));
+
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                fieldLocatorList,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockBatchDetectSentimentError(new AmazonClientException(TestConstants.DUMMY_ERROR_MESSAGE));
+        test.callAsync().get();
+
+        assertNull(resultCache.get(ComprehendOperationEnum.DetectSentiment, TestConstants.LANGUAGE_CODE,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT));
+    }
+
+    @Test
+    public void succeedRetryFailedItems() throws Exception {
+        runRetriesImmediately();
+        String fieldNameAndOperation = String.format("%s_%s", TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment);
+        List<BatchFieldLocator> fieldLocatorList = Arrays.asList(
+                new BatchFieldLocator(fieldNameAndOperation, 0), new BatchFieldLocator(fieldNameAndOperation, 1));
+
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                fieldLocatorList,
+                Arrays.asList(TestConstants.DUMMY_MESSAGE, TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT),
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockSecondItemFailsOnce();
+
+        BatchResponse response = test.callAsync().get();
+        List<JSONObject> resultList = response.getBatchResultList();
+
+        assertEquals("POSITIVE", resultList.get(0).get(SENTIMENT_KEY));
+        assertEquals("NEGATIVE", resultList.get(1).get(SENTIMENT_KEY));
+        assertEquals(fieldNameAndOperation, response.getLocatorList().get(1).getFieldNameAndOperation());
+        assertEquals(Constants.BATCH_ITEM_RETRY_BUDGET - 1, retryPolicy.getRemainingBudget());
+        assertNotNull(resultCache.get(ComprehendOperationEnum.DetectSentiment, TestConstants.LANGUAGE_CODE,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT));
+    }
+
+    @Test
+    public void succeedReleasePermitsDuringRetryBackoff() throws Exception {
+        List<Runnable> scheduledRetryList = new ArrayList<>();
+        doAnswer(invocation -> {
+            scheduledRetryList.add(invocation.getArgument(0));
+            return null;
+        }).when(mockRetryScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        String fieldNameAndOperation = String.format("%s_%s", TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment);
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                Arrays.asList(new BatchFieldLocator(fieldNameAndOperation, 0),
+                        new BatchFieldLocator(fieldNameAndOperation, 1)),
+                Arrays.asList(TestConstants.DUMMY_MESSAGE, TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT),
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        mockSecondItemFailsOnce();
+
+        CompletableFuture<BatchResponse> response = test.callAsync();
+
+        // The batch waits for the backoff of its retry without holding a permit
+        assertEquals(1, scheduledRetryList.size());
+        assertFalse(response.isDone());
+        assertEquals(0, permitLimiter.getInFlight());
+        assertEquals(0, concurrencyLimiter.getLimiter(ComprehendOperationEnum.DetectSentiment).getInFlight());
+
+        scheduledRetryList.get(0).run();
+        assertEquals("NEGATIVE", response.get().getBatchResultList().get(1).get(SENTIMENT_KEY));
+    }
+
+    @Test
+    public void succeedKeepItemErrorsWhenRetryBudgetRunsOut() throws Exception {
+        retryPolicy = new BatchItemRetryPolicy(mockRetryScheduler, 0);
+        test = new BatchOperationCallable(
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                TestConstants.FIELD_LOCATOR_LIST,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), new BatchDetectSentimentResult()
+                    .withResultList(Collections.emptyList())
+                    .withErrorList(new BatchItemError().withIndex(0).withErrorCode(TestConstants.ERROR_CODE)));
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        List<JSONObject> resultList = test.callAsync().get().getBatchResultList();
+
+        assertEquals(TestConstants.ERROR_CODE, resultList.get(0).get(TestConstants.ERROR_CODE_KEY));
+        verify(mockComprehendClient, times(1))
+                .batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        verifyZeroInteractions(mockRetryScheduler);
+    }
+
+    @Test
+    public void succeedRetryThrottledBatch() throws Exception {
+        runRetriesImmediately();
+        test = createCallable(ComprehendOperationEnum.DetectSentiment);
+        AmazonServiceException throttlingException = getThrottlingException();
+        AtomicBoolean isThrottled = new AtomicBoolean();
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            if (isThrottled.compareAndSet(false, true)) {
+                // The first call is throttled as a whole
+                handler.onError(throttlingException);
+            } else {
+                handler.onSuccess(invocation.getArgument(0), new BatchDetectSentimentResult()
+                        .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("POSITIVE"))
+                        .withErrorList(Collections.emptyList()));
+            }
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        BatchResponse response = test.callAsync().get();
+
+        assertEquals("POSITIVE", response.getBatchResultList().get(0).get(SENTIMENT_KEY));
+        assertSame(TestConstants.FIELD_LOCATOR_LIST.get(0), response.getLocatorList().get(0));
+        verify(mockComprehendClient, times(2))
+                .batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        assertEquals(Constants.BATCH_ITEM_RETRY_BUDGET - 1, retryPolicy.getRemainingBudget());
+    }
+
+    @Test
+    public void succeedReturnThrottlingErrorWhenRetryBudgetRunsOut() throws Exception {
+        retryPolicy = new BatchItemRetryPolicy(mockRetryScheduler, 0);
+        test = createCallable(ComprehendOperationEnum.DetectSentiment);
+        AmazonServiceException throttlingException = getThrottlingException();
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onError(throttlingException);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+
+        BatchResponse response = test.callAsync().get();
+
+        assertEquals(String.format("%s_%s", TestConstants.FIELD_LOCATOR_LIST.get(0).getFieldNameAndOperation(),
+                Constants.ERROR_KEY_NAME), response.getLocatorList().get(0).getFieldNameAndOperation());
+        assertEquals(THROTTLING_ERROR_CODE, response.getBatchResultList().get(0).get(TestConstants.ERROR_CODE_KEY));
+        verifyZeroInteractions(mockRetryScheduler);
+    }
+
+    @Test
+    public void succeedRunOtherOperationsWhenOneIsThrottled() {
+        permitLimiter = new AsyncPermitLimiter(PERMIT_LIMIT);
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(PERMIT_LIMIT);
+        throttleToMinimum(ComprehendOperationEnum.DetectSentiment);
+
+        // The Comprehend calls never complete, every sent call keeps its permits
+        for (int i = 0; i < PERMIT_LIMIT; i++) {
+            createCallable(ComprehendOperationEnum.DetectSentiment).callAsync();
+        }
+        for (int i = 0; i < PERMIT_LIMIT; i++) {
+            createCallable(ComprehendOperationEnum.DetectEntities).callAsync();
+        }
+
+        // The queued sentiment batches wait for their own operation without holding a global permit
+        verify(mockComprehendClient, times(Constants.ADAPTIVE_MIN_PERMIT_LIMIT))
+                .batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        verify(mockComprehendClient, times(PERMIT_LIMIT - Constants.ADAPTIVE_MIN_PERMIT_LIMIT))
+                .batchDetectEntitiesAsync(any(BatchDetectEntitiesRequest.class), any());
+        assertEquals(PERMIT_LIMIT, permitLimiter.getInFlight());
+        assertEquals(PERMIT_LIMIT - Constants.ADAPTIVE_MIN_PERMIT_LIMIT,
+                concurrencyLimiter.getLimiter(ComprehendOperationEnum.DetectSentiment).getWaiting());
+    }
+
+    private BatchOperationCallable createCallable(final ComprehendOperationEnum operation) {
+        return new BatchOperationCallable(
+                operation,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendClient,
+                TestConstants.FIELD_LOCATOR_LIST,
+                TestConstants.CONTENT_LIST,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter,
+                retryPolicy);
+    }
+
+    // Cut the permit limit of the operation to its minimum with throttled calls
+    private void throttleToMinimum(final ComprehendOperationEnum operation) {
+        AmazonServiceException throttlingException = getThrottlingException();
+        while (concurrencyLimiter.getPermitLimit(operation) > Constants.ADAPTIVE_MIN_PERMIT_LIMIT) {
+            CompletableFuture<Void> throttledCall = new CompletableFuture<>();
+            throttledCall.completeExceptionally(throttlingException);
+            concurrencyLimiter.getLimiter(operation).submit(() -> throttledCall);
+        }
+    }
+
+    private static AmazonServiceException getThrottlingException() {
+        AmazonServiceException throttlingException = new AmazonServiceException(TestConstants.DUMMY_ERROR_MESSAGE);
+        throttlingException.setErrorCode(THROTTLING_ERROR_CODE);
+        return throttlingException;
+    }
+
+    private void mockBatchDetectSentiment(final BatchDetectSentimentResult result) {
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), result);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
     }
 
+    private void mockBatchDetectSentimentError(final AmazonClientException exception) {
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onError(exception);
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+    }
+
+    // Comprehend fails the second item of a batch of 2 texts, and succeeds the retried item
+    private void mockSecondItemFailsOnce() {
+        doAnswer(invocation -> {
+            BatchDetectSentimentRequest request = invocation.getArgument(0);
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            if (request.getTextList().size() == 2) {
+                // The second item fails in the first call
+                handler.onSuccess(request, new BatchDetectSentimentResult()
+                        .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("POSITIVE"))
+                        .withErrorList(new BatchItemError().withIndex(1).withErrorCode(TestConstants.ERROR_CODE)));
+            } else {
+                handler.onSuccess(request, new BatchDetectSentimentResult()
+                        .withResultList(new BatchDetectSentimentItemResult().withIndex(0).withSentiment("NEGATIVE"))
+                        .withErrorList(Collections.emptyList()));
+            }
+            return null;
+        }).when(mockComprehendClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+    }
+
+    // Run the scheduled retries on the calling thread without delay
+    private void runRetriesImmediately() {
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(mockRetryScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
 }
@@ -4,13 +4,21 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
+import com.amazonaws.comprehend.esproxy.lambda.utils.AsyncPermitLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendConcurrencyLimiter;
+import com.amazonaws.comprehend.esproxy.lambda.utils.ComprehendResultCache;
 import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
-import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
+import com.amazonaws.services.comprehend.model.DetectDominantLanguageRequest;
+import com.amazonaws.services.comprehend.model.DetectDominantLanguageResult;
+import com.amazonaws.services.comprehend.model.DetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.DetectSentimentResult;
 import com.amazonaws.services.comprehend.model.InternalServerException;
 import org.apache.http.HttpStatus;
-import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -18,29 +26,32 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SingularOperationCallableTest {
     @Mock
-    private AmazonComprehend mockComprehendClient;
+    private AmazonComprehendAsync mockComprehendClient;
 
-    private SingularOperationCallable test;
+    private ComprehendResultCache resultCache;
 
-    @Test
-    public void successSingularOperationCall() {
-        test = new SingularOperationCallable(TestConstants.FIELD_NAME,
-                ComprehendOperationEnum.DetectSentiment,
-                TestConstants.LANGUAGE_CODE,
-                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
-                mockComprehendClient);
-        when(mockComprehendClient.detectSentiment(any())).thenReturn(TestConstants.getDetectSentimentResult());
+    private AsyncPermitLimiter permitLimiter;
+
+    private ComprehendConcurrencyLimiter concurrencyLimiter;
 
-        assertEquals(TestConstants.FIELD_NAME, test.call().getFieldNameAndOperation());
+    private SingularOperationCallable test;
+
+    @Before
+    public void setup() {
+        resultCache = new ComprehendResultCache(TestConstants.RESULT_CACHE_MAX_BYTES);
+        permitLimiter = new AsyncPermitLimiter(Constants.MAX_THREAD);
+        concurrencyLimiter = new ComprehendConcurrencyLimiter(Constants.MAX_THREAD);
     }
 
     @Test
-    public void failedWithAmazonServiceException() throws JSONException {
+    public void failedWithAmazonServiceException() throws Exception {
         InternalServerException internalServerException = new InternalServerException(TestConstants.DUMMY_ERROR_MESSAGE);
         internalServerException.setErrorCode(TestConstants.ERROR_CODE);
         internalServerException.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
@@ -52,11 +63,18 @@ public class SingularOperationCallableTest {
                 ComprehendOperationEnum.DetectDominantLanguage,
                 TestConstants.LANGUAGE_CODE,
                 TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
-                mockComprehendClient);
-        when(mockComprehendClient.detectDominantLanguage(any()))
-                .thenThrow(internalServerException);
+                mockComprehendClient,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter);
+        doAnswer(invocation -> {
+            AsyncHandler<DetectDominantLanguageRequest, DetectDominantLanguageResult> handler =
+                    invocation.getArgument(1);
+            handler.onError(internalServerException);
+            return null;
+        }).when(mockComprehendClient).detectDominantLanguageAsync(any(DetectDominantLanguageRequest.class), any());
 
-        SingularResponse response = test.call();
+        SingularResponse response = test.callAsync().get();
         JSONObject result = response.getComprehendResult();
 
         assertEquals(String.format("%s_Error", TestConstants.FIELD_NAME), response.getFieldNameAndOperation());
@@ -67,22 +85,75 @@ public class SingularOperationCallableTest {
     }
 
     @Test
-    public void failedWithAmazonClientException() throws JSONException {
+    public void successSingularOperationCallAsync() throws Exception {
+        test = new SingularOperationCallable(TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
+                mockComprehendClient,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter);
+        doAnswer(invocation -> {
+            AsyncHandler<DetectSentimentRequest, DetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), TestConstants.getDetectSentimentResult());
+            return null;
+        }).when(mockComprehendClient).detectSentimentAsync(any(DetectSentimentRequest.class), any());
+
+        assertEquals(TestConstants.FIELD_NAME, test.callAsync().get().getFieldNameAndOperation());
+    }
+
+    @Test
+    public void failedAsyncWithAmazonClientException() throws Exception {
         AmazonClientException clientException = new AmazonClientException(TestConstants.DUMMY_ERROR_MESSAGE);
 
         test = new SingularOperationCallable(TestConstants.FIELD_NAME,
                 ComprehendOperationEnum.DetectDominantLanguage,
                 TestConstants.LANGUAGE_CODE,
                 TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
-                mockComprehendClient);
-        when(mockComprehendClient.detectDominantLanguage(any()))
-                .thenThrow(clientException);
+                mockComprehendClient,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter);
+        doAnswer(invocation -> {
+            AsyncHandler<DetectDominantLanguageRequest, DetectDominantLanguageResult> handler =
+                    invocation.getArgument(1);
+            handler.onError(clientException);
+            return null;
+        }).when(mockComprehendClient).detectDominantLanguageAsync(any(DetectDominantLanguageRequest.class), any());
 
-        SingularResponse response = test.call();
+        // The failure is turned into an error result, the future itself completes normally
+        SingularResponse response = test.callAsync().get();
         JSONObject result = response.getComprehendResult();
 
         assertEquals(String.format("%s_Error", TestConstants.FIELD_NAME), response.getFieldNameAndOperation());
         assertEquals(TestConstants.DUMMY_ERROR_MESSAGE, result.get(TestConstants.ERROR_MESSAGE_KEY));
         assertEquals(Constants.CLIENT_EXCEPTION_ERROR_CODE, result.get(TestConstants.ERROR_CODE_KEY));
     }
+
+    @Test
+    public void succeedReturnCachedResult() throws Exception {
+        test = new SingularOperationCallable(TestConstants.FIELD_NAME,
+                ComprehendOperationEnum.DetectSentiment,
+                TestConstants.LANGUAGE_CODE,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
+                mockComprehendClient,
+                resultCache,
+                permitLimiter,
+                concurrencyLimiter);
+        doAnswer(invocation -> {
+            AsyncHandler<DetectSentimentRequest, DetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), TestConstants.getDetectSentimentResult());
+            return null;
+        }).when(mockComprehendClient).detectSentimentAsync(any(DetectSentimentRequest.class), any());
+        test.callAsync().get();
+
+        SingularResponse cachedResponse = test.callAsync().get();
+
+        assertEquals(TestConstants.FIELD_NAME, cachedResponse.getFieldNameAndOperation());
+        assertEquals("POSITIVE", cachedResponse.getComprehendResult().get("sentiment"));
+        verify(mockComprehendClient, times(1)).detectSentimentAsync(any(DetectSentimentRequest.class), any());
+        assertEquals(1, resultCache.getHitCount());
+        assertEquals(1, resultCache.getMissCount());
+    }
 }
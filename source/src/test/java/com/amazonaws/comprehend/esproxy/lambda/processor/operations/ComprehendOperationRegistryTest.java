@@ -0,0 +1,40 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ComprehendOperationRegistryTest {
+    @Test
+    public void succeedReturnSingletonForEveryOperation() {
+        for (ComprehendOperationEnum operation : ComprehendOperationEnum.values()) {
+            assertSame(operation.getComprehendOperation(), operation.getComprehendOperation());
+            assertSame(ComprehendOperationRegistry.getOperation(operation), operation.getComprehendOperation());
+        }
+        assertTrue(ComprehendOperationEnum.DetectEntities.getComprehendOperation() instanceof DetectEntities);
+    }
+
+    @Test
+    public void succeedKeepOperationMetadata() {
+        ComprehendOperationRegistry.Registration registration =
+                ComprehendOperationRegistry.getRegistration(ComprehendOperationEnum.DetectSyntax);
+
+        assertEquals(Arrays.asList(new DetectSyntax().getVisualizationNameList()),
+                registration.getVisualizationNameList());
+        assertEquals(Constants.SYNTAX_TOKENS_KEY_NAME, registration.getResultKeyName());
+        assertEquals(Constants.MAX_BATCH_SIZE, registration.getMaxBatchSize());
+        assertEquals(Constants.MAX_DOCUMENT_BYTES, registration.getMaxDocumentBytes());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void failedModifyVisualizationNameList() {
+        ComprehendOperationRegistry.getRegistration(ComprehendOperationEnum.DetectEntities)
+                .getVisualizationNameList().clear();
+    }
+}
@@ -1,16 +1,22 @@
 package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
 import com.amazonaws.services.comprehend.AmazonComprehend;
 import com.amazonaws.services.comprehend.model.BatchDetectEntitiesRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectEntitiesResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
@@ -48,4 +54,23 @@ public class DetectEntitiesTest {
 
         assertEquals(TestConstants.FIELD_LOCATOR_LIST, result.getLocatorList());
     }
+
+    @Test
+    public void successStitchChunkResultsWithShiftedOffsets() {
+        List<TextChunk> chunkList = Arrays.asList(new TextChunk("", 0, 20), new TextChunk("", 20, 20));
+        List<JSONObject> chunkResultList = Arrays.asList(
+                new JSONObject("{\"entities\":[{\"type\":\"PERSON\",\"text\":\"Bob\",\"beginOffset\":0,"
+                        + "\"endOffset\":3}]}"),
+                new JSONObject("{\"entities\":[{\"type\":\"LOCATION\",\"text\":\"Paris\",\"beginOffset\":5,"
+                        + "\"endOffset\":10}]}"));
+        SingularResponse result = test.stitchChunkResults(TestConstants.FIELD_NAME, chunkResultList, chunkList);
+
+        JSONArray entityArray = result.getComprehendResult().getJSONArray("entities");
+        assertEquals(2, entityArray.length());
+        assertEquals(0, entityArray.getJSONObject(0).getInt("beginOffset"));
+        assertEquals(25, entityArray.getJSONObject(1).getInt("beginOffset"));
+        assertEquals(30, entityArray.getJSONObject(1).getInt("endOffset"));
+        assertEquals(25, result.getFlattenedResult().getJSONArray("LOCATION").getJSONObject(0).getInt("beginOffset"));
+        assertEquals(1, result.getFlattenedResult().getJSONArray("PERSON").length());
+    }
 }
@@ -1,18 +1,34 @@
 package com.amazonaws.comprehend.esproxy.lambda.processor.operations;
 
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.BatchResponse;
 import com.amazonaws.comprehend.esproxy.lambda.processor.response.SingularResponse;
 import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.comprehend.AmazonComprehend;
+import com.amazonaws.services.comprehend.AmazonComprehendAsync;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentRequest;
 import com.amazonaws.services.comprehend.model.BatchDetectSentimentResult;
+import com.amazonaws.services.comprehend.model.DetectSentimentRequest;
+import com.amazonaws.services.comprehend.model.DetectSentimentResult;
+import com.amazonaws.services.comprehend.model.InternalServerException;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -20,6 +36,9 @@ public class DetectSentimentTest {
     @Mock
     private AmazonComprehend mockComprehendClient;
 
+    @Mock
+    private AmazonComprehendAsync mockComprehendAsyncClient;
+
     @Mock
     BatchDetectSentimentResult mockBatchDetectSentimentResult;
 
@@ -48,4 +67,74 @@ public class DetectSentimentTest {
 
         assertEquals(TestConstants.FIELD_LOCATOR_LIST, result.getLocatorList());
     }
+
+    @Test
+    public void successDetectSentimentAsyncCall() throws Exception {
+        doAnswer(invocation -> {
+            AsyncHandler<DetectSentimentRequest, DetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), TestConstants.getDetectSentimentResult());
+            return null;
+        }).when(mockComprehendAsyncClient).detectSentimentAsync(any(DetectSentimentRequest.class), any());
+        CompletableFuture<SingularResponse> result = test.sendSingularRequestAsync(TestConstants.FIELD_NAME,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendAsyncClient);
+
+        assertEquals(TestConstants.FIELD_NAME, result.get().getFieldNameAndOperation());
+    }
+
+    @Test
+    public void successBatchDetectSentimentAsyncCall() throws Exception {
+        doAnswer(invocation -> {
+            AsyncHandler<BatchDetectSentimentRequest, BatchDetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onSuccess(invocation.getArgument(0), mockBatchDetectSentimentResult);
+            return null;
+        }).when(mockComprehendAsyncClient).batchDetectSentimentAsync(any(BatchDetectSentimentRequest.class), any());
+        CompletableFuture<BatchResponse> result = test.sendBatchRequestAsync(
+                TestConstants.FIELD_LOCATOR_LIST,
+                TestConstants.CONTENT_LIST,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendAsyncClient);
+
+        assertEquals(TestConstants.FIELD_LOCATOR_LIST, result.get().getLocatorList());
+    }
+
+    @Test
+    public void failedDetectSentimentAsyncCall() throws InterruptedException {
+        InternalServerException internalServerException = new InternalServerException(TestConstants.DUMMY_ERROR_MESSAGE);
+        doAnswer(invocation -> {
+            AsyncHandler<DetectSentimentRequest, DetectSentimentResult> handler = invocation.getArgument(1);
+            handler.onError(internalServerException);
+            return null;
+        }).when(mockComprehendAsyncClient).detectSentimentAsync(any(DetectSentimentRequest.class), any());
+        CompletableFuture<SingularResponse> result = test.sendSingularRequestAsync(TestConstants.FIELD_NAME,
+                TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT,
+                TestConstants.LANGUAGE_CODE,
+                mockComprehendAsyncClient);
+
+        try {
+            result.get();
+            fail("The future should complete exceptionally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InternalServerException);
+        }
+    }
+
+    @Test
+    public void successStitchChunkResultsByLengthWeightedScores() {
+        List<TextChunk> chunkList = Arrays.asList(new TextChunk("", 0, 30), new TextChunk("", 30, 10));
+        List<JSONObject> chunkResultList = Arrays.asList(
+                new JSONObject("{\"sentiment\":\"POSITIVE\",\"sentimentScore\":"
+                        + "{\"positive\":0.9,\"negative\":0.05,\"neutral\":0.05,\"mixed\":0}}"),
+                new JSONObject("{\"sentiment\":\"NEGATIVE\",\"sentimentScore\":"
+                        + "{\"positive\":0.05,\"negative\":0.9,\"neutral\":0.05,\"mixed\":0}}"));
+        SingularResponse result = test.stitchChunkResults(TestConstants.FIELD_NAME, chunkResultList, chunkList);
+
+        assertEquals(TestConstants.FIELD_NAME, result.getFieldNameAndOperation());
+        assertEquals("POSITIVE", result.getComprehendResult().getString("sentiment"));
+        JSONObject sentimentScore = result.getComprehendResult().getJSONObject("sentimentScore");
+        assertEquals(0.6875, sentimentScore.getDouble("positive"), 1e-9);
+        assertEquals(0.2625, sentimentScore.getDouble("negative"), 1e-9);
+        assertNull(result.getFlattenedResult());
+    }
 }
@@ -0,0 +1,60 @@
+package com.amazonaws.comprehend.esproxy.lambda.processor.response;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchResponseTest {
+    private static final List<BatchFieldLocator> LOCATOR_LIST = Arrays.asList(
+            new BatchFieldLocator(TestConstants.FIELD_NAME, 0),
+            new BatchFieldLocator(TestConstants.FIELD_NAME, 1),
+            new BatchFieldLocator(TestConstants.FIELD_NAME, 2));
+
+    @Test
+    public void succeedPlaceItemsAndErrorsByIndex() {
+        JSONObject firstResult = new JSONObject().put("sentiment", "POSITIVE");
+        JSONObject firstFlattenedResult = new JSONObject().put("flattened", 0);
+        JSONObject lastResult = new JSONObject().put("sentiment", "NEGATIVE");
+        JSONObject lastFlattenedResult = new JSONObject().put("flattened", 2);
+        BatchResponse test = new BatchResponse(LOCATOR_LIST,
+                Arrays.asList(BatchItemResult.success(2, lastResult, lastFlattenedResult),
+                        BatchItemResult.success(0, firstResult, firstFlattenedResult)),
+                Collections.singletonList(new BatchItemError().withIndex(1)
+                        .withErrorCode(TestConstants.ERROR_CODE).withErrorMessage(TestConstants.DUMMY_ERROR_MESSAGE)));
+
+        List<BatchItemResult> itemResultList = test.getItemResultList();
+
+        assertFalse(itemResultList.get(0).isError());
+        assertSame(firstResult, itemResultList.get(0).getResult());
+        assertSame(firstFlattenedResult, itemResultList.get(0).getFlattenedResult());
+        assertTrue(itemResultList.get(1).isError());
+        assertNull(itemResultList.get(1).getFlattenedResult());
+        assertSame(lastFlattenedResult, itemResultList.get(2).getFlattenedResult());
+
+        List<JSONObject> resultList = test.getBatchResultList();
+        assertEquals("POSITIVE", resultList.get(0).getString("sentiment"));
+        assertEquals(TestConstants.ERROR_CODE, resultList.get(1).getString(TestConstants.ERROR_CODE_KEY));
+        assertFalse(resultList.get(1).has("index"));
+        assertEquals("NEGATIVE", resultList.get(2).getString("sentiment"));
+    }
+
+    @Test(expected = InternalErrorException.class)
+    public void failedWithUnansweredIndex() {
+        new BatchResponse(LOCATOR_LIST,
+                Collections.singletonList(BatchItemResult.success(0, new JSONObject(), null)),
+                Collections.emptyList()).getItemResultList();
+    }
+}
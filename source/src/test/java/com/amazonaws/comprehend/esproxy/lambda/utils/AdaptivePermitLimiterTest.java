@@ -0,0 +1,96 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.comprehend.model.InvalidRequestException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptivePermitLimiterTest {
+    private static final int MIN_PERMIT_LIMIT = 2;
+
+    private static final int MAX_PERMIT_LIMIT = 8;
+
+    private AdaptivePermitLimiter test;
+
+    @Before
+    public void setup() {
+        test = new AdaptivePermitLimiter(MIN_PERMIT_LIMIT, MAX_PERMIT_LIMIT, Constants.ADAPTIVE_BACKOFF_RATIO);
+    }
+
+    @Test
+    public void succeedBackOffWhenThrottled() {
+        test.submit(() -> failedFuture(getThrottlingException()));
+
+        assertEquals(MAX_PERMIT_LIMIT / 2, test.getPermitLimit());
+    }
+
+    @Test
+    public void succeedNotBackOffBelowMinimum() {
+        for (int i = 0; i < 5; i++) {
+            test.submit(() -> failedFuture(getThrottlingException()));
+        }
+
+        assertEquals(MIN_PERMIT_LIMIT, test.getPermitLimit());
+    }
+
+    @Test
+    public void succeedBackOffOnceForCallsStartedBeforeBackOff() {
+        CompletableFuture<String> firstCall = new CompletableFuture<>();
+        CompletableFuture<String> secondCall = new CompletableFuture<>();
+        test.submit(() -> firstCall);
+        test.submit(() -> secondCall);
+
+        firstCall.completeExceptionally(getThrottlingException());
+        secondCall.completeExceptionally(getThrottlingException());
+
+        assertEquals(MAX_PERMIT_LIMIT / 2, test.getPermitLimit());
+    }
+
+    @Test
+    public void succeedGrowLimitOnSuccess() {
+        test.submit(() -> failedFuture(getThrottlingException()));
+        // Every round of successful calls at the current limit grows it by about 1
+        for (int i = 0; i < MAX_PERMIT_LIMIT / 2 + 1; i++) {
+            test.submit(() -> CompletableFuture.completedFuture("success"));
+        }
+
+        assertEquals(MAX_PERMIT_LIMIT / 2 + 1, test.getPermitLimit());
+    }
+
+    @Test
+    public void succeedNotGrowAboveMaximum() {
+        for (int i = 0; i < MAX_PERMIT_LIMIT; i++) {
+            test.submit(() -> CompletableFuture.completedFuture("success"));
+        }
+
+        assertEquals(MAX_PERMIT_LIMIT, test.getPermitLimit());
+    }
+
+    @Test
+    public void succeedIgnoreOtherFailures() {
+        test.submit(() -> failedFuture(new InvalidRequestException(TestConstants.DUMMY_ERROR_MESSAGE)));
+
+        assertEquals(MAX_PERMIT_LIMIT, test.getPermitLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failedWithMinimumAboveMaximum() {
+        new AdaptivePermitLimiter(MAX_PERMIT_LIMIT + 1, MAX_PERMIT_LIMIT, Constants.ADAPTIVE_BACKOFF_RATIO);
+    }
+
+    private static AmazonServiceException getThrottlingException() {
+        AmazonServiceException exception = new AmazonServiceException(TestConstants.DUMMY_ERROR_MESSAGE);
+        exception.setErrorCode("ThrottlingException");
+        return exception;
+    }
+
+    private static CompletableFuture<String> failedFuture(final Throwable throwable) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+}
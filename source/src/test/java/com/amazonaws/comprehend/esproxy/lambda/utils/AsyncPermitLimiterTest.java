@@ -0,0 +1,107 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncPermitLimiterTest {
+    private static final int PERMIT_LIMIT = 2;
+
+    private AsyncPermitLimiter test;
+
+    @Before
+    public void setup() {
+        test = new AsyncPermitLimiter(PERMIT_LIMIT);
+    }
+
+    @Test
+    public void succeedStartCallsUpToPermitLimit() {
+        List<CompletableFuture<String>> callList = new ArrayList<>();
+        for (int i = 0; i < PERMIT_LIMIT + 1; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            callList.add(call);
+            test.submit(() -> call);
+        }
+
+        assertEquals(PERMIT_LIMIT, test.getInFlight());
+        assertEquals(1, test.getWaiting());
+    }
+
+    @Test
+    public void succeedStartWaitingCallOnCompletion() throws Exception {
+        CompletableFuture<String> firstCall = new CompletableFuture<>();
+        CompletableFuture<String> secondCall = new CompletableFuture<>();
+        test.submit(() -> firstCall);
+        test.submit(() -> secondCall);
+        CompletableFuture<String> waitingResult = test.submit(() -> CompletableFuture.completedFuture("waiting"));
+        assertFalse(waitingResult.isDone());
+
+        firstCall.complete("first");
+
+        assertEquals("waiting", waitingResult.get());
+        assertEquals(1, test.getInFlight());
+        assertEquals(0, test.getWaiting());
+    }
+
+    @Test
+    public void succeedReleasePermitWhenCallFails() throws InterruptedException {
+        CompletableFuture<String> result = test.submit(() -> {
+            throw new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE);
+        });
+
+        try {
+            result.get();
+            fail("The future should complete exceptionally");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InternalErrorException);
+        }
+        assertEquals(0, test.getInFlight());
+    }
+
+    @Test
+    public void succeedStartWaitingCallsWhenLimitIsRaised() {
+        for (int i = 0; i < PERMIT_LIMIT + 2; i++) {
+            test.submit(CompletableFuture::new);
+        }
+        test.setPermitLimit(PERMIT_LIMIT + 2);
+
+        assertEquals(PERMIT_LIMIT + 2, test.getInFlight());
+        assertEquals(0, test.getWaiting());
+    }
+
+    @Test
+    public void succeedDropCancelledWaitingCall() {
+        CompletableFuture<String> firstCall = new CompletableFuture<>();
+        AtomicBoolean isStarted = new AtomicBoolean();
+        for (int i = 0; i < PERMIT_LIMIT; i++) {
+            test.submit(() -> firstCall);
+        }
+        CompletableFuture<String> waitingResult = test.submit(() -> {
+            isStarted.set(true);
+            return CompletableFuture.completedFuture("waiting");
+        });
+
+        waitingResult.cancel(false);
+        firstCall.complete("first");
+
+        assertFalse(isStarted.get());
+        assertEquals(0, test.getInFlight());
+        assertEquals(0, test.getWaiting());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failedWithNonPositivePermitLimit() {
+        new AsyncPermitLimiter(0);
+    }
+}
@@ -0,0 +1,54 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchItemRetryPolicyTest {
+    @Mock
+    private ScheduledExecutorService mockRetryScheduler;
+
+    @Test
+    public void succeedGrantRetriesWithinBudget() {
+        BatchItemRetryPolicy test = new BatchItemRetryPolicy(mockRetryScheduler, 3);
+
+        assertEquals(2, test.acquire(2));
+        assertEquals(1, test.acquire(2));
+        assertEquals(0, test.acquire(2));
+        assertEquals(0, test.getRemainingBudget());
+    }
+
+    @Test
+    public void succeedGrantAllRetriesOrNone() {
+        BatchItemRetryPolicy test = new BatchItemRetryPolicy(mockRetryScheduler, 3);
+
+        assertTrue(test.acquireAll(2));
+        assertFalse(test.acquireAll(2));
+        assertEquals(1, test.getRemainingBudget());
+    }
+
+    @Test
+    public void succeedNotRetryContentErrors() {
+        assertTrue(BatchItemRetryPolicy.isRetryable(new BatchItemError().withErrorCode(TestConstants.ERROR_CODE)));
+        assertFalse(BatchItemRetryPolicy.isRetryable(
+                new BatchItemError().withErrorCode("TextSizeLimitExceededException")));
+    }
+
+    @Test
+    public void succeedCapRetryDelay() {
+        for (int attempt = 1; attempt <= 20; attempt++) {
+            long delayMillis = BatchItemRetryPolicy.getDelayMillis(attempt);
+            assertTrue(delayMillis >= 0);
+            assertTrue(delayMillis <= Constants.BATCH_ITEM_RETRY_MAX_DELAY_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BoundedExecutorTest {
+    private static final String EXECUTOR_NAME = "test-io";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private BoundedExecutor test;
+
+    @Before
+    public void setup() {
+        test = new BoundedExecutor(EXECUTOR_NAME, 1, 1, WorkloadExecutor.SaturationPolicy.ABORT);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        test.shutdownNow();
+    }
+
+    @Test
+    public void succeedReportQueueDepthAndActiveCount() throws InterruptedException {
+        test.execute(this::block);
+        test.execute(() -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, test.getActiveCount());
+        assertEquals(1, test.getQueueDepth());
+        assertTrue(test.describeGauges()
+                .startsWith(String.format("Executor %s: active = 1, queued = 1", EXECUTOR_NAME)));
+    }
+
+    @Test
+    public void failedWhenQueueIsFull() throws InterruptedException {
+        test.execute(this::block);
+        test.execute(() -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            test.execute(() -> { });
+            fail("The task should be rejected");
+        } catch (RejectedExecutionException e) {
+            assertEquals(1, test.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void succeedRunOnCallerWhenQueueIsFull() throws InterruptedException {
+        test.shutdownNow();
+        test = new BoundedExecutor(EXECUTOR_NAME, 1, 1, WorkloadExecutor.SaturationPolicy.RUN_ON_CALLER);
+        test.execute(this::block);
+        test.execute(() -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        test.execute(() -> runner.set(Thread.currentThread()));
+
+        assertEquals(Thread.currentThread(), runner.get());
+        assertEquals(1, test.getRejectedCount());
+    }
+
+    @Test
+    public void succeedNameThreadsAfterExecutor() throws Exception {
+        AtomicReference<String> threadName = new AtomicReference<>();
+        test.submit(() -> threadName.set(Thread.currentThread().getName())).get(5, TimeUnit.SECONDS);
+
+        assertTrue(threadName.get().startsWith(EXECUTOR_NAME));
+    }
+
+    // Hold the only thread of the executor until the test completes
+    private void block() {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
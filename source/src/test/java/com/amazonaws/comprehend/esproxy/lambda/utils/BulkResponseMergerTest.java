@@ -0,0 +1,135 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.SubBulkResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkResponseMergerTest {
+    // The ids of the actions built by a test, numbered from 1
+    private int actionCount = 0;
+
+    @Test
+    public void succeedMergeItemsInSubBulkOrder() {
+        Response firstResponse = mockResponse(HttpStatus.SC_OK,
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}");
+        Response secondResponse = mockResponse(HttpStatus.SC_OK,
+                "{\"took\":20,\"errors\":false,\"items\":[{\"delete\":{\"_id\":\"2\"}},{\"create\":{\"_id\":\"3\"}}]}");
+
+        ProxyResponse test = BulkResponseMerger.merge(Arrays.asList(
+                new SubBulkResponse(getActionList("index"), firstResponse),
+                new SubBulkResponse(getActionList("delete", "create"), secondResponse)));
+        JSONObject mergedBody = new JSONObject(test.getBody());
+
+        // The merged response is assembled, the sub-bulk responses are not returned as is
+        assertNull(test.getEsResponse());
+        assertEquals(HttpStatus.SC_OK, test.getStatusCode());
+        assertEquals(30, mergedBody.getLong(Constants.BULK_RESPONSE_TOOK_KEY));
+        assertFalse(mergedBody.getBoolean(Constants.BULK_RESPONSE_ERRORS_KEY));
+        JSONArray items = mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY);
+        assertEquals(3, items.length());
+        assertEquals("1", items.getJSONObject(0).getJSONObject("index").get("_id"));
+        assertEquals("2", items.getJSONObject(1).getJSONObject("delete").get("_id"));
+        assertEquals("3", items.getJSONObject(2).getJSONObject("create").get("_id"));
+    }
+
+    @Test
+    public void succeedReportActionsOfRejectedAndUnsentSubBulks() {
+        Response firstResponse = mockResponse(HttpStatus.SC_OK,
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}");
+        Response rejectedResponse = mockResponse(429, "{\"error\":{\"type\":\"es_rejected_execution_exception\","
+                + "\"reason\":\"rejected execution\"},\"status\":429}");
+
+        ProxyResponse test = BulkResponseMerger.merge(Arrays.asList(
+                new SubBulkResponse(getActionList("index"), firstResponse),
+                new SubBulkResponse(getActionList("delete"), rejectedResponse),
+                new SubBulkResponse(getActionList("create", "update"), null)));
+        JSONObject mergedBody = new JSONObject(test.getBody());
+
+        // The bulk is answered with a 200, the actions that were not executed fail with the status of the rejection
+        assertEquals(HttpStatus.SC_OK, test.getStatusCode());
+        assertTrue(mergedBody.getBoolean(Constants.BULK_RESPONSE_ERRORS_KEY));
+        JSONArray items = mergedBody.getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY);
+        assertEquals(4, items.length());
+        assertEquals("1", items.getJSONObject(0).getJSONObject("index").get("_id"));
+        String[] actionNames = {"delete", "create", "update"};
+        for (int i = 0; i < actionNames.length; i++) {
+            JSONObject itemResult = items.getJSONObject(i + 1).getJSONObject(actionNames[i]);
+            assertEquals(TestConstants.INDEX_NAME, itemResult.get(Constants.BULK_INDEX_ACTION_KEY_NAME));
+            assertEquals(String.valueOf(i + 2), itemResult.get(Constants.BULK_ID_ACTION_KEY_NAME));
+            assertEquals(429, itemResult.getInt(Constants.BULK_RESPONSE_STATUS_KEY));
+            assertEquals("es_rejected_execution_exception", itemResult.getJSONObject(
+                    Constants.BULK_RESPONSE_ERROR_KEY).get(Constants.BULK_RESPONSE_ERROR_TYPE_KEY));
+        }
+        // The rejected body is read once for all the actions it fails
+        verify(rejectedResponse, times(1)).getEntity();
+    }
+
+    @Test
+    public void succeedBuildErrorOfRejectionWithoutErrorBody() {
+        Response firstResponse = mockResponse(HttpStatus.SC_OK,
+                "{\"took\":10,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\"}}]}");
+        Response rejectedResponse = mockResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+
+        ProxyResponse test = BulkResponseMerger.merge(Arrays.asList(
+                new SubBulkResponse(getActionList("index"), firstResponse),
+                new SubBulkResponse(getActionList("index"), rejectedResponse)));
+
+        JSONObject itemResult = new JSONObject(test.getBody()).getJSONArray(Constants.BULK_RESPONSE_ITEMS_KEY)
+                .getJSONObject(1).getJSONObject("index");
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, itemResult.getInt(Constants.BULK_RESPONSE_STATUS_KEY));
+        assertEquals(Constants.BULK_SUB_REQUEST_REJECTED_ERROR_TYPE, itemResult.getJSONObject(
+                Constants.BULK_RESPONSE_ERROR_KEY).get(Constants.BULK_RESPONSE_ERROR_TYPE_KEY));
+    }
+
+    @Test
+    public void succeedReturnRejectionWhenNoSubBulkIsExecuted() {
+        Response rejectedResponse = mockResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "{\"status\":503}");
+
+        ProxyResponse test = BulkResponseMerger.merge(Arrays.asList(
+                new SubBulkResponse(getActionList("index"), rejectedResponse),
+                new SubBulkResponse(getActionList("index"), null)));
+
+        assertSame(rejectedResponse, test.getEsResponse());
+        verify(rejectedResponse, never()).getEntity();
+    }
+
+    private List<BulkAction> getActionList(final String... actionNames) {
+        BulkAction[] actions = new BulkAction[actionNames.length];
+        for (int i = 0; i < actionNames.length; i++) {
+            actionCount++;
+            actions[i] = new BulkAction(actionNames[i], TestConstants.INDEX_NAME, String.valueOf(actionCount), 0, -1);
+        }
+        return Collections.unmodifiableList(Arrays.asList(actions));
+    }
+
+    private static Response mockResponse(final int statusCode, final String body) {
+        Response response = mock(Response.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+        when(response.getEntity()).thenReturn(new NStringEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+}
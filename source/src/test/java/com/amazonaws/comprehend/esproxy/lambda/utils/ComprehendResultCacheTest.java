@@ -0,0 +1,87 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
+import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
+import com.google.common.base.Ticker;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ComprehendResultCacheTest {
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    @Mock
+    private Ticker mockTicker;
+
+    private ComprehendResultCache test;
+
+    @Before
+    public void setup() {
+        when(mockTicker.read()).thenReturn(0L);
+        test = new ComprehendResultCache(TestConstants.RESULT_CACHE_MAX_BYTES, TTL_NANOS, mockTicker);
+    }
+
+    @Test
+    public void succeedGetCachedResult() throws JSONException {
+        test.put(ComprehendOperationEnum.DetectEntities, LanguageCode.en, TestConstants.DUMMY_MESSAGE,
+                new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        ComprehendResultCache.CachedResult cachedResult =
+                test.get(ComprehendOperationEnum.DetectEntities, LanguageCode.en, TestConstants.DUMMY_MESSAGE);
+
+        assertEquals("dummy result", cachedResult.getResult().get("result"));
+        assertEquals("dummy result", cachedResult.getFlattenedResult().get("result"));
+        assertEquals(1, test.getHitCount());
+        assertEquals(0, test.getMissCount());
+    }
+
+    @Test
+    public void succeedKeyResultsByOperationAndLanguage() {
+        test.put(ComprehendOperationEnum.DetectEntities, LanguageCode.en, TestConstants.DUMMY_MESSAGE,
+                new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), null);
+
+        assertNull(test.get(ComprehendOperationEnum.DetectKeyPhrases, LanguageCode.en, TestConstants.DUMMY_MESSAGE));
+        assertNull(test.get(ComprehendOperationEnum.DetectEntities, LanguageCode.de, TestConstants.DUMMY_MESSAGE));
+        assertNull(test.get(ComprehendOperationEnum.DetectEntities, LanguageCode.en,
+                TestConstants.DUMMY_ERROR_MESSAGE));
+        assertEquals(3, test.getMissCount());
+    }
+
+    @Test
+    public void succeedIgnoreLanguageOfDominantLanguageResults() {
+        test.put(ComprehendOperationEnum.DetectDominantLanguage, LanguageCode.en, TestConstants.DUMMY_MESSAGE,
+                new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), null);
+
+        assertNotNull(test.get(ComprehendOperationEnum.DetectDominantLanguage, LanguageCode.de,
+                TestConstants.DUMMY_MESSAGE));
+    }
+
+    @Test
+    public void succeedExpireResultAfterTtl() {
+        test.put(ComprehendOperationEnum.DetectSentiment, LanguageCode.en, TestConstants.DUMMY_MESSAGE,
+                new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), null);
+        when(mockTicker.read()).thenReturn(TTL_NANOS + 1);
+
+        assertNull(test.get(ComprehendOperationEnum.DetectSentiment, LanguageCode.en, TestConstants.DUMMY_MESSAGE));
+    }
+
+    @Test
+    public void succeedEvictResultsOverMaximumBytes() {
+        test = new ComprehendResultCache(0, TTL_NANOS, mockTicker);
+        test.put(ComprehendOperationEnum.DetectSentiment, LanguageCode.en, TestConstants.DUMMY_MESSAGE,
+                new JSONObject(TestConstants.DUMMY_RESPONSE_JSON), null);
+
+        assertNull(test.get(ComprehendOperationEnum.DetectSentiment, LanguageCode.en, TestConstants.DUMMY_MESSAGE));
+    }
+}
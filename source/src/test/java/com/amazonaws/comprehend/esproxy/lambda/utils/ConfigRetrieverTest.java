@@ -3,13 +3,17 @@ package com.amazonaws.comprehend.esproxy.lambda.utils;
 import com.amazonaws.comprehend.esproxy.lambda.client.OpenSearchServiceClient;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InvalidRequestException;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
 import com.amazonaws.comprehend.esproxy.lambda.model.PreprocessingConfigRequest;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ComprehendSerializer;
 import com.amazonaws.comprehend.esproxy.lambda.utils.serializer.ConfigSerializer;
+import com.google.common.base.Ticker;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,9 +25,14 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.*;
 
 @RunWith(PowerMockRunner.class)
@@ -38,18 +47,35 @@ public class ConfigRetrieverTest {
     @Mock
     private Response mockESResponse;
 
+    @Mock
+    private Response mockVersionResponse;
+
     @Mock
     private StatusLine mockStatusLine;
 
+    private HttpEntity configEntity;
+
+    private HttpEntity versionEntity;
+
     private ConfigRetriever test;
 
     @Before
     public void setup() throws IOException {
         mockStatic(HTTPTransformer.class);
         mockStatic(ConfigSerializer.class);
-        when(mockESClient.performRequest(anyString(), anyString())).thenReturn(mockESResponse);
+        configEntity = new NStringEntity(TestConstants.CONFIG_DOCUMENT);
+        versionEntity = new NStringEntity(TestConstants.CONFIG_VERSION_DOCUMENT);
+
+        when(mockESClient.performRequestAsync(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(mockESResponse));
+        when(mockESClient.performRequestAsync(any(Request.class)))
+                .thenReturn(CompletableFuture.completedFuture(mockVersionResponse));
         when(mockESResponse.getStatusLine()).thenReturn(mockStatusLine);
-        when(mockESResponse.getEntity()).thenReturn(new NStringEntity(TestConstants.DUMMY_RESPONSE));
+        when(mockESResponse.getEntity()).thenReturn(configEntity);
+        when(mockVersionResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockVersionResponse.getEntity()).thenReturn(versionEntity);
+        when(HTTPTransformer.transformHttpEntityToString(configEntity)).thenReturn(TestConstants.CONFIG_DOCUMENT);
+        when(HTTPTransformer.transformHttpEntityToString(versionEntity)).thenReturn(TestConstants.CONFIG_VERSION_DOCUMENT);
 
         test = new ConfigRetriever(mockConfigSerializer, mockESClient);
     }
@@ -57,8 +83,7 @@ public class ConfigRetrieverTest {
     @Test
     public void succeedRetrieveStoredConfig() {
         when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-        when(HTTPTransformer.transformHttpEntityToString(any())).thenReturn(TestConstants.CONFIG);
-        when(mockConfigSerializer.deserialize(TestConstants.CONFIG)).thenReturn(TestConstants.getConfigRequest());
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
         when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
         Map<String, ComprehendConfiguration> configMap = test.retrieveStoredConfig();
 
@@ -77,7 +102,9 @@ public class ConfigRetrieverTest {
     @Test(expected = InternalErrorException.class)
     public void failedToPerformRequest() {
         OpenSearchServiceClient mockBadESClient = mock(OpenSearchServiceClient.class);
-        when(mockBadESClient.performRequest(anyString(), anyString())).thenThrow(new InternalErrorException(""));
+        CompletableFuture<Response> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new InternalErrorException(""));
+        when(mockBadESClient.performRequestAsync(anyString(), anyString())).thenReturn(failedFuture);
 
         test = new ConfigRetriever(mockConfigSerializer, mockBadESClient);
         test.retrieveStoredConfig();
@@ -86,11 +113,122 @@ public class ConfigRetrieverTest {
     @Test(expected = InvalidRequestException.class)
     public void failedToDeserializeRetrievedConfig() {
         when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
-        when(HTTPTransformer.transformHttpEntityToString(any())).thenReturn(TestConstants.CONFIG);
-        when(mockConfigSerializer.deserialize(TestConstants.CONFIG))
+        when(mockConfigSerializer.deserialize(anyString()))
                 .thenThrow(new InvalidRequestException(TestConstants.DUMMY_ERROR_MESSAGE));
 
         test.retrieveStoredConfig();
     }
 
+    @Test
+    public void succeedServeCachedConfigWithinTtl() {
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+
+        test.retrieveStoredConfig();
+        Map<String, ComprehendConfiguration> configMap = test.retrieveStoredConfig();
+
+        assertEquals(TestConstants.getConfigMap(), configMap);
+        verify(mockESClient, times(1)).performRequestAsync(anyString(), anyString());
+        verify(mockESClient, times(0)).performRequestAsync(any(Request.class));
+    }
+
+    @Test
+    public void succeedRevalidateUnchangedConfigAfterTtl() {
+        test = new ConfigRetriever(mockConfigSerializer, mockESClient, 0L, Ticker.systemTicker());
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+
+        test.retrieveStoredConfig();
+        Map<String, ComprehendConfiguration> configMap = test.retrieveStoredConfig();
+
+        assertEquals(TestConstants.getConfigMap(), configMap);
+        verify(mockESClient, times(1)).performRequestAsync(anyString(), anyString());
+        verify(mockESClient, times(1)).performRequestAsync(any(Request.class));
+    }
+
+    @Test
+    public void succeedRefetchChangedConfigAfterTtl() {
+        test = new ConfigRetriever(mockConfigSerializer, mockESClient, 0L, Ticker.systemTicker());
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+        when(HTTPTransformer.transformHttpEntityToString(versionEntity))
+                .thenReturn(TestConstants.UPDATED_CONFIG_VERSION_DOCUMENT);
+
+        test.retrieveStoredConfig();
+        test.retrieveStoredConfig();
+
+        verify(mockESClient, times(2)).performRequestAsync(anyString(), anyString());
+        verify(mockESClient, times(1)).performRequestAsync(any(Request.class));
+    }
+
+    @Test
+    public void succeedRefetchConfigAfterInvalidate() {
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+
+        test.retrieveStoredConfig();
+        test.invalidate();
+        test.retrieveStoredConfig();
+
+        verify(mockESClient, times(2)).performRequestAsync(anyString(), anyString());
+        verify(mockESClient, times(0)).performRequestAsync(any(Request.class));
+    }
+
+    @Test
+    public void succeedShareRefreshInFlight() {
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+        CompletableFuture<Response> pendingFetch = new CompletableFuture<>();
+        when(mockESClient.performRequestAsync(anyString(), anyString())).thenReturn(pendingFetch);
+
+        CompletableFuture<ComprehendConfigRouter> firstRetrieval = test.retrieveConfigRouterAsync();
+        CompletableFuture<ComprehendConfigRouter> secondRetrieval = test.retrieveConfigRouterAsync();
+        pendingFetch.complete(mockESResponse);
+
+        assertSame(firstRetrieval.join(), secondRetrieval.join());
+        verify(mockESClient, times(1)).performRequestAsync(anyString(), anyString());
+    }
+
+    @Test
+    public void succeedDropRefreshStartedBeforeInvalidate() {
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any()))
+                .thenReturn(TestConstants.getConfigMap(), Collections.<String, ComprehendConfiguration>emptyMap());
+        CompletableFuture<Response> staleFetch = new CompletableFuture<>();
+        when(mockESClient.performRequestAsync(anyString(), anyString()))
+                .thenReturn(staleFetch, CompletableFuture.completedFuture(mockESResponse));
+
+        // The config is written while a refresh is pending, the retrieval after the invalidate fetches it again
+        CompletableFuture<ComprehendConfigRouter> staleRetrieval = test.retrieveConfigRouterAsync();
+        test.invalidate();
+        ComprehendConfigRouter configRouter = test.retrieveConfigRouter();
+        assertEquals(1, configRouter.getFieldRoutes(TestConstants.INDEX_NAME).size());
+
+        // The stale refresh completes last, it is returned to its caller but doesn't replace the cached config
+        staleFetch.complete(mockESResponse);
+        assertTrue(staleRetrieval.join().isEmpty());
+        assertSame(configRouter, test.retrieveConfigRouter());
+        verify(mockESClient, times(2)).performRequestAsync(anyString(), anyString());
+    }
+
+    @Test
+    public void succeedRetrieveConfigRouterAsync() {
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockConfigSerializer.deserialize(anyString())).thenReturn(TestConstants.getConfigRequest());
+        when(ConfigSerializer.transformConfigRequestToConfigMap(any())).thenReturn(TestConstants.getConfigMap());
+
+        ComprehendConfigRouter configRouter = test.retrieveConfigRouterAsync().join();
+
+        assertEquals(1, configRouter.getFieldRoutes(TestConstants.INDEX_NAME).size());
+        // The cached config is served from an already completed future
+        assertTrue(test.retrieveConfigRouterAsync().isDone());
+        verify(mockESClient, times(1)).performRequestAsync(anyString(), anyString());
+    }
+
 }
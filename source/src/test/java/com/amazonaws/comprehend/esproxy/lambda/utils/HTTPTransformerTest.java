@@ -2,14 +2,18 @@ package com.amazonaws.comprehend.esproxy.lambda.utils;
 
 import com.amazonaws.comprehend.esproxy.lambda.exception.CustomerMessage;
 import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.processor.response.ProxyResponse;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.StatusLine;
+import org.apache.http.entity.ContentType;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -89,6 +93,34 @@ public class HTTPTransformerTest {
         assertNull(apiGWResponse.getBody());
     }
 
+    @Test
+    public void correctProxyResponseTransformFromESToGW() throws IOException {
+        StatusLine mockStatusLine = mock(StatusLine.class);
+
+        when(mockESResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(TestConstants.STATUS_CODE_OK);
+        when(mockESResponse.getEntity()).thenReturn(new NStringEntity(TestConstants.DUMMY_MESSAGE));
+
+        APIGatewayProxyResponseEvent apiGWResponse =
+                HTTPTransformer.proxyResponseToAPIGatewayResponse(ProxyResponse.of(mockESResponse));
+
+        assertEquals(TestConstants.STATUS_CODE_OK, apiGWResponse.getStatusCode().intValue());
+        assertEquals(TestConstants.DUMMY_MESSAGE, apiGWResponse.getBody());
+    }
+
+    @Test
+    public void correctAssembledProxyResponseTransformToGW() {
+        JSONObject body = new JSONObject().put(Constants.BULK_RESPONSE_ERRORS_KEY, false);
+
+        APIGatewayProxyResponseEvent apiGWResponse = HTTPTransformer.proxyResponseToAPIGatewayResponse(
+                ProxyResponse.of(TestConstants.STATUS_CODE_OK, body));
+
+        assertEquals(TestConstants.STATUS_CODE_OK, apiGWResponse.getStatusCode().intValue());
+        assertEquals(ContentType.APPLICATION_JSON.getMimeType(),
+                apiGWResponse.getHeaders().get(HttpHeaders.CONTENT_TYPE));
+        assertFalse(new JSONObject(apiGWResponse.getBody()).getBoolean(Constants.BULK_RESPONSE_ERRORS_KEY));
+    }
+
     @Test
     public void correctTransformFromHttpEntityToString()
             throws InternalErrorException, UnsupportedEncodingException {
@@ -5,6 +5,7 @@ import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
 import com.amazonaws.comprehend.esproxy.lambda.utils.kibana.KibanaHelper;
 import com.amazonaws.comprehend.esproxy.lambda.utils.kibana.KibanaUploader;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
@@ -15,8 +16,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -34,18 +34,20 @@ public class KibanaUploaderTest {
     @Mock
     private LambdaLogger mockLogger;
 
-    private ExecutorService executorService;
+    @Mock
+    private Response mockESResponse;
 
     private KibanaUploader test;
 
     @Before
     public void setup() {
-        executorService = Executors.newFixedThreadPool(Constants.MAX_THREAD);
-        test = new KibanaUploader(mockESClient, executorService);
+        test = new KibanaUploader(mockESClient, MoreExecutors.directExecutor());
     }
 
     @Test
     public void happyTestWithConfigList() {
+        when(mockESClient.performRequestAsync(anyString(), anyString(), anyString(), anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(mockESResponse));
         test.uploadKibanaDashboard(TestConstants.getListConfigMap(), mockLogger);
 
         verify(mockLogger, times(1)).log(TestConstants.UPLOAD_MARKDOWN_LOG);
@@ -57,9 +59,11 @@ public class KibanaUploaderTest {
     @Test
     public void happyMappingTestWithConfigList() {
         StatusLine mockStatusLine = mock(StatusLine.class);
-        Response mockESResponse = mock(Response.class);
 
-        when(mockESClient.performRequest(eq(HttpGet.METHOD_NAME), anyString())).thenReturn(mockESResponse);
+        when(mockESClient.performRequestAsync(eq(HttpGet.METHOD_NAME), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(mockESResponse));
+        when(mockESClient.performRequestAsync(eq(HttpPut.METHOD_NAME), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(mockESResponse));
         when(mockESResponse.getStatusLine()).thenReturn(mockStatusLine);
         when(mockStatusLine.getStatusCode()).thenReturn(TestConstants.STATUS_CODE_OK);
 
@@ -67,10 +71,10 @@ public class KibanaUploaderTest {
 
         verify(mockLogger, times(1)).log(TestConstants.UPLOAD_MAPPING_LOG);
         verify(mockESClient, times(1))
-                .performRequest(HttpPut.METHOD_NAME, String.format("/%s/_mapping/_doc", TestConstants.INDEX_NAME),
+                .performRequestAsync(HttpPut.METHOD_NAME, String.format("/%s/_mapping/_doc", TestConstants.INDEX_NAME),
                         TestConstants.MAPPING_JSON.replaceAll(KibanaHelper.FIELD_NAME_KEY, TestConstants.FIELD_NAME));
         verify(mockESClient, times(1))
-                .performRequest(HttpPut.METHOD_NAME, String.format("/%s/_mapping/_doc", TestConstants.NEW_INDEX_NAME),
+                .performRequestAsync(HttpPut.METHOD_NAME, String.format("/%s/_mapping/_doc", TestConstants.NEW_INDEX_NAME),
                         TestConstants.MAPPING_JSON.replaceAll(KibanaHelper.FIELD_NAME_KEY, TestConstants.NEW_FIELD_NAME));
     }
 
@@ -78,8 +82,10 @@ public class KibanaUploaderTest {
     // we don't fail the config request even if dashboard upload fails
     @Test
     public void succeedWhenClientFailed() {
-        when(mockESClient.performRequest(anyString(), anyString(), anyString(), anyMap()))
-                .thenThrow(InternalErrorException.class);
+        CompletableFuture<Response> failedFuture = new CompletableFuture<>();
+        failedFuture.completeExceptionally(new InternalErrorException(TestConstants.DUMMY_ERROR_MESSAGE));
+        when(mockESClient.performRequestAsync(anyString(), anyString(), anyString(), anyMap()))
+                .thenReturn(failedFuture);
         test.uploadKibanaDashboard(TestConstants.getConfigMap(), mockLogger);
 
         verify(mockLogger, times(1)).log(TestConstants.UPLOAD_MARKDOWN_LOG);
@@ -1,6 +1,7 @@
 package com.amazonaws.comprehend.esproxy.lambda.utils;
 
 import com.amazonaws.comprehend.esproxy.lambda.model.BatchFieldLocator;
+import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfigRouter;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendConfiguration;
 import com.amazonaws.comprehend.esproxy.lambda.model.ComprehendOperationEnum;
 import com.amazonaws.comprehend.esproxy.lambda.model.LanguageCode;
@@ -60,6 +61,7 @@ public class TestConstants {
             new BatchFieldLocator(String.format("%s_%s", TestConstants.FIELD_NAME, ComprehendOperationEnum.DetectSentiment), 1));
     final public static List<String> CONTENT_LIST =
             Collections.singletonList(TestConstants.CUSTOMER_INGESTION_PAYLOAD_TEXT);
+    final public static long RESULT_CACHE_MAX_BYTES = 1024 * 1024;
 
     // Kibana logs
     final public static String UPLOAD_MAPPING_LOG = "Upload Mappings for Comprehend fields";
@@ -69,7 +71,7 @@ public class TestConstants {
     final public static String UPLOAD_DASHBOARD_LOG = "Upload Comprehend Dashboard to Kibana";
     final public static String UPLOAD_FAILED_LOG = "Upload Dashboard failed with Exception: " +
             "java.util.concurrent.ExecutionException: " +
-            "com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException";
+            "com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException: " + DUMMY_ERROR_MESSAGE;
 
     final public static String MAPPING_JSON = "{\"properties\":" +
             "{\"FIELD_NAME_DetectDominantLanguage.languages\":{\"type\":\"nested\"}," +
@@ -156,6 +158,12 @@ public class TestConstants {
             "        }\n" +
             "    ]\n" +
             "}";
+    final public static String CONFIG_DOCUMENT = "{\"_index\":\".comprehend\",\"_type\":\"config\",\"_id\":\"0\"," +
+            "\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,\"found\":true,\"_source\":" + CONFIG + "}";
+    final public static String CONFIG_VERSION_DOCUMENT = "{\"_index\":\".comprehend\",\"_type\":\"config\"," +
+            "\"_id\":\"0\",\"_version\":1,\"_seq_no\":0,\"_primary_term\":1,\"found\":true}";
+    final public static String UPDATED_CONFIG_VERSION_DOCUMENT = "{\"_index\":\".comprehend\",\"_type\":\"config\"," +
+            "\"_id\":\"0\",\"_version\":2,\"_seq_no\":1,\"_primary_term\":1,\"found\":true}";
     final public static String FIELD_NAME = "text";
     final public static String INDEX_NAME = "tweeter";
     final public static Set<ComprehendOperationEnum> COMPREHEND_OPERATIONS =
@@ -271,6 +279,10 @@ public class TestConstants {
         return newConfigMap;
     }
 
+    public static ComprehendConfigRouter getListConfigRouter() {
+        return ComprehendConfigRouter.compile(getListConfigMap());
+    }
+
     public static PreprocessingConfigRequest getConfigRequest() {
         ComprehendConfiguration defaultObject = new ComprehendConfiguration(
                 INDEX_NAME, FIELD_NAME, COMPREHEND_OPERATIONS, LANGUAGE_CODE);
@@ -0,0 +1,61 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.TextChunk;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextChunkerTest {
+    @Test
+    public void succeedSplitOnSentenceBoundary() {
+        List<TextChunk> chunkList = TextChunker.split("First one. Second one. Third", 24);
+
+        assertEquals(2, chunkList.size());
+        assertEquals("First one. Second one. ", chunkList.get(0).getText());
+        assertEquals("Third", chunkList.get(1).getText());
+        assertEquals(23, chunkList.get(1).getOffset());
+        assertEquals(5, chunkList.get(1).getLength());
+    }
+
+    @Test
+    public void succeedSplitOnWhitespaceWithoutSentenceBoundary() {
+        List<TextChunk> chunkList = TextChunker.split("aaaa bbbb cccc", 12);
+
+        assertEquals(2, chunkList.size());
+        assertEquals("aaaa bbbb ", chunkList.get(0).getText());
+        assertEquals("cccc", chunkList.get(1).getText());
+    }
+
+    @Test
+    public void succeedSplitWithoutBoundaryBetweenCharacters() {
+        List<TextChunk> chunkList = TextChunker.split("ab\uD83D\uDE00cd", 5);
+
+        assertEquals(3, chunkList.size());
+        assertEquals("ab", chunkList.get(0).getText());
+        assertEquals("\uD83D\uDE00c", chunkList.get(1).getText());
+        assertEquals("d", chunkList.get(2).getText());
+        // The offsets count a surrogate pair as a single character
+        assertEquals(2, chunkList.get(1).getOffset());
+        assertEquals(2, chunkList.get(1).getLength());
+        assertEquals(4, chunkList.get(2).getOffset());
+    }
+
+    @Test
+    public void succeedKeepShortTextInSingleChunk() {
+        List<TextChunk> chunkList = TextChunker.split(TestConstants.DUMMY_MESSAGE, 100);
+
+        assertEquals(1, chunkList.size());
+        assertEquals(TestConstants.DUMMY_MESSAGE, chunkList.get(0).getText());
+        assertEquals(0, chunkList.get(0).getOffset());
+    }
+
+    @Test
+    public void succeedTruncateWithoutSplittingCharacters() {
+        assertEquals("\u00e9\u00e9", TextChunker.truncate("\u00e9\u00e9\u00e9\u00e9", 5));
+        assertEquals("ab\uD83D\uDE00", TextChunker.truncate("ab\uD83D\uDE00cd", 6));
+        assertEquals("ab", TextChunker.truncate("ab\uD83D\uDE00cd", 5));
+        assertEquals(TestConstants.DUMMY_MESSAGE, TextChunker.truncate(TestConstants.DUMMY_MESSAGE, 100));
+    }
+}
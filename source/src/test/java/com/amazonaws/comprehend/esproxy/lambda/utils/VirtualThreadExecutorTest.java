@@ -0,0 +1,121 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+// The permits are tested on platform threads, so the tests also run before Java 21
+public class VirtualThreadExecutorTest {
+    private static final String EXECUTOR_NAME = "test-io";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private VirtualThreadExecutor test;
+
+    @Before
+    public void setup() {
+        test = buildExecutor(WorkloadExecutor.SaturationPolicy.ABORT);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        test.shutdownNow();
+    }
+
+    @Test
+    public void succeedRunTasksUpToPermitCount() throws InterruptedException {
+        test.execute(this::block);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        test.execute(() -> { });
+
+        assertEquals(1, test.getActiveCount());
+        assertEquals(1, test.getQueueDepth());
+    }
+
+    @Test
+    public void succeedRunWaitingTaskOnceAPermitIsReleased() throws Exception {
+        test.execute(this::block);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CountDownLatch waitingTaskDone = new CountDownLatch(1);
+        test.execute(waitingTaskDone::countDown);
+        assertFalse(waitingTaskDone.await(100, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+
+        assertTrue(waitingTaskDone.await(5, TimeUnit.SECONDS));
+        test.shutdown();
+        assertTrue(test.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, test.getCompletedTaskCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void failedWhenQueueIsFull() throws InterruptedException {
+        test.execute(this::block);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        test.execute(() -> { });
+        assertEquals(1, test.getQueueDepth());
+
+        test.execute(() -> { });
+    }
+
+    @Test
+    public void succeedRunOnCallerWhenQueueIsFull() throws InterruptedException {
+        test.shutdownNow();
+        test = buildExecutor(WorkloadExecutor.SaturationPolicy.RUN_ON_CALLER);
+        test.execute(this::block);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        test.execute(() -> { });
+        assertEquals(1, test.getQueueDepth());
+
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        test.execute(() -> runner.set(Thread.currentThread()));
+
+        assertEquals(Thread.currentThread(), runner.get());
+        assertEquals(1, test.getRejectedCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void failedAfterShutdown() {
+        test.shutdown();
+        test.execute(() -> { });
+    }
+
+    @Test
+    public void succeedRunOnVirtualThreads() throws Exception {
+        assumeTrue(VirtualThreadExecutor.isSupported());
+        test.shutdownNow();
+        test = new VirtualThreadExecutor(EXECUTOR_NAME, 1, 1, WorkloadExecutor.SaturationPolicy.ABORT);
+        AtomicReference<String> threadName = new AtomicReference<>();
+        test.submit(() -> threadName.set(Thread.currentThread().getName())).get(5, TimeUnit.SECONDS);
+
+        assertTrue(threadName.get().startsWith(EXECUTOR_NAME));
+    }
+
+    private VirtualThreadExecutor buildExecutor(final WorkloadExecutor.SaturationPolicy saturationPolicy) {
+        return new VirtualThreadExecutor(EXECUTOR_NAME, 1, 1, saturationPolicy, Executors.defaultThreadFactory());
+    }
+
+    // Hold the only permit of the executor until the test completes
+    private void block() {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.comprehend.esproxy.lambda.exception.InternalErrorException;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkPayload;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkPayloadReaderTest {
+    private BulkPayloadReader test;
+
+    @Before
+    public void setup() {
+        test = new BulkPayloadReader(new ObjectMapper());
+    }
+
+    @Test
+    public void succeedReadIngestionPayloads() {
+        String payload = TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        List<BulkPayload> result = test.read(payloadBytes);
+
+        // The index and create actions are read, the delete action has no source line
+        assertEquals(2, result.size());
+        for (BulkPayload bulkPayload : result) {
+            assertEquals(TestConstants.INDEX_NAME, bulkPayload.getIndexName());
+            assertEquals("value2", bulkPayload.getPayloadJson().findValue("field2").asText());
+            assertEquals("{ \"doc\" : {\"field2\" : \"value2\"} }", new String(payloadBytes,
+                    bulkPayload.getSourceStartOffset(),
+                    bulkPayload.getSourceEndOffset() - bulkPayload.getSourceStartOffset(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void succeedSkipSourceOfNonIngestionActions() {
+        byte[] payloadBytes = TestConstants.CUSTOMER_PAYLOAD_NO_INGESTION_REQUEST.getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(test.read(payloadBytes).isEmpty());
+    }
+
+    @Test
+    public void succeedReadEveryAction() {
+        String indexRow = "{\"index\":{\"_index\":\"test\"}}\n{\"text\":\"value1\"}\n";
+        String deleteRow = "{\"delete\":{\"_index\":\"tweeter\",\"_id\":\"2\"}}\n";
+        String updateRow = "{\"update\":{\"_id\":3}}\n{\"doc\":{\"text\":\"value2\"}}";
+        List<BulkAction> actionList = new ArrayList<>();
+        test.read((indexRow + deleteRow + updateRow).getBytes(StandardCharsets.UTF_8), actionList);
+
+        assertEquals(3, actionList.size());
+        assertEquals(Constants.BULK_INDEX_ACTION_KEY, actionList.get(0).getName());
+        assertNull(actionList.get(0).getId());
+        assertEquals(indexRow.length(), actionList.get(0).getEndOffset());
+        assertEquals(0, actionList.get(0).getContentRowNum());
+        assertEquals("tweeter", actionList.get(1).getIndexName());
+        assertEquals("2", actionList.get(1).getId());
+        assertEquals(indexRow.length() + deleteRow.length(), actionList.get(1).getEndOffset());
+        assertEquals(-1, actionList.get(1).getContentRowNum());
+        // A numeric id is read as text, the last action ends with the bulk body
+        assertNull(actionList.get(2).getIndexName());
+        assertEquals("3", actionList.get(2).getId());
+        assertEquals(indexRow.length() + deleteRow.length() + updateRow.length(), actionList.get(2).getEndOffset());
+    }
+
+    @Test
+    public void succeedReadMultiByteCharacters() {
+        String source = "{\"text\":\"Caféé 你好\"}";
+        String payload = TestConstants.BULK_INDEX_PAYLOAD + "\n" + source + "\n";
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        List<BulkPayload> result = test.read(payloadBytes);
+
+        assertEquals(1, result.size());
+        BulkPayload bulkPayload = result.get(0);
+        assertEquals(source, new String(payloadBytes, bulkPayload.getSourceStartOffset(),
+                bulkPayload.getSourceEndOffset() - bulkPayload.getSourceStartOffset(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void succeedReadEmptyPayload() {
+        assertTrue(test.read(new byte[0]).isEmpty());
+    }
+
+    @Test(expected = InternalErrorException.class)
+    public void failedReadMalformedSource() {
+        String payload = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\n";
+        test.read(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void succeedReadIngestionIndexName() {
+        assertEquals(TestConstants.INDEX_NAME,
+                BulkPayloadReader.readIngestionIndexName(TestConstants.BULK_INDEX_PAYLOAD).get());
+        assertEquals(TestConstants.INDEX_NAME,
+                BulkPayloadReader.readIngestionIndexName(TestConstants.BULK_CREATE_PAYLOAD).get());
+        assertTrue(!BulkPayloadReader.readIngestionIndexName(TestConstants.WRONG_BULK_INDEX_PAYLOAD).isPresent());
+        assertTrue(!BulkPayloadReader.readIngestionIndexName(TestConstants.DUMMY_MESSAGE).isPresent());
+    }
+}
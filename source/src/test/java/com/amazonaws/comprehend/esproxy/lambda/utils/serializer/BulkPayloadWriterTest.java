@@ -0,0 +1,179 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.comprehend.esproxy.lambda.model.BulkAction;
+import com.amazonaws.comprehend.esproxy.lambda.model.SubBulk;
+import com.amazonaws.comprehend.esproxy.lambda.utils.Constants;
+import com.amazonaws.comprehend.esproxy.lambda.utils.TestConstants;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkPayloadWriterTest {
+    private static final String ENRICHMENT_KEY = "text_DetectSentiment";
+
+    private ObjectMapper mapper;
+
+    private BulkPayloadReader bulkPayloadReader;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+        bulkPayloadReader = new BulkPayloadReader(mapper);
+    }
+
+    @Test
+    public void succeedCopyPayloadWithoutEnrichment() {
+        byte[] payload = getBytes(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD);
+        BulkPayloadWriter test = newWriter(payload);
+
+        assertEquals(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD + "\n",
+                new String(test.write(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void succeedSpliceEnrichmentBeforeClosingBrace() throws IOException {
+        byte[] payload = getBytes(TestConstants.CUSTOMER_PAYLOAD_CONTAINS_CONFIG_KEY_WORD);
+        BulkPayloadWriter test = newWriter(payload);
+        test.attach(0, ENRICHMENT_KEY, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        String[] lines = new String(test.write(), StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(3, lines.length);
+        // The original bytes of the payload are kept as is
+        assertTrue(lines[1].startsWith("{ \"text\" : {\"field2\" : \"value2\"} ,\"" + ENRICHMENT_KEY + "\":"));
+        JsonNode enrichedPayload = mapper.readTree(lines[1]);
+        assertEquals("value2", enrichedPayload.get("text").get("field2").asText());
+        assertEquals("dummy result", enrichedPayload.get(ENRICHMENT_KEY).get("result").asText());
+        assertTrue(enrichedPayload.has(Constants.TIME_STAMP_KEY));
+        assertEquals("{ \"delete\" : { \"_index\" : \"facebook\", \"_type\" : \"_doc\", \"_id\" : \"2\" } }", lines[2]);
+    }
+
+    @Test
+    public void succeedSpliceEnrichmentIntoEmptyPayload() throws IOException {
+        byte[] payload = getBytes(TestConstants.BULK_INDEX_PAYLOAD + "\n{ }\n");
+        BulkPayloadWriter test = newWriter(payload);
+        test.attach(0, ENRICHMENT_KEY, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        String[] lines = new String(test.write(), StandardCharsets.UTF_8).split("\n");
+
+        JsonNode enrichedPayload = mapper.readTree(lines[1]);
+        assertEquals(2, enrichedPayload.size());
+        assertEquals("dummy result", enrichedPayload.get(ENRICHMENT_KEY).get("result").asText());
+    }
+
+    @Test
+    public void succeedRebuildPayloadWithDuplicateKey() throws IOException {
+        String source = "{\"text\":\"value1\",\"" + ENRICHMENT_KEY + "\":{\"result\":\"stale result\"}}";
+        byte[] payload = getBytes(TestConstants.BULK_INDEX_PAYLOAD + "\n" + source + "\n");
+        BulkPayloadWriter test = newWriter(payload);
+        test.attach(0, ENRICHMENT_KEY, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        String enrichedLine = new String(test.write(), StandardCharsets.UTF_8).split("\n")[1];
+
+        // The enrichment key must appear exactly once
+        assertEquals(enrichedLine.indexOf(ENRICHMENT_KEY), enrichedLine.lastIndexOf(ENRICHMENT_KEY));
+        JsonNode enrichedPayload = mapper.readTree(enrichedLine);
+        assertEquals("value1", enrichedPayload.get("text").asText());
+        assertEquals("dummy result", enrichedPayload.get(ENRICHMENT_KEY).get("result").asText());
+    }
+
+    @Test
+    public void succeedWriteEachPayloadOnce() throws IOException {
+        byte[] payload = getBytes(TestConstants.CUSTOMER_PAYLOAD_NO_CONFIG_KEY_WORD);
+        BulkPayloadWriter test = newWriter(payload);
+        test.attach(1, "field2_DetectSentiment", new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        test.attach(1, "field2_DetectEntities", new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        String[] lines = new String(test.write(), StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(5, lines.length);
+        assertEquals("{ \"doc\" : {\"field2\" : \"value2\"} }", lines[1]);
+        JsonNode enrichedPayload = mapper.readTree(lines[4]);
+        assertTrue(enrichedPayload.has("field2_DetectSentiment"));
+        assertTrue(enrichedPayload.has("field2_DetectEntities"));
+        assertTrue(enrichedPayload.has(Constants.TIME_STAMP_KEY));
+    }
+
+    @Test
+    public void succeedWriteSubBulksOfConsecutiveRows() throws IOException {
+        String deleteAction = "{\"delete\":{\"_index\":\"tweeter\",\"_type\":\"_doc\",\"_id\":\"2\"}}";
+        String firstRows = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"} \n";
+        String lastRows = deleteAction + "\n" + TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value2\"}";
+        byte[] payload = getBytes(firstRows + lastRows);
+        BulkPayloadWriter test = newWriter(payload);
+        test.attach(1, ENRICHMENT_KEY, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+
+        // The first sub-bulk ends with the line of its last payload, the lines after it go to the next sub-bulk
+        assertEquals(firstRows, new String(test.write(0, 1), StandardCharsets.UTF_8));
+        String[] lines = new String(test.write(1, 2), StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(deleteAction, lines[0]);
+        assertEquals(TestConstants.BULK_INDEX_PAYLOAD, lines[1]);
+        JsonNode enrichedPayload = mapper.readTree(lines[2]);
+        assertEquals("value2", enrichedPayload.get("text").asText());
+        assertEquals("dummy result", enrichedPayload.get(ENRICHMENT_KEY).get("result").asText());
+    }
+
+    @Test
+    public void succeedSplitSubBulksByCaps() {
+        String row = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n";
+        byte[] payload = getBytes(row + row + row);
+        BulkPayloadWriter test = newWriter(payload);
+
+        // Split by the payload count
+        List<SubBulk> subBulkList = test.write(0, 3, payload.length, 2);
+        assertEquals(2, subBulkList.size());
+        assertEquals(row + row, new String(subBulkList.get(0).getBody(), StandardCharsets.UTF_8));
+        assertEquals(row, new String(subBulkList.get(1).getBody(), StandardCharsets.UTF_8));
+
+        // Split by the size, a row over the cap by itself is written alone
+        test.attach(1, ENRICHMENT_KEY, new JSONObject(TestConstants.DUMMY_RESPONSE_JSON));
+        subBulkList = test.write(0, 3, row.length() + 1, 3);
+        assertEquals(3, subBulkList.size());
+        assertEquals(row, new String(subBulkList.get(0).getBody(), StandardCharsets.UTF_8));
+        assertTrue(new String(subBulkList.get(1).getBody(), StandardCharsets.UTF_8).contains(ENRICHMENT_KEY));
+        assertEquals(row, new String(subBulkList.get(2).getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void succeedCountEveryActionTowardTheCap() {
+        String deleteAction = "{\"delete\":{\"_index\":\"tweeter\",\"_type\":\"_doc\",\"_id\":\"2\"}}\n";
+        String row = TestConstants.BULK_INDEX_PAYLOAD + "\n{\"text\":\"value1\"}\n";
+        byte[] payload = getBytes(row + deleteAction + deleteAction + row);
+        BulkPayloadWriter test = newWriter(payload);
+
+        // The delete actions between the rows count as much as the rows, the sub-bulks are split between them
+        List<SubBulk> subBulkList = test.write(0, 2, payload.length, 2);
+        assertEquals(2, subBulkList.size());
+        assertEquals(row + deleteAction, new String(subBulkList.get(0).getBody(), StandardCharsets.UTF_8));
+        assertEquals(deleteAction + row, new String(subBulkList.get(1).getBody(), StandardCharsets.UTF_8));
+        // Each sub-bulk carries the actions it was written with
+        assertEquals(Arrays.asList("index", "delete"), getActionNames(subBulkList.get(0)));
+        assertEquals(Arrays.asList("delete", "index"), getActionNames(subBulkList.get(1)));
+        assertEquals("2", subBulkList.get(1).getActionList().get(0).getId());
+        // The actions of a row range start after the row before it
+        assertEquals(Arrays.asList("delete", "delete", "index"),
+                test.getActionList(1, 2).stream().map(BulkAction::getName).collect(Collectors.toList()));
+    }
+
+    private BulkPayloadWriter newWriter(final byte[] payload) {
+        List<BulkAction> actionList = new ArrayList<>();
+        return new BulkPayloadWriter(payload, bulkPayloadReader.read(payload, actionList), actionList);
+    }
+
+    private static List<String> getActionNames(final SubBulk subBulk) {
+        return subBulk.getActionList().stream().map(BulkAction::getName).collect(Collectors.toList());
+    }
+
+    private static byte[] getBytes(final String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.amazonaws.comprehend.esproxy.lambda.utils.serializer;
+
+import com.amazonaws.services.comprehend.model.BatchItemError;
+import com.amazonaws.services.comprehend.model.DominantLanguage;
+import com.amazonaws.services.comprehend.model.Entity;
+import com.amazonaws.services.comprehend.model.KeyPhrase;
+import com.amazonaws.services.comprehend.model.PartOfSpeechTag;
+import com.amazonaws.services.comprehend.model.SentimentScore;
+import com.amazonaws.services.comprehend.model.SyntaxToken;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ComprehendResultWriterTest {
+    @Test
+    public void succeedWriteSameKeysAsBeanConversion() {
+        Entity entity = new Entity().withScore(0.9f).withType("PERSON").withText("Jane")
+                .withBeginOffset(0).withEndOffset(4);
+        KeyPhrase keyPhrase = new KeyPhrase().withScore(0.8f).withText("the cat").withBeginOffset(4).withEndOffset(11);
+        SyntaxToken syntaxToken = new SyntaxToken().withTokenId(1).withText("cat").withBeginOffset(8)
+                .withEndOffset(11).withPartOfSpeech(new PartOfSpeechTag().withTag("NOUN").withScore(0.99f));
+        SentimentScore sentimentScore = new SentimentScore().withPositive(0.7f).withNegative(0.1f)
+                .withNeutral(0.15f).withMixed(0.05f);
+        DominantLanguage dominantLanguage = new DominantLanguage().withLanguageCode("en").withScore(0.98f);
+        BatchItemError batchItemError = new BatchItemError().withIndex(2).withErrorCode("InternalServerException")
+                .withErrorMessage("dummy error");
+
+        assertTrue(ComprehendResultWriter.write(entity).similar(new JSONObject(entity)));
+        assertTrue(ComprehendResultWriter.write(keyPhrase).similar(new JSONObject(keyPhrase)));
+        assertTrue(ComprehendResultWriter.write(syntaxToken).similar(new JSONObject(syntaxToken)));
+        assertTrue(ComprehendResultWriter.write(sentimentScore).similar(new JSONObject(sentimentScore)));
+        assertTrue(ComprehendResultWriter.write(dominantLanguage).similar(new JSONObject(dominantLanguage)));
+
+        JSONObject errorJson = new JSONObject(batchItemError);
+        errorJson.remove("index");
+        assertTrue(ComprehendResultWriter.write(batchItemError).similar(errorJson));
+    }
+
+    @Test
+    public void succeedLeaveOutNullFields() {
+        JSONObject result = ComprehendResultWriter.write(new SyntaxToken().withTokenId(1).withText("cat"));
+
+        assertEquals(2, result.length());
+        assertFalse(result.has("partOfSpeech"));
+    }
+
+    @Test
+    public void succeedWriteList() {
+        JSONArray entityArray = ComprehendResultWriter.writeList(Arrays.asList(
+                new Entity().withType("PERSON"), new Entity().withType("LOCATION")), ComprehendResultWriter::write);
+
+        assertEquals(2, entityArray.length());
+        assertEquals("LOCATION", entityArray.getJSONObject(1).getString("type"));
+        assertEquals(0, ComprehendResultWriter.<Entity>writeList(null, ComprehendResultWriter::write).length());
+    }
+}